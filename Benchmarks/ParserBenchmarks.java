@@ -0,0 +1,361 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+    Benchmarks for the three expression parsers on the same E/T/F grammar:
+        Parser                    (Experiment-4, recursive descent on System.in)
+        CompiledLL1Table          (Experiment-5, table-driven LL(1))
+        LL1ParserGenerator        (Experiment-5, the LL(1) table as generated code)
+        OperatorPrecedenceParser  (Experiment-6, shift-reduce)
+        LalrParser                (Experiment-6, table-driven LALR(1) on the left-recursive grammar)
+        PegParser                 (Experiment-5, packrat on the left-recursive PEG, expr.peg)
+        GllParser                 (Experiment-5, general CFG parsing on expr.grammar and the left-recursive grammar)
+    plus the grammar analysis and table building phases (and a GrammarRegistry
+    hit for the same grammar, against loading and analysing it), the DfaLexer
+    (Experiment-2) generated from expr.lex and the parsers on its tokens, the
+    TokenClassifier (Experiment-1) on scalar and vector run scanning, and the
+    IncrementalLL1Parser's reparse after a small edit against a full parse of
+    the same large document. The *WithMetrics runs count every step into a
+    ParseMetrics / ShiftReduceMetrics, against the plain runs without them.
+
+    Each benchmark is run for a warm-up period and then for a number of timed
+    iterations; it reports throughput (ops/s), average latency (ns/op) and
+    the bytes allocated per operation, read from the thread's allocation
+    counter (the same figure as gc.alloc.rate.norm under JMH's -prof gc).
+
+    Corpora are generated with a fixed seed for each (length, depth) shape:
+    `length` operands joined by + - * /, with parentheses nested `depth`
+    levels deep.
+
+    Build and run from the repository root:
+        javac -encoding UTF-8 -d out -sourcepath "Experiment-1:Experiment-2:Experiment-4:Experiment-5:Experiment-6" \
+            --add-modules jdk.incubator.vector Benchmarks/*.java Experiment-1/VectorRunScanner.java
+        java --add-modules jdk.incubator.vector -cp out ParserBenchmarks [name-filter] [warmup-ms] [iterations] [iteration-ms]
+    (without jdk.incubator.vector, leave out VectorRunScanner.java and the
+    vector classifier run is skipped).
+*/
+public class ParserBenchmarks {
+
+    // Shapes of the generated corpora: {operands, nesting depth}
+    private static final int[][] SHAPES = {{4, 1}, {32, 4}, {256, 16}, {64, 64}};
+    private static final int CORPUS_SIZE = 256;
+
+    private static volatile long sink;
+
+    // One benchmarked operation; i selects the corpus entry
+    interface Op {
+        long run(int i) throws Exception;
+    }
+
+    private final String filter;
+    private final long warmupMillis;
+    private final int iterations;
+    private final long iterationMillis;
+    // Reports go to the original stdout even while a benchmark redirects System.out
+    private final PrintStream report = System.out;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    ParserBenchmarks(String filter, long warmupMillis, int iterations, long iterationMillis) {
+        this.filter = filter;
+        this.warmupMillis = warmupMillis;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    // Expression with `operands` operands and parentheses nested `depth` deep
+    static String generate(Random random, int operands, int depth) {
+        String ops = "+-*/";
+        StringBuilder sb = new StringBuilder();
+        int perLevel = Math.max(1, operands / (depth + 1));
+        int written = 0;
+        for (int level = 0; level < depth; level++) {
+            for (int k = 0; k < perLevel && written < operands - 1; k++, written++) {
+                sb.append('i').append(ops.charAt(random.nextInt(4)));
+            }
+            sb.append('(');
+        }
+        sb.append('i');
+        written++;
+        while (written < operands) {
+            sb.append(ops.charAt(random.nextInt(4))).append('i');
+            written++;
+        }
+        for (int level = 0; level < depth; level++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    // Statements of keywords, identifiers, numbers, operators and strings, about size characters
+    static String sourceFile(int size) {
+        Random random = new Random(size);
+        String[] words = {"int", "while", "return", "count", "total_length", "i", "buffer", "x1", "node"};
+        String[] operators = {"=", "+", "<=", "==", "&&", "++", "*", "!="};
+        StringBuilder sb = new StringBuilder(size + 64);
+        while (sb.length() < size) {
+            sb.append("    ").append(words[random.nextInt(words.length)]);
+            for (int k = random.nextInt(6); k >= 0; k--) {
+                sb.append(' ').append(operators[random.nextInt(operators.length)]).append(' ');
+                int operand = random.nextInt(4);
+                if (operand == 0) {
+                    sb.append(random.nextInt(100000));
+                } else if (operand == 1) {
+                    sb.append("\"text ").append(k).append('"');
+                } else {
+                    sb.append(words[random.nextInt(words.length)]);
+                }
+            }
+            sb.append(";\n");
+        }
+        return sb.toString();
+    }
+
+    static String[] corpus(int operands, int depth) {
+        Random random = new Random(31L * operands + depth);
+        String[] inputs = new String[CORPUS_SIZE];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = generate(random, operands, depth);
+        }
+        return inputs;
+    }
+
+    void run(String name, Op op) throws Exception {
+        if (filter != null && !name.contains(filter)) {
+            return;
+        }
+        long deadline = System.nanoTime() + warmupMillis * 1_000_000L;
+        int i = 0;
+        long acc = 0;
+        while (System.nanoTime() < deadline) {
+            acc += op.run(i++);
+        }
+
+        double[] nsPerOp = new double[iterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        for (int it = 0; it < iterations; it++) {
+            long start = System.nanoTime();
+            long end = start + iterationMillis * 1_000_000L;
+            long ops = 0;
+            long now;
+            do {
+                for (int batch = 0; batch < 64; batch++) {
+                    acc += op.run(i++);
+                }
+                ops += 64;
+                now = System.nanoTime();
+            } while (now < end);
+            nsPerOp[it] = (double) (now - start) / ops;
+            totalOps += ops;
+            totalNanos += now - start;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        sink += acc;
+
+        double mean = (double) totalNanos / totalOps;
+        double var = 0;
+        for (double v : nsPerOp) {
+            var += (v - mean) * (v - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+        report.printf("%-46s %14.0f %12.1f ± %-8.1f %12.1f%n",
+                name, totalOps * 1e9 / totalNanos, mean, error, (double) allocated / totalOps);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 && !args[0].equals("-") ? args[0] : null;
+        long warmup = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long iterationMillis = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        ParserBenchmarks bench = new ParserBenchmarks(filter, warmup, iterations, iterationMillis);
+
+        bench.report.printf("%-46s %14s %23s %12s%n", "Benchmark", "ops/s", "ns/op", "B/op");
+
+        // Grammar analysis and table building
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.initGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        CompiledLL1Table table = grammar.compile();
+        LL1ParserGenerator generated = LL1ParserGenerator.generate(table);
+        if (!generated.isGenerated()) {
+            bench.report.println("# ll1.parseSpecialized runs table-driven: " + generated.fallbackReason());
+        }
+
+        bench.run("ll1.analysis.computeFirstFollow", i -> {
+            grammar.computeFirstFollow();
+            return 1;
+        });
+        bench.run("ll1.analysis.computeFirstFollowBitset", i -> {
+            grammar.computeFirstFollowBitset(null);
+            return 1;
+        });
+        bench.run("ll1.analysis.buildParsingTable", i -> {
+            grammar.buildParsingTable();
+            return 1;
+        });
+        bench.run("ll1.analysis.buildParsingTableAndCompile", i -> {
+            grammar.buildParsingTable();
+            return grammar.compile().productionCount();
+        });
+        List<String> exprGrammar = java.nio.file.Files.readAllLines(java.nio.file.Path.of("Experiment-5/expr.grammar"));
+        bench.run("ll1.analysis.loadAndAnalyze", i -> {
+            LL1ParserGrammar loaded = new LL1ParserGrammar("");
+            loaded.loadGrammar(exprGrammar);
+            loaded.computeFirstFollow();
+            loaded.buildParsingTable();
+            return loaded.compile().productionCount();
+        });
+        GrammarRegistry registry = new GrammarRegistry();
+        bench.run("ll1.analysis.registryHit", i -> registry.get(exprGrammar).table().productionCount());
+        bench.run("opg.analysis.buildPrecedenceTable", i -> {
+            return new OperatorPrecedenceParser("i").getErrorPosition();
+        });
+        LalrGrammar lalrGrammar = LalrGrammar.parse(List.of(
+                "E -> E + T | E - T | T",
+                "T -> T * F | T / F | F",
+                "F -> ( E ) | i"));
+        bench.run("lalr.analysis.buildTable", i -> new LalrTable(lalrGrammar).stateCount());
+        LalrTable lalrTable = new LalrTable(lalrGrammar);
+        List<String> lexerSpec = java.nio.file.Files.readAllLines(java.nio.file.Path.of("Experiment-2/expr.lex"));
+        bench.run("lexer.generate", i -> LexerGenerator.parse(lexerSpec).stateCount());
+        DfaLexer lexer = LexerGenerator.parse(lexerSpec);
+        PegParser peg = new PegParser(PegGrammar.load(java.nio.file.Path.of("Experiment-5/expr.peg")));
+        GllParser gll = new GllParser(table);
+        LL1ParserGrammar leftRecursive = new LL1ParserGrammar("");
+        leftRecursive.loadGrammar(List.of(
+                "E -> E + T | E - T | T",
+                "T -> T * F | T / F | F",
+                "F -> ( E ) | i"));
+        leftRecursive.computeFirstFollow();
+        leftRecursive.buildParsingTable();
+        GllParser gllLeftRecursive = new GllParser(leftRecursive.compile());
+
+        PrintStream realOut = System.out;
+        InputStream realIn = System.in;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+        for (int[] shape : SHAPES) {
+            String[] inputs = corpus(shape[0], shape[1]);
+            String suffix = "(len=" + shape[0] + ",depth=" + shape[1] + ")";
+
+            // Experiment-4 reads System.in and prints its verdict: feed it bytes, discard the output
+            byte[][] bytes = new byte[inputs.length][];
+            for (int k = 0; k < inputs.length; k++) {
+                bytes[k] = (inputs[k] + "$").getBytes(StandardCharsets.US_ASCII);
+            }
+            System.setOut(discard);
+            try {
+                bench.run("rd.parse" + suffix, i -> {
+                    System.setIn(new ByteArrayInputStream(bytes[i & (CORPUS_SIZE - 1)]));
+                    Parser.main(new String[0]);
+                    return Parser.l;
+                });
+            } finally {
+                System.setOut(realOut);
+                System.setIn(realIn);
+            }
+
+            CompiledLL1Table.Cursor cursor = table.newCursor();
+            bench.run("ll1.parse" + suffix, i -> cursor.parse(inputs[i & (CORPUS_SIZE - 1)], ParseListener.SILENT));
+            ParseMetrics metrics = new ParseMetrics();
+            bench.run("ll1.parseWithMetrics" + suffix, i -> cursor.parse(inputs[i & (CORPUS_SIZE - 1)], metrics));
+            SpecializedLL1Parser specialized = generated.newParser();
+            bench.run("ll1.parseSpecialized" + suffix, i -> specialized.parse(inputs[i & (CORPUS_SIZE - 1)], ParseListener.SILENT));
+
+            // Packrat on the left-recursive PEG form of the grammar
+            bench.run("peg.parse" + suffix, i -> peg.parse(inputs[i & (CORPUS_SIZE - 1)]));
+            ParseTreeArena pegTree = new ParseTreeArena();
+            bench.run("peg.parseTree" + suffix, i -> peg.parse(inputs[i & (CORPUS_SIZE - 1)], pegTree));
+
+            // GLL with its forest, on the LL(1) grammar and on the left-recursive one
+            bench.run("gll.parse" + suffix, i -> gll.parse(inputs[i & (CORPUS_SIZE - 1)]));
+            bench.run("gll.parseLeftRecursive" + suffix, i -> gllLeftRecursive.parse(inputs[i & (CORPUS_SIZE - 1)]));
+
+            // The operator precedence parser takes its input in the constructor
+            bench.run("opg.constructAndParse" + suffix, i -> {
+                OperatorPrecedenceParser opg = new OperatorPrecedenceParser(inputs[i & (CORPUS_SIZE - 1)]);
+                return opg.parse(ShiftReduceListener.SILENT) ? 1 : 0;
+            });
+
+            // One parser reused through setInput, on the primitive stack
+            OperatorPrecedenceParser compact = new OperatorPrecedenceParser("i");
+            compact.setCompactStack(true);
+            bench.run("opg.parseCompact" + suffix, i -> {
+                compact.setInput(inputs[i & (CORPUS_SIZE - 1)]);
+                return compact.parse(ShiftReduceListener.SILENT) ? 1 : 0;
+            });
+            compact.setMetrics(new ShiftReduceMetrics());
+            bench.run("opg.parseCompactWithMetrics" + suffix, i -> {
+                compact.setInput(inputs[i & (CORPUS_SIZE - 1)]);
+                return compact.parse(ShiftReduceListener.SILENT) ? 1 : 0;
+            });
+            compact.setMetrics(null);
+
+            // Lexed once per input; the parsers then read the token ids
+            TokenBuffer tokens = new TokenBuffer();
+            bench.run("lexer.tokenize" + suffix, i -> lexer.tokenize(inputs[i & (CORPUS_SIZE - 1)], tokens).count());
+            int[][] ll1Tokens = new int[inputs.length][];
+            int[][] opgTokens = new int[inputs.length][];
+            int[][] starts = new int[inputs.length][];
+            int[][] ends = new int[inputs.length][];
+            for (int k = 0; k < inputs.length; k++) {
+                lexer.tokenize(inputs[k], tokens);
+                int count = tokens.count();
+                ll1Tokens[k] = new int[count];
+                opgTokens[k] = new int[count];
+                for (int t = 0; t < count; t++) {
+                    String name = lexer.tokenName(tokens.id(t));
+                    ll1Tokens[k][t] = table.terminalId(name);
+                    opgTokens[k][t] = compact.terminalIndex(name);
+                }
+                starts[k] = Arrays.copyOf(tokens.starts(), count + 1);
+                ends[k] = Arrays.copyOf(tokens.ends(), count);
+            }
+            bench.run("ll1.parseTokens" + suffix, i -> {
+                int k = i & (CORPUS_SIZE - 1);
+                return cursor.parse(ll1Tokens[k], starts[k], ends[k], ll1Tokens[k].length, ParseListener.SILENT);
+            });
+            bench.run("opg.parseCompactTokens" + suffix, i -> {
+                int k = i & (CORPUS_SIZE - 1);
+                compact.setTokens(opgTokens[k], starts[k], ends[k], opgTokens[k].length);
+                return compact.parse(ShiftReduceListener.SILENT) ? 1 : 0;
+            });
+
+            LalrParser lalr = new LalrParser(lalrTable);
+            bench.run("lalr.parse" + suffix, i -> {
+                lalr.setInput(inputs[i & (CORPUS_SIZE - 1)]);
+                return lalr.parse(LrListener.SILENT) ? 1 : 0;
+            });
+        }
+
+        // Typing in the middle of a large document: insert "+i" after an operand, then take it out again
+        String document = String.join("+", corpus(256, 16));
+        int at = document.indexOf('i', document.length() / 2) + 1;
+        IncrementalLL1Parser incremental = new IncrementalLL1Parser(table);
+        incremental.parse(document);
+        bench.run("ll1.incrementalEdit(len=" + document.length() + ")",
+                i -> (i & 1) == 0 ? incremental.edit(at, 0, "+i") : incremental.edit(at, 2, ""));
+        CompiledLL1Table.Cursor full = table.newCursor();
+        bench.run("ll1.parse(len=" + document.length() + ")", i -> full.parse(document, ParseListener.SILENT));
+
+        // Classifying a 64 KB C-like source file
+        byte[] source = sourceFile(64 * 1024).getBytes(StandardCharsets.US_ASCII);
+        TokenClassifier scalar = new TokenClassifier(TokenClassifier.KEYWORDS, TokenClassifier.OPERATORS, false);
+        bench.run("classifier.classifyScalar(bytes=" + source.length + ")", i -> scalar.classify(source));
+        TokenClassifier vector = new TokenClassifier();
+        if (vector.isVectorized()) {
+            bench.run("classifier.classifyVector(bytes=" + source.length + ")", i -> vector.classify(source));
+        } else {
+            bench.report.println("# classifier.classifyVector skipped: " + vector.fallbackReason());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Minimal perfect hash over a fixed set of words (keywords, operators),
+    built once at startup by hash-and-displace:
+
+      - every word falls in bucket h(0, word) mod n, n being the number of
+        words;
+      - buckets are placed largest first: a bucket of several words gets
+        the smallest seed d for which h(d, word) mod n sends all of them to
+        free, distinct slots; a bucket of one word takes any free slot
+        directly, recorded as -slot - 1;
+      - seeds[bucket] keeps d (or the direct slot), so a lookup is one read
+        of seeds, one hash, and one compare against the word in that slot.
+
+    As in gperf, the hash need not read every byte: when the length with the
+    first, middle and last bytes already tells all the words apart, only
+    those are hashed (a few instructions for any token length), and the
+    final compare rejects other words that share them. Otherwise the hash
+    runs over all the bytes.
+
+    The table has exactly n slots, one per word, and indexOf() returns the
+    word's index in the array it was built from. Words are compared as UTF-8
+    bytes, so tokens are looked up straight from the source buffer.
+*/
+public final class PerfectHashTable {
+
+    // Give up on a bucket after this many seeds (not reached in practice)
+    private static final int MAX_SEED = 1 << 24;
+
+    private final int[] seeds;       // by bucket: seed d > 0, or -slot - 1 for a single word
+    private final byte[][] words;    // by slot
+    private final int[] indexes;     // by slot: index in the array the table was built from
+    private final int maxLength;
+    private final boolean sampled;   // hash only the length and the first, middle and last bytes
+
+    public PerfectHashTable(String... words) {
+        int n = words.length;
+        this.seeds = new int[n];
+        this.words = new byte[n][];
+        this.indexes = new int[n];
+        byte[][] bytes = new byte[n][];
+        int longest = 0;
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (!seen.add(words[i])) {
+                throw new IllegalArgumentException("duplicate word: " + words[i]);
+            }
+            bytes[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            longest = Math.max(longest, bytes[i].length);
+        }
+        this.maxLength = longest;
+        Set<Integer> samples = new HashSet<>();
+        for (byte[] w : bytes) {
+            samples.add(w.length == 0 ? 0 : sample(w, 0, w.length));
+        }
+        this.sampled = samples.size() == n && !samples.contains(0);
+        if (n == 0) {
+            return;
+        }
+
+        List<List<Integer>> buckets = new ArrayList<>(n);
+        for (int b = 0; b < n; b++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            buckets.get(slot(hash(0, bytes[i], 0, bytes[i].length), n)).add(i);
+        }
+        Integer[] order = new Integer[n];
+        for (int b = 0; b < n; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (x, y) -> buckets.get(y).size() - buckets.get(x).size());
+
+        boolean[] used = new boolean[n];
+        int nextFree = 0;
+        for (int b : order) {
+            List<Integer> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            if (bucket.size() == 1) {
+                while (used[nextFree]) {
+                    nextFree++;
+                }
+                place(bucket.get(0), nextFree, bytes, used);
+                seeds[b] = -nextFree - 1;
+                continue;
+            }
+            int[] slots = new int[bucket.size()];
+            for (int d = 1; ; d++) {
+                if (d == MAX_SEED) {
+                    throw new IllegalArgumentException("no perfect hash found for " + bucket.size() + " words");
+                }
+                if (fits(d, bucket, bytes, used, slots)) {
+                    for (int k = 0; k < slots.length; k++) {
+                        place(bucket.get(k), slots[k], bytes, used);
+                    }
+                    seeds[b] = d;
+                    break;
+                }
+            }
+        }
+    }
+
+    // True if seed d sends every word of the bucket to a distinct free slot, which it writes to slots
+    private boolean fits(int d, List<Integer> bucket, byte[][] bytes, boolean[] used, int[] slots) {
+        for (int k = 0; k < slots.length; k++) {
+            byte[] w = bytes[bucket.get(k)];
+            int s = slot(hash(d, w, 0, w.length), used.length);
+            if (used[s]) {
+                return false;
+            }
+            for (int j = 0; j < k; j++) {
+                if (slots[j] == s) {
+                    return false;
+                }
+            }
+            slots[k] = s;
+        }
+        return true;
+    }
+
+    private void place(int index, int slot, byte[][] bytes, boolean[] used) {
+        used[slot] = true;
+        words[slot] = bytes[index];
+        indexes[slot] = index;
+    }
+
+    private int hash(int seed, byte[] b, int from, int to) {
+        if (sampled) {
+            // Only used for non-empty tokens: the empty word disables sampling
+            // MurmurHash3's finalizer over the sample offset by the seed
+            int h = sample(b, from, to) + seed * 0x9E3779B9;
+            h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+            h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+            return h ^ (h >>> 16);
+        }
+        // FNV-1a over the bytes, started from a value that depends on the seed
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = from; i < to; i++) {
+            h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    // Length, first, middle and last byte of a non-empty word, packed
+    private static int sample(byte[] b, int from, int to) {
+        int length = to - from;
+        return (length & 0xFF) | (b[from] & 0xFF) << 8 | (b[from + length / 2] & 0xFF) << 16 | (b[to - 1] & 0xFF) << 24;
+    }
+
+    private static int slot(int hash, int n) {
+        return (hash & 0x7FFFFFFF) % n;
+    }
+
+    // Index of the word b[from..to) in the array the table was built from, or -1
+    public int indexOf(byte[] b, int from, int to) {
+        int n = seeds.length;
+        if (n == 0 || to - from > maxLength || (sampled && to == from)) {
+            return -1;
+        }
+        int d = seeds[slot(hash(0, b, from, to), n)];
+        int s = d < 0 ? -d - 1 : slot(hash(d, b, from, to), n);
+        byte[] word = words[s];
+        if (word.length != to - from) {
+            return -1;
+        }
+        // A plain loop: words are short, shorter than the setup of Arrays.equals' vectorized mismatch
+        for (int k = 0; k < word.length; k++) {
+            if (word[k] != b[from + k]) {
+                return -1;
+            }
+        }
+        return indexes[s];
+    }
+
+    public int indexOf(String word) {
+        byte[] b = word.getBytes(StandardCharsets.UTF_8);
+        return indexOf(b, 0, b.length);
+    }
+
+    public int size() {
+        return seeds.length;
+    }
+
+    // Length in bytes of the longest word
+    public int maxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+    Finds where a run of one character class ends: identifier characters
+    [A-Za-z0-9_], digits, or whitespace. Each method returns the index of
+    the first byte in b[from..to) outside the class, or to.
+
+    SCALAR tests one byte at a time through a class table; VectorRunScanner
+    tests a vector of bytes per step once a run is long enough to pay for
+    it, and is used when the jdk.incubator.vector module is present (see
+    vectorized()).
+*/
+interface RunScanner {
+
+    // Class bits by byte value
+    byte IDENT = 1;
+    byte DIGIT = 2;
+    byte SPACE = 4;
+    byte[] CLASSES = classes();
+
+    RunScanner SCALAR = new RunScanner() {
+    };
+
+    default int identifierEnd(byte[] b, int from, int to) {
+        return scalarEnd(b, from, to, IDENT);
+    }
+
+    default int digitsEnd(byte[] b, int from, int to) {
+        return scalarEnd(b, from, to, DIGIT);
+    }
+
+    default int whitespaceEnd(byte[] b, int from, int to) {
+        return scalarEnd(b, from, to, SPACE);
+    }
+
+    static int scalarEnd(byte[] b, int from, int to, byte mask) {
+        int i = from;
+        while (i < to && (CLASSES[b[i] & 0xFF] & mask) != 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private static byte[] classes() {
+        byte[] table = new byte[256];
+        for (int c = 'a'; c <= 'z'; c++) {
+            table[c] = IDENT;
+            table[c - 'a' + 'A'] = IDENT;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            table[c] = IDENT | DIGIT;
+        }
+        table['_'] = IDENT;
+        for (char c : new char[]{' ', '\t', '\n', 0x0B, '\f', '\r'}) {
+            table[c] = SPACE;
+        }
+        return table;
+    }
+
+    /*
+        The vector scanner, or null when it cannot be used; reason receives
+        why (the module is not resolved, or the class was compiled without
+        it). Loaded reflectively so that everything else compiles and runs
+        without --add-modules jdk.incubator.vector.
+    */
+    static RunScanner vectorized(StringBuilder reason) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            reason.append("module jdk.incubator.vector not resolved (run with --add-modules jdk.incubator.vector)");
+            return null;
+        }
+        try {
+            return (RunScanner) Class.forName("VectorRunScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            reason.append("VectorRunScanner unavailable: ").append(e);
+            return null;
+        }
+    }
+}
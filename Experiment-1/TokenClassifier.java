@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Java version of exp1.c: splits source text into tokens and classifies
+    each one as a keyword, identifier, number, operator, string literal or
+    other, with the same keyword and operator sets by default.
+
+    Unlike exp1.c, nothing is copied or compared one word at a time:
+      - keywords and operators are looked up in PerfectHashTables built at
+        startup, one probe and one compare each; operators are matched
+        longest first, so "<=" and "++" are single tokens;
+      - runs of identifier characters, digits and whitespace are scanned by
+        a RunScanner, on the Vector API when jdk.incubator.vector is present
+        and one byte at a time otherwise;
+      - input is UTF-8 bytes and the result is kept as arrays of kinds and
+        [start, end) offsets, reused from one classify() call to the next.
+
+    A word that starts with a digit is a number if it is all digits, and
+    other (like 12ab in exp1.c) if not. A string runs to the next '"' on the
+    same line; without one it is other. A non-ASCII character is one other
+    token. Not thread-safe: use one classifier per thread.
+*/
+public final class TokenClassifier {
+
+    // Token kinds
+    public static final int KEYWORD = 0;
+    public static final int IDENTIFIER = 1;
+    public static final int NUMBER = 2;
+    public static final int OPERATOR = 3;
+    public static final int STRING = 4;
+    public static final int OTHER = 5;
+    static final String[] KIND_NAMES = {"keyword", "identifier", "number", "operator", "string literal", "other"};
+
+    // The sets of exp1.c
+    public static final String[] KEYWORDS = {
+            "int", "float", "double", "char", "void", "if", "else", "while", "for", "do",
+            "switch", "case", "break", "continue", "return", "class", "public", "private",
+            "new", "delete", "try", "catch"
+    };
+    public static final String[] OPERATORS = {
+            "+", "-", "*", "/", "%", "=", "==", "!=", "<", ">", "<=", ">=", "++", "--", "+=", "-=",
+            "*=", "/=", "%=", "&&", "||", "!", "&", "|"
+    };
+
+    private final PerfectHashTable keywords;
+    private final PerfectHashTable operators;
+    private final byte[] operatorLength;  // by first byte: length of the longest operator it starts, or 0
+    private final boolean[] oneByteOperator; // by byte: an operator on its own
+    private final RunScanner scanner;
+    private final String fallbackReason;
+
+    private int[] kinds = new int[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int count;
+    private final long[] kindCounts = new long[KIND_NAMES.length];
+
+    public TokenClassifier() {
+        this(KEYWORDS, OPERATORS, true);
+    }
+
+    // vectorized: scan runs with the Vector API if it is available (see fallbackReason())
+    public TokenClassifier(String[] keywords, String[] operators, boolean vectorized) {
+        this.keywords = new PerfectHashTable(keywords);
+        this.operators = new PerfectHashTable(operators);
+        this.operatorLength = new byte[256];
+        this.oneByteOperator = new boolean[256];
+        for (String op : operators) {
+            byte[] b = op.getBytes(StandardCharsets.UTF_8);
+            if (b.length > 0) {
+                int first = b[0] & 0xFF;
+                operatorLength[first] = (byte) Math.max(operatorLength[first], Math.min(b.length, Byte.MAX_VALUE));
+                oneByteOperator[first] |= b.length == 1;
+            }
+        }
+        RunScanner vector = null;
+        StringBuilder reason = new StringBuilder();
+        if (vectorized) {
+            vector = RunScanner.vectorized(reason);
+        } else {
+            reason.append("scalar scanner requested");
+        }
+        this.scanner = vector != null ? vector : RunScanner.SCALAR;
+        this.fallbackReason = vector != null ? null : reason.toString();
+    }
+
+    // True if runs are scanned with the Vector API
+    public boolean isVectorized() {
+        return fallbackReason == null;
+    }
+
+    // Why the scalar scanner is used, or null
+    public String fallbackReason() {
+        return fallbackReason;
+    }
+
+    // Tokenize and classify b[from..to); returns the number of tokens
+    public int classify(byte[] b, int from, int to) {
+        final byte[] classes = RunScanner.CLASSES;
+        count = 0;
+        int i = from;
+        while (i < to) {
+            int c = b[i] & 0xFF;
+            int cls = classes[c];
+            int start = i;
+            int kind;
+            if ((cls & RunScanner.SPACE) != 0) {
+                i = scanner.whitespaceEnd(b, i + 1, to);
+                continue;
+            } else if ((cls & RunScanner.DIGIT) != 0) {
+                i = scanner.digitsEnd(b, i + 1, to);
+                kind = NUMBER;
+                if (i < to && (classes[b[i] & 0xFF] & RunScanner.IDENT) != 0) {
+                    i = scanner.identifierEnd(b, i, to);
+                    kind = OTHER;
+                }
+            } else if ((cls & RunScanner.IDENT) != 0) {
+                i = scanner.identifierEnd(b, i + 1, to);
+                kind = keywords.indexOf(b, start, i) >= 0 ? KEYWORD : IDENTIFIER;
+            } else if (c == '"') {
+                i++;
+                while (i < to && b[i] != '"' && b[i] != '\n') {
+                    i++;
+                }
+                if (i < to && b[i] == '"') {
+                    i++;
+                    kind = STRING;
+                } else {
+                    kind = OTHER;
+                }
+            } else {
+                // Longest operator first, from the longest one this byte starts
+                int length = Math.min(operatorLength[c], to - i);
+                while (length > 1 && operators.indexOf(b, i, i + length) < 0) {
+                    length--;
+                }
+                if (length == 1 && !oneByteOperator[c]) {
+                    length = 0;
+                }
+                if (length > 0) {
+                    i += length;
+                    kind = OPERATOR;
+                } else {
+                    // One character, with the continuation bytes of a UTF-8 sequence
+                    i++;
+                    while (c >= 0x80 && i < to && (b[i] & 0xC0) == 0x80) {
+                        i++;
+                    }
+                    kind = OTHER;
+                }
+            }
+            add(kind, start, i);
+        }
+        return count;
+    }
+
+    public int classify(byte[] b) {
+        return classify(b, 0, b.length);
+    }
+
+    private void add(int kind, int start, int end) {
+        if (count == kinds.length) {
+            kinds = Arrays.copyOf(kinds, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        kinds[count] = kind;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+        kindCounts[kind]++;
+    }
+
+    // Tokens of the last classify() call
+    public int count() {
+        return count;
+    }
+
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    // Tokens of a kind over all classify() calls so far
+    public long total(int kind) {
+        return kindCounts[kind];
+    }
+
+    public static String kindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    // Classify a file (exp1_input.txt by default) and print every token and the totals, as exp1.c does
+    public static void main(String[] args) throws IOException {
+        List<String> options = Arrays.asList(args);
+        boolean scalar = options.contains("--scalar");
+        String file = args.length > 0 && !args[args.length - 1].startsWith("--")
+                ? args[args.length - 1] : "exp1_input.txt";
+        byte[] source = Files.readAllBytes(Path.of(file));
+
+        TokenClassifier classifier = new TokenClassifier(KEYWORDS, OPERATORS, !scalar);
+        if (!classifier.isVectorized()) {
+            System.out.println("# scalar scanner: " + classifier.fallbackReason());
+        }
+        int n = classifier.classify(source);
+        for (int i = 0; i < n; i++) {
+            String text = new String(source, classifier.start(i), classifier.end(i) - classifier.start(i),
+                    StandardCharsets.UTF_8);
+            System.out.println(text + " -> " + kindName(classifier.kind(i)));
+        }
+
+        System.out.println("\nIdentifiers Tokens: " + classifier.total(IDENTIFIER));
+        System.out.println("Keywords Tokens: " + classifier.total(KEYWORD));
+        System.out.println("String Tokens: " + classifier.total(STRING));
+        System.out.println("Operator Tokens: " + classifier.total(OPERATOR));
+        System.out.println("Number Tokens: " + classifier.total(NUMBER));
+        System.out.println("Other Tokens: " + classifier.total(OTHER));
+        System.out.println("Total Tokens: " + n);
+    }
+}
@@ -0,0 +1,99 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+    RunScanner on the Vector API: a step loads SPECIES.length() bytes, builds
+    the mask of lanes inside the class with lane-wise compares, and the
+    first lane outside it (firstTrue of the inverted mask) ends the run.
+
+    Most source tokens are a few bytes long, and for those setting up a
+    vector costs more than the scalar loop saves, so the first PREFIX bytes
+    of a run are tested one at a time and only a run that goes on past them
+    (long names, indentation, long literals) switches to vectors. The bytes
+    past the last full vector go through the scalar loop as well.
+
+    Masks are consumed with firstTrue(), which C2 compiles to a vector
+    compare and a bit scan on JDK 17; VectorMask.toLong() is not intrinsic
+    there and would box a mask per step.
+
+    Compile and run with --add-modules jdk.incubator.vector; without it
+    RunScanner.vectorized() falls back to the scalar scanner.
+*/
+final class VectorRunScanner implements RunScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+    private static final int PREFIX = 8;
+
+    VectorRunScanner() {
+    }
+
+    @Override
+    public int identifierEnd(byte[] b, int from, int to) {
+        int i = prefixEnd(b, from, to, IDENT);
+        if (i < 0) {
+            return -i - 1;
+        }
+        int bound = i + SPECIES.loopBound(to - i);
+        for (; i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            // Setting bit 5 folds A-Z onto a-z; no other byte lands in a-z
+            ByteVector folded = v.or((byte) 0x20);
+            VectorMask<Byte> in = folded.compare(VectorOperators.GE, (byte) 'a')
+                    .and(folded.compare(VectorOperators.LE, (byte) 'z'))
+                    .or(v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9')))
+                    .or(v.compare(VectorOperators.EQ, (byte) '_'));
+            int end = in.not().firstTrue();
+            if (end < SPECIES.length()) {
+                return i + end;
+            }
+        }
+        return RunScanner.scalarEnd(b, i, to, IDENT);
+    }
+
+    @Override
+    public int digitsEnd(byte[] b, int from, int to) {
+        int i = prefixEnd(b, from, to, DIGIT);
+        if (i < 0) {
+            return -i - 1;
+        }
+        int bound = i + SPECIES.loopBound(to - i);
+        for (; i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            VectorMask<Byte> in = v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9'));
+            int end = in.not().firstTrue();
+            if (end < SPECIES.length()) {
+                return i + end;
+            }
+        }
+        return RunScanner.scalarEnd(b, i, to, DIGIT);
+    }
+
+    @Override
+    public int whitespaceEnd(byte[] b, int from, int to) {
+        int i = prefixEnd(b, from, to, SPACE);
+        if (i < 0) {
+            return -i - 1;
+        }
+        int bound = i + SPECIES.loopBound(to - i);
+        for (; i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            // ' ' and \t \n \v \f \r (9..13)
+            VectorMask<Byte> in = v.compare(VectorOperators.EQ, (byte) ' ')
+                    .or(v.compare(VectorOperators.GE, (byte) '\t').and(v.compare(VectorOperators.LE, (byte) '\r')));
+            int end = in.not().firstTrue();
+            if (end < SPECIES.length()) {
+                return i + end;
+            }
+        }
+        return RunScanner.scalarEnd(b, i, to, SPACE);
+    }
+
+    // Scalar test of the first PREFIX bytes: -end - 1 if the run ends there, else where vectors take over
+    private static int prefixEnd(byte[] b, int from, int to, byte kind) {
+        int stop = Math.min(to, from + PREFIX);
+        int i = RunScanner.scalarEnd(b, from, stop, kind);
+        return i < stop || i == to ? -i - 1 : i;
+    }
+}
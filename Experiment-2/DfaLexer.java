@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Table-driven lexer built by LexerGenerator. Characters map to classes
+    (a direct table below 128, a binary search over interval starts above),
+    and the minimized DFA is one short[] of states x classes entries, so a
+    step is two array reads. State 0 is dead and state 1 the start.
+
+    tokenize() does maximal munch: it runs the DFA as far as it goes,
+    remembers the last accepting state it passed, and emits that token,
+    or skips the text when the rule was %skip. A character no rule can start
+    with becomes a one-character ERROR token, and lexing goes on after it.
+
+    Immutable, so one lexer can be shared by any number of threads.
+*/
+public final class DfaLexer {
+
+    // Token id of text no rule matches
+    public static final int ERROR = -1;
+
+    // Accept value of states that accept nothing
+    static final int NONE = -3;
+
+    private static final int DEAD = 0;
+    private static final int START = 1;
+
+    private final String[] names;
+    private final byte[] asciiClass;
+    private final int[] intervalStart;
+    private final int[] classOfInterval;
+    private final int classes;
+    private final short[] next;
+    private final int[] accept;
+
+    DfaLexer(String[] names, int[] intervalStart, int[] classOfInterval, int classes, short[] next, int[] accept) {
+        this.names = names;
+        this.intervalStart = intervalStart;
+        this.classOfInterval = classOfInterval;
+        this.classes = classes;
+        this.next = next;
+        this.accept = accept;
+        // Classes fit a byte unless the rules tell apart more than 128 kinds of character
+        this.asciiClass = classes <= Byte.MAX_VALUE ? new byte[128] : null;
+        if (asciiClass != null) {
+            for (int c = 0; c < 128; c++) {
+                asciiClass[c] = (byte) lookup(c);
+            }
+        }
+    }
+
+    private int lookup(int c) {
+        int k = Arrays.binarySearch(intervalStart, c);
+        return classOfInterval[k >= 0 ? k : -k - 2];
+    }
+
+    private int classOf(char c) {
+        return c < 128 && asciiClass != null ? asciiClass[c] : lookup(c);
+    }
+
+    // Append the tokens of input to tokens (which is cleared first)
+    public TokenBuffer tokenize(CharSequence input, TokenBuffer tokens) {
+        tokens.clear();
+        int length = input.length();
+        int index = 0;
+        while (index < length) {
+            int state = START;
+            int token = NONE;
+            int end = index;
+            for (int i = index; i < length; i++) {
+                state = next[state * classes + classOf(input.charAt(i))];
+                if (state == DEAD) {
+                    break;
+                }
+                if (accept[state] != NONE) {
+                    token = accept[state];
+                    end = i + 1;
+                }
+            }
+            if (token == NONE) {
+                tokens.add(ERROR, index, index + 1);
+                index++;
+            } else {
+                if (token != LexerGenerator.SKIP) {
+                    tokens.add(token, index, end);
+                }
+                index = end;
+            }
+        }
+        tokens.finish(length);
+        return tokens;
+    }
+
+    public TokenBuffer tokenize(CharSequence input) {
+        return tokenize(input, new TokenBuffer(Math.max(16, input.length() / 4)));
+    }
+
+    // Number of token ids (ids run from 0)
+    public int tokenCount() {
+        return names.length;
+    }
+
+    public String tokenName(int id) {
+        return id == ERROR ? "ERROR" : names[id];
+    }
+
+    // Id of a token name, or ERROR when no rule has it
+    public int tokenId(String name) {
+        for (int id = 0; id < names.length; id++) {
+            if (names[id].equals(name)) {
+                return id;
+            }
+        }
+        return ERROR;
+    }
+
+    public int stateCount() {
+        return accept.length;
+    }
+
+    public int classCount() {
+        return classes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        DfaLexer lexer;
+        if (args.length > 0) {
+            lexer = LexerGenerator.load(Path.of(args[0]));
+        } else {
+            // The rules of token.l, plus blanks skipped
+            lexer = LexerGenerator.parse(List.of(
+                    "word      [a-zA-Z]+",
+                    "number    [0-9]+",
+                    "operator  [+\\-*/=]+",
+                    "%skip     [ \\t\\r\\n]+"));
+        }
+        System.out.println(lexer.stateCount() + " states, " + lexer.classCount() + " character classes");
+
+        String input = args.length > 1 ? args[1] : "count = count + 42 * rate / 7 ?";
+        TokenBuffer tokens = lexer.tokenize(input);
+        for (int i = 0; i < tokens.count(); i++) {
+            String text = tokens.text(input, i);
+            System.out.printf("%-10s %-10s [%d, %d)%n", lexer.tokenName(tokens.id(i)), text, tokens.start(i), tokens.end(i));
+        }
+    }
+}
@@ -0,0 +1,550 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+    Generates a DfaLexer from token rules, the way flex does from a .l file:
+
+        # comment
+        name     pattern
+        %skip    pattern
+
+    Each rule names a token and gives its regular expression; several rules
+    may share a name (identifiers and numbers can both be the operand i), and
+    %skip rules match text that produces no token (blanks, comments). The
+    longest match wins, and between matches of the same length the earlier
+    rule.
+
+    Patterns support literals, "quoted strings", escapes (\n \t \r \\ \. and
+    any other punctuation, \d \w \s), classes [a-z_] and [^...], '.' (any
+    character but a newline), grouping, | and the * + ? operators.
+
+    The steps are the textbook ones:
+      1. each pattern becomes a Thompson NFA whose edges carry character
+         sets; the boundaries of all sets split the character space into
+         intervals, so the construction never looks at single characters;
+      2. subset construction over those intervals gives a DFA;
+      3. Moore's partition refinement merges equivalent states;
+      4. intervals whose columns are now equal are merged into character
+         classes, which leaves a states x classes table small enough to keep
+         as short[].
+*/
+public final class LexerGenerator {
+
+    // Token id of %skip rules in the NFA and DFA (never returned by the lexer)
+    static final int SKIP = -2;
+
+    private static final int MAX_CHAR = Character.MAX_VALUE;
+
+    private LexerGenerator() {
+    }
+
+    // Read the rules from a spec file (see the header)
+    public static DfaLexer load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static DfaLexer parse(List<String> lines) {
+        List<String> names = new ArrayList<>();
+        List<Integer> ruleTokens = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int space = 0;
+            while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+                space++;
+            }
+            String name = line.substring(0, space);
+            String pattern = line.substring(space).trim();
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("line " + (n + 1) + ": no pattern for " + name);
+            }
+            int token;
+            if (name.equals("%skip")) {
+                token = SKIP;
+            } else {
+                token = names.indexOf(name);
+                if (token < 0) {
+                    token = names.size();
+                    names.add(name);
+                }
+            }
+            ruleTokens.add(token);
+            patterns.add(pattern);
+            lineNumbers.add(n + 1);
+        }
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("no rules");
+        }
+
+        Nfa nfa = new Nfa();
+        int start = nfa.state();
+        for (int r = 0; r < patterns.size(); r++) {
+            int[] fragment;
+            try {
+                fragment = new RegexParser(patterns.get(r), nfa).parse();
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumbers.get(r) + ": " + e.getMessage(), e);
+            }
+            nfa.epsilon(start, fragment[0]);
+            nfa.accept[fragment[1]] = r;
+        }
+        int[] tokenOfRule = ruleTokens.stream().mapToInt(Integer::intValue).toArray();
+        return build(nfa, start, tokenOfRule, names.toArray(new String[0]));
+    }
+
+    private static DfaLexer build(Nfa nfa, int nfaStart, int[] tokenOfRule, String[] names) {
+        // 1. Split the character space at every boundary of every set
+        TreeSet<Integer> cuts = new TreeSet<>();
+        cuts.add(0);
+        for (int[] ranges : nfa.sets) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                cuts.add(ranges[i]);
+                if (ranges[i + 1] < MAX_CHAR) {
+                    cuts.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        int[] intervalStart = cuts.stream().mapToInt(Integer::intValue).toArray();
+        int intervals = intervalStart.length;
+        // Which intervals each set contains
+        boolean[][] contains = new boolean[nfa.sets.size()][intervals];
+        for (int s = 0; s < nfa.sets.size(); s++) {
+            int[] ranges = nfa.sets.get(s);
+            for (int i = 0; i < ranges.length; i += 2) {
+                int from = Arrays.binarySearch(intervalStart, ranges[i]);
+                for (int k = from; k < intervals && intervalStart[k] <= ranges[i + 1]; k++) {
+                    contains[s][k] = true;
+                }
+            }
+        }
+
+        // 2. Subset construction; DFA state 0 is the dead state
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> sets = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        List<Integer> accepts = new ArrayList<>();
+        BitSet dead = new BitSet();
+        ids.put(dead, 0);
+        sets.add(dead);
+        BitSet first = nfa.closure(singleton(nfaStart));
+        ids.put(first, 1);
+        sets.add(first);
+        for (int d = 0; d < sets.size(); d++) {
+            BitSet set = sets.get(d);
+            int[] row = new int[intervals];
+            for (int k = 0; k < intervals; k++) {
+                BitSet move = new BitSet();
+                for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                    int edgeSet = nfa.edgeSet[q];
+                    if (edgeSet >= 0 && contains[edgeSet][k]) {
+                        move.set(nfa.edgeTarget[q]);
+                    }
+                }
+                BitSet target = nfa.closure(move);
+                Integer id = ids.get(target);
+                if (id == null) {
+                    id = sets.size();
+                    ids.put(target, id);
+                    sets.add(target);
+                }
+                row[k] = id;
+            }
+            rows.add(row);
+            // The earliest rule among the NFA's accepting states decides the token
+            int rule = Integer.MAX_VALUE;
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                if (nfa.accept[q] >= 0) {
+                    rule = Math.min(rule, nfa.accept[q]);
+                }
+            }
+            accepts.add(rule == Integer.MAX_VALUE ? DfaLexer.NONE : tokenOfRule[rule]);
+        }
+
+        // 3. Moore's refinement, starting from the blocks of equal accepted tokens
+        int n = sets.size();
+        int[] block = new int[n];
+        Map<Integer, Integer> byToken = new HashMap<>();
+        for (int d = 0; d < n; d++) {
+            block[d] = byToken.computeIfAbsent(accepts.get(d), t -> byToken.size());
+        }
+        int blocks = byToken.size();
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] next = new int[n];
+            for (int d = 0; d < n; d++) {
+                List<Integer> signature = new ArrayList<>(intervals + 1);
+                signature.add(block[d]);
+                for (int target : rows.get(d)) {
+                    signature.add(block[target]);
+                }
+                next[d] = signatures.computeIfAbsent(signature, s -> signatures.size());
+            }
+            block = next;
+            if (signatures.size() == blocks) {
+                break;
+            }
+            blocks = signatures.size();
+        }
+
+        // Renumber the blocks so that the dead state stays 0 and the start state is 1
+        int[] order = new int[blocks];
+        Arrays.fill(order, -1);
+        int states = 0;
+        order[block[0]] = states++;
+        if (order[block[1]] < 0) {
+            order[block[1]] = states++;
+        }
+        for (int d = 0; d < n; d++) {
+            if (order[block[d]] < 0) {
+                order[block[d]] = states++;
+            }
+        }
+        int[][] minimal = new int[states][];
+        int[] accept = new int[states];
+        for (int d = 0; d < n; d++) {
+            int s = order[block[d]];
+            if (minimal[s] == null) {
+                minimal[s] = new int[intervals];
+                for (int k = 0; k < intervals; k++) {
+                    minimal[s][k] = order[block[rows.get(d)[k]]];
+                }
+                accept[s] = accepts.get(d);
+            }
+        }
+
+        // 4. Intervals with equal columns become one character class
+        Map<List<Integer>, Integer> columns = new HashMap<>();
+        int[] classOfInterval = new int[intervals];
+        for (int k = 0; k < intervals; k++) {
+            List<Integer> column = new ArrayList<>(states);
+            for (int s = 0; s < states; s++) {
+                column.add(minimal[s][k]);
+            }
+            classOfInterval[k] = columns.computeIfAbsent(column, c -> columns.size());
+        }
+        int classes = columns.size();
+        if ((long) states * classes > Integer.MAX_VALUE || states > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("lexer too large: " + states + " states");
+        }
+        short[] table = new short[states * classes];
+        for (int s = 0; s < states; s++) {
+            for (int k = 0; k < intervals; k++) {
+                table[s * classes + classOfInterval[k]] = (short) minimal[s][k];
+            }
+        }
+        return new DfaLexer(names, intervalStart, classOfInterval, classes, table, accept);
+    }
+
+    private static BitSet singleton(int q) {
+        BitSet set = new BitSet();
+        set.set(q);
+        return set;
+    }
+
+    /*
+        Thompson NFA under construction. A state has at most one character
+        edge (a set id and target) and at most two ε edges; the fragments the
+        parser builds always end in a fresh state without edges.
+    */
+    static final class Nfa {
+        int count;
+        int[] edgeSet = new int[64];
+        int[] edgeTarget = new int[64];
+        int[] epsilon1 = new int[64];
+        int[] epsilon2 = new int[64];
+        int[] accept = new int[64];          // rule index for a rule's final state, else -1
+        final List<int[]> sets = new ArrayList<>();   // character sets as sorted [lo, hi] ranges
+
+        int state() {
+            if (count == edgeSet.length) {
+                int size = count * 2;
+                edgeSet = Arrays.copyOf(edgeSet, size);
+                edgeTarget = Arrays.copyOf(edgeTarget, size);
+                epsilon1 = Arrays.copyOf(epsilon1, size);
+                epsilon2 = Arrays.copyOf(epsilon2, size);
+                accept = Arrays.copyOf(accept, size);
+            }
+            edgeSet[count] = -1;
+            epsilon1[count] = -1;
+            epsilon2[count] = -1;
+            accept[count] = -1;
+            return count++;
+        }
+
+        void epsilon(int from, int to) {
+            if (epsilon1[from] < 0) {
+                epsilon1[from] = to;
+            } else if (epsilon2[from] < 0) {
+                epsilon2[from] = to;
+            } else {
+                // Only the shared start state collects more than two: chain through a new state
+                int via = state();
+                epsilon1[via] = epsilon2[from];
+                epsilon2[via] = to;
+                epsilon2[from] = via;
+            }
+        }
+
+        // Fragment {start, end} matching one character of the set
+        int[] chars(int[] ranges) {
+            int start = state();
+            int end = state();
+            sets.add(ranges);
+            edgeSet[start] = sets.size() - 1;
+            edgeTarget[start] = end;
+            return new int[]{start, end};
+        }
+
+        BitSet closure(BitSet states) {
+            BitSet result = (BitSet) states.clone();
+            int[] work = new int[Math.max(16, states.cardinality())];
+            int top = 0;
+            for (int q = states.nextSetBit(0); q >= 0; q = states.nextSetBit(q + 1)) {
+                work[top++] = q;
+            }
+            while (top > 0) {
+                int q = work[--top];
+                for (int to : new int[]{epsilon1[q], epsilon2[q]}) {
+                    if (to >= 0 && !result.get(to)) {
+                        result.set(to);
+                        if (top == work.length) {
+                            work = Arrays.copyOf(work, top * 2);
+                        }
+                        work[top++] = to;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    // Recursive descent over one pattern, building its NFA fragment as it goes
+    static final class RegexParser {
+        private final String pattern;
+        private final Nfa nfa;
+        private int pos;
+
+        RegexParser(String pattern, Nfa nfa) {
+            this.pattern = pattern;
+            this.nfa = nfa;
+        }
+
+        int[] parse() {
+            int[] fragment = alternation();
+            if (pos < pattern.length()) {
+                throw new IllegalArgumentException("unbalanced ) at " + pos + " in " + pattern);
+            }
+            return fragment;
+        }
+
+        // alternation := concatenation ('|' concatenation)*
+        private int[] alternation() {
+            int[] left = concatenation();
+            while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                pos++;
+                int[] right = concatenation();
+                int start = nfa.state();
+                int end = nfa.state();
+                nfa.epsilon(start, left[0]);
+                nfa.epsilon(start, right[0]);
+                nfa.epsilon(left[1], end);
+                nfa.epsilon(right[1], end);
+                left = new int[]{start, end};
+            }
+            return left;
+        }
+
+        // concatenation := repetition*, an empty one matching the empty string
+        private int[] concatenation() {
+            int start = nfa.state();
+            int end = start;
+            while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+                int[] next = repetition();
+                nfa.epsilon(end, next[0]);
+                end = next[1];
+            }
+            if (end == start) {
+                end = nfa.state();
+                nfa.epsilon(start, end);
+            }
+            return new int[]{start, end};
+        }
+
+        // repetition := atom ('*' | '+' | '?')*
+        private int[] repetition() {
+            int[] fragment = atom();
+            while (pos < pattern.length()) {
+                char op = pattern.charAt(pos);
+                if (op != '*' && op != '+' && op != '?') {
+                    break;
+                }
+                pos++;
+                int start = nfa.state();
+                int end = nfa.state();
+                nfa.epsilon(start, fragment[0]);
+                if (op != '+') {
+                    nfa.epsilon(start, end);
+                }
+                if (op != '?') {
+                    nfa.epsilon(fragment[1], fragment[0]);
+                }
+                nfa.epsilon(fragment[1], end);
+                fragment = new int[]{start, end};
+            }
+            return fragment;
+        }
+
+        private int[] atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(': {
+                    int[] inner = alternation();
+                    if (pos >= pattern.length() || pattern.charAt(pos) != ')') {
+                        throw new IllegalArgumentException("missing ) in " + pattern);
+                    }
+                    pos++;
+                    return inner;
+                }
+                case '[':
+                    return nfa.chars(charClass());
+                case '.':
+                    return nfa.chars(complement(new int[]{'\n', '\n'}));
+                case '"':
+                    return quoted();
+                case '\\':
+                    return nfa.chars(escape());
+                case '*':
+                case '+':
+                case '?':
+                    throw new IllegalArgumentException("nothing to repeat before " + c + " in " + pattern);
+                default:
+                    return nfa.chars(new int[]{c, c});
+            }
+        }
+
+        // "..." matches its characters literally (escapes still apply)
+        private int[] quoted() {
+            int start = nfa.state();
+            int end = start;
+            while (true) {
+                if (pos >= pattern.length()) {
+                    throw new IllegalArgumentException("unterminated string in " + pattern);
+                }
+                char c = pattern.charAt(pos++);
+                if (c == '"') {
+                    break;
+                }
+                int[] ranges = c == '\\' ? escape() : new int[]{c, c};
+                int[] next = nfa.chars(ranges);
+                nfa.epsilon(end, next[0]);
+                end = next[1];
+            }
+            if (end == start) {
+                end = nfa.state();
+                nfa.epsilon(start, end);
+            }
+            return new int[]{start, end};
+        }
+
+        // After a backslash: a shorthand class or the escaped character itself
+        private int[] escape() {
+            if (pos >= pattern.length()) {
+                throw new IllegalArgumentException("trailing \\ in " + pattern);
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case 'n': return new int[]{'\n', '\n'};
+                case 't': return new int[]{'\t', '\t'};
+                case 'r': return new int[]{'\r', '\r'};
+                case 'd': return new int[]{'0', '9'};
+                case 's': return normalize(new int[]{' ', ' ', '\t', '\n', '\r', '\r', '\f', '\f'});
+                case 'w': return normalize(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+                default: return new int[]{c, c};
+            }
+        }
+
+        // [...] or [^...], after the '['
+        private int[] charClass() {
+            boolean negate = pos < pattern.length() && pattern.charAt(pos) == '^';
+            if (negate) {
+                pos++;
+            }
+            List<Integer> ranges = new ArrayList<>();
+            boolean firstChar = true;
+            while (true) {
+                if (pos >= pattern.length()) {
+                    throw new IllegalArgumentException("missing ] in " + pattern);
+                }
+                char c = pattern.charAt(pos++);
+                if (c == ']' && !firstChar) {
+                    break;
+                }
+                firstChar = false;
+                int[] single = c == '\\' ? escape() : new int[]{c, c};
+                if (single.length == 2 && single[0] == single[1] && pos + 1 < pattern.length()
+                        && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    char hi = pattern.charAt(pos++);
+                    int high = hi == '\\' ? escape()[0] : hi;
+                    if (high < single[0]) {
+                        throw new IllegalArgumentException("bad range " + (char) single[0] + "-" + (char) high + " in " + pattern);
+                    }
+                    single = new int[]{single[0], high};
+                }
+                for (int r : single) {
+                    ranges.add(r);
+                }
+            }
+            int[] set = normalize(ranges.stream().mapToInt(Integer::intValue).toArray());
+            return negate ? complement(set) : set;
+        }
+
+        // Sort ranges and merge the ones that overlap or touch
+        private static int[] normalize(int[] ranges) {
+            int n = ranges.length / 2;
+            long[] packed = new long[n];
+            for (int i = 0; i < n; i++) {
+                packed[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+            }
+            Arrays.sort(packed);
+            int[] result = new int[ranges.length];
+            int size = 0;
+            for (long p : packed) {
+                int lo = (int) (p >>> 32);
+                int hi = (int) p;
+                if (size > 0 && lo <= result[size - 1] + 1) {
+                    result[size - 1] = Math.max(result[size - 1], hi);
+                } else {
+                    result[size++] = lo;
+                    result[size++] = hi;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        private static int[] complement(int[] set) {
+            int[] result = new int[set.length + 2];
+            int size = 0;
+            int from = 0;
+            for (int i = 0; i < set.length; i += 2) {
+                if (set[i] > from) {
+                    result[size++] = from;
+                    result[size++] = set[i] - 1;
+                }
+                from = set[i + 1] + 1;
+            }
+            if (from <= MAX_CHAR) {
+                result[size++] = from;
+                result[size++] = MAX_CHAR;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Arrays;
+
+/*
+    Token stream produced by DfaLexer: for token i, its id and the offsets
+    [start, end) of its text in the source. The text itself is never copied;
+    text() cuts it out on request. starts()[count()] holds the length of the
+    lexed input, so a parser can use it as the position of the end marker.
+
+    The arrays are exposed directly for parsers to read in a tight loop; they
+    may be longer than count(). A buffer can be cleared and refilled, which
+    keeps its arrays.
+*/
+public final class TokenBuffer {
+
+    private int[] ids;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+
+    public TokenBuffer() {
+        this(64);
+    }
+
+    public TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new int[capacity];
+        starts = new int[capacity + 1];
+        ends = new int[capacity];
+    }
+
+    void add(int id, int start, int end) {
+        if (count == ids.length) {
+            int size = count * 2;
+            ids = Arrays.copyOf(ids, size);
+            starts = Arrays.copyOf(starts, size + 1);
+            ends = Arrays.copyOf(ends, size);
+        }
+        ids[count] = id;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    // Record the end of the input after the last token
+    void finish(int length) {
+        starts[count] = length;
+    }
+
+    public void clear() {
+        count = 0;
+        starts[0] = 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int id(int i) {
+        return ids[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public int[] ids() {
+        return ids;
+    }
+
+    public int[] starts() {
+        return starts;
+    }
+
+    public int[] ends() {
+        return ends;
+    }
+
+    // Text of token i, copied out of source
+    public String text(CharSequence source, int i) {
+        return source.subSequence(starts[i], ends[i]).toString();
+    }
+}
@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+/*
+    E -> TE'
+    E'-> +TE' | -TE' | epsilon
+    T -> FT'
+    T' -> *FT' | /FT' | epsilon
+    F -> (E) | i
+
+    Instance-based version of Parser for many expressions, one per line.
+    All state is per instance, so several parsers can run side by side, and
+    input is read through a char buffer instead of one System.in.read() per
+    character. The end of a line (or a '$') ends the expression.
+    parseTokens() parses an expression that a lexer (DfaLexer) has already
+    split into tokens instead, so operands can be whole names and numbers.
+
+    In recursive mode E/T/F call each other as in Parser. In iterative mode
+    the same procedures run on an explicit stack of pending symbols, so
+    nesting depth is limited by the heap and not by the thread stack.
+    Unlike Parser, parsing of a line stops at its first error.
+
+    With setRecovery(maxEdits) a line is parsed to its end and every error on
+    it is recorded (errorCount, errorColumn(i), errorReason(i)):
+        F     skips characters that are in neither FIRST(F) = ( i nor
+              FOLLOW(F) = + - * / ) $, then parses F, or takes the operand as
+              missing when the lookahead is in FOLLOW(F)
+        T'    skips characters no E/T/F procedure can start or end at
+        E'    takes an operator as missing before anything in FIRST(T)
+        )     is taken as missing when absent, and a ')' left over at the
+              end of the expression is skipped
+    Each insertion or deletion is one edit, except for a missing ')'; after
+    maxEdits edits in a row without matching a token the line stops at "too
+    many repairs", which bounds the work spent on any one error.
+*/
+public class BufferedParser {
+
+    // Results of parseLine()
+    public static final int VALID = 1;
+    public static final int INVALID = 0;
+    public static final int END_OF_INPUT = -1;
+
+    // Pending symbols of the iterative parser
+    private static final byte SYM_E = 0;
+    private static final byte SYM_E_PRIME = 1;
+    private static final byte SYM_T = 2;
+    private static final byte SYM_T_PRIME = 3;
+    private static final byte SYM_F = 4;
+    private static final byte SYM_CLOSE = 5;
+
+    private final Reader in;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private final boolean recursive;
+    private byte[] pending = new byte[64];
+
+    private char l;               // lookahead, '$' at the end of the line
+    private boolean lineEnded;    // the line's newline (or end of input) has been read
+    private boolean error;        // parsing of the line has stopped
+    private int column;           // column of the lookahead, from 1
+    private long lineNumber;
+
+    // Input of parseTokens(): terminal characters, their offsets, and the next token's index
+    private int[] tokens;
+    private int[] offsets;
+    private int tokenCount;
+    private int tokenIndex;
+
+    // Errors of the line; more than one only in recovery mode
+    private int errorCount;
+    private int[] errorColumns = new int[8];
+    private String[] errorReasons = new String[8];
+
+    // Recovery mode: edits allowed in a row, those left, and whether the current error was recorded
+    private int maxEdits;
+    private int edits;
+    private boolean recovering;
+
+    public BufferedParser(Reader in, boolean recursive) {
+        this(in, recursive, 8192);
+    }
+
+    public BufferedParser(Reader in, boolean recursive, int bufferSize) {
+        this.in = in;
+        this.recursive = recursive;
+        this.buffer = new char[bufferSize];
+    }
+
+    /*
+        Parse each line to its end and record all its errors, repairing them
+        with at most maxEdits insertions or deletions in a row; 0 (the
+        default) stops a line at its first error.
+    */
+    public void setRecovery(int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("negative edit limit: " + maxEdits);
+        }
+        this.maxEdits = maxEdits;
+    }
+
+    // Parse the next line: VALID, INVALID, or END_OF_INPUT when no line is left
+    public int parseLine() throws IOException {
+        if (pos == limit && !fill()) {
+            return END_OF_INPUT;
+        }
+        lineNumber++;
+        column = 0;
+        parseExpression();
+
+        // Skip whatever is left of the line
+        while (!lineEnded) {
+            advance();
+        }
+        return errorCount > 0 ? INVALID : VALID;
+    }
+
+    /*
+        Parse one expression given as tokens: the terminal character of each
+        token ('i' for any operand, '+', '(' ...; anything else is unknown
+        input) in tokens[0..count), offsets[i] the offset of token i and
+        offsets[count] the end of the input. VALID or INVALID; error columns
+        are the offsets plus one. The reader is not touched.
+    */
+    public int parseTokens(int[] tokens, int[] offsets, int count) {
+        if (count < 0 || count > tokens.length || count >= offsets.length) {
+            throw new IllegalArgumentException("bad token count " + count);
+        }
+        this.tokens = tokens;
+        this.offsets = offsets;
+        tokenCount = count;
+        tokenIndex = 0;
+        try {
+            parseExpression();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // not reached: tokens are never read from the Reader
+        } finally {
+            this.tokens = null;
+            this.offsets = null;
+        }
+        return errorCount > 0 ? INVALID : VALID;
+    }
+
+    private void parseExpression() throws IOException {
+        lineEnded = false;
+        error = false;
+        errorCount = 0;
+        edits = maxEdits;
+        recovering = false;
+        advance();
+
+        if (recursive) {
+            E();
+        } else {
+            pending[0] = SYM_E;
+            parseIterative(1);
+        }
+        // A ')' without its '(' ends E early: skip it and go on with the rest as T'E'
+        while (!error && l == ')' && repair("unbalanced )", true)) {
+            advance();
+            if (recursive) {
+                T_prime();
+                E_prime();
+            } else {
+                pending[0] = SYM_E_PRIME;
+                pending[1] = SYM_T_PRIME;
+                parseIterative(2);
+            }
+        }
+        if (!error && l != '$') {
+            fail("expected end of line");
+        }
+    }
+
+    // Line number of the last parsed line, from 1
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    // Column of the first error on the last parsed line, or 0
+    public int errorColumn() {
+        return errorCount > 0 ? errorColumns[0] : 0;
+    }
+
+    // Number of errors recorded on the last parsed line
+    public int errorCount() {
+        return errorCount;
+    }
+
+    public int errorColumn(int i) {
+        return errorColumns[i];
+    }
+
+    public String errorReason(int i) {
+        return errorReasons[i];
+    }
+
+    // E -> TE'
+    private void E() throws IOException {
+        T();
+        E_prime();
+    }
+
+    // E'-> +TE' | -TE' | epsilon (the tail call is a loop)
+    private void E_prime() throws IOException {
+        while (!error) {
+            if (l == '+' || l == '-') {
+                shift();
+            } else if (!missingOperator()) {
+                return;
+            }
+            T();
+        }
+    }
+
+    // T -> FT'
+    private void T() throws IOException {
+        F();
+        T_prime();
+    }
+
+    // T' -> *FT' | /FT' | epsilon (the tail call is a loop)
+    private void T_prime() throws IOException {
+        while (!error) {
+            if (l == '*' || l == '/') {
+                shift();
+                F();
+            } else if (!unexpectedCharacter()) {
+                return;
+            }
+        }
+    }
+
+    // F -> (E) | i
+    private void F() throws IOException {
+        if (error) {
+            return;
+        }
+        if (l == '(') {
+            shift();
+            E();
+            match(')');
+        } else if (l == 'i') {
+            shift();
+        } else if (missingOperand()) {
+            F();
+        }
+    }
+
+    // The same procedures with the pending symbols on an explicit stack, pending[0 .. sp-1] to start with
+    private void parseIterative(int sp) throws IOException {
+        while (sp > 0 && !error) {
+            if (sp + 2 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            switch (pending[--sp]) {
+                case SYM_E:
+                    pending[sp++] = SYM_E_PRIME;
+                    pending[sp++] = SYM_T;
+                    break;
+                case SYM_E_PRIME:
+                    if (l == '+' || l == '-') {
+                        shift();
+                        pending[sp++] = SYM_E_PRIME;
+                        pending[sp++] = SYM_T;
+                    } else if (missingOperator()) {
+                        pending[sp++] = SYM_E_PRIME;
+                        pending[sp++] = SYM_T;
+                    }
+                    break;
+                case SYM_T:
+                    pending[sp++] = SYM_T_PRIME;
+                    pending[sp++] = SYM_F;
+                    break;
+                case SYM_T_PRIME:
+                    if (l == '*' || l == '/') {
+                        shift();
+                        pending[sp++] = SYM_T_PRIME;
+                        pending[sp++] = SYM_F;
+                    } else if (unexpectedCharacter()) {
+                        pending[sp++] = SYM_T_PRIME;
+                    }
+                    break;
+                case SYM_F:
+                    if (l == '(') {
+                        shift();
+                        pending[sp++] = SYM_CLOSE;
+                        pending[sp++] = SYM_E;
+                    } else if (l == 'i') {
+                        shift();
+                    } else if (missingOperand()) {
+                        pending[sp++] = SYM_F;
+                    }
+                    break;
+                case SYM_CLOSE:
+                    match(')');
+                    break;
+                default:
+                    throw new IllegalStateException("bad pending symbol");
+            }
+        }
+    }
+
+    // The only match is F's ')': when it is absent, recovery takes it as inserted
+    private void match(char t) throws IOException {
+        if (error) {
+            return;
+        }
+        if (l == t) {
+            shift();
+        } else {
+            repair("expected " + t, false);
+        }
+    }
+
+    /*
+        F's lookahead is not in FIRST(F). Panic mode skips characters up to
+        one in FIRST(F) or FOLLOW(F): true to parse F there, false when the
+        operand is taken as missing (or the line has stopped).
+    */
+    private boolean missingOperand() throws IOException {
+        while (repair("expected ( or i", true)) {
+            if (l == '+' || l == '-' || l == '*' || l == '/' || l == ')' || l == '$') {
+                return false;
+            }
+            advance();
+            if (l == '(' || l == 'i') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // E' sees the start of a T: the operator between them is taken as inserted
+    private boolean missingOperator() {
+        return (l == 'i' || l == '(') && repair("missing operator", true);
+    }
+
+    // T' sees a character that nothing in the grammar can follow an F with: skip it
+    private boolean unexpectedCharacter() throws IOException {
+        if (l == '+' || l == '-' || l == ')' || l == '$' || l == 'i' || l == '(') {
+            return false;
+        }
+        if (!repair("unexpected character", true)) {
+            return false;
+        }
+        advance();
+        return true;
+    }
+
+    /*
+        Record an error at the lookahead and pay for one edit. False when the
+        line stops here instead: in the default mode, or once maxEdits edits
+        in a row have not got the parse past a token. A missing ')' is free
+        (not an edit): it only closes an F that is open, so at most the
+        nesting depth of them can follow one another.
+    */
+    private boolean repair(String reason, boolean edit) {
+        if (maxEdits == 0) {
+            fail(reason);
+            return false;
+        }
+        if (!recovering) {
+            record(reason);
+            recovering = true;
+        }
+        if (!edit) {
+            return true;
+        }
+        if (edits == 0) {
+            fail("too many repairs");
+            return false;
+        }
+        edits--;
+        return true;
+    }
+
+    private void fail(String reason) {
+        error = true;
+        record(reason);
+    }
+
+    private void record(String reason) {
+        if (errorCount == errorColumns.length) {
+            errorColumns = Arrays.copyOf(errorColumns, errorCount * 2);
+            errorReasons = Arrays.copyOf(errorReasons, errorCount * 2);
+        }
+        errorColumns[errorCount] = column;
+        errorReasons[errorCount++] = reason;
+    }
+
+    // Match the lookahead: the current error, if any, is over
+    private void shift() throws IOException {
+        recovering = false;
+        edits = maxEdits;
+        advance();
+    }
+
+    // Move the lookahead to the next character of the line; '$' once the line has ended
+    private void advance() throws IOException {
+        if (tokens != null) {
+            if (tokenIndex < tokenCount) {
+                column = offsets[tokenIndex] + 1;
+                l = (char) tokens[tokenIndex++];
+                return;
+            }
+            column = offsets[tokenCount] + 1;
+            lineEnded = true;
+        }
+        while (!lineEnded) {
+            if (pos == limit && !fill()) {
+                lineEnded = true;
+                break;
+            }
+            char c = buffer[pos++];
+            column++;
+            if (c == '\n') {
+                lineEnded = true;
+                break;
+            }
+            if (c != '\r') {
+                l = c;
+                return;
+            }
+        }
+        l = '$';
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int n = in.read(buffer, 0, buffer.length);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    // Validate stdin line by line; --iterative parses without recursion, --report-all lists every error of a line
+    public static void main(String[] args) {
+        List<String> options = Arrays.asList(args);
+        boolean recursive = !options.contains("--iterative");
+        BufferedParser parser = new BufferedParser(new InputStreamReader(System.in, StandardCharsets.US_ASCII), recursive);
+        if (options.contains("--report-all")) {
+            parser.setRecovery(3);
+        }
+        long valid = 0;
+        long invalid = 0;
+        try {
+            int result;
+            while ((result = parser.parseLine()) != END_OF_INPUT) {
+                if (result == VALID) {
+                    valid++;
+                    System.out.println(parser.lineNumber() + ": Parsing done");
+                } else {
+                    invalid++;
+                    System.out.println(parser.lineNumber() + ": Not a Valid string (column " + parser.errorColumn() + ")");
+                    for (int i = 0; i < parser.errorCount() && parser.maxEdits > 0; i++) {
+                        System.out.println("    column " + parser.errorColumn(i) + ": " + parser.errorReason(i));
+                    }
+                }
+            }
+            System.out.println(valid + " valid, " + invalid + " invalid");
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading input.");
+        }
+    }
+}
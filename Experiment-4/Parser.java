@@ -5,10 +5,20 @@ import java.io.IOException;
     T -> FT'
     T' -> *FT' | /FT' | epsilon
     F -> (E) | i
+
+    Errors are reported with the column of the lookahead and parsing goes on:
+    a missing token is taken as inserted, F skips at most MAX_EDITS
+    characters that are in neither FIRST(F) nor FOLLOW(F), and what is left
+    after E is skipped one character at a time (again at most MAX_EDITS)
+    before parsing continues with T'E'.
 */
 public class Parser {
 
+    static final int MAX_EDITS = 3;
+
     static char l;
+    static int column;   // column of the lookahead, from 1
+    static int errors;
 
     // E -> TE'
     public static void E() throws IOException {
@@ -56,28 +66,54 @@ public class Parser {
             if (l == ')') {
                 match(')');
             } else {
-                System.out.println("Error");
+                error("expected )");
             }
         } else if (l == 'i') {
             match('i');
         } else {
-            return;
+            // Panic mode: skip up to FIRST(F) or FOLLOW(F); an operand missing before FOLLOW(F) is taken as inserted
+            error("expected ( or i");
+            for (int edits = 0; edits < MAX_EDITS && "()i+-*/$".indexOf(l) < 0 && l != (char) -1; edits++) {
+                next();
+            }
+            if (l == '(' || l == 'i') {
+                F();
+            }
         }
     }
 
     public static void match(char t) throws IOException {
         if (l == t) {
-            l = (char) System.in.read();
+            next();
         } else {
-            System.out.println("Error");
+            error("expected " + t);
         }
     }
 
+    static void next() throws IOException {
+        l = (char) System.in.read();
+        column++;
+    }
+
+    static void error(String message) {
+        System.out.println("Error at column " + column + ": " + message);
+        errors++;
+    }
+
     public static void main(String[] args) {
         try {
-            l = (char) System.in.read();
+            column = 0;
+            errors = 0;
+            next();
             E();
-            if (l == '$') {
+            // Panic mode: skip a character nothing in E can continue with, then go on
+            for (int edits = 0; l != '$' && l != (char) -1 && edits < MAX_EDITS; edits++) {
+                error("unexpected " + l);
+                next();
+                T_prime();
+                E_prime();
+            }
+            if (l == '$' && errors == 0) {
                 System.out.println("Parsing done");
             } else {
                 System.out.println("Not a Valid string");
@@ -0,0 +1,51 @@
+/*
+    Token source over tokens lexed beforehand, e.g. by DfaLexer: terminal
+    ids with the offsets each token starts and ends at, and starts[count]
+    the end of the input, which is where the end marker is reported. Ids
+    outside the terminals come back as CompiledLL1Table.ERROR.
+*/
+final class ArrayTokenSource implements TokenSource {
+
+    private final int terminalCount;
+    private final int endMarker;
+    private int[] tokens;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+    private int index;
+
+    ArrayTokenSource(int terminalCount, int endMarker) {
+        this.terminalCount = terminalCount;
+        this.endMarker = endMarker;
+    }
+
+    void reset(int[] tokens, int[] starts, int[] ends, int count) {
+        this.tokens = tokens;
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+        this.index = -1;
+    }
+
+    @Override
+    public int next() {
+        if (index < count) {
+            index++;
+        }
+        if (index == count) {
+            return endMarker;
+        }
+        int token = tokens[index];
+        return token >= 0 && token < terminalCount ? token : CompiledLL1Table.ERROR;
+    }
+
+    @Override
+    public long position() {
+        return starts[index];
+    }
+
+    @Override
+    public long end() {
+        return index == count ? starts[count] : ends[index];
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+    Validates a file of newline-separated expressions against one shared
+    CompiledLL1Table, for files far larger than the heap.
+
+    The file is cut into chunks of about chunkSize bytes, each starting at
+    the beginning of a line: the cut points are found by reading a few
+    bytes after every multiple of chunkSize, so the file is not scanned
+    twice. Each chunk is memory-mapped with FileChannel.map on a worker of
+    the pool and parsed line by line, straight from the mapping through
+    Cursor.parse(ByteBuffer, from, to): no line is copied or turned into a
+    String, and a chunk allocates only its mapping and its result. Work is
+    bounded by the page cache and the disk, not by the collector.
+
+    A line ends at '\n' (a '\r' before it is dropped); blank lines are
+    skipped. The Result sums accepted and rejected lines over all chunks and
+    lists, in file order, the file offset of the first error of the first
+    maxErrors rejected lines.
+*/
+public class BulkValidator implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+    public static final int DEFAULT_MAX_ERRORS = 1000;
+
+    private final CompiledLL1Table table;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<CompiledLL1Table.Cursor> cursors;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    // One worker per available core, default chunk size and error list
+    public BulkValidator(CompiledLL1Table table) {
+        this(table, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE, DEFAULT_MAX_ERRORS);
+    }
+
+    public BulkValidator(CompiledLL1Table table, int workers, int chunkSize, int maxErrors) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1, got " + workers);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be at least 1, got " + chunkSize);
+        }
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("negative error limit: " + maxErrors);
+        }
+        this.table = table;
+        this.pool = new ForkJoinPool(workers);
+        this.cursors = ThreadLocal.withInitial(table::newCursor);
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    public CompiledLL1Table table() {
+        return table;
+    }
+
+    // Validate every line of file
+    public Result validate(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] cuts = chunkStarts(channel, size);
+            List<ParseChunk> chunks = new ArrayList<>(cuts.length - 1);
+            for (int c = 0; c + 1 < cuts.length; c++) {
+                chunks.add(new ParseChunk(channel, cuts[c], cuts[c + 1]));
+            }
+            for (ParseChunk chunk : chunks) {
+                pool.execute(chunk);
+            }
+            // Joined in file order, so error offsets come out sorted
+            Counts total = new Counts(maxErrors);
+            try {
+                for (ParseChunk chunk : chunks) {
+                    total.add(chunk.join());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Result(total, size, cuts.length - 1, System.nanoTime() - start);
+        }
+    }
+
+    /*
+        Offsets where chunks start, plus size at the end: 0, then for each
+        multiple of chunkSize the start of the first line at or after it.
+        Lines longer than a chunk make cut points coincide; those are merged.
+    */
+    private long[] chunkStarts(FileChannel channel, long size) throws IOException {
+        long[] cuts = new long[(int) Math.min(Integer.MAX_VALUE - 8, size / chunkSize + 2)];
+        int count = 0;
+        cuts[count++] = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long previous = 0;
+        for (long nominal = chunkSize; nominal < size; nominal += chunkSize) {
+            long cut = Math.max(nominal, previous);
+            cut = lineStart(channel, cut, size, probe);
+            if (cut - cuts[count - 1] > Integer.MAX_VALUE) {
+                throw new IOException("line at offset " + cuts[count - 1] + " is too long to map");
+            }
+            if (cut > cuts[count - 1] && cut < size) {
+                cuts[count++] = cut;
+            }
+            previous = cut;
+        }
+        if (size - cuts[count - 1] > Integer.MAX_VALUE) {
+            throw new IOException("line at offset " + cuts[count - 1] + " is too long to map");
+        }
+        cuts[count++] = size;
+        return Arrays.copyOf(cuts, count);
+    }
+
+    // Offset of the first line that starts at or after position (size if none)
+    private static long lineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        long at = position - 1;   // a line starts at position if the byte before it is '\n'
+        while (at < size) {
+            probe.clear();
+            int n = channel.read(probe, at);
+            if (n <= 0) {
+                return size;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return at + i + 1;
+                }
+            }
+            at += n;
+        }
+        return size;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Parses the lines of one chunk on the current worker's cursor
+    @SuppressWarnings("serial")
+    private final class ParseChunk extends RecursiveTask<Counts> {
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+
+        ParseChunk(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Counts compute() {
+            MappedByteBuffer map;
+            try {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            CompiledLL1Table.Cursor cursor = cursors.get();
+            Counts counts = new Counts(maxErrors);
+            int length = (int) (to - from);
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && map.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int end = lineEnd > lineStart && map.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (end > lineStart) {
+                    int result = cursor.parse(map, lineStart, end, ParseListener.SILENT);
+                    if (result == CompiledLL1Table.ACCEPT) {
+                        counts.accepted++;
+                    } else {
+                        counts.reject(from + result);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return counts;
+        }
+    }
+
+    // Accepted / rejected lines and the first error offsets, of a chunk or a whole file
+    private static final class Counts {
+        long accepted;
+        long rejected;
+        long[] errors = new long[0];
+        int errorCount;
+        final int maxErrors;
+
+        Counts(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        void reject(long offset) {
+            rejected++;
+            if (errorCount < maxErrors) {
+                if (errorCount == errors.length) {
+                    errors = Arrays.copyOf(errors, Math.min(maxErrors, Math.max(8, errorCount * 2)));
+                }
+                errors[errorCount++] = offset;
+            }
+        }
+
+        // Append a later chunk's counts
+        void add(Counts chunk) {
+            accepted += chunk.accepted;
+            rejected += chunk.rejected;
+            int take = Math.min(chunk.errorCount, maxErrors - errorCount);
+            if (take > 0) {
+                errors = Arrays.copyOf(errors, Math.max(errors.length, errorCount + take));
+                System.arraycopy(chunk.errors, 0, errors, errorCount, take);
+                errorCount += take;
+            }
+        }
+    }
+
+    // Outcome of validate()
+    public static final class Result {
+        public final long accepted;
+        public final long rejected;
+        public final long bytes;
+        public final int chunks;
+        public final long nanos;
+        private final long[] errorOffsets;
+
+        Result(Counts counts, long bytes, int chunks, long nanos) {
+            this.accepted = counts.accepted;
+            this.rejected = counts.rejected;
+            this.bytes = bytes;
+            this.chunks = chunks;
+            this.nanos = nanos;
+            this.errorOffsets = Arrays.copyOf(counts.errors, counts.errorCount);
+        }
+
+        public long lines() {
+            return accepted + rejected;
+        }
+
+        // File offsets of the first error of the first rejected lines (at most maxErrors), in file order
+        public long[] errorOffsets() {
+            return errorOffsets.clone();
+        }
+
+        public double megabytesPerSecond() {
+            return bytes / 1e6 / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines: %d accepted, %d rejected; %d bytes in %d chunks, %.1f ms (%.1f MB/s)",
+                    lines(), accepted, rejected, bytes, chunks, nanos / 1e6, megabytesPerSecond());
+        }
+    }
+
+    // Validate a file given on the command line, or a generated one
+    public static void main(String[] args) throws IOException {
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.initGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        CompiledLL1Table table = grammar.compile();
+
+        Path file;
+        boolean generated = args.length == 0;
+        if (generated) {
+            file = Files.createTempFile("expressions", ".txt");
+            Random random = new Random(1);
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+                for (int line = 0; line < 1_000_000; line++) {
+                    StringBuilder sb = new StringBuilder("i");
+                    for (int k = random.nextInt(12); k > 0; k--) {
+                        sb.append("+-*/".charAt(random.nextInt(4)));
+                        sb.append(random.nextInt(4) == 0 ? "(i*i)" : "i");
+                    }
+                    if (line % 1000 == 999) {
+                        sb.insert(sb.length() / 2, '+');   // a few invalid lines
+                    }
+                    out.write(sb.toString());
+                    out.newLine();
+                }
+            }
+        } else {
+            file = Path.of(args[0]);
+        }
+
+        try (BulkValidator validator = new BulkValidator(table)) {
+            for (int run = 0; run < 3; run++) {
+                Result result = validator.validate(file);
+                System.out.println(validator.parallelism() + " workers: " + result);
+                if (run == 0) {
+                    long[] errors = result.errorOffsets();
+                    System.out.println("first errors at " + Arrays.toString(Arrays.copyOf(errors, Math.min(5, errors.length))));
+                }
+            }
+        } finally {
+            if (generated) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.nio.ByteBuffer;
+
+/*
+    Token source over ASCII bytes in a ByteBuffer (a memory-mapped file),
+    read by absolute index between from and to, so nothing is decoded or
+    copied. Matches terminals exactly as StringTokenSource does, with each
+    byte taken as the char of the same value.
+*/
+final class ByteBufferTokenSource implements TokenSource {
+
+    private final CompiledLL1Table.TerminalTrie trie;
+    private final int endMarker;
+    private ByteBuffer buffer;
+    private int index;
+    private int end;
+    private int start;
+
+    ByteBufferTokenSource(CompiledLL1Table.TerminalTrie trie, int endMarker) {
+        this.trie = trie;
+        this.endMarker = endMarker;
+    }
+
+    void reset(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.index = from;
+        this.end = to;
+        this.start = from;
+    }
+
+    @Override
+    public int next() {
+        while (index < end && trie.skippable((char) (buffer.get(index) & 0xFF))) {
+            index++;
+        }
+        start = index;
+        if (index >= end) {
+            return endMarker;
+        }
+
+        // Longest match over the terminal spellings
+        int node = CompiledLL1Table.TerminalTrie.ROOT;
+        int token = CompiledLL1Table.ERROR;
+        int tokenEnd = index + 1;
+        for (int i = index; i < end; i++) {
+            node = trie.step(node, (char) (buffer.get(i) & 0xFF));
+            if (node < 0) {
+                break;
+            }
+            if (trie.accept(node) != CompiledLL1Table.ERROR) {
+                token = trie.accept(node);
+                tokenEnd = i + 1;
+            }
+        }
+        index = tokenEnd;
+        return token;
+    }
+
+    @Override
+    public long position() {
+        return start;
+    }
+
+    @Override
+    public long end() {
+        return index;
+    }
+}
@@ -0,0 +1,695 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+    Compiled form of an LL(1) parsing table.
+
+    Every terminal and non-terminal is interned to a dense int id once:
+        terminals      -> 0 .. terminalCount-1
+        non-terminals  -> terminalCount .. symbolCount-1
+    The table maps (nonTerminal - terminalCount, terminal) to a production
+    id, the parse stack is a primitive int stack, and ε / sync / empty cells
+    are reserved ids, so the driver does no hashing, boxing or allocation
+    per step. The table is packed by row displacement (RowDisplacementTable):
+    only the cells that differ from their row's default are stored, so a
+    grammar with hundreds of terminals and mostly empty rows keeps its table
+    in cache, and a lookup is still two array reads.
+
+    FIRST and FOLLOW sets are kept as long[] bitsets over terminal ids.
+
+    Input is read through a TokenSource, which matches terminal spellings
+    (longest match, so terminals may be longer than one character) and skips
+    blanks that are not terminals. A String and a Reader/channel source are
+    provided; the Reader one works in a fixed-size buffer. ASCII bytes in a
+    ByteBuffer (a mapped file, see BulkValidator) are read in place, and
+    input that an external lexer (DfaLexer) has already split goes in as int
+    token ids.
+
+    A CompiledLL1Table is immutable and may be shared by any number of
+    threads. All per-parse state (stack, token source) lives in a Cursor,
+    which is reused across parses but must stay on one thread.
+*/
+public final class CompiledLL1Table {
+
+    // Reserved table cells
+    public static final int ERROR = -1;   // empty cell, also an unknown input character
+    public static final int SYNC = -2;    // "sync" entry
+
+    // Reserved symbol id for ε (never pushed: ε productions have an empty right side)
+    public static final int EPSILON = -3;
+
+    // Result of parse() when the input is accepted
+    public static final int ACCEPT = -1;
+
+    // Default buffer size for Reader / channel input
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    static final int INITIAL_DEPTH = 64;
+
+    // Symbol names, terminals first then non-terminals
+    private final String[] symbolNames;
+    private final int terminalCount;
+    private final int startSymbol;
+    private final int endMarker;
+
+    // Terminal spellings, for the token sources
+    private final TerminalTrie trie;
+
+    // Productions: lhs id and right side slice [prodOffset[p], prodOffset[p + 1]) of prodRhs
+    private final int[] prodLhs;
+    private final int[] prodOffset;
+    private final int[] prodRhs;
+
+    // FIRST / FOLLOW bitsets, `words` longs per non-terminal, and nullable non-terminals
+    private final int words;
+    private final long[] first;
+    private final long[] follow;
+    private final boolean[] nullable;
+
+    // Parsing table of production ids, ERROR or SYNC, by non-terminal row and terminal column
+    private final RowDisplacementTable table;
+
+    // Builds the compiled table from the string form kept by LL1ParserGrammar
+    CompiledLL1Table(Set<String> terminals, Set<String> nonTerminals,
+                     Map<String, List<String[]>> grammar,
+                     Map<String, Map<String, String[]>> parsingTable,
+                     Map<String, Set<String>> firstSets,
+                     Map<String, Set<String>> followSets,
+                     String start) {
+        this.terminalCount = terminals.size();
+        this.symbolNames = new String[terminalCount + nonTerminals.size()];
+
+        Map<String, Integer> ids = new HashMap<>();
+        int next = 0;
+        for (String t : terminals) {
+            symbolNames[next] = t;
+            ids.put(t, next++);
+        }
+        for (String nt : nonTerminals) {
+            symbolNames[next] = nt;
+            ids.put(nt, next++);
+        }
+        ids.put("ε", EPSILON);
+        this.startSymbol = ids.get(start);
+        this.endMarker = ids.get("$");
+
+        this.trie = new TerminalTrie(symbolNames, terminalCount);
+
+        // Number the productions; the table refers to them by identity
+        Map<String[], Integer> prodIds = new IdentityHashMap<>();
+        List<String[]> prods = new ArrayList<>();
+        List<String> lhs = new ArrayList<>();
+        for (String nt : nonTerminals) {
+            for (String[] prod : grammar.get(nt)) {
+                prodIds.put(prod, prods.size());
+                prods.add(prod);
+                lhs.add(nt);
+            }
+        }
+        this.prodLhs = new int[prods.size()];
+        this.prodOffset = new int[prods.size() + 1];
+        int rhsLength = 0;
+        for (String[] prod : prods) {
+            rhsLength += prod.length;
+        }
+        int[] rhs = new int[rhsLength];
+        int fill = 0;
+        for (int p = 0; p < prods.size(); p++) {
+            prodLhs[p] = ids.get(lhs.get(p));
+            prodOffset[p] = fill;
+            for (String symbol : prods.get(p)) {
+                int id = ids.get(symbol);
+                if (id != EPSILON) {
+                    rhs[fill++] = id;
+                }
+            }
+        }
+        prodOffset[prods.size()] = fill;
+        this.prodRhs = Arrays.copyOf(rhs, fill);
+
+        this.words = (terminalCount + 63) >>> 6;
+        this.first = new long[nonTerminals.size() * words];
+        this.follow = new long[nonTerminals.size() * words];
+        this.nullable = new boolean[nonTerminals.size()];
+        for (String nt : nonTerminals) {
+            int n = ids.get(nt) - terminalCount;
+            for (String t : firstSets.get(nt)) {
+                if (t.isEmpty()) {
+                    nullable[n] = true;
+                } else {
+                    int id = ids.get(t);
+                    first[n * words + (id >>> 6)] |= 1L << id;
+                }
+            }
+            for (String t : followSets.get(nt)) {
+                int id = ids.get(t);
+                follow[n * words + (id >>> 6)] |= 1L << id;
+            }
+        }
+
+        int[] cells = new int[nonTerminals.size() * terminalCount];
+        Arrays.fill(cells, ERROR);
+        for (String nt : nonTerminals) {
+            int row = (ids.get(nt) - terminalCount) * terminalCount;
+            for (Map.Entry<String, String[]> cell : parsingTable.get(nt).entrySet()) {
+                String[] prod = cell.getValue();
+                Integer p = prodIds.get(prod);
+                cells[row + ids.get(cell.getKey())] =
+                        p != null ? p : (prod.length == 1 && prod[0].equals("sync") ? SYNC : ERROR);
+            }
+        }
+        this.table = RowDisplacementTable.pack(cells, nonTerminals.size(), terminalCount);
+    }
+
+    // Rebuilds a compiled table from the sections of a ParseTableFile, the packed table read in place
+    CompiledLL1Table(String[] symbolNames, int terminalCount, int startSymbol, int endMarker,
+                     int[] prodLhs, int[] prodOffset, int[] prodRhs,
+                     long[] first, long[] follow, boolean[] nullable, RowDisplacementTable table) {
+        this.symbolNames = symbolNames;
+        this.terminalCount = terminalCount;
+        this.startSymbol = startSymbol;
+        this.endMarker = endMarker;
+        this.prodLhs = prodLhs;
+        this.prodOffset = prodOffset;
+        this.prodRhs = prodRhs;
+        this.words = (terminalCount + 63) >>> 6;
+        this.first = first;
+        this.follow = follow;
+        this.nullable = nullable;
+        this.table = table;
+        this.trie = new TerminalTrie(symbolNames, terminalCount);
+    }
+
+    public int terminalCount() {
+        return terminalCount;
+    }
+
+    public int symbolCount() {
+        return symbolNames.length;
+    }
+
+    public int productionCount() {
+        return prodLhs.length;
+    }
+
+    public int startSymbol() {
+        return startSymbol;
+    }
+
+    public int endMarker() {
+        return endMarker;
+    }
+
+    public String symbolName(int symbol) {
+        return symbol == EPSILON ? "ε" : symbolNames[symbol];
+    }
+
+    public boolean isTerminal(int symbol) {
+        return symbol < terminalCount;
+    }
+
+    // Production id, ERROR or SYNC for a non-terminal / terminal pair
+    public int cell(int nonTerminal, int terminal) {
+        return table.get(nonTerminal - terminalCount, terminal);
+    }
+
+    // The packed parsing table, with its size against the dense one
+    public RowDisplacementTable packedTable() {
+        return table;
+    }
+
+    public boolean isNullable(int nonTerminal) {
+        return nullable[nonTerminal - terminalCount];
+    }
+
+    public boolean inFirst(int nonTerminal, int terminal) {
+        return (first[(nonTerminal - terminalCount) * words + (terminal >>> 6)] & (1L << terminal)) != 0;
+    }
+
+    public boolean inFollow(int nonTerminal, int terminal) {
+        return (follow[(nonTerminal - terminalCount) * words + (terminal >>> 6)] & (1L << terminal)) != 0;
+    }
+
+    // FIRST set of a non-terminal by name ("" marks ε), for display
+    public Set<String> firstSet(int nonTerminal) {
+        Set<String> result = new TreeSet<>();
+        for (int t = 0; t < terminalCount; t++) {
+            if (inFirst(nonTerminal, t)) {
+                result.add(symbolNames[t]);
+            }
+        }
+        if (isNullable(nonTerminal)) {
+            result.add("");
+        }
+        return result;
+    }
+
+    // FOLLOW set of a non-terminal by name, for display
+    public Set<String> followSet(int nonTerminal) {
+        Set<String> result = new TreeSet<>();
+        for (int t = 0; t < terminalCount; t++) {
+            if (inFollow(nonTerminal, t)) {
+                result.add(symbolNames[t]);
+            }
+        }
+        return result;
+    }
+
+    // Raw sections, for ParseTableFile
+    String[] symbolNames() {
+        return symbolNames;
+    }
+
+    int[] productionLhs() {
+        return prodLhs;
+    }
+
+    int[] productionOffsets() {
+        return prodOffset;
+    }
+
+    int[] productionRhs() {
+        return prodRhs;
+    }
+
+    long[] firstBits() {
+        return first;
+    }
+
+    long[] followBits() {
+        return follow;
+    }
+
+    boolean[] nullable() {
+        return nullable;
+    }
+
+    TerminalTrie trie() {
+        return trie;
+    }
+
+    // Terminal id of a single input character, or ERROR
+    public int terminalOf(char c) {
+        int node = trie.step(TerminalTrie.ROOT, c);
+        return node < 0 ? ERROR : trie.accept(node);
+    }
+
+    // Terminal id of a terminal's spelling, or ERROR (e.g. to map a lexer's token names)
+    public int terminalId(String name) {
+        for (int t = 0; t < terminalCount; t++) {
+            if (symbolNames[t].equals(name)) {
+                return t;
+            }
+        }
+        return ERROR;
+    }
+
+    public int productionLhs(int production) {
+        return prodLhs[production];
+    }
+
+    // Number of symbols on the right side (0 for ε)
+    public int rhsLength(int production) {
+        return prodOffset[production + 1] - prodOffset[production];
+    }
+
+    public int rhsSymbol(int production, int i) {
+        return prodRhs[prodOffset[production] + i];
+    }
+
+    // Production printed as "A -> X Y" (or "A -> ε")
+    public String productionToString(int production) {
+        StringBuilder sb = new StringBuilder(symbolNames[prodLhs[production]]).append(" ->");
+        if (prodOffset[production] == prodOffset[production + 1]) {
+            return sb.append(" ε").toString();
+        }
+        for (int i = prodOffset[production]; i < prodOffset[production + 1]; i++) {
+            sb.append(' ').append(symbolNames[prodRhs[i]]);
+        }
+        return sb.toString();
+    }
+
+    // A new cursor for parsing on this table from one thread
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    // Parse a whole string; returns ACCEPT or the index of the first error
+    public int parse(CharSequence input) {
+        return new Cursor().parse(input, ParseListener.SILENT);
+    }
+
+    public int parse(CharSequence input, ParseListener listener) {
+        return new Cursor().parse(input, listener);
+    }
+
+    // Parse from a Reader through a fixed-size buffer; memory use does not grow with the input
+    public long parse(Reader in) throws IOException {
+        return new Cursor().parse(in, DEFAULT_BUFFER_SIZE, ParseListener.SILENT);
+    }
+
+    public long parse(Reader in, int bufferSize) throws IOException {
+        return new Cursor().parse(in, bufferSize, ParseListener.SILENT);
+    }
+
+    public long parse(Reader in, int bufferSize, ParseListener listener) throws IOException {
+        return new Cursor().parse(in, bufferSize, listener);
+    }
+
+    // Parse UTF-8 bytes from a channel, decoded through a fixed-size buffer
+    public long parse(ReadableByteChannel channel) throws IOException {
+        return new Cursor().parse(channel, ParseListener.SILENT);
+    }
+
+    public long parse(ReadableByteChannel channel, ParseListener listener) throws IOException {
+        return new Cursor().parse(channel, listener);
+    }
+
+    /*
+        Per-parse state over a shared table: the parse stack and the token
+        sources, all reused from one parse to the next. Not thread-safe; use
+        one cursor per thread.
+    */
+    public final class Cursor {
+
+        private int[] stack = new int[INITIAL_DEPTH];
+        private int maxEdits;
+        private final StringTokenSource strings = new StringTokenSource(trie, endMarker, "");
+        private ReaderTokenSource reader;
+        private final ArrayTokenSource array = new ArrayTokenSource(terminalCount, endMarker);
+        private ByteBufferTokenSource bytes;
+
+        private Cursor() {
+        }
+
+        public CompiledLL1Table table() {
+            return CompiledLL1Table.this;
+        }
+
+        public int parse(CharSequence input) {
+            return parse(input, ParseListener.SILENT);
+        }
+
+        public int parse(CharSequence input, ParseListener listener) {
+            strings.reset(input);
+            try {
+                return (int) run(strings, listener);
+            } finally {
+                strings.reset("");
+            }
+        }
+
+        /*
+            Parse the ASCII bytes buffer[from, to), by absolute index (the buffer's
+            position and limit are not used or changed), e.g. one line of a mapped
+            file. Returns ACCEPT or the buffer index of the first error.
+        */
+        public int parse(ByteBuffer buffer, int from, int to, ParseListener listener) {
+            if (bytes == null) {
+                bytes = new ByteBufferTokenSource(trie, endMarker);
+            }
+            bytes.reset(buffer, from, to);
+            try {
+                return (int) run(bytes, listener);
+            } finally {
+                bytes.reset(null, 0, 0);
+            }
+        }
+
+        /*
+            Parse tokens lexed beforehand: terminal ids (see terminalId) for
+            tokens[0..count), starts[i] and ends[i] the offsets token i spans
+            and starts[count] the end of the input (a DfaLexer TokenBuffer's
+            starts() and ends()). Returns ACCEPT or the offset of the first error.
+        */
+        public int parse(int[] tokens, int[] starts, int[] ends, int count, ParseListener listener) {
+            if (count < 0 || count > tokens.length || count > ends.length || count >= starts.length) {
+                throw new IllegalArgumentException("bad token count " + count);
+            }
+            array.reset(tokens, starts, ends, count);
+            try {
+                return (int) run(array, listener);
+            } finally {
+                array.reset(null, null, null, 0);
+            }
+        }
+
+        public long parse(Reader in, int bufferSize, ParseListener listener) throws IOException {
+            if (reader == null || reader.bufferSize() != bufferSize) {
+                reader = new ReaderTokenSource(trie, endMarker, in, bufferSize);
+            } else {
+                reader.reset(in);
+            }
+            try {
+                return run(reader, listener);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                reader.reset(null);
+            }
+        }
+
+        public long parse(ReadableByteChannel channel, ParseListener listener) throws IOException {
+            return parse(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), DEFAULT_BUFFER_SIZE),
+                    DEFAULT_BUFFER_SIZE, listener);
+        }
+
+        /*
+            Report every error instead of stopping at the first one, repairing each
+            with at most maxEdits token insertions and deletions; 0 (the default)
+            stops at the first error that a sync entry does not cover.
+        */
+        public void setRecovery(int maxEdits) {
+            if (maxEdits < 0) {
+                throw new IllegalArgumentException("negative edit limit: " + maxEdits);
+            }
+            this.maxEdits = maxEdits;
+        }
+
+        /*
+            Table-driven LL(1) parse over int ids, reporting each step to the listener.
+            Returns ACCEPT, or the offset of the first error. A sync entry skips the
+            current input symbol and parsing continues; at the end of the input the
+            non-terminal is popped instead, so recovery always terminates. The only
+            allocation is growing the cursor's stack, which is kept for later parses.
+
+            With setRecovery, an error is reported through recover() and repaired:
+              - phrase level: a missing terminal is inserted (popped) when the token
+                can follow it, a stray token is deleted otherwise;
+              - panic mode: a non-terminal without a rule for the token deletes
+                tokens until one in its FIRST set (it is expanded) or FOLLOW set
+                (the sync entries: it is popped as empty) comes up;
+              - input after the end of the start symbol is parsed as another one
+                if it can start one, and deleted otherwise.
+            Each error gets maxEdits insertions and deletions; once they are used
+            up before a token is matched again, the symbols on the stack are
+            popped until one fits the token, and input left when the stack is
+            empty stops the parse. Further errors before the next match belong
+            to the same recovery and are not reported again.
+        */
+        long run(TokenSource source, ParseListener listener) {
+            // Table fields as locals, so the loop does not reload them through the outer instance
+            final RowDisplacementTable table = CompiledLL1Table.this.table;
+            final int[] prodOffset = CompiledLL1Table.this.prodOffset;
+            final int[] prodRhs = CompiledLL1Table.this.prodRhs;
+            final int terminalCount = CompiledLL1Table.this.terminalCount;
+            final int endMarker = CompiledLL1Table.this.endMarker;
+            final int maxEdits = this.maxEdits;
+
+            int[] stack = this.stack;
+            int sp = 0;
+            stack[sp++] = endMarker;
+            stack[sp++] = startSymbol;
+
+            listener.start();
+            int token = source.next();
+            long firstError = ACCEPT;
+            int step = 1;
+            boolean recovering = false;
+            int edits = 0;
+
+            for (; sp > 0; step++) {
+                int top = stack[sp - 1];
+
+                if (top == endMarker) {
+                    if (token == endMarker) {
+                        listener.accept(step, stack, sp, source.position());
+                        return firstError;
+                    }
+                } else if (top < terminalCount) {
+                    if (top == token) {
+                        listener.match(step, stack, sp, top, source.position(), source.end());
+                        sp--;
+                        token = source.next();
+                        recovering = false;
+                        continue;
+                    }
+                } else {
+                    int production = token == ERROR ? ERROR : table.get(top - terminalCount, token);
+                    if (production >= 0) {
+                        int from = prodOffset[production];
+                        int to = prodOffset[production + 1];
+                        sp--;
+                        if (sp + (to - from) > stack.length) {
+                            stack = this.stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + (to - from)));
+                        }
+                        for (int i = to - 1; i >= from; i--) {
+                            stack[sp++] = prodRhs[i];
+                        }
+                        listener.expand(step, stack, sp, top, production, token, source.position());
+                        continue;
+                    }
+                    if (production == SYNC && maxEdits == 0) {
+                        listener.sync(step, stack, sp, top, token, source.position());
+                        if (firstError == ACCEPT) {
+                            firstError = source.position();
+                        }
+                        if (token == endMarker) {
+                            sp--;                   // nothing left to skip: pop the non-terminal
+                        } else {
+                            token = source.next();  // skip input symbol on sync error
+                        }
+                        continue;
+                    }
+                }
+
+                // The top symbol does not fit the token
+                if (maxEdits == 0) {
+                    listener.error(step, stack, sp, top, token, source.position());
+                    return firstError != ACCEPT ? firstError : source.position();
+                }
+                if (!recovering) {
+                    listener.recover(step, stack, sp, top, token, source.position());
+                    if (firstError == ACCEPT) {
+                        firstError = source.position();
+                    }
+                    recovering = true;
+                    edits = maxEdits;
+                }
+                boolean delete;
+                if (edits > 0) {
+                    edits--;
+                    if (token == ERROR) {
+                        delete = true;
+                    } else if (top == endMarker) {
+                        if (fits(startSymbol, token)) {
+                            // More input that starts a sentence: parse it as one
+                            listener.restart(step, stack, sp, token, source.position());
+                            stack[sp++] = startSymbol;
+                            continue;
+                        }
+                        delete = true;
+                    } else if (top < terminalCount) {
+                        delete = token != endMarker && !fits(stack[sp - 2], token);
+                    } else {
+                        // Sync entry (token in FOLLOW): pop if the token fits below, else keep looking
+                        int production = table.get(top - terminalCount, token);
+                        delete = token != endMarker && (production != SYNC || !fits(stack[sp - 2], token));
+                    }
+                } else if (top == endMarker) {
+                    listener.error(step, stack, sp, top, token, source.position());
+                    return firstError;
+                } else {
+                    delete = false;     // out of edits: give up on the top symbol
+                }
+                if (delete) {
+                    listener.delete(step, stack, sp, token, source.position());
+                    token = source.next();
+                } else {
+                    listener.insert(step, stack, sp, top, token, source.position());
+                    sp--;
+                }
+            }
+            return firstError != ACCEPT ? firstError : source.position();
+        }
+
+        // Whether symbol (on the stack) can take token next: it is the token, or has a rule for it
+        private boolean fits(int symbol, int token) {
+            if (symbol < terminalCount) {
+                return symbol == token;
+            }
+            return table.get(symbol - terminalCount, token) >= 0;
+        }
+    }
+
+    // Longest-match trie over terminal spellings
+    static final class TerminalTrie {
+        static final int ROOT = 0;
+
+        // ASCII edges: ascii[node * 128 + c]; other characters: sorted (node << 32 | c) keys
+        private int[] ascii = new int[128];
+        private long[] wideKeys = new long[0];
+        private int[] wideTargets = new int[0];
+        private int[] accept = {ERROR};
+        private int nodes = 1;
+        final int maxLength;
+
+        TerminalTrie(String[] symbolNames, int terminalCount) {
+            Arrays.fill(ascii, -1);
+            int longest = 1;
+            Map<Long, Integer> wide = new TreeMap<>();
+            for (int t = 0; t < terminalCount; t++) {
+                String name = symbolNames[t];
+                int node = ROOT;
+                for (int i = 0; i < name.length(); i++) {
+                    char c = name.charAt(i);
+                    int child = c < 128 ? ascii[node * 128 + c] : wide.getOrDefault(((long) node << 32) | c, -1);
+                    if (child < 0) {
+                        child = newNode();
+                        if (c < 128) {
+                            ascii[node * 128 + c] = child;
+                        } else {
+                            wide.put(((long) node << 32) | c, child);
+                        }
+                    }
+                    node = child;
+                }
+                accept[node] = t;
+                longest = Math.max(longest, name.length());
+            }
+            this.maxLength = longest;
+            wideKeys = new long[wide.size()];
+            wideTargets = new int[wide.size()];
+            int i = 0;
+            for (Map.Entry<Long, Integer> e : wide.entrySet()) {
+                wideKeys[i] = e.getKey();
+                wideTargets[i++] = e.getValue();
+            }
+        }
+
+        private int newNode() {
+            if (nodes == accept.length) {
+                accept = Arrays.copyOf(accept, nodes * 2);
+                ascii = Arrays.copyOf(ascii, nodes * 2 * 128);
+                Arrays.fill(ascii, nodes * 128, ascii.length, -1);
+            }
+            accept[nodes] = ERROR;
+            return nodes++;
+        }
+
+        // Child of node on c, or -1
+        int step(int node, char c) {
+            if (c < 128) {
+                return ascii[node * 128 + c];
+            }
+            int i = Arrays.binarySearch(wideKeys, ((long) node << 32) | c);
+            return i < 0 ? -1 : wideTargets[i];
+        }
+
+        // Terminal spelled by the path to node, or ERROR
+        int accept(int node) {
+            return accept[node];
+        }
+
+        // Blanks are skipped between tokens unless they start a terminal
+        boolean skippable(char c) {
+            return (c == ' ' || c == '\t' || c == '\n' || c == '\r') && ascii[c] < 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+// Collects the offsets of every error and sync recovery, without formatting anything
+public class ErrorPositions implements ParseListener {
+
+    private long[] positions = new long[8];
+    private int count;
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long get(int i) {
+        return positions[i];
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(positions, count);
+    }
+
+    @Override
+    public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+        add(position);
+    }
+
+    @Override
+    public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+        add(position);
+    }
+
+    @Override
+    public void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+        add(position);
+    }
+
+    private void add(long position) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+        }
+        positions[count++] = position;
+    }
+}
@@ -0,0 +1,513 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+    FIRST/FOLLOW analysis for large grammars.
+
+    Terminals are interned to bit positions and every set is a row of a flat
+    long[] bitset; nullability is a boolean[]. Both FIRST and FOLLOW are
+    solved as "set(A) = seeds(A) ∪ set(B) for every B that A depends on":
+
+        FIRST(A)  depends on FIRST(X)  for A -> α X β with α nullable
+        FOLLOW(X) depends on FOLLOW(A) for A -> α X β with β nullable
+
+    The dependency graph is condensed into strongly connected components
+    (Tarjan), whose members all end up with the same set. Components are
+    visited once, dependencies first, so no non-terminal is ever rescanned.
+    Components with the same depth in the condensed graph are independent
+    and can be processed in parallel on a ForkJoinPool.
+*/
+public final class FirstFollowEngine {
+
+    // Below this many set words in one level, the level is solved sequentially
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private final String[] terminalNames;
+    private final String[] nonTerminalNames;
+    private final int terminalCount;
+    private final int words;
+
+    // Productions over ids: terminal t -> t, non-terminal n -> terminalCount + n; ε removed
+    private final int[] prodLhs;
+    private final int[] prodOffset;
+    private final int[] prodRhs;
+
+    private final boolean[] nullable;
+    private final long[] first;
+    private final long[] follow;
+
+    public FirstFollowEngine(Set<String> terminals, Set<String> nonTerminals,
+                             Map<String, List<String[]>> grammar, String start) {
+        this(terminals, nonTerminals, grammar, start, null);
+    }
+
+    // Runs the whole analysis; pool may be null for a sequential run
+    public FirstFollowEngine(Set<String> terminals, Set<String> nonTerminals,
+                             Map<String, List<String[]>> grammar, String start,
+                             ForkJoinPool pool) {
+        this.terminalNames = terminals.toArray(new String[0]);
+        this.nonTerminalNames = nonTerminals.toArray(new String[0]);
+        this.terminalCount = terminalNames.length;
+        this.words = (terminalCount + 63) >>> 6;
+
+        Map<String, Integer> ids = new HashMap<>();
+        for (int t = 0; t < terminalCount; t++) {
+            ids.put(terminalNames[t], t);
+        }
+        for (int n = 0; n < nonTerminalNames.length; n++) {
+            ids.put(nonTerminalNames[n], terminalCount + n);
+        }
+
+        int prodCount = 0;
+        int rhsLength = 0;
+        for (String nt : nonTerminalNames) {
+            for (String[] prod : grammar.get(nt)) {
+                prodCount++;
+                rhsLength += prod.length;
+            }
+        }
+        this.prodLhs = new int[prodCount];
+        this.prodOffset = new int[prodCount + 1];
+        int[] rhs = new int[rhsLength];
+        int p = 0;
+        int fill = 0;
+        for (int n = 0; n < nonTerminalNames.length; n++) {
+            for (String[] prod : grammar.get(nonTerminalNames[n])) {
+                prodLhs[p] = n;
+                prodOffset[p++] = fill;
+                for (String symbol : prod) {
+                    if (symbol.equals("ε")) {
+                        continue;
+                    }
+                    Integer id = ids.get(symbol);
+                    if (id == null) {
+                        throw new IllegalArgumentException("Undeclared symbol " + symbol + " in rule for " + nonTerminalNames[n]);
+                    }
+                    rhs[fill++] = id;
+                }
+            }
+        }
+        prodOffset[prodCount] = fill;
+        this.prodRhs = Arrays.copyOf(rhs, fill);
+
+        int n = nonTerminalNames.length;
+        this.nullable = computeNullable();
+        this.first = new long[n * words];
+        this.follow = new long[n * words];
+        computeFirst(pool);
+        Integer startId = ids.get(start);
+        Integer endId = ids.get("$");
+        if (startId != null && endId != null && startId >= terminalCount) {
+            setBit(follow, startId - terminalCount, endId);
+        }
+        computeFollow(pool);
+    }
+
+    // Linear-time nullability: count the not-yet-nullable symbols of each production
+    private boolean[] computeNullable() {
+        int n = nonTerminalNames.length;
+        int prodCount = prodLhs.length;
+        boolean[] result = new boolean[n];
+        int[] remaining = new int[prodCount];
+        IntGraph occurrences = new IntGraph(n);
+        int[] worklist = new int[n];
+        int size = 0;
+
+        for (int p = 0; p < prodCount; p++) {
+            for (int i = prodOffset[p]; i < prodOffset[p + 1]; i++) {
+                int symbol = prodRhs[i];
+                if (symbol < terminalCount) {
+                    remaining[p] = -1; // a terminal: never nullable
+                    break;
+                }
+                remaining[p]++;
+            }
+            if (remaining[p] > 0) {
+                for (int i = prodOffset[p]; i < prodOffset[p + 1]; i++) {
+                    occurrences.add(prodRhs[i] - terminalCount, p);
+                }
+            } else if (remaining[p] == 0 && !result[prodLhs[p]]) {
+                result[prodLhs[p]] = true;
+                worklist[size++] = prodLhs[p];
+            }
+        }
+        occurrences.freeze();
+
+        while (size > 0) {
+            int nt = worklist[--size];
+            for (int e = occurrences.start(nt); e < occurrences.end(nt); e++) {
+                int prod = occurrences.target(e);
+                if (--remaining[prod] == 0 && !result[prodLhs[prod]]) {
+                    result[prodLhs[prod]] = true;
+                    worklist[size++] = prodLhs[prod];
+                }
+            }
+        }
+        return result;
+    }
+
+    private void computeFirst(ForkJoinPool pool) {
+        IntGraph dependsOn = new IntGraph(nonTerminalNames.length);
+        for (int p = 0; p < prodLhs.length; p++) {
+            int lhs = prodLhs[p];
+            for (int i = prodOffset[p]; i < prodOffset[p + 1]; i++) {
+                int symbol = prodRhs[i];
+                if (symbol < terminalCount) {
+                    setBit(first, lhs, symbol);
+                    break;
+                }
+                dependsOn.add(lhs, symbol - terminalCount);
+                if (!nullable[symbol - terminalCount]) {
+                    break;
+                }
+            }
+        }
+        dependsOn.freeze();
+        solve(first, dependsOn, pool);
+    }
+
+    private void computeFollow(ForkJoinPool pool) {
+        IntGraph dependsOn = new IntGraph(nonTerminalNames.length);
+        long[] trailer = new long[words]; // FIRST of the symbols right of the current position
+        for (int p = 0; p < prodLhs.length; p++) {
+            int lhs = prodLhs[p];
+            Arrays.fill(trailer, 0L);
+            boolean trailerNullable = true;
+            for (int i = prodOffset[p + 1] - 1; i >= prodOffset[p]; i--) {
+                int symbol = prodRhs[i];
+                if (symbol < terminalCount) {
+                    Arrays.fill(trailer, 0L);
+                    trailer[symbol >>> 6] |= 1L << symbol;
+                    trailerNullable = false;
+                    continue;
+                }
+                int nt = symbol - terminalCount;
+                int row = nt * words;
+                for (int w = 0; w < words; w++) {
+                    follow[row + w] |= trailer[w];
+                }
+                if (trailerNullable) {
+                    dependsOn.add(nt, lhs);
+                }
+                int firstRow = nt * words;
+                if (nullable[nt]) {
+                    for (int w = 0; w < words; w++) {
+                        trailer[w] |= first[firstRow + w];
+                    }
+                } else {
+                    System.arraycopy(first, firstRow, trailer, 0, words);
+                    trailerNullable = false;
+                }
+            }
+        }
+        dependsOn.freeze();
+        solve(follow, dependsOn, pool);
+    }
+
+    // Propagate sets along the dependency graph, one strongly connected component at a time
+    private void solve(long[] sets, IntGraph dependsOn, ForkJoinPool pool) {
+        Components scc = new Components(dependsOn);
+
+        // Depth of each component in the condensed graph: dependencies come first
+        int[] level = new int[scc.count];
+        int maxLevel = 0;
+        for (int c = 0; c < scc.count; c++) {
+            int depth = 0;
+            for (int m = scc.start(c); m < scc.end(c); m++) {
+                int v = scc.member(m);
+                for (int e = dependsOn.start(v); e < dependsOn.end(v); e++) {
+                    int dc = scc.component[dependsOn.target(e)];
+                    if (dc != c) {
+                        depth = Math.max(depth, level[dc] + 1);
+                    }
+                }
+            }
+            level[c] = depth;
+            maxLevel = Math.max(maxLevel, depth);
+        }
+
+        // Bucket components by level
+        int[] levelStart = new int[maxLevel + 2];
+        for (int c = 0; c < scc.count; c++) {
+            levelStart[level[c] + 1]++;
+        }
+        for (int l = 0; l <= maxLevel; l++) {
+            levelStart[l + 1] += levelStart[l];
+        }
+        int[] byLevel = new int[scc.count];
+        int[] fill = Arrays.copyOf(levelStart, maxLevel + 1);
+        for (int c = 0; c < scc.count; c++) {
+            byLevel[fill[level[c]]++] = c;
+        }
+
+        for (int l = 0; l <= maxLevel; l++) {
+            int from = levelStart[l];
+            int to = levelStart[l + 1];
+            long work = 0;
+            for (int i = from; i < to; i++) {
+                work += (long) (scc.end(byLevel[i]) - scc.start(byLevel[i])) * words;
+            }
+            if (pool != null && to - from > 1 && work >= PARALLEL_THRESHOLD) {
+                pool.invoke(new SolveLevel(sets, dependsOn, scc, byLevel, from, to));
+            } else {
+                for (int i = from; i < to; i++) {
+                    solveComponent(sets, dependsOn, scc, byLevel[i]);
+                }
+            }
+        }
+    }
+
+    // Union the seeds of all members and the sets they depend on, then share the result
+    private void solveComponent(long[] sets, IntGraph dependsOn, Components scc, int c) {
+        int head = scc.member(scc.start(c)) * words;
+        for (int m = scc.start(c); m < scc.end(c); m++) {
+            int v = scc.member(m);
+            int row = v * words;
+            if (row != head) {
+                for (int w = 0; w < words; w++) {
+                    sets[head + w] |= sets[row + w];
+                }
+            }
+            for (int e = dependsOn.start(v); e < dependsOn.end(v); e++) {
+                int dep = dependsOn.target(e);
+                if (scc.component[dep] != c) {
+                    int depRow = dep * words;
+                    for (int w = 0; w < words; w++) {
+                        sets[head + w] |= sets[depRow + w];
+                    }
+                }
+            }
+        }
+        for (int m = scc.start(c) + 1; m < scc.end(c); m++) {
+            System.arraycopy(sets, head, sets, scc.member(m) * words, words);
+        }
+    }
+
+    // Splits one level of independent components across the pool
+    @SuppressWarnings("serial")
+    private final class SolveLevel extends RecursiveAction {
+        private final long[] sets;
+        private final IntGraph dependsOn;
+        private final Components scc;
+        private final int[] byLevel;
+        private final int from;
+        private final int to;
+
+        SolveLevel(long[] sets, IntGraph dependsOn, Components scc, int[] byLevel, int from, int to) {
+            this.sets = sets;
+            this.dependsOn = dependsOn;
+            this.scc = scc;
+            this.byLevel = byLevel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int work = 0;
+            for (int i = from; i < to && work < PARALLEL_THRESHOLD; i++) {
+                work += (scc.end(byLevel[i]) - scc.start(byLevel[i])) * words;
+            }
+            if (to - from > 1 && work >= PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SolveLevel(sets, dependsOn, scc, byLevel, from, mid),
+                          new SolveLevel(sets, dependsOn, scc, byLevel, mid, to));
+            } else {
+                for (int i = from; i < to; i++) {
+                    solveComponent(sets, dependsOn, scc, byLevel[i]);
+                }
+            }
+        }
+    }
+
+    private void setBit(long[] sets, int row, int bit) {
+        sets[row * words + (bit >>> 6)] |= 1L << bit;
+    }
+
+    public int terminalCount() {
+        return terminalCount;
+    }
+
+    public boolean isNullable(String nonTerminal) {
+        return nullable[indexOf(nonTerminal)];
+    }
+
+    // FIRST sets in the form used by LL1ParserGrammar ("" marks ε)
+    public Map<String, Set<String>> firstSets() {
+        return toMap(first, true);
+    }
+
+    // FOLLOW sets in the form used by LL1ParserGrammar
+    public Map<String, Set<String>> followSets() {
+        return toMap(follow, false);
+    }
+
+    private Map<String, Set<String>> toMap(long[] sets, boolean withEpsilon) {
+        Map<String, Set<String>> result = new HashMap<>();
+        for (int n = 0; n < nonTerminalNames.length; n++) {
+            Set<String> set = new HashSet<>();
+            for (int w = 0; w < words; w++) {
+                long bits = sets[n * words + w];
+                while (bits != 0) {
+                    set.add(terminalNames[(w << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            if (withEpsilon && nullable[n]) {
+                set.add("");
+            }
+            result.put(nonTerminalNames[n], set);
+        }
+        return result;
+    }
+
+    private int indexOf(String nonTerminal) {
+        for (int n = 0; n < nonTerminalNames.length; n++) {
+            if (nonTerminalNames[n].equals(nonTerminal)) {
+                return n;
+            }
+        }
+        throw new IllegalArgumentException("Unknown non-terminal " + nonTerminal);
+    }
+
+    // Adjacency lists in compressed (CSR) form, built by add() then freeze()
+    static final class IntGraph {
+        private final int nodes;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private int edges;
+        private int[] offset;
+        private int[] target;
+
+        IntGraph(int nodes) {
+            this.nodes = nodes;
+        }
+
+        void add(int source, int dest) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = source;
+            to[edges++] = dest;
+        }
+
+        void freeze() {
+            offset = new int[nodes + 1];
+            for (int e = 0; e < edges; e++) {
+                offset[from[e] + 1]++;
+            }
+            for (int v = 0; v < nodes; v++) {
+                offset[v + 1] += offset[v];
+            }
+            target = new int[edges];
+            int[] fill = Arrays.copyOf(offset, nodes);
+            for (int e = 0; e < edges; e++) {
+                target[fill[from[e]]++] = to[e];
+            }
+            from = null;
+            to = null;
+        }
+
+        int start(int v) {
+            return offset[v];
+        }
+
+        int end(int v) {
+            return offset[v + 1];
+        }
+
+        int target(int e) {
+            return target[e];
+        }
+    }
+
+    // Iterative Tarjan SCC; components are numbered so that dependencies come first
+    static final class Components {
+        final int[] component;
+        final int count;
+        private final int[] offset;
+        private final int[] members;
+
+        Components(IntGraph g) {
+            int n = g.nodes;
+            component = new int[n];
+            Arrays.fill(component, -1);
+            int[] index = new int[n];
+            int[] low = new int[n];
+            Arrays.fill(index, -1);
+            int[] stack = new int[n];
+            boolean[] onStack = new boolean[n];
+            int[] callStack = new int[n];
+            int[] edgeCursor = new int[n];
+            int[] order = new int[n];
+            int[] compStart = new int[n + 1];
+            int sp = 0;
+            int next = 0;
+            int comps = 0;
+            int placed = 0;
+
+            for (int root = 0; root < n; root++) {
+                if (index[root] != -1) {
+                    continue;
+                }
+                int depth = 0;
+                callStack[depth++] = root;
+                index[root] = low[root] = next++;
+                edgeCursor[root] = g.start(root);
+                stack[sp++] = root;
+                onStack[root] = true;
+
+                while (depth > 0) {
+                    int v = callStack[depth - 1];
+                    if (edgeCursor[v] < g.end(v)) {
+                        int w = g.target(edgeCursor[v]++);
+                        if (index[w] == -1) {
+                            index[w] = low[w] = next++;
+                            edgeCursor[w] = g.start(w);
+                            stack[sp++] = w;
+                            onStack[w] = true;
+                            callStack[depth++] = w;
+                        } else if (onStack[w]) {
+                            low[v] = Math.min(low[v], index[w]);
+                        }
+                        continue;
+                    }
+                    depth--;
+                    if (depth > 0) {
+                        int parent = callStack[depth - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                    if (low[v] == index[v]) {
+                        compStart[comps] = placed;
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            component[w] = comps;
+                            order[placed++] = w;
+                        } while (w != v);
+                        comps++;
+                    }
+                }
+            }
+            compStart[comps] = placed;
+            this.count = comps;
+            this.offset = Arrays.copyOf(compStart, comps + 1);
+            this.members = order;
+        }
+
+        int start(int c) {
+            return offset[c];
+        }
+
+        int end(int c) {
+            return offset[c + 1];
+        }
+
+        int member(int m) {
+            return members[m];
+        }
+    }
+}
@@ -0,0 +1,1010 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    General context-free parser (GLL, Scott and Johnstone) for any grammar
+    LL1ParserGrammar can load: left-recursive, ambiguous or otherwise not
+    LL(1), where the LL(1) table keeps only one production per cell (see
+    LL1ParserGrammar.conflicts()).
+
+    The grammar is read from a CompiledLL1Table (interned symbols,
+    productions, FIRST bits); its table cells are not used. GLL runs
+    the recursive-descent parser of the grammar for every alternative that
+    the next token allows at once:
+
+      - a descriptor (slot, stack node, input position, SPPF node) is one
+        thread of that parser, waiting to continue a production at a slot
+        (a production with a dot). Each is run once, and all those at one
+        input position before any further on, so the set of descriptors
+        seen only has to hold the positions not yet finished;
+      - the call stacks of all threads share one graph-structured stack
+        (GSS): a node per (return slot, position), with an edge to each
+        caller, so a nonterminal is parsed once per position however many
+        productions call it, and left recursion is just an edge back to the
+        same node;
+      - results go into a binarised shared packed parse forest (SPPF):
+        symbol nodes (X, i, j), intermediate nodes for production prefixes
+        and packed nodes, one per way a node was derived. Every parse tree
+        of the input is in the forest, in space cubic at worst.
+
+    Alternatives are only started when the next token is in their FIRST set
+    (or FOLLOW, for nullable ones; both worked out here per slot, looking
+    past every nullable symbol), so on an LL(1) or nearly LL(1) grammar
+    each position sees a few descriptors and parsing is close to linear;
+    general grammars cost up to O(n^3).
+
+    Not thread-safe: use one parser per thread on a shared CompiledLL1Table.
+*/
+public final class GllParser {
+
+    // Result of parse() when the input is accepted
+    public static final int ACCEPT = -1;
+
+    private static final int NONE = -1;
+
+    // Grammar
+    private final CompiledLL1Table grammar;
+    private final int terminalCount;
+    private final int endMarker;
+    private final int[] prodLhs;
+    private final int[] prodOffset;
+    private final int[] prodRhs;
+    private final int[] slotBase;          // by production: slot of its dot at 0
+    private final int[] slotProduction;    // by slot
+    private final int[] firstProduction;   // by nonterminal - terminalCount: productions [first, first + count)
+    private final int[] productionCount;
+    private final int[] sortedProductions; // productions grouped by lhs
+    private final int slotCount;
+
+    // Lookahead: FIRST of what follows each slot's dot, and whether that can be empty
+    private final int words;
+    private final long[] slotFirst;
+    private final boolean[] slotNullable;
+    private final long[] follow;
+    private final boolean[] nullable;
+
+    private final StringTokenSource source;
+
+    // Input tokens; tokens[count] is the end marker
+    private int[] tokens = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+
+    // SPPF: symbol nodes (label < symbolCount), ε nodes (EPSILON) and intermediate nodes (symbolCount + slot)
+    private int[] nodeLabel = new int[256];
+    private int[] nodeLeft = new int[256];
+    private int[] nodeRight = new int[256];
+    private int[] nodePacked = new int[256];   // first packed node
+    private int nodes;
+    private final QuadMap nodeIndex = new QuadMap();
+
+    // Packed nodes: slot, pivot, children (left may be NONE) and the next packed node of the same parent
+    private int[] packedSlot = new int[256];
+    private int[] packedPivot = new int[256];
+    private int[] packedLeft = new int[256];
+    private int[] packedRight = new int[256];
+    private int[] packedNext = new int[256];
+    private int packed;
+
+    // GSS: nodes (return slot, position), edges to callers labelled with SPPF nodes, popped results
+    private int[] gssSlot = new int[64];
+    private int[] gssEdges = new int[64];
+    private int[] gssPopped = new int[64];
+    private int gssNodes;
+    private final QuadMap gssIndex = new QuadMap();
+    private int[] edgeTarget = new int[64];
+    private int[] edgeNode = new int[64];
+    private int[] edgeNext = new int[64];
+    private int edges;
+    private final QuadMap edgeIndex = new QuadMap();
+    private int[] poppedNode = new int[64];
+    private int[] poppedNext = new int[64];
+    private int popped;
+    private final QuadMap poppedIndex = new QuadMap();
+
+    // Descriptors to run, a stack per input position, in a pool with a free list; and the descriptors seen
+    private int[] queued = new int[64];        // by position: top of its stack
+    private int[] pendingLabel = new int[64];
+    private int[] pendingGss = new int[64];
+    private int[] pendingNode = new int[64];
+    private int[] pendingNext = new int[64];
+    private int pool;
+    private int free;
+    private final QuadMap seen = new QuadMap(2);
+    private long descriptors;
+
+    private int farthest;
+    private int root;
+
+    public GllParser(CompiledLL1Table grammar) {
+        this.grammar = grammar;
+        this.terminalCount = grammar.terminalCount();
+        this.endMarker = grammar.endMarker();
+        this.prodLhs = grammar.productionLhs();
+        this.prodOffset = grammar.productionOffsets();
+        this.prodRhs = grammar.productionRhs();
+        this.nullable = grammar.nullable();
+        this.words = (terminalCount + 63) >>> 6;
+        this.source = new StringTokenSource(grammar.trie(), endMarker, "");
+
+        int productions = prodLhs.length;
+        int nonTerminals = grammar.symbolCount() - terminalCount;
+        this.slotBase = new int[productions];
+        int slots = 0;
+        for (int p = 0; p < productions; p++) {
+            slotBase[p] = slots;
+            slots += prodOffset[p + 1] - prodOffset[p] + 1;
+        }
+        this.slotCount = slots;
+        this.slotProduction = new int[slots];
+        for (int p = 0; p < productions; p++) {
+            for (int d = 0; d <= prodOffset[p + 1] - prodOffset[p]; d++) {
+                slotProduction[slotBase[p] + d] = p;
+            }
+        }
+        this.productionCount = new int[nonTerminals];
+        for (int p = 0; p < productions; p++) {
+            productionCount[prodLhs[p] - terminalCount]++;
+        }
+        this.firstProduction = new int[nonTerminals];
+        for (int n = 1; n < nonTerminals; n++) {
+            firstProduction[n] = firstProduction[n - 1] + productionCount[n - 1];
+        }
+        this.sortedProductions = new int[productions];
+        int[] fill = firstProduction.clone();
+        for (int p = 0; p < productions; p++) {
+            sortedProductions[fill[prodLhs[p] - terminalCount]++] = p;
+        }
+
+        // FIRST of each slot's suffix, right to left through every production
+        long[] first = grammar.firstBits();
+        this.slotFirst = new long[slots * words];
+        this.slotNullable = new boolean[slots];
+        for (int p = 0; p < productions; p++) {
+            int length = prodOffset[p + 1] - prodOffset[p];
+            int end = slotBase[p] + length;
+            slotNullable[end] = true;
+            for (int d = length - 1; d >= 0; d--) {
+                int slot = slotBase[p] + d;
+                int symbol = prodRhs[prodOffset[p] + d];
+                if (symbol < terminalCount) {
+                    slotFirst[slot * words + (symbol >>> 6)] |= 1L << symbol;
+                } else {
+                    int n = symbol - terminalCount;
+                    for (int w = 0; w < words; w++) {
+                        slotFirst[slot * words + w] |= first[n * words + w];
+                    }
+                    if (nullable[n]) {
+                        for (int w = 0; w < words; w++) {
+                            slotFirst[slot * words + w] |= slotFirst[(slot + 1) * words + w];
+                        }
+                        slotNullable[slot] = slotNullable[slot + 1];
+                    }
+                }
+            }
+        }
+
+        // FOLLOW from the slots, looking past every nullable symbol after a nonterminal
+        this.follow = new long[nonTerminals * words];
+        int start = grammar.startSymbol() - terminalCount;
+        follow[start * words + (endMarker >>> 6)] |= 1L << endMarker;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions; p++) {
+                int lhs = prodLhs[p] - terminalCount;
+                for (int d = 0; d < prodOffset[p + 1] - prodOffset[p]; d++) {
+                    int symbol = prodRhs[prodOffset[p] + d];
+                    if (symbol < terminalCount) {
+                        continue;
+                    }
+                    int n = symbol - terminalCount;
+                    int rest = slotBase[p] + d + 1;
+                    for (int w = 0; w < words; w++) {
+                        long bits = slotFirst[rest * words + w];
+                        if (slotNullable[rest]) {
+                            bits |= follow[lhs * words + w];
+                        }
+                        if ((follow[n * words + w] | bits) != follow[n * words + w]) {
+                            follow[n * words + w] |= bits;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public CompiledLL1Table grammar() {
+        return grammar;
+    }
+
+    // Parse a string, split into terminals as the LL(1) token sources do; returns ACCEPT or the error offset
+    public int parse(CharSequence input) {
+        source.reset(input);
+        count = 0;
+        while (true) {
+            int token = source.next();
+            if (token == CompiledLL1Table.ERROR) {
+                return (int) source.position();
+            }
+            ensureTokens(count + 1);
+            tokens[count] = token;
+            starts[count] = (int) source.position();
+            ends[count] = (int) source.end();
+            if (token == endMarker) {
+                break;
+            }
+            count++;
+        }
+        return run();
+    }
+
+    /*
+        Parse tokens lexed beforehand, as CompiledLL1Table.Cursor takes them:
+        terminal ids for tokens[0..count), tokenStarts[i] and tokenEnds[i]
+        the offsets token i spans and tokenStarts[count] the end of the input.
+    */
+    public int parse(int[] tokenIds, int[] tokenStarts, int[] tokenEnds, int tokenCount) {
+        if (tokenCount < 0 || tokenCount > tokenIds.length || tokenCount > tokenEnds.length
+                || tokenCount >= tokenStarts.length) {
+            throw new IllegalArgumentException("bad token count " + tokenCount);
+        }
+        ensureTokens(tokenCount + 1);
+        for (int k = 0; k < tokenCount; k++) {
+            if (tokenIds[k] < 0 || tokenIds[k] >= terminalCount || tokenIds[k] == endMarker) {
+                return tokenStarts[k];
+            }
+            tokens[k] = tokenIds[k];
+            starts[k] = tokenStarts[k];
+            ends[k] = tokenEnds[k];
+        }
+        count = tokenCount;
+        tokens[count] = endMarker;
+        starts[count] = tokenStarts[count];
+        ends[count] = tokenStarts[count];
+        return run();
+    }
+
+    private void ensureTokens(int n) {
+        if (n > tokens.length) {
+            int capacity = Math.max(n, tokens.length * 2);
+            tokens = Arrays.copyOf(tokens, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            queued = new int[capacity];
+        }
+    }
+
+    private int run() {
+        nodes = 0;
+        packed = 0;
+        gssNodes = 0;
+        edges = 0;
+        popped = 0;
+        pool = 0;
+        free = NONE;
+        descriptors = 0;
+        farthest = 0;
+        root = NONE;
+        nodeIndex.clear();
+        gssIndex.clear();
+        edgeIndex.clear();
+        poppedIndex.clear();
+        seen.clear();
+        Arrays.fill(queued, 0, count + 1, NONE);
+
+        int start = grammar.startSymbol();
+        int base = gssNode(NONE, 0);
+        add(slotCount + start - terminalCount, base, 0, NONE);
+        // Every descriptor adds others at its own position or later: finish
+        // each position before the next, and forget the descriptors before it
+        for (int i = 0; i <= count; i++) {
+            while (queued[i] != NONE) {
+                int d = queued[i];
+                queued[i] = pendingNext[d];
+                pendingNext[d] = free;
+                free = d;
+                descriptors++;
+                farthest = Math.max(farthest, i);
+                if (pendingLabel[d] >= slotCount) {
+                    predict(pendingLabel[d] - slotCount + terminalCount, pendingGss[d], i);
+                } else {
+                    resume(pendingLabel[d], pendingGss[d], i, pendingNode[d]);
+                }
+            }
+            seen.discardBelow(i + 1);
+        }
+        root = nodeIndex.get(start, 0, count, 0);
+        return root != NONE ? ACCEPT : starts[farthest];
+    }
+
+    // Start every production of nonterminal x that the token at i allows
+    private void predict(int x, int u, int i) {
+        int n = x - terminalCount;
+        int token = tokens[i];
+        for (int k = firstProduction[n], last = k + productionCount[n]; k < last; k++) {
+            int slot = slotBase[sortedProductions[k]];
+            if (allows(slot, x, token)) {
+                add(slot, u, i, NONE);
+            }
+        }
+    }
+
+    // True if the rest of the production from slot can start with token (or vanish before it)
+    private boolean allows(int slot, int lhs, int token) {
+        if ((slotFirst[slot * words + (token >>> 6)] & (1L << token)) != 0) {
+            return true;
+        }
+        return slotNullable[slot] && (follow[(lhs - terminalCount) * words + (token >>> 6)] & (1L << token)) != 0;
+    }
+
+    // Run a production from slot until it calls a nonterminal, fails on a terminal, or ends
+    private void resume(int slot, int u, int i, int w) {
+        int p = slotProduction[slot];
+        int lhs = prodLhs[p];
+        int length = prodOffset[p + 1] - prodOffset[p];
+        if (length == 0) {
+            int epsilon = symbolNode(CompiledLL1Table.EPSILON, i, i);
+            pop(u, i, packedNode(slot, NONE, epsilon));
+            return;
+        }
+        int d = slot - slotBase[p];
+        while (d < length) {
+            int symbol = prodRhs[prodOffset[p] + d];
+            if (symbol < terminalCount) {
+                if (tokens[i] != symbol) {
+                    return;
+                }
+                int leaf = symbolNode(symbol, i, i + 1);
+                i++;
+                farthest = Math.max(farthest, i);
+                d++;
+                w = packedNode(slotBase[p] + d, w, leaf);
+            } else {
+                if (d > 0 && !allows(slotBase[p] + d, lhs, tokens[i])) {
+                    return;
+                }
+                int v = create(slotBase[p] + d + 1, u, i, w);
+                add(slotCount + symbol - terminalCount, v, i, NONE);
+                return;
+            }
+        }
+        pop(u, i, w);
+    }
+
+    // Queue a descriptor unless it was queued before
+    private void add(int label, int u, int i, int w) {
+        if (!seen.put(label, u, i, w, 0)) {
+            return;
+        }
+        int d = free;
+        if (d != NONE) {
+            free = pendingNext[d];
+        } else {
+            if (pool == pendingLabel.length) {
+                int capacity = pool * 2;
+                pendingLabel = Arrays.copyOf(pendingLabel, capacity);
+                pendingGss = Arrays.copyOf(pendingGss, capacity);
+                pendingNode = Arrays.copyOf(pendingNode, capacity);
+                pendingNext = Arrays.copyOf(pendingNext, capacity);
+            }
+            d = pool++;
+        }
+        pendingLabel[d] = label;
+        pendingGss[d] = u;
+        pendingNode[d] = w;
+        pendingNext[d] = queued[i];
+        queued[i] = d;
+    }
+
+    // A nonterminal ended at i with forest z: continue every caller of u
+    private void pop(int u, int i, int z) {
+        if (gssSlot[u] == NONE) {
+            return;
+        }
+        if (!poppedIndex.put(u, z, 0, 0, 0)) {
+            return;
+        }
+        ensurePopped();
+        poppedNode[popped] = z;
+        poppedNext[popped] = gssPopped[u];
+        gssPopped[u] = popped++;
+        int slot = gssSlot[u];
+        for (int e = gssEdges[u]; e != NONE; e = edgeNext[e]) {
+            add(slot, edgeTarget[e], i, packedNode(slot, edgeNode[e], z));
+        }
+    }
+
+    // Call from caller u at i, returning to slot with forest w so far; results popped earlier are applied now
+    private int create(int slot, int u, int i, int w) {
+        int v = gssNode(slot, i);
+        if (edgeIndex.put(v, w, u, 0, 0)) {
+            ensureEdges();
+            edgeTarget[edges] = u;
+            edgeNode[edges] = w;
+            edgeNext[edges] = gssEdges[v];
+            gssEdges[v] = edges++;
+            for (int k = gssPopped[v]; k != NONE; k = poppedNext[k]) {
+                int z = poppedNode[k];
+                add(slot, u, nodeRight[z], packedNode(slot, w, z));
+            }
+        }
+        return v;
+    }
+
+    private int gssNode(int slot, int i) {
+        int v = gssIndex.putIfAbsent(slot, i, 0, 0, gssNodes);
+        if (v != NONE) {
+            return v;
+        }
+        if (gssNodes == gssSlot.length) {
+            int capacity = gssNodes * 2;
+            gssSlot = Arrays.copyOf(gssSlot, capacity);
+            gssEdges = Arrays.copyOf(gssEdges, capacity);
+            gssPopped = Arrays.copyOf(gssPopped, capacity);
+        }
+        v = gssNodes++;
+        gssSlot[v] = slot;
+        gssEdges[v] = NONE;
+        gssPopped[v] = NONE;
+        return v;
+    }
+
+    /*
+        The forest for slot after combining w (what came before the last
+        symbol, NONE if nothing) with z (the last symbol's node): z itself
+        after a single non-nullable first symbol, else the intermediate node
+        for the slot, or the symbol node of the production's left-hand side
+        at its end, with a packed node for this split.
+    */
+    private int packedNode(int slot, int w, int z) {
+        int p = slotProduction[slot];
+        int d = slot - slotBase[p];
+        int length = prodOffset[p + 1] - prodOffset[p];
+        if (d == 1 && d < length) {
+            int first = prodRhs[prodOffset[p]];
+            if (first < terminalCount || !nullable[first - terminalCount]) {
+                return z;
+            }
+        }
+        int label = d == length ? prodLhs[p] : grammar.symbolCount() + slot;
+        int pivot = w != NONE ? nodeRight[w] : nodeLeft[z];
+        int left = w != NONE ? nodeLeft[w] : pivot;
+        int y = symbolNode(label, left, nodeRight[z]);
+        for (int k = nodePacked[y]; k != NONE; k = packedNext[k]) {
+            if (packedSlot[k] == slot && packedPivot[k] == pivot) {
+                return y;
+            }
+        }
+        if (packed == packedSlot.length) {
+            int capacity = packed * 2;
+            packedSlot = Arrays.copyOf(packedSlot, capacity);
+            packedPivot = Arrays.copyOf(packedPivot, capacity);
+            packedLeft = Arrays.copyOf(packedLeft, capacity);
+            packedRight = Arrays.copyOf(packedRight, capacity);
+            packedNext = Arrays.copyOf(packedNext, capacity);
+        }
+        packedSlot[packed] = slot;
+        packedPivot[packed] = pivot;
+        packedLeft[packed] = w;
+        packedRight[packed] = z;
+        packedNext[packed] = nodePacked[y];
+        nodePacked[y] = packed++;
+        return y;
+    }
+
+    // Find or add the SPPF node (label, i, j)
+    private int symbolNode(int label, int i, int j) {
+        int n = nodeIndex.putIfAbsent(label, i, j, 0, nodes);
+        if (n != NONE) {
+            return n;
+        }
+        if (nodes == nodeLabel.length) {
+            int capacity = nodes * 2;
+            nodeLabel = Arrays.copyOf(nodeLabel, capacity);
+            nodeLeft = Arrays.copyOf(nodeLeft, capacity);
+            nodeRight = Arrays.copyOf(nodeRight, capacity);
+            nodePacked = Arrays.copyOf(nodePacked, capacity);
+        }
+        n = nodes++;
+        nodeLabel[n] = label;
+        nodeLeft[n] = i;
+        nodeRight[n] = j;
+        nodePacked[n] = NONE;
+        return n;
+    }
+
+    private void ensureEdges() {
+        if (edges == edgeTarget.length) {
+            int capacity = edges * 2;
+            edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+            edgeNode = Arrays.copyOf(edgeNode, capacity);
+            edgeNext = Arrays.copyOf(edgeNext, capacity);
+        }
+    }
+
+    private void ensurePopped() {
+        if (popped == poppedNode.length) {
+            int capacity = popped * 2;
+            poppedNode = Arrays.copyOf(poppedNode, capacity);
+            poppedNext = Arrays.copyOf(poppedNext, capacity);
+        }
+    }
+
+    // SPPF node of the start symbol over the whole input after an accepted parse, or -1
+    public int root() {
+        return root;
+    }
+
+    // Forest size of the last parse: symbol and intermediate nodes, packed nodes
+    public int forestNodes() {
+        return nodes;
+    }
+
+    public int packedNodes() {
+        return packed;
+    }
+
+    // Work of the last parse: descriptors run, GSS nodes and edges
+    public long descriptors() {
+        return descriptors;
+    }
+
+    public int gssNodes() {
+        return gssNodes;
+    }
+
+    public int gssEdges() {
+        return edges;
+    }
+
+    /*
+        Number of parse trees of the last accepted input, or Long.MAX_VALUE
+        if there are more than that (or infinitely many, through a cycle such
+        as A -> A); 0 if it was rejected. Counted bottom-up over the forest
+        without recursion.
+    */
+    public long derivations() {
+        if (root == NONE) {
+            return 0;
+        }
+        long[] counts = new long[nodes];
+        byte[] state = new byte[nodes];    // 0 new, 1 on the path, 2 counted
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int n = stack[top - 1];
+            if (state[n] == 2) {
+                top--;
+                continue;
+            }
+            if (state[n] == 0) {
+                state[n] = 1;
+                for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+                    for (int child : new int[]{packedLeft[k], packedRight[k]}) {
+                        if (child == NONE) {
+                            continue;
+                        }
+                        if (state[child] == 1) {
+                            return Long.MAX_VALUE;   // a cycle: infinitely many trees
+                        }
+                        if (state[child] == 0) {
+                            if (top == stack.length) {
+                                stack = Arrays.copyOf(stack, top * 2);
+                            }
+                            stack[top++] = child;
+                        }
+                    }
+                }
+                continue;
+            }
+            long total = nodePacked[n] == NONE ? 1 : 0;
+            for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+                long left = packedLeft[k] == NONE ? 1 : counts[packedLeft[k]];
+                total = saturatedAdd(total, saturatedMultiply(left, counts[packedRight[k]]));
+            }
+            counts[n] = total;
+            state[n] = 2;
+            top--;
+        }
+        return counts[root];
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    // Nodes reachable from the root that were derived in more than one way
+    public List<String> ambiguities() {
+        List<String> result = new ArrayList<>();
+        if (root == NONE) {
+            return result;
+        }
+        boolean[] reached = new boolean[nodes];
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        reached[root] = true;
+        while (top > 0) {
+            int n = stack[--top];
+            if (nodePacked[n] != NONE && packedNext[nodePacked[n]] != NONE) {
+                result.add(describe(n));
+            }
+            for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+                for (int child : new int[]{packedLeft[k], packedRight[k]}) {
+                    if (child != NONE && !reached[child]) {
+                        reached[child] = true;
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // "X [from, to)" for a symbol node, the production with its dot for an intermediate one, with the ways it was derived
+    private String describe(int n) {
+        StringBuilder sb = new StringBuilder(label(nodeLabel[n]));
+        sb.append(" [").append(spanStart(n)).append(", ").append(spanEnd(n)).append("):");
+        for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+            sb.append(k == nodePacked[n] ? " " : " | ").append(slotString(packedSlot[k]));
+        }
+        return sb.toString();
+    }
+
+    private String label(int label) {
+        if (label == CompiledLL1Table.EPSILON) {
+            return "ε";
+        }
+        return label < grammar.symbolCount() ? grammar.symbolName(label) : slotString(label - grammar.symbolCount());
+    }
+
+    private String slotString(int slot) {
+        int p = slotProduction[slot];
+        int d = slot - slotBase[p];
+        StringBuilder sb = new StringBuilder(grammar.symbolName(prodLhs[p])).append(" ->");
+        for (int k = 0; k <= prodOffset[p + 1] - prodOffset[p]; k++) {
+            if (k == d) {
+                sb.append(" .");
+            }
+            if (k < prodOffset[p + 1] - prodOffset[p]) {
+                sb.append(' ').append(grammar.symbolName(prodRhs[prodOffset[p] + k]));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Character span of a forest node: from its first token's start to its last token's end
+    private int spanStart(int n) {
+        return starts[nodeLeft[n]];
+    }
+
+    private int spanEnd(int n) {
+        return nodeRight[n] > nodeLeft[n] ? ends[nodeRight[n] - 1] : starts[nodeLeft[n]];
+    }
+
+    /*
+        One parse tree out of the forest, into tree: at every ambiguous node
+        the derivation of least height, which also steers clear of cycles
+        (A -> A) in the forest. Node kinds are symbol ids, nonterminals carry
+        their production and spans are character offsets; ε is left out.
+        Returns false (tree left empty) if the last input was rejected.
+    */
+    public boolean extractTree(ParseTreeArena tree) {
+        tree.reset();
+        if (root == NONE) {
+            return false;
+        }
+        int[] height = heights();
+        // Frames: SPPF symbol node and its arena node
+        int[] frameNode = new int[64];
+        int[] frameArena = new int[64];
+        int top = 0;
+        frameNode[top] = root;
+        frameArena[top++] = tree.add(nodeLabel[root], ParseTreeArena.NONE, ParseTreeArena.NONE, spanStart(root));
+        tree.setSpan(0, spanStart(root), spanEnd(root));
+        int[] kids = new int[16];
+        while (top > 0) {
+            int n = frameNode[--top];
+            int parent = frameArena[top];
+
+            // Children of the chosen derivation, right to left through intermediate nodes
+            int k = lowest(n, height);
+            tree.setProduction(parent, slotProduction[packedSlot[k]]);
+            int kidCount = 0;
+            while (true) {
+                if (kidCount + 2 > kids.length) {
+                    kids = Arrays.copyOf(kids, kids.length * 2);
+                }
+                kids[kidCount++] = packedRight[k];
+                int left = packedLeft[k];
+                if (left == NONE) {
+                    break;
+                }
+                if (nodeLabel[left] < grammar.symbolCount()) {
+                    kids[kidCount++] = left;
+                    break;
+                }
+                k = lowest(left, height);
+            }
+            int last = ParseTreeArena.NONE;
+            int first = top;
+            for (int c = kidCount - 1; c >= 0; c--) {
+                int child = kids[c];
+                if (nodeLabel[child] == CompiledLL1Table.EPSILON) {
+                    continue;
+                }
+                last = tree.add(nodeLabel[child], parent, last, spanStart(child));
+                tree.setSpan(last, spanStart(child), spanEnd(child));
+                if (nodeLabel[child] >= terminalCount) {
+                    if (top == frameNode.length) {
+                        frameNode = Arrays.copyOf(frameNode, top * 2);
+                        frameArena = Arrays.copyOf(frameArena, top * 2);
+                    }
+                    frameNode[top] = child;
+                    frameArena[top++] = last;
+                }
+            }
+            // Expand the children left to right: reverse the frames just pushed
+            for (int lo = first, hi = top - 1; lo < hi; lo++, hi--) {
+                int t = frameNode[lo];
+                frameNode[lo] = frameNode[hi];
+                frameNode[hi] = t;
+                t = frameArena[lo];
+                frameArena[lo] = frameArena[hi];
+                frameArena[hi] = t;
+            }
+        }
+        return true;
+    }
+
+    /*
+        Height of the lowest tree each forest node derives (leaves 0), by
+        relaxing every packed node until nothing changes. Children are
+        mostly created before their parents, so a few sweeps suffice.
+    */
+    private int[] heights() {
+        int[] height = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            height[n] = nodePacked[n] == NONE ? 0 : Integer.MAX_VALUE;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int n = 0; n < nodes; n++) {
+                for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+                    int h = height[packedRight[k]];
+                    if (packedLeft[k] != NONE) {
+                        h = Math.max(h, height[packedLeft[k]]);
+                    }
+                    if (h != Integer.MAX_VALUE && h + 1 < height[n]) {
+                        height[n] = h + 1;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return height;
+    }
+
+    // The packed node of n with the lowest children
+    private int lowest(int n, int[] height) {
+        int best = nodePacked[n];
+        int bestHeight = Integer.MAX_VALUE;
+        for (int k = nodePacked[n]; k != NONE; k = packedNext[k]) {
+            int h = height[packedRight[k]];
+            if (packedLeft[k] != NONE) {
+                h = Math.max(h, height[packedLeft[k]]);
+            }
+            if (h < bestHeight) {
+                best = k;
+                bestHeight = h;
+            }
+        }
+        return best;
+    }
+
+    /*
+        Open-addressing map from four int keys to an int value (NONE when
+        absent); put() adds a key with value 0 and reports whether it was new,
+        putIfAbsent() returns the value already there or adds the key.
+        Cleared in place between parses. A map built with a position key may
+        be told that keys with a smaller position will not be asked for
+        again: they stay in the table, as if deleted, until the next rehash
+        drops them, so the table grows with the live keys only.
+    */
+    static final class QuadMap {
+        private final int positionKey;
+        private int[] keys = new int[4 * 64];
+        private int[] values = new int[64];
+        private boolean[] used = new boolean[64];
+        private int size;
+        private int floor;
+        // The arrays before the last rehash that dropped keys, reused by the next one of the same size
+        private int[] spareKeys = new int[0];
+        private int[] spareValues = new int[0];
+        private boolean[] spareUsed = new boolean[0];
+
+        QuadMap() {
+            this(NONE);
+        }
+
+        // positionKey: which of the four keys (0-3) is a position, for discardBelow
+        QuadMap(int positionKey) {
+            this.positionKey = positionKey;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(used, false);
+                size = 0;
+            }
+            floor = 0;
+        }
+
+        void discardBelow(int position) {
+            floor = position;
+        }
+
+        int get(int a, int b, int c, int d) {
+            int mask = values.length - 1;
+            for (int s = hash(a, b, c, d) & mask; used[s]; s = (s + 1) & mask) {
+                if (keys[4 * s] == a && keys[4 * s + 1] == b && keys[4 * s + 2] == c && keys[4 * s + 3] == d) {
+                    return values[s];
+                }
+            }
+            return NONE;
+        }
+
+        boolean put(int a, int b, int c, int d, int value) {
+            return putIfAbsent(a, b, c, d, value) == NONE;
+        }
+
+        int putIfAbsent(int a, int b, int c, int d, int value) {
+            if (2 * (size + 1) > values.length) {
+                rehash();
+            }
+            int mask = values.length - 1;
+            int s = hash(a, b, c, d) & mask;
+            while (used[s]) {
+                if (keys[4 * s] == a && keys[4 * s + 1] == b && keys[4 * s + 2] == c && keys[4 * s + 3] == d) {
+                    return values[s];
+                }
+                s = (s + 1) & mask;
+            }
+            used[s] = true;
+            keys[4 * s] = a;
+            keys[4 * s + 1] = b;
+            keys[4 * s + 2] = c;
+            keys[4 * s + 3] = d;
+            values[s] = value;
+            size++;
+            return NONE;
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            int live = size;
+            if (positionKey != NONE) {
+                live = 0;
+                for (int s = 0; s < oldUsed.length; s++) {
+                    if (oldUsed[s] && oldKeys[4 * s + positionKey] >= floor) {
+                        live++;
+                    }
+                }
+            }
+            int capacity = 4 * (live + 1) > oldValues.length ? oldValues.length * 2 : oldValues.length;
+            if (capacity == spareValues.length) {
+                keys = spareKeys;
+                values = spareValues;
+                used = spareUsed;
+                Arrays.fill(used, false);
+            } else {
+                keys = new int[4 * capacity];
+                values = new int[capacity];
+                used = new boolean[capacity];
+            }
+            if (capacity == oldValues.length) {
+                spareKeys = oldKeys;
+                spareValues = oldValues;
+                spareUsed = oldUsed;
+            }
+            size = 0;
+            for (int s = 0; s < oldUsed.length; s++) {
+                if (oldUsed[s] && (positionKey == NONE || oldKeys[4 * s + positionKey] >= floor)) {
+                    putIfAbsent(oldKeys[4 * s], oldKeys[4 * s + 1], oldKeys[4 * s + 2], oldKeys[4 * s + 3], oldValues[s]);
+                }
+            }
+        }
+
+        private static int hash(int a, int b, int c, int d) {
+            int h = a * 0x9E3779B1 + b;
+            h = h * 0x85EBCA6B + c;
+            h = h * 0xC2B2AE35 + d;
+            h ^= h >>> 16;
+            h *= 0x7FEB352D;
+            return h ^ (h >>> 15);
+        }
+    }
+
+    // An ambiguous and a left-recursive grammar that the LL(1) table cannot parse correctly
+    public static void main(String[] args) {
+        LL1ParserGrammar ambiguous = new LL1ParserGrammar("");
+        ambiguous.loadGrammar(List.of("E -> E + E | E * E | ( E ) | i"));
+        ambiguous.computeFirstFollow();
+        ambiguous.buildParsingTable();
+        System.out.println("E -> E + E | E * E | ( E ) | i");
+        for (String conflict : ambiguous.conflicts()) {
+            System.out.println("  LL(1) conflict " + conflict);
+        }
+        GllParser gll = new GllParser(ambiguous.compile());
+        for (String input : new String[]{"i+i*i", "i+i+i+i", "(i+i)*i", "i+*i"}) {
+            int result = gll.parse(input);
+            System.out.printf("%-10s LL(1): %-8s GLL: %s%n", input,
+                    ambiguous.compile().parse(input) == CompiledLL1Table.ACCEPT ? "accepted" : "rejected",
+                    result == ACCEPT ? gll.derivations() + " parse trees, " + gll.forestNodes() + " forest nodes, "
+                            + gll.packedNodes() + " packed" : "error at " + result);
+        }
+        gll.parse("i+i*i");
+        System.out.println("ambiguous nodes of i+i*i:");
+        for (String node : gll.ambiguities()) {
+            System.out.println("  " + node);
+        }
+        ParseTreeArena tree = new ParseTreeArena();
+        gll.extractTree(tree);
+        System.out.println("one of its trees:");
+        tree.visit(new ParseTreeVisitor() {
+            private int depth;
+
+            @Override
+            public boolean enter(ParseTreeArena t, int n) {
+                System.out.println("  ".repeat(++depth) + gll.grammar().symbolName(t.kind(n))
+                        + " " + "i+i*i".substring(t.start(n), t.end(n)));
+                return true;
+            }
+
+            @Override
+            public void leave(ParseTreeArena t, int n) {
+                depth--;
+            }
+        });
+
+        // Unambiguous but left-recursive, on a long input: close to linear
+        LL1ParserGrammar leftRecursive = new LL1ParserGrammar("");
+        leftRecursive.loadGrammar(List.of(
+                "E -> E + T | E - T | T",
+                "T -> T * F | T / F | F",
+                "F -> ( E ) | i"));
+        leftRecursive.computeFirstFollow();
+        leftRecursive.buildParsingTable();
+        GllParser lr = new GllParser(leftRecursive.compile());
+        for (int n : new int[]{1_000, 10_000, 100_000}) {
+            StringBuilder sb = new StringBuilder("i");
+            for (int k = 1; k < n; k++) {
+                sb.append(k % 3 == 0 ? "*(i-i)" : "+i");
+            }
+            long start = System.nanoTime();
+            int result = lr.parse(sb);
+            System.out.printf("%7d operands: %s, %d descriptors, %d GSS nodes, %d forest nodes, %.1f ms%n",
+                    n, result == ACCEPT ? lr.derivations() + " tree" : "error at " + result, lr.descriptors(),
+                    lr.gssNodes(), lr.forestNodes(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
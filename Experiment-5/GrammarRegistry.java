@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/*
+    Cache of analysed grammars: FIRST/FOLLOW, the parsing table and its
+    CompiledLL1Table, built once per grammar and shared by every caller that
+    asks for the same rules.
+
+    A grammar is keyed by the SHA-256 of its rules in canonical form (see
+    LL1ParserGrammar.canonicalText()), so comments, blank lines, spacing and
+    how alternatives are split over '|' lines do not matter; a request only
+    reads the rules and hashes them, which costs far less than the analysis.
+
+    At most `capacity` grammars are kept, least recently used evicted first.
+    When several threads ask for a grammar that is not there, the first one
+    builds it and the others wait for that build instead of repeating it. A
+    grammar that fails to load or analyse is not cached; every waiter gets
+    the exception.
+
+    An Analysis is immutable and may be shared by any number of threads:
+    parse with its table (one Cursor per thread), or take an LL1ParserGrammar
+    already set up with it from newGrammar().
+*/
+public final class GrammarRegistry {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+
+    // Builds by key, in access order; guarded by `this`
+    private final LinkedHashMap<String, FutureTask<Analysis>> entries;
+
+    // Counters; guarded by `this`
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long failures;
+    private long buildNanos;
+
+    public GrammarRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GrammarRegistry(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Analysis>> eldest) {
+                if (size() > GrammarRegistry.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // The analysis of a grammar file (see LL1ParserGrammar.loadGrammar)
+    public Analysis get(Path file) throws IOException {
+        return get(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    // The analysis of the grammar in lines, built on the first request
+    public Analysis get(List<String> lines) {
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.loadGrammar(lines);
+        return get(grammar);
+    }
+
+    /*
+        The analysis of the rules currently loaded in grammar. On a miss the
+        grammar itself is analysed (computeFirstFollow, buildParsingTable,
+        compile), so it must not be used by another thread meanwhile.
+    */
+    public Analysis get(LL1ParserGrammar grammar) {
+        String key = digest(grammar.canonicalText());
+        FutureTask<Analysis> build;
+        boolean owner = false;
+        synchronized (this) {
+            build = entries.get(key);
+            if (build != null) {
+                hits++;
+            } else {
+                misses++;
+                build = new FutureTask<>(() -> analyse(grammar, key));
+                entries.put(key, build);
+                owner = true;
+            }
+        }
+        if (owner) {
+            long start = System.nanoTime();
+            build.run();
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                buildNanos += elapsed;
+            }
+        }
+        try {
+            return build.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while grammar " + key + " was being built", e);
+        } catch (ExecutionException e) {
+            if (owner) {
+                synchronized (this) {
+                    failures++;
+                    entries.remove(key, build);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static Analysis analyse(LL1ParserGrammar grammar, String key) {
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        return grammar.snapshot(key);
+    }
+
+    // Hex SHA-256 of the canonical text
+    static String digest(String text) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+
+    // True if the grammar with this key is cached (or being built); does not count as a use
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Drop every cached grammar; counters are kept
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, failures, entries.size(), buildNanos);
+    }
+
+    /*
+        FIRST/FOLLOW sets, parsing table and compiled table of one grammar.
+        The collections are read-only views; CompiledLL1Table is immutable.
+    */
+    public static final class Analysis {
+        public final String key;
+        final Map<String, List<String[]>> grammar;
+        final Set<String> terminals;
+        final Set<String> nonTerminals;
+        final String startSymbol;
+        final Map<String, Set<String>> first;
+        final Map<String, Set<String>> follow;
+        final Map<String, Map<String, String[]>> parsingTable;
+        final List<String> conflicts;
+        private final CompiledLL1Table table;
+
+        Analysis(String key, Map<String, List<String[]>> grammar, Set<String> terminals, Set<String> nonTerminals,
+                 String startSymbol, Map<String, Set<String>> first, Map<String, Set<String>> follow,
+                 Map<String, Map<String, String[]>> parsingTable, List<String> conflicts, CompiledLL1Table table) {
+            this.key = key;
+            Map<String, List<String[]>> rules = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String[]>> rule : grammar.entrySet()) {
+                rules.put(rule.getKey(), List.copyOf(rule.getValue()));
+            }
+            this.grammar = Collections.unmodifiableMap(rules);
+            this.terminals = Collections.unmodifiableSet(new TreeSet<>(terminals));
+            this.nonTerminals = Collections.unmodifiableSet(new LinkedHashSet<>(nonTerminals));
+            this.startSymbol = startSymbol;
+            this.first = readOnly(first);
+            this.follow = readOnly(follow);
+            Map<String, Map<String, String[]>> rows = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, String[]>> row : parsingTable.entrySet()) {
+                rows.put(row.getKey(), Collections.unmodifiableMap(new HashMap<>(row.getValue())));
+            }
+            this.parsingTable = Collections.unmodifiableMap(rows);
+            this.conflicts = List.copyOf(conflicts);
+            this.table = table;
+        }
+
+        private static Map<String, Set<String>> readOnly(Map<String, Set<String>> sets) {
+            Map<String, Set<String>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Set<String>> set : sets.entrySet()) {
+                copy.put(set.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(set.getValue())));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+
+        public CompiledLL1Table table() {
+            return table;
+        }
+
+        public String startSymbol() {
+            return startSymbol;
+        }
+
+        public Set<String> first(String nonTerminal) {
+            return first.get(nonTerminal);
+        }
+
+        public Set<String> follow(String nonTerminal) {
+            return follow.get(nonTerminal);
+        }
+
+        // LL(1) conflicts of the grammar (see LL1ParserGrammar.conflicts())
+        public List<String> conflicts() {
+            return conflicts;
+        }
+
+        // A grammar on input with these rules and tables, ready to parse without analysing again
+        public LL1ParserGrammar newGrammar(String input) {
+            LL1ParserGrammar grammar = new LL1ParserGrammar(input);
+            grammar.adopt(this);
+            return grammar;
+        }
+    }
+
+    // Counters of a registry since it was created
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long failures;
+        public final int size;
+        public final long buildNanos;
+
+        Stats(long hits, long misses, long evictions, long failures, int size, long buildNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.failures = failures;
+            this.size = size;
+            this.buildNanos = buildNanos;
+        }
+
+        public long requests() {
+            return hits + misses;
+        }
+
+        public double hitRate() {
+            return requests() == 0 ? 0 : (double) hits / requests();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d failures;"
+                            + " %d cached, %.1f ms building",
+                    requests(), hits, misses, 100 * hitRate(), evictions, failures, size, buildNanos / 1e6);
+        }
+    }
+
+    // Many threads asking for a few grammars through a small registry
+    public static void main(String[] args) throws Exception {
+        List<String> expr = Files.readAllLines(Path.of(args.length > 0 ? args[0] : "expr.grammar"));
+        List<List<String>> grammars = new ArrayList<>();
+        grammars.add(expr);
+        // The same rules written differently hash to the same key
+        grammars.add(List.of("E -> T E'", "E' -> + T E'", "  | - T E' | epsilon",
+                "T -> F T'", "T' -> * F T' | / F T' | ε", "F -> ( E ) | i"));
+        for (int g = 1; g <= 4; g++) {
+            grammars.add(List.of("S -> a" + g + " S | b", "X -> c X | ε"));
+        }
+
+        GrammarRegistry registry = new GrammarRegistry(4);
+        int threads = 8;
+        int requests = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<java.util.concurrent.Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                Random random = new Random(seed);
+                int accepted = 0;
+                for (int r = 0; r < requests; r++) {
+                    // Mostly the expression grammar, sometimes one of the others
+                    int g = random.nextInt(10) < 8 ? random.nextInt(2) : 2 + random.nextInt(2);
+                    Analysis analysis = registry.get(grammars.get(g));
+                    if (g < 2 && analysis.table().parse("i+i*(i-i)", ParseListener.SILENT) == CompiledLL1Table.ACCEPT) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+        start.countDown();
+        int accepted = 0;
+        for (java.util.concurrent.Future<Integer> result : results) {
+            accepted += result.get();
+        }
+        pool.shutdown();
+        System.out.println(threads + " threads, " + accepted + " expressions accepted");
+        System.out.println(registry.stats());
+
+        // A fourth and fifth grammar: the fifth pushes out the least recently used one
+        registry.get(grammars.get(4));
+        registry.get(grammars.get(5));
+        System.out.println(registry.stats());
+
+        Analysis analysis = registry.get(expr);
+        System.out.println("FIRST(E) = " + analysis.first("E") + ", FOLLOW(E) = " + analysis.follow("E"));
+        LL1ParserGrammar parser = analysis.newGrammar("i+i*i$");
+        parser.parse();
+    }
+}
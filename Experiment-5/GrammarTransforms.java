@@ -0,0 +1,537 @@
+import java.util.*;
+
+/*
+    Grammar rewrites that turn grammars into a form LL1ParserGrammar can
+    build a table for. Grammars use the LL1ParserGrammar representation:
+    non-terminal -> alternatives, each a String[] of symbols, {"ε"} for the
+    empty string. Inputs are never modified; every pass returns a new
+    grammar (in a LinkedHashMap, new non-terminals right after the rule they
+    came from) together with a report of what was rewritten.
+
+    eliminateLeftRecursion()
+        A is left-recursive if A =>+ A α. Left corners are followed through
+        nullable prefixes, so hidden recursion (A -> B A x with B nullable)
+        counts too. Only the strongly connected components of the left-corner
+        graph that contain a cycle are rewritten, with the standard ordering
+        algorithm: for A1..Am in grammar order, substitute Aj's alternatives
+        into Ai -> Aj γ for j < i, then remove Ai's direct recursion
+            A -> A α | β    becomes    A -> β A',  A' -> α A' | ε
+        The ordering algorithm needs a grammar without ε-productions and
+        cycles. When a nullable symbol takes part in the recursion, the
+        ε-productions are removed first (a new start symbol keeps ε in the
+        language), and the cyclic alternatives A -> A left by the
+        substitution are dropped, since they add no strings.
+
+    leftFactor()
+        The alternatives of each non-terminal are inserted into a prefix trie.
+        A trie node where alternatives part ways (two or more branches, or an
+        alternative ending there while others go on) becomes a fresh
+        non-terminal:
+            A -> a b X | a b Y | a c    becomes    A -> a A',  A' -> b A'' | c,  A'' -> X | Y
+        Every symbol is inserted and emitted once, so the pass is linear in
+        the size of the grammar. Only literal common prefixes are factored;
+        alternatives that merely derive a common prefix still conflict.
+*/
+public final class GrammarTransforms {
+
+    private static final String[] EPSILON = {"ε"};
+
+    // A rewritten grammar and one line per change
+    public static final class Result {
+        public final Map<String, List<String[]>> grammar;
+        public final String startSymbol;
+        public final List<String> report;
+
+        Result(Map<String, List<String[]>> grammar, String startSymbol, List<String> report) {
+            this.grammar = grammar;
+            this.startSymbol = startSymbol;
+            this.report = report;
+        }
+    }
+
+    private GrammarTransforms() {
+    }
+
+    // Non-terminals A with A =>+ A α, in grammar order
+    public static Set<String> leftRecursive(Map<String, List<String[]>> grammar) {
+        Map<String, List<String[]>> rules = copy(grammar);
+        Set<String> result = new LinkedHashSet<>();
+        for (List<String> component : recursiveComponents(rules, nullable(rules))) {
+            result.addAll(component);
+        }
+        return result;
+    }
+
+    // Remove direct and indirect left recursion
+    public static Result eliminateLeftRecursion(Map<String, List<String[]>> grammar, String startSymbol) {
+        Map<String, List<String[]>> rules = copy(grammar);
+        List<String> report = new ArrayList<>();
+        Names names = new Names(rules);
+        Map<String, String> placement = new HashMap<>();
+
+        Set<String> nullable = nullable(rules);
+        List<List<String>> components = recursiveComponents(rules, nullable);
+        if (components.isEmpty()) {
+            return new Result(output(rules, placement), startSymbol, report);
+        }
+
+        if (needsEpsilonRemoval(rules, nullable, components)) {
+            startSymbol = removeEpsilon(rules, nullable, startSymbol, names, report);
+        } else {
+            removeNonGenerating(rules, startSymbol, report);
+        }
+        startSymbol = mergeUnitCycles(rules, startSymbol, report);
+        components = recursiveComponents(rules, nullable(rules));
+
+        for (List<String> component : components) {
+            for (int i = 0; i < component.size(); i++) {
+                String a = component.get(i);
+                for (int j = 0; j < i; j++) {
+                    substitute(rules, a, component.get(j), report);
+                }
+                removeDirectRecursion(rules, a, names, placement, report);
+            }
+        }
+        return new Result(output(rules, placement), startSymbol, report);
+    }
+
+    // Factor the common prefixes out of every non-terminal's alternatives
+    public static Result leftFactor(Map<String, List<String[]>> grammar, String startSymbol) {
+        Map<String, List<String[]>> rules = copy(grammar);
+        List<String> report = new ArrayList<>();
+        Names names = new Names(rules);
+        Map<String, List<String[]>> factored = new LinkedHashMap<>();
+
+        ArrayDeque<String> pendingNames = new ArrayDeque<>();
+        ArrayDeque<TrieNode> pendingNodes = new ArrayDeque<>();
+        for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+            TrieNode root = new TrieNode();
+            for (String[] alt : rule.getValue()) {
+                TrieNode node = root;
+                for (String symbol : alt) {
+                    node = node.children.computeIfAbsent(symbol, k -> new TrieNode());
+                }
+                node.end = true;
+            }
+
+            // A rule and the rules split off it are emitted together, in order
+            pendingNames.add(rule.getKey());
+            pendingNodes.add(root);
+            while (!pendingNames.isEmpty()) {
+                String lhs = pendingNames.poll();
+                TrieNode node = pendingNodes.poll();
+                List<String[]> alts = new ArrayList<>();
+                for (Map.Entry<String, TrieNode> edge : node.children.entrySet()) {
+                    List<String> prefix = new ArrayList<>();
+                    prefix.add(edge.getKey());
+                    TrieNode m = edge.getValue();
+                    while (!m.end && m.children.size() == 1) {
+                        Map.Entry<String, TrieNode> only = m.children.entrySet().iterator().next();
+                        prefix.add(only.getKey());
+                        m = only.getValue();
+                    }
+                    if (!m.children.isEmpty()) {
+                        String rest = names.fresh(rule.getKey());
+                        report.add(lhs + ": factored out " + String.join(" ", prefix) + " into " + rest);
+                        prefix.add(rest);
+                        pendingNames.add(rest);
+                        pendingNodes.add(m);
+                    }
+                    alts.add(prefix.toArray(new String[0]));
+                }
+                if (node.end) {
+                    alts.add(new String[0]);
+                }
+                factored.put(lhs, alts);
+            }
+        }
+        return new Result(output(factored, Collections.emptyMap()), startSymbol, report);
+    }
+
+    private static final class TrieNode {
+        final Map<String, TrieNode> children = new LinkedHashMap<>(4);
+        boolean end;
+    }
+
+    // Ai -> Aj γ becomes Ai -> δ γ for every Aj -> δ
+    private static void substitute(Map<String, List<String[]>> rules, String a, String b, List<String> report) {
+        List<String[]> result = new ArrayList<>();
+        boolean changed = false;
+        for (String[] alt : rules.get(a)) {
+            if (alt.length > 0 && alt[0].equals(b)) {
+                for (String[] delta : rules.get(b)) {
+                    result.add(concat(delta, alt, 1));
+                }
+                changed = true;
+            } else {
+                result.add(alt);
+            }
+        }
+        if (changed) {
+            rules.put(a, dedupe(result));
+            report.add(a + ": substituted the alternatives of " + b);
+        }
+    }
+
+    // A -> A α | β  becomes  A -> β A',  A' -> α A' | ε
+    private static void removeDirectRecursion(Map<String, List<String[]>> rules, String a, Names names,
+                                              Map<String, String> placement, List<String> report) {
+        List<String[]> recursive = new ArrayList<>();
+        List<String[]> others = new ArrayList<>();
+        boolean cycle = false;
+        for (String[] alt : rules.get(a)) {
+            if (alt.length > 0 && alt[0].equals(a)) {
+                if (alt.length == 1) {
+                    cycle = true;   // A -> A
+                } else {
+                    recursive.add(Arrays.copyOfRange(alt, 1, alt.length));
+                }
+            } else {
+                others.add(alt);
+            }
+        }
+        if (cycle) {
+            report.add(a + ": dropped the cyclic alternative " + a + " -> " + a);
+        }
+        if (recursive.isEmpty()) {
+            rules.put(a, others);
+            return;
+        }
+        if (others.isEmpty()) {
+            throw new IllegalArgumentException(a + " has only left-recursive alternatives and derives no string");
+        }
+
+        String tail = names.fresh(a);
+        String[] tailRef = {tail};
+        List<String[]> head = new ArrayList<>();
+        for (String[] beta : others) {
+            head.add(concat(beta, tailRef, 0));
+        }
+        List<String[]> tailRules = new ArrayList<>();
+        for (String[] alpha : recursive) {
+            tailRules.add(concat(alpha, tailRef, 0));
+        }
+        tailRules.add(new String[0]);
+        rules.put(a, head);
+        rules.put(tail, tailRules);
+        placement.put(a, tail);
+        report.add(a + ": removed direct left recursion with " + a + " -> β " + tail + ", " + tail + " -> α " + tail + " | ε");
+    }
+
+    // A nullable symbol in a recursive rule can hide left recursion, or leave a nullable α in A' -> α A'
+    private static boolean needsEpsilonRemoval(Map<String, List<String[]>> rules, Set<String> nullable, List<List<String>> components) {
+        for (List<String> component : components) {
+            for (String a : component) {
+                for (String[] alt : rules.get(a)) {
+                    for (String symbol : alt) {
+                        if (nullable.contains(symbol)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Replace every alternative by its variants without nullable symbols; returns the start symbol
+    private static String removeEpsilon(Map<String, List<String[]>> rules, Set<String> nullable, String start,
+                                        Names names, List<String> report) {
+        for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+            List<String[]> result = new ArrayList<>();
+            for (String[] alt : rule.getValue()) {
+                expandNullable(alt, 0, new ArrayList<>(), nullable, result);
+            }
+            rule.setValue(dedupe(result));
+        }
+
+        report.add("removed ε-productions from nullable non-terminals " + nullable);
+        // Non-terminals that derived only ε now derive nothing
+        removeNonGenerating(rules, nullable.contains(start) ? null : start, report);
+
+        if (nullable.contains(start)) {
+            String newStart = names.fresh(start);
+            List<String[]> alts = new ArrayList<>();
+            if (rules.containsKey(start)) {
+                alts.add(new String[]{start});
+            }
+            alts.add(new String[0]);
+            Map<String, List<String[]>> reordered = new LinkedHashMap<>();
+            reordered.put(newStart, alts);
+            reordered.putAll(rules);
+            rules.clear();
+            rules.putAll(reordered);
+            report.add(newStart + ": new start symbol, " + newStart + " -> " + start + " | ε");
+            return newStart;
+        }
+        return start;
+    }
+
+    private static void expandNullable(String[] alt, int i, List<String> prefix, Set<String> nullable, List<String[]> out) {
+        if (i == alt.length) {
+            if (!prefix.isEmpty()) {
+                out.add(prefix.toArray(new String[0]));
+            }
+            return;
+        }
+        prefix.add(alt[i]);
+        expandNullable(alt, i + 1, prefix, nullable, out);
+        prefix.remove(prefix.size() - 1);
+        if (nullable.contains(alt[i])) {
+            expandNullable(alt, i + 1, prefix, nullable, out);
+        }
+    }
+
+    // Drop the non-terminals that derive no string, and every alternative using them
+    private static void removeNonGenerating(Map<String, List<String[]>> rules, String start, List<String> report) {
+        Set<String> generating = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+                if (generating.contains(rule.getKey())) {
+                    continue;
+                }
+                for (String[] alt : rule.getValue()) {
+                    if (derivesString(alt, rules, generating)) {
+                        generating.add(rule.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        Set<String> dead = new LinkedHashSet<>(rules.keySet());
+        dead.removeAll(generating);
+        if (dead.isEmpty()) {
+            return;
+        }
+        if (dead.contains(start)) {
+            throw new IllegalArgumentException("start symbol " + start + " derives no string");
+        }
+        for (List<String[]> alts : rules.values()) {
+            alts.removeIf(alt -> !Collections.disjoint(Arrays.asList(alt), dead));
+        }
+        rules.keySet().removeAll(dead);
+        report.add("removed " + dead + ", which derive no string");
+    }
+
+    private static boolean derivesString(String[] alt, Map<String, List<String[]>> rules, Set<String> generating) {
+        for (String symbol : alt) {
+            if (rules.containsKey(symbol) && !generating.contains(symbol)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Non-terminals on a cycle of unit alternatives (A -> B, B -> A) derive the same strings:
+    // rename each cycle to one member (the start symbol if it is there) and drop A -> A
+    private static String mergeUnitCycles(Map<String, List<String[]>> rules, String start, List<String> report) {
+        List<String> order = new ArrayList<>(rules.keySet());
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            index.put(order.get(i), i);
+        }
+        FirstFollowEngine.IntGraph graph = new FirstFollowEngine.IntGraph(order.size());
+        for (int a = 0; a < order.size(); a++) {
+            for (String[] alt : rules.get(order.get(a))) {
+                Integer b = alt.length == 1 ? index.get(alt[0]) : null;
+                if (b != null) {
+                    graph.add(a, b);
+                }
+            }
+        }
+        graph.freeze();
+        FirstFollowEngine.Components components = new FirstFollowEngine.Components(graph);
+
+        String[] representative = new String[components.count];
+        for (int a = 0; a < order.size(); a++) {
+            int c = components.component[a];
+            if (representative[c] == null || order.get(a).equals(start)) {
+                representative[c] = order.get(a);
+            }
+        }
+        Map<String, String> rename = new HashMap<>();
+        for (int a = 0; a < order.size(); a++) {
+            String to = representative[components.component[a]];
+            if (!to.equals(order.get(a))) {
+                rename.put(order.get(a), to);
+            }
+        }
+        for (int a = 0; a < order.size(); a++) {
+            for (String[] alt : rules.get(order.get(a))) {
+                if (alt.length == 1 && alt[0].equals(order.get(a))) {
+                    rename.putIfAbsent(order.get(a), order.get(a));   // a lone A -> A
+                }
+            }
+        }
+        if (rename.isEmpty()) {
+            return start;
+        }
+
+        Map<String, List<String[]>> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+            String lhs = rename.getOrDefault(rule.getKey(), rule.getKey());
+            List<String[]> alts = merged.computeIfAbsent(lhs, k -> new ArrayList<>());
+            for (String[] alt : rule.getValue()) {
+                String[] renamed = alt.clone();
+                for (int i = 0; i < renamed.length; i++) {
+                    renamed[i] = rename.getOrDefault(renamed[i], renamed[i]);
+                }
+                if (!(renamed.length == 1 && renamed[0].equals(lhs))) {
+                    alts.add(renamed);
+                }
+            }
+        }
+        for (Map.Entry<String, List<String[]>> rule : merged.entrySet()) {
+            rule.setValue(dedupe(rule.getValue()));
+        }
+        rules.clear();
+        rules.putAll(merged);
+        for (Map.Entry<String, String> r : new TreeMap<>(rename).entrySet()) {
+            report.add(r.getKey().equals(r.getValue())
+                    ? r.getKey() + ": dropped the cyclic alternative " + r.getKey() + " -> " + r.getKey()
+                    : r.getKey() + ": merged into " + r.getValue() + " (unit cycle)");
+        }
+        return start;
+    }
+
+    // Strongly connected components of the left-corner graph that contain a cycle, in grammar order
+    private static List<List<String>> recursiveComponents(Map<String, List<String[]>> rules, Set<String> nullable) {
+        List<String> order = new ArrayList<>(rules.keySet());
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            index.put(order.get(i), i);
+        }
+        FirstFollowEngine.IntGraph graph = new FirstFollowEngine.IntGraph(order.size());
+        boolean[] selfLoop = new boolean[order.size()];
+        for (int a = 0; a < order.size(); a++) {
+            for (String[] alt : rules.get(order.get(a))) {
+                for (String symbol : alt) {
+                    Integer b = index.get(symbol);
+                    if (b == null) {
+                        break;   // a terminal ends the left corners
+                    }
+                    graph.add(a, b);
+                    selfLoop[a] |= a == b;
+                    if (!nullable.contains(symbol)) {
+                        break;
+                    }
+                }
+            }
+        }
+        graph.freeze();
+        FirstFollowEngine.Components components = new FirstFollowEngine.Components(graph);
+
+        int[] size = new int[components.count];
+        for (int a = 0; a < order.size(); a++) {
+            size[components.component[a]]++;
+        }
+        Map<Integer, List<String>> byComponent = new LinkedHashMap<>();
+        for (int a = 0; a < order.size(); a++) {
+            int c = components.component[a];
+            if (size[c] > 1 || selfLoop[a]) {
+                byComponent.computeIfAbsent(c, k -> new ArrayList<>()).add(order.get(a));
+            }
+        }
+        return new ArrayList<>(byComponent.values());
+    }
+
+    private static Set<String> nullable(Map<String, List<String[]>> rules) {
+        Set<String> nullable = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+                if (nullable.contains(rule.getKey())) {
+                    continue;
+                }
+                for (String[] alt : rule.getValue()) {
+                    if (nullable.containsAll(Arrays.asList(alt))) {
+                        nullable.add(rule.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return nullable;
+    }
+
+    // Working copy with ε as an empty array
+    private static Map<String, List<String[]>> copy(Map<String, List<String[]>> grammar) {
+        Map<String, List<String[]>> rules = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String[]>> rule : grammar.entrySet()) {
+            List<String[]> alts = new ArrayList<>();
+            for (String[] alt : rule.getValue()) {
+                alts.add(alt.length == 1 && alt[0].equals("ε") ? new String[0] : alt.clone());
+            }
+            rules.put(rule.getKey(), alts);
+        }
+        return rules;
+    }
+
+    // Back to the LL1ParserGrammar form, ε as {"ε"}; placement puts a new rule right after its origin
+    private static Map<String, List<String[]>> output(Map<String, List<String[]>> rules, Map<String, String> placement) {
+        Set<String> placed = new HashSet<>(placement.values());
+        Map<String, List<String[]>> grammar = new LinkedHashMap<>();
+        for (String name : rules.keySet()) {
+            if (placed.contains(name)) {
+                continue;
+            }
+            for (String n = name; n != null; n = placement.get(n)) {
+                List<String[]> alts = new ArrayList<>();
+                for (String[] alt : rules.get(n)) {
+                    alts.add(alt.length == 0 ? EPSILON.clone() : alt);
+                }
+                grammar.put(n, alts);
+            }
+        }
+        return grammar;
+    }
+
+    private static String[] concat(String[] head, String[] rest, int from) {
+        String[] result = Arrays.copyOf(head, head.length + rest.length - from);
+        System.arraycopy(rest, from, result, head.length, rest.length - from);
+        return result;
+    }
+
+    private static List<String[]> dedupe(List<String[]> alts) {
+        Set<List<String>> seen = new HashSet<>();
+        List<String[]> result = new ArrayList<>();
+        for (String[] alt : alts) {
+            if (seen.add(Arrays.asList(alt))) {
+                result.add(alt);
+            }
+        }
+        return result;
+    }
+
+    // Fresh non-terminal names: A', A'', then A'3, A'4, ... so a long run stays linear
+    private static final class Names {
+        private final Set<String> used = new HashSet<>();
+        private final Map<String, Integer> next = new HashMap<>();
+
+        Names(Map<String, List<String[]>> rules) {
+            for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+                used.add(rule.getKey());
+                for (String[] alt : rule.getValue()) {
+                    used.addAll(Arrays.asList(alt));
+                }
+            }
+        }
+
+        String fresh(String base) {
+            int k = next.getOrDefault(base, 1);
+            String name;
+            do {
+                name = k == 1 ? base + "'" : k == 2 ? base + "''" : base + "'" + k;
+                k++;
+            } while (used.contains(name));
+            next.put(base, k);
+            used.add(name);
+            return name;
+        }
+    }
+}
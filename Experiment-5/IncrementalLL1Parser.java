@@ -0,0 +1,595 @@
+import java.util.Arrays;
+
+/*
+    Incremental LL(1) parsing of a document that is edited in place.
+
+    The parser keeps the document, its tokens and the parse tree of the
+    last parse, and edit(offset, removed, inserted) brings all three up to
+    date by reparsing only around the edit:
+
+      - Resuming. Every token records the node on top of the parse stack
+        when it became the lookahead, and every node the node below it on
+        the stack (its next sibling, or for a last child whatever was below
+        its parent), so the whole stack at a token is one int. A token is
+        read by longest match, which looks at the blanks before it and at
+        most maxLength characters from its start: that is the lookahead
+        extent of each token, and of each node the extents of the tokens it
+        read plus the token after it. Parsing resumes at the first token
+        whose extent reaches the edit; everything before it stands.
+      - Reusing. Past the edit, tokens are lexed only until one starts
+        where an old token started; from there the old tokens are read
+        back. An old node met on the stack at that point, starting at the
+        current token, has its whole extent after the edit and is kept
+        with its subtree without looking inside: an LL(1) parse of a
+        non-terminal depends only on the tokens it reads. An old node
+        expanded again by the same production keeps its children, so reuse
+        continues below it; a different production rebuilds its subtree.
+        An old node met before its text (after an insertion) is set aside
+        for a new one, and is found again on the old stack of the token it
+        starts at, where it sat below the same node; so is the last child of
+        a node whose text was deleted.
+      - Positions. Spans and token offsets after the last edit are stored
+        relative to the end of the document (see ParseTreeArena), so the
+        text after an edit moves without being touched. The next edit only
+        re-encodes the positions between the two edits; one far away
+        re-encodes everything in one pass. The text and the token table are
+        gap buffers whose gaps follow the edits.
+
+    Repeated edits in one place cost in proportion to the edit and the
+    region it damages, not to the document. A parse that fails leaves no
+    tree to reuse, and the next edit parses from scratch, as it does when
+    the arena has collected too many discarded nodes.
+*/
+public final class IncrementalLL1Parser {
+
+    private static final int BOTTOM = -1;   // below the start symbol: the end marker
+
+    private final CompiledLL1Table table;
+    private final int terminalCount;
+    private final int endMarker;
+    private final int maxLength;
+    private final StringTokenSource lexer;
+    private final Text text = new Text();
+    private final ParseTreeArena tree = new ParseTreeArena();
+    private int[] stackNext = new int[256];  // node below each node on the parse stack
+
+    // Token table as a gap buffer: kind, span and the stack top when the token became the lookahead
+    private int[] tokenKind = new int[256];
+    private int[] tokenStart = new int[256];
+    private int[] tokenEnd = new int[256];
+    private int[] tokenTop = new int[256];
+    private int gapStart;
+    private int gapEnd = 256;
+
+    // Current lookahead while parsing
+    private int token;
+    private int tokenPos;
+    private int tokenEndPos;
+    private int tokenSlot;     // its index in the token arrays
+    private int oldTop;        // the previous parse's stack top at this token, once synced
+    private boolean synced;    // reading old tokens back instead of lexing
+    private int nextOld;       // next old token slot once synced
+    private int lexAt;         // where lexing continues until synced
+
+    private boolean clean;     // the last parse was accepted, so its tree can be reused
+    private int nodeLimit;     // arena size that triggers a fresh parse
+    private int lexedTokens;
+    private int reusedSubtrees;
+
+    public IncrementalLL1Parser(CompiledLL1Table table) {
+        this.table = table;
+        this.terminalCount = table.terminalCount();
+        this.endMarker = table.endMarker();
+        this.maxLength = table.trie().maxLength;
+        this.lexer = new StringTokenSource(table.trie(), endMarker, text);
+    }
+
+    // Parse a new document from scratch; returns CompiledLL1Table.ACCEPT or the first error index
+    public int parse(CharSequence document) {
+        text.set(document);
+        return parseAll();
+    }
+
+    /*
+        Replace `removed` characters at offset by inserted and reparse; returns
+        CompiledLL1Table.ACCEPT or the first error index, as a full parse of the
+        new document would.
+    */
+    public int edit(int offset, int removed, CharSequence inserted) {
+        int length = text.length();
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IllegalArgumentException("edit [" + offset + ", " + (offset + removed)
+                    + ") is outside the document of length " + length);
+        }
+        if (!clean || tree.size() > nodeLimit) {
+            text.replace(offset, removed, inserted);
+            return parseAll();
+        }
+
+        // First token whose lookahead extent reaches the edit (the end marker's always does)
+        int lo = 0;
+        int hi = tokenCount() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (position(tokenStart[slot(mid)]) + maxLength >= offset) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        int resume = lo;
+
+        // Positions after the edit become end-relative, then move with the new length
+        moveSplit(offset + removed);
+        text.replace(offset, removed, inserted);
+        tree.setTextLength(text.length());
+        tree.setSplit(offset + inserted.length(), false);
+
+        moveGap(resume);
+        lexAt = resume > 0 ? position(tokenEnd[resume - 1]) : 0;
+        return run(tokenTop[gapEnd], tree.size());
+    }
+
+    private int parseAll() {
+        tree.reset();
+        tree.setTextLength(text.length());
+        gapStart = 0;
+        gapEnd = tokenKind.length;
+        lexAt = 0;
+        int root = tree.add(table.startSymbol(), ParseTreeArena.NONE, ParseTreeArena.NONE, 0);
+        stackNext[root] = BOTTOM;
+        int result = run(root, 0);
+        nodeLimit = 2 * tree.size() + 4096;
+        return result;
+    }
+
+    /*
+        The LL(1) driver of CompiledLL1Table.Cursor, with the stack kept as the
+        stackNext chain of tree nodes. Nodes below oldSize belong to the previous
+        tree. A sync entry ends the parse like an error: a full parse would
+        report its position first as well.
+    */
+    private int run(int top, int oldSize) {
+        synced = false;
+        lexedTokens = 0;
+        reusedSubtrees = 0;
+        clean = false;
+        nextToken();
+        arrive(top);
+
+        while (top != BOTTOM) {
+            int symbol = tree.kind(top);
+            if (symbol < terminalCount) {
+                if (symbol != token) {
+                    return tokenPos;
+                }
+                tree.setSpan(top, tokenPos, tokenEndPos);
+                closeUp(top);
+                top = stackNext[top];
+                nextToken();
+                arrive(top);
+                continue;
+            }
+
+            // An old subtree read entirely after the edit, starting here, parses the same again
+            int reused = synced ? reusable(top, oldSize) : ParseTreeArena.NONE;
+            if (reused != ParseTreeArena.NONE) {
+                if (reused != top) {
+                    if (tree.parent(reused) == top) {
+                        tree.clearChildren(top);
+                    }
+                    substitute(top, reused);
+                }
+                int slot = tokenSlot;
+                skipPast(tree.end(reused));
+                if (tokenSlot != slot) {
+                    oldTop = tokenTop[tokenSlot];
+                }
+                closeUp(reused);
+                reusedSubtrees++;
+                top = stackNext[reused];
+                continue;
+            }
+
+            // An old node whose text is still ahead (something was inserted before it) waits to be
+            // found there; a new node takes its place for what comes first
+            if (top < oldSize && tree.rawStart(top) < 0 && tree.start(top) > tokenPos
+                    && tree.parent(top) != ParseTreeArena.NONE) {
+                int fresh = newNode(symbol, ParseTreeArena.NONE, ParseTreeArena.NONE);
+                stackNext[fresh] = stackNext[top];
+                substitute(top, fresh);
+                top = fresh;
+            }
+
+            int production = token == CompiledLL1Table.ERROR ? CompiledLL1Table.ERROR : table.cell(symbol, token);
+            if (production < 0) {
+                return tokenPos;
+            }
+            top = expand(top, production, top < oldSize);
+        }
+        if (token != endMarker) {
+            return tokenPos;
+        }
+        clean = true;
+        return CompiledLL1Table.ACCEPT;
+    }
+
+    // The current token became the lookahead with top on the stack: keep the old stack there, record the new
+    private void arrive(int top) {
+        oldTop = synced ? tokenTop[tokenSlot] : BOTTOM;
+        tokenTop[tokenSlot] = top;
+    }
+
+    /*
+        An old node to stand for top here: top itself if it starts at the current
+        token, else one of the old nodes that were on the stack at this token,
+        started here, sat in the same place on the stack (same symbol, same node
+        below) and have been cut out of the new tree, or are the last child of
+        top (top held text that is gone). All of them started after the edit,
+        so their subtrees hold.
+    */
+    private int reusable(int top, int oldSize) {
+        if (top < oldSize && tree.rawStart(top) < 0 && tree.start(top) == tokenPos) {
+            return top;
+        }
+        int symbol = tree.kind(top);
+        for (int n = oldTop; n != BOTTOM && tree.rawStart(n) < 0 && tree.start(n) == tokenPos; n = stackNext[n]) {
+            int parent = tree.parent(n);
+            if ((parent == ParseTreeArena.NONE && n != tree.root() || parent == top)
+                    && tree.kind(n) == symbol && stackNext[n] == stackNext[top]) {
+                return n;
+            }
+        }
+        return ParseTreeArena.NONE;
+    }
+
+    /*
+        Put node `with` in the place of the current top, in the tree and on the
+        stacks recorded so far: the top is below its previous sibling and that
+        sibling's last descendants, and it may be the current token's top.
+    */
+    private void substitute(int top, int with) {
+        int previous = ParseTreeArena.NONE;
+        for (int c = tree.firstChild(tree.parent(top)); c != top; c = tree.nextSibling(c)) {
+            previous = c;
+        }
+        tree.replace(top, with);
+        for (int n = previous; n != ParseTreeArena.NONE && stackNext[n] == top; n = lastChild(n)) {
+            stackNext[n] = with;
+        }
+        if (tokenTop[tokenSlot] == top) {
+            tokenTop[tokenSlot] = with;
+        }
+    }
+
+    private int lastChild(int node) {
+        int last = tree.firstChild(node);
+        if (last != ParseTreeArena.NONE) {
+            while (tree.nextSibling(last) != ParseTreeArena.NONE) {
+                last = tree.nextSibling(last);
+            }
+        }
+        return last;
+    }
+
+    // Expand node by production; returns the new top of the stack
+    private int expand(int node, int production, boolean old) {
+        tree.setSpan(node, tokenPos, tokenPos);
+        int length = table.rhsLength(production);
+        if (old && tree.production(node) == production) {
+            // Same choice as before: the old children are pushed as they are
+            if (length > 0) {
+                return tree.firstChild(node);
+            }
+        } else {
+            tree.clearChildren(node);
+            tree.setProduction(node, production);
+            if (length > 0) {
+                int first = ParseTreeArena.NONE;
+                int last = ParseTreeArena.NONE;
+                for (int i = 0; i < length; i++) {
+                    int child = newNode(table.rhsSymbol(production, i), node, last);
+                    if (last == ParseTreeArena.NONE) {
+                        first = child;
+                    } else {
+                        stackNext[last] = child;
+                    }
+                    last = child;
+                }
+                stackNext[last] = stackNext[node];
+                return first;
+            }
+        }
+        closeUp(node);
+        return stackNext[node];
+    }
+
+    private int newNode(int symbol, int parent, int lastSibling) {
+        int n = tree.add(symbol, parent, lastSibling, tokenPos);
+        if (n >= stackNext.length) {
+            stackNext = Arrays.copyOf(stackNext, stackNext.length * 2);
+        }
+        return n;
+    }
+
+    // A node is complete: a parent ends where its last child does
+    private void closeUp(int node) {
+        int end = tree.rawEnd(node);
+        int n = node;
+        int parent;
+        while (tree.nextSibling(n) == ParseTreeArena.NONE && (parent = tree.parent(n)) != ParseTreeArena.NONE
+                && tree.rawEnd(parent) != end) {
+            tree.setRawEnd(parent, end);
+            n = parent;
+        }
+    }
+
+    // Advance to the next token: lex it, until it lines up with an old token, then read old ones back
+    private void nextToken() {
+        if (synced) {
+            readOld(nextOld);
+            return;
+        }
+        lexer.seek(lexAt);
+        int kind = lexer.next();
+        int start = (int) lexer.position();
+        int end = (int) lexer.end();
+        lexAt = end;
+        lexedTokens++;
+
+        // Old tokens after the gap: drop the ones inside the edit or overtaken by this token
+        int capacity = tokenKind.length;
+        while (gapEnd < capacity && (tokenStart[gapEnd] >= 0 || position(tokenStart[gapEnd]) < start)) {
+            gapEnd++;
+        }
+        if (gapEnd < capacity && position(tokenStart[gapEnd]) == start) {
+            synced = true;
+            readOld(gapEnd);
+            return;
+        }
+        if (gapStart == gapEnd) {
+            growGap();
+        }
+        tokenSlot = gapStart++;
+        tokenKind[tokenSlot] = kind;
+        tokenStart[tokenSlot] = tree.encode(start);
+        tokenEnd[tokenSlot] = tree.encode(end);
+        token = kind;
+        tokenPos = start;
+        tokenEndPos = end;
+    }
+
+    private void readOld(int slot) {
+        tokenSlot = slot;
+        nextOld = slot + 1;
+        token = tokenKind[slot];
+        tokenPos = position(tokenStart[slot]);
+        tokenEndPos = position(tokenEnd[slot]);
+    }
+
+    // Continue at the first old token at or after position, past a reused subtree (which may be empty)
+    private void skipPast(int position) {
+        int lo = tokenSlot;
+        int hi = tokenKind.length - 1;   // the end marker is always last
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (position(tokenStart[mid]) >= position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        readOld(lo);
+    }
+
+    // Token table gap buffer
+    private int tokenCount() {
+        return gapStart + tokenKind.length - gapEnd;
+    }
+
+    private int slot(int index) {
+        return index < gapStart ? index : index + gapEnd - gapStart;
+    }
+
+    private int position(int stored) {
+        return tree.decode(stored);
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int n = gapStart - index;
+            shiftTokens(index, gapEnd - n, n);
+            gapStart = index;
+            gapEnd -= n;
+        } else if (index > gapStart) {
+            int n = index - gapStart;
+            shiftTokens(gapEnd, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    private void shiftTokens(int from, int to, int n) {
+        System.arraycopy(tokenKind, from, tokenKind, to, n);
+        System.arraycopy(tokenStart, from, tokenStart, to, n);
+        System.arraycopy(tokenEnd, from, tokenEnd, to, n);
+        System.arraycopy(tokenTop, from, tokenTop, to, n);
+    }
+
+    private void growGap() {
+        int capacity = tokenKind.length * 2;
+        int tail = tokenKind.length - gapEnd;
+        tokenKind = regrow(tokenKind, capacity, tail);
+        tokenStart = regrow(tokenStart, capacity, tail);
+        tokenEnd = regrow(tokenEnd, capacity, tail);
+        tokenTop = regrow(tokenTop, capacity, tail);
+        gapEnd = capacity - tail;
+    }
+
+    private int[] regrow(int[] a, int capacity, int tail) {
+        int[] b = Arrays.copyOf(a, capacity);
+        System.arraycopy(a, gapEnd, b, capacity - tail, tail);
+        return b;
+    }
+
+    /*
+        Store positions from split on relative to the end. Only positions between
+        the old split and the new one change: those of the tokens there, and of
+        the nodes starting or ending at them, which replaying each token's
+        stack finds. A long move re-encodes everything in one pass instead.
+    */
+    private void moveSplit(int split) {
+        int lo = Math.min(tree.split(), split);
+        int hi = Math.max(tree.split(), split);
+        int count = tokenCount();
+        int first = firstToken(lo, tokenEnd);
+        int last = firstToken(hi, tokenStart);
+        if (lo == hi || first >= last) {
+            tree.setSplit(split, false);
+        } else if (last - first > count / 8) {
+            tree.setSplit(split, true);
+            for (int i = 0; i < count; i++) {
+                reencodeToken(slot(i));
+            }
+        } else {
+            tree.setSplit(split, false);
+            for (int i = first; i < last; i++) {
+                int s = slot(i);
+                reencodeToken(s);
+                reencodeNodesAt(s);
+            }
+        }
+    }
+
+    // Index of the first token whose stored position is at or after position
+    private int firstToken(int position, int[] positions) {
+        int lo = 0;
+        int hi = tokenCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (position(positions[slot(mid)]) >= position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private void reencodeToken(int s) {
+        tokenStart[s] = tree.encode(position(tokenStart[s]));
+        tokenEnd[s] = tree.encode(position(tokenEnd[s]));
+    }
+
+    /*
+        The nodes a token was the lookahead of: from the stack top when it
+        arrived, down first children to its terminal, and past empty nodes to
+        the node below. Those that end there are their last-child ancestors.
+    */
+    private void reencodeNodesAt(int s) {
+        int n = tokenTop[s];
+        while (n != BOTTOM) {
+            tree.reencode(n);
+            int child = tree.firstChild(n);
+            if (child != ParseTreeArena.NONE) {
+                n = child;
+                continue;
+            }
+            for (int m = n; tree.nextSibling(m) == ParseTreeArena.NONE && tree.parent(m) != ParseTreeArena.NONE; ) {
+                m = tree.parent(m);
+                tree.reencode(m);
+            }
+            if (tree.kind(n) < terminalCount) {
+                return;
+            }
+            n = stackNext[n];
+        }
+    }
+
+    public ParseTreeArena tree() {
+        return tree;
+    }
+
+    // True if the last parse was accepted and the tree is whole
+    public boolean isComplete() {
+        return clean;
+    }
+
+    public CharSequence text() {
+        return text;
+    }
+
+    // Tokens lexed by the last parse or edit (the rest were reused)
+    public int lastLexedTokens() {
+        return lexedTokens;
+    }
+
+    // Old subtrees the last edit kept without reparsing them
+    public int lastReusedSubtrees() {
+        return reusedSubtrees;
+    }
+
+    // Document text as a gap buffer: an edit moves the gap to its offset and writes into it
+    private static final class Text implements CharSequence {
+        private char[] chars = new char[256];
+        private int gapStart;
+        private int gapEnd = 256;
+
+        void set(CharSequence s) {
+            chars = new char[Math.max(256, s.length() * 2)];
+            for (int i = 0; i < s.length(); i++) {
+                chars[i] = s.charAt(i);
+            }
+            gapStart = s.length();
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int removed, CharSequence inserted) {
+            if (offset < gapStart) {
+                int n = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - n, n);
+                gapStart = offset;
+                gapEnd -= n;
+            } else if (offset > gapStart) {
+                int n = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, n);
+                gapStart += n;
+                gapEnd += n;
+            }
+            gapEnd += removed;
+            int n = inserted.length();
+            if (gapEnd - gapStart < n) {
+                int tail = chars.length - gapEnd;
+                char[] grown = new char[Math.max(chars.length * 2, length() + n + 256)];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                chars = grown;
+                gapEnd = grown.length - tail;
+            }
+            for (int i = 0; i < n; i++) {
+                chars[gapStart++] = inserted.charAt(i);
+            }
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(chars, 0, gapStart)
+                    .append(chars, gapEnd, chars.length - gapEnd).toString();
+        }
+    }
+}
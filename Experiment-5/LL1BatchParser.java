@@ -0,0 +1,124 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+    Parses many inputs against one shared CompiledLL1Table on a worker pool.
+
+    The table is immutable, so workers share it and each worker thread keeps
+    its own Cursor. Results come back in input order: result[i] is
+    CompiledLL1Table.ACCEPT or the index of the first error in input i.
+*/
+public class LL1BatchParser implements AutoCloseable {
+
+    // Inputs per task are chosen so each worker gets about this many tasks
+    private static final int TASKS_PER_WORKER = 8;
+
+    private final CompiledLL1Table table;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<CompiledLL1Table.Cursor> cursors;
+
+    // One worker per available core
+    public LL1BatchParser(CompiledLL1Table table) {
+        this(table, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LL1BatchParser(CompiledLL1Table table, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1, got " + workers);
+        }
+        this.table = table;
+        this.pool = new ForkJoinPool(workers);
+        this.cursors = ThreadLocal.withInitial(table::newCursor);
+    }
+
+    public CompiledLL1Table table() {
+        return table;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    // Parse every input; results are in input order
+    public int[] parseAll(List<? extends CharSequence> inputs) {
+        int[] results = new int[inputs.size()];
+        if (inputs.isEmpty()) {
+            return results;
+        }
+        int grain = Math.max(1, inputs.size() / (pool.getParallelism() * TASKS_PER_WORKER));
+        pool.invoke(new ParseRange(inputs, results, 0, inputs.size(), grain));
+        return results;
+    }
+
+    // Parse every input of a stream; the stream is collected first so results keep its order
+    public int[] parseAll(Stream<? extends CharSequence> inputs) {
+        return parseAll(inputs.collect(Collectors.toList()));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    @SuppressWarnings("serial")
+    private final class ParseRange extends RecursiveAction {
+        private final List<? extends CharSequence> inputs;
+        private final int[] results;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        ParseRange(List<? extends CharSequence> inputs, int[] results, int from, int to, int grain) {
+            this.inputs = inputs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseRange(inputs, results, from, mid, grain),
+                          new ParseRange(inputs, results, mid, to, grain));
+                return;
+            }
+            CompiledLL1Table.Cursor cursor = cursors.get();
+            for (int i = from; i < to; i++) {
+                results[i] = cursor.parse(inputs.get(i), ParseListener.SILENT);
+            }
+        }
+    }
+
+    // Validate a generated batch on all cores
+    public static void main(String[] args) {
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.initGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        CompiledLL1Table table = grammar.compile();
+
+        List<String> inputs = Stream.iterate("i", s -> s.length() > 200 ? "i" : "(" + s + ")*i+i")
+                .limit(100_000)
+                .collect(Collectors.toList());
+        inputs.set(7, "i+*i");
+
+        try (LL1BatchParser batch = new LL1BatchParser(table)) {
+            long start = System.nanoTime();
+            int[] results = batch.parseAll(inputs);
+            long elapsed = System.nanoTime() - start;
+            int accepted = 0;
+            for (int result : results) {
+                if (result == CompiledLL1Table.ACCEPT) {
+                    accepted++;
+                }
+            }
+            System.out.printf("%d inputs on %d workers: %d accepted, %d rejected (input 7 at index %d) in %.1f ms%n",
+                    inputs.size(), batch.parallelism(), accepted, inputs.size() - accepted, results[7], elapsed / 1e6);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import javax.tools.*;
+
+/*
+    Turns a compiled LL(1) table into a parser class of its own, the way
+    Parser.java is written by hand for one grammar: the table lookup becomes
+    one method per non-terminal with a switch on the token id, and every
+    production's right side is pushed by straight-line stores of constants.
+
+    The Java source is compiled in memory with javax.tools and defined as a
+    hidden class next to this one, so it can be unloaded with its table and
+    never clashes with another grammar's parser. The driver loop around the
+    switches is the same as CompiledLL1Table.Cursor.run(), so results and
+    listener events are identical.
+
+    Generation needs a JDK; on a plain JRE, or if compilation fails,
+    newParser() returns the table-driven driver instead and
+    fallbackReason() says why.
+*/
+public final class LL1ParserGenerator {
+
+    private static final String CLASS_NAME = "GeneratedLL1Parser";
+
+    private final CompiledLL1Table table;
+    private final MethodHandle constructor;   // null when falling back to the table
+    private final String fallbackReason;
+
+    private LL1ParserGenerator(CompiledLL1Table table, MethodHandle constructor, String fallbackReason) {
+        this.table = table;
+        this.constructor = constructor;
+        this.fallbackReason = fallbackReason;
+    }
+
+    // Generate, compile and load a parser class for the table
+    public static LL1ParserGenerator generate(CompiledLL1Table table) {
+        String source = generateSource(table, CLASS_NAME);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return new LL1ParserGenerator(table, null, "no Java compiler in this runtime");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+             JavaFileManager memory = new ForwardingJavaFileManager<JavaFileManager>(files) {
+                 @Override
+                 public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                            JavaFileObject.Kind kind, FileObject sibling) {
+                     return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+                         @Override
+                         public OutputStream openOutputStream() {
+                             ByteArrayOutputStream out = new ByteArrayOutputStream();
+                             classes.put(className, out);
+                             return out;
+                         }
+                     };
+                 }
+             }) {
+            JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-proc:none");
+            boolean ok = compiler.getTask(null, memory, diagnostics, options, null, Collections.singletonList(unit)).call();
+            if (!ok || !classes.containsKey(CLASS_NAME)) {
+                String reason = diagnostics.getDiagnostics().isEmpty() ? "compilation failed"
+                        : diagnostics.getDiagnostics().get(0).getMessage(Locale.ROOT);
+                return new LL1ParserGenerator(table, null, reason);
+            }
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classes.get(CLASS_NAME).toByteArray(), true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, CompiledLL1Table.class));
+            return new LL1ParserGenerator(table, constructor, null);
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            return new LL1ParserGenerator(table, null, e.toString());
+        }
+    }
+
+    // A new parser for one thread
+    public SpecializedLL1Parser newParser() {
+        if (constructor == null) {
+            return new SpecializedLL1Parser.TableDriven(table);
+        }
+        try {
+            return (SpecializedLL1Parser) constructor.invoke(table);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate the generated parser", e);
+        }
+    }
+
+    public boolean isGenerated() {
+        return constructor != null;
+    }
+
+    // Why the table-driven driver is used, or null
+    public String fallbackReason() {
+        return fallbackReason;
+    }
+
+    // Java source of a SpecializedLL1Parser subclass for the table
+    public static String generateSource(CompiledLL1Table table, String className) {
+        int terminalCount = table.terminalCount();
+        int productions = table.productionCount();
+        int maxRhs = 1;
+        for (int p = 0; p < productions; p++) {
+            maxRhs = Math.max(maxRhs, table.rhsLength(p));
+        }
+
+        StringBuilder src = new StringBuilder();
+        src.append("// Generated by LL1ParserGenerator for start symbol ").append(comment(table.symbolName(table.startSymbol())))
+                .append("; do not edit\n");
+        src.append("final class ").append(className).append(" extends SpecializedLL1Parser {\n\n");
+        src.append("    private static final int[] RHS_LENGTH = {");
+        for (int p = 0; p < productions; p++) {
+            src.append(p == 0 ? "" : ", ").append(table.rhsLength(p));
+        }
+        src.append("};\n\n");
+        src.append("    public ").append(className).append("(CompiledLL1Table table) {\n");
+        src.append("        super(table);\n");
+        src.append("    }\n\n");
+        src.append("    @Override\n");
+        src.append("    public boolean isGenerated() {\n");
+        src.append("        return true;\n");
+        src.append("    }\n\n");
+
+        // Driver loop, as in CompiledLL1Table.Cursor.run()
+        String end = Integer.toString(table.endMarker());
+        src.append("    @Override\n");
+        src.append("    long run(TokenSource source, ParseListener listener) {\n");
+        src.append("        int[] stack = this.stack;\n");
+        src.append("        int sp = 0;\n");
+        src.append("        stack[sp++] = ").append(end).append(";\n");
+        src.append("        stack[sp++] = ").append(table.startSymbol()).append(";\n");
+        src.append("        listener.start();\n");
+        src.append("        int token = source.next();\n");
+        src.append("        long firstError = -1L;\n");
+        src.append("        int step = 1;\n");
+        src.append("        for (; sp > 0; step++) {\n");
+        src.append("            int top = stack[sp - 1];\n");
+        src.append("            if (top < ").append(terminalCount).append(") {\n");
+        src.append("                if (top == token) {\n");
+        src.append("                    if (top == ").append(end).append(") {\n");
+        src.append("                        listener.accept(step, stack, sp, source.position());\n");
+        src.append("                        return firstError;\n");
+        src.append("                    }\n");
+        src.append("                    listener.match(step, stack, sp, top, source.position(), source.end());\n");
+        src.append("                    sp--;\n");
+        src.append("                    token = source.next();\n");
+        src.append("                    continue;\n");
+        src.append("                }\n");
+        src.append("                listener.error(step, stack, sp, top, token, source.position());\n");
+        src.append("                return firstError != -1L ? firstError : source.position();\n");
+        src.append("            }\n");
+        src.append("            if (sp + ").append(maxRhs).append(" > stack.length) {\n");
+        src.append("                stack = grow(sp + ").append(maxRhs).append(");\n");
+        src.append("            }\n");
+        src.append("            int production;\n");
+        src.append("            switch (top) {\n");
+        for (int nt = terminalCount; nt < table.symbolCount(); nt++) {
+            src.append("                case ").append(nt).append(": production = predict").append(nt)
+                    .append("(stack, sp - 1, token); break;   // ").append(comment(table.symbolName(nt))).append('\n');
+        }
+        src.append("                default: production = -1;\n");
+        src.append("            }\n");
+        src.append("            if (production >= 0) {\n");
+        src.append("                sp += RHS_LENGTH[production] - 1;\n");
+        src.append("                listener.expand(step, stack, sp, top, production, token, source.position());\n");
+        src.append("            } else if (production == ").append(CompiledLL1Table.SYNC).append(") {\n");
+        src.append("                listener.sync(step, stack, sp, top, token, source.position());\n");
+        src.append("                if (firstError == -1L) {\n");
+        src.append("                    firstError = source.position();\n");
+        src.append("                }\n");
+        src.append("                if (token == ").append(end).append(") {\n");
+        src.append("                    sp--;\n");
+        src.append("                } else {\n");
+        src.append("                    token = source.next();\n");
+        src.append("                }\n");
+        src.append("            } else {\n");
+        src.append("                listener.error(step, stack, sp, top, token, source.position());\n");
+        src.append("                return firstError != -1L ? firstError : source.position();\n");
+        src.append("            }\n");
+        src.append("        }\n");
+        src.append("        return firstError != -1L ? firstError : source.position();\n");
+        src.append("    }\n");
+
+        // One predict method per non-terminal: its table row as a switch
+        for (int nt = terminalCount; nt < table.symbolCount(); nt++) {
+            Map<Integer, List<Integer>> tokensByCell = new TreeMap<>();
+            for (int t = 0; t < terminalCount; t++) {
+                int cell = table.cell(nt, t);
+                if (cell != CompiledLL1Table.ERROR) {
+                    tokensByCell.computeIfAbsent(cell, k -> new ArrayList<>()).add(t);
+                }
+            }
+            src.append("\n    // ").append(comment(table.symbolName(nt))).append('\n');
+            src.append("    private static int predict").append(nt).append("(int[] stack, int sp, int token) {\n");
+            src.append("        switch (token) {\n");
+            for (Map.Entry<Integer, List<Integer>> cell : tokensByCell.entrySet()) {
+                for (int t : cell.getValue()) {
+                    src.append("            case ").append(t).append(":   // ").append(comment(table.symbolName(t))).append('\n');
+                }
+                int p = cell.getKey();
+                if (p == CompiledLL1Table.SYNC) {
+                    src.append("                return ").append(CompiledLL1Table.SYNC).append(";   // sync\n");
+                    continue;
+                }
+                src.append("                // ").append(comment(table.productionToString(p))).append('\n');
+                int length = table.rhsLength(p);
+                for (int i = length - 1, slot = 0; i >= 0; i--, slot++) {
+                    src.append("                stack[sp").append(slot == 0 ? "" : " + " + slot).append("] = ")
+                            .append(table.rhsSymbol(p, i)).append(";\n");
+                }
+                src.append("                return ").append(p).append(";\n");
+            }
+            src.append("            default:\n");
+            src.append("                return -1;\n");
+            src.append("        }\n");
+            src.append("    }\n");
+        }
+        src.append("}\n");
+        return src.toString();
+    }
+
+    // Symbol text that is safe inside a // comment
+    private static String comment(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            sb.append(c >= ' ' && c < 127 ? c : '?');
+        }
+        return sb.toString();
+    }
+
+    // Print the generated source for the built-in grammar, or for a grammar file
+    public static void main(String[] args) throws IOException {
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        if (args.length > 0) {
+            grammar.loadGrammar(Paths.get(args[0]));
+        } else {
+            grammar.initGrammar();
+        }
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        System.out.println(generateSource(grammar.compile(), CLASS_NAME));
+    }
+}
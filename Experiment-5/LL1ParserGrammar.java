@@ -1,12 +1,16 @@
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class LL1ParserGrammar {
 
-    // Input string, index pointer, parsing stack
-    private String input;
-    private int index;
-    private Stack<String> stack;
+    // Input string (the incremental parser's document after edit())
+    private CharSequence input;
 
     // Parsing table: maps non-terminal and terminal to production
     private Map<String, Map<String, String[]>> parsingTable;
@@ -18,23 +22,51 @@ public class LL1ParserGrammar {
     private Set<String> terminals;
     private Set<String> nonTerminals;
 
+    // Start symbol of the grammar
+    private String startSymbol;
+
     // FIRST and FOLLOW sets
     private Map<String, Set<String>> first;
     private Map<String, Set<String>> follow;
 
+    // Cells that more than one production wanted in the last buildParsingTable()
+    private List<String> conflicts = new ArrayList<>();
+
+    // Int-id form of the parsing table, built on demand by compile()
+    private CompiledLL1Table compiled;
+
+    // Parser generated for the compiled table by specialize(), and its instance
+    private LL1ParserGenerator specialized;
+    private SpecializedLL1Parser specializedParser;
+
+    // Incremental parser behind edit(), started on the current input by the first edit
+    private IncrementalLL1Parser incremental;
+
+    // Edits allowed per error in report-all mode, 0 to stop at the first error
+    private int recovery;
+
+    // Counters and phase times, or null when metrics are off
+    private ParseMetrics metrics;
+
     // Constructor initializes variables
     public LL1ParserGrammar(String input) {
         this.input = input;
-        this.index = 0;
-        this.stack = new Stack<>();
         this.grammar = new HashMap<>();
         this.terminals = new TreeSet<>();
         this.nonTerminals = new HashSet<>();
         this.parsingTable = new HashMap<>();
     }
 
+    // Reset the input so the same grammar and tables can parse another string
+    public void setInput(String input) {
+        this.input = input;
+        incremental = null;
+    }
+
     // Initialize grammar rules, terminals, and non-terminals
     public void initGrammar() {
+        startSymbol = "E";
+
         // Define non-terminals
         nonTerminals.add("E");
         nonTerminals.add("E'");
@@ -71,10 +103,196 @@ public class LL1ParserGrammar {
         ));
     }
 
+    /*
+        Load grammar rules from a file instead of initGrammar():
+
+            # comment
+            %start E
+            E  -> T E'
+            E' -> + T E' | - T E' | ε
+                | ...            (a line starting with '|' continues the last rule)
+
+        Symbols are separated by blanks. Every left-hand side is a non-terminal,
+        every other symbol is a terminal; "ε" or "epsilon" is the empty string.
+        Without %start the first rule's left-hand side is the start symbol.
+    */
+    public void loadGrammar(Path file) throws IOException {
+        loadGrammar(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public void loadGrammar(List<String> lines) {
+        grammar = new LinkedHashMap<>();
+        nonTerminals = new LinkedHashSet<>();
+        terminals = new TreeSet<>();
+        startSymbol = null;
+        compiled = null;
+        specialized = null;
+        incremental = null;
+
+        String lhs = null;
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("%start")) {
+                startSymbol = line.substring("%start".length()).trim();
+                continue;
+            }
+            String alternatives;
+            if (line.startsWith("|")) {
+                if (lhs == null) {
+                    throw new IllegalArgumentException("line " + lineNo + ": '|' before any rule");
+                }
+                alternatives = line.substring(1);
+            } else {
+                int arrow = line.indexOf("->");
+                if (arrow <= 0) {
+                    throw new IllegalArgumentException("line " + lineNo + ": expected 'A -> ...'");
+                }
+                lhs = line.substring(0, arrow).trim();
+                if (lhs.isEmpty() || lhs.contains(" ")) {
+                    throw new IllegalArgumentException("line " + lineNo + ": bad left-hand side '" + lhs + "'");
+                }
+                nonTerminals.add(lhs);
+                grammar.computeIfAbsent(lhs, k -> new ArrayList<>());
+                alternatives = line.substring(arrow + 2);
+            }
+            for (String alt : alternatives.split("\\|", -1)) {
+                String[] symbols = alt.trim().split("\\s+");
+                if (symbols.length == 1 && (symbols[0].isEmpty() || symbols[0].equals("epsilon"))) {
+                    symbols = new String[]{"ε"};
+                }
+                grammar.get(lhs).add(symbols);
+            }
+        }
+        if (grammar.isEmpty()) {
+            throw new IllegalArgumentException("grammar has no rules");
+        }
+        if (startSymbol == null) {
+            startSymbol = grammar.keySet().iterator().next();
+        } else if (!nonTerminals.contains(startSymbol)) {
+            throw new IllegalArgumentException("start symbol " + startSymbol + " has no rules");
+        }
+        collectTerminals();
+    }
+
+    // Every symbol without rules is a terminal, plus the end marker
+    private void collectTerminals() {
+        terminals = new TreeSet<>();
+        for (List<String[]> prods : grammar.values()) {
+            for (String[] prod : prods) {
+                for (String symbol : prod) {
+                    if (!nonTerminals.contains(symbol) && !symbol.equals("ε")) {
+                        terminals.add(symbol);
+                    }
+                }
+            }
+        }
+        terminals.add("$");
+    }
+
+    // Non-terminals that are left-recursive (A =>+ A α); the table builder cannot handle them
+    public Set<String> leftRecursiveNonTerminals() {
+        return GrammarTransforms.leftRecursive(grammar);
+    }
+
+    // Rewrite the grammar without direct or indirect left recursion; returns one line per change.
+    // FIRST/FOLLOW and the parsing table have to be built again afterwards.
+    public List<String> eliminateLeftRecursion() {
+        return apply(GrammarTransforms.eliminateLeftRecursion(grammar, startSymbol));
+    }
+
+    // Factor common prefixes out of the alternatives of every rule; returns one line per change.
+    // FIRST/FOLLOW and the parsing table have to be built again afterwards.
+    public List<String> leftFactor() {
+        return apply(GrammarTransforms.leftFactor(grammar, startSymbol));
+    }
+
+    private List<String> apply(GrammarTransforms.Result result) {
+        grammar = result.grammar;
+        nonTerminals = new LinkedHashSet<>(grammar.keySet());
+        startSymbol = result.startSymbol;
+        collectTerminals();
+        parsingTable = new HashMap<>();
+        first = null;
+        follow = null;
+        compiled = null;
+        specialized = null;
+        incremental = null;
+        return result.report;
+    }
+
+    /*
+        The rules as text: a %start line, then one line per non-terminal with
+        its alternatives in order. Grammars with the same rules give the same
+        text however their files were laid out (GrammarRegistry hashes it).
+    */
+    public String canonicalText() {
+        StringBuilder text = new StringBuilder("%start ").append(startSymbol).append('\n');
+        for (Map.Entry<String, List<String[]>> rule : grammar.entrySet()) {
+            text.append(rule.getKey()).append(" ->");
+            String sep = " ";
+            for (String[] alt : rule.getValue()) {
+                text.append(sep).append(String.join(" ", alt));
+                sep = " | ";
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    // Display the grammar rules, one line per non-terminal
+    public void printGrammar() {
+        for (Map.Entry<String, List<String[]>> rule : grammar.entrySet()) {
+            StringBuilder line = new StringBuilder(rule.getKey()).append(" ->");
+            String sep = " ";
+            for (String[] alt : rule.getValue()) {
+                line.append(sep).append(String.join(" ", alt));
+                sep = " | ";
+            }
+            System.out.println(line);
+        }
+    }
+
     // Compute FIRST and FOLLOW sets
     public void computeFirstFollow() {
+        LL1PhaseEvent event = new LL1PhaseEvent();
+        event.begin();
+        long start = metrics != null ? System.nanoTime() : 0;
         this.first = computeFirstSets();
         this.follow = computeFollowSets();
+        endPhase(event, ParseMetrics.FIRST_FOLLOW, start);
+    }
+
+    // Compute FIRST and FOLLOW sets with the bitset engine (pool may be null)
+    public void computeFirstFollowBitset(ForkJoinPool pool) {
+        LL1PhaseEvent event = new LL1PhaseEvent();
+        event.begin();
+        long start = metrics != null ? System.nanoTime() : 0;
+        FirstFollowEngine engine = new FirstFollowEngine(terminals, nonTerminals, grammar, startSymbol, pool);
+        this.first = engine.firstSets();
+        this.follow = engine.followSets();
+        endPhase(event, ParseMetrics.FIRST_FOLLOW, start);
+    }
+
+    // Add an analysis phase to the metrics and commit its event if a recording wants it
+    private void endPhase(LL1PhaseEvent event, int phase, long start) {
+        if (metrics != null) {
+            metrics.phase(phase, System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            int productions = 0;
+            for (List<String[]> prods : grammar.values()) {
+                productions += prods.size();
+            }
+            event.phase = ParseMetrics.PHASE_NAMES[phase];
+            event.size = productions;
+            event.commit();
+        }
     }
 
     // Compute FIRST set of a given production
@@ -159,7 +377,7 @@ public class LL1ParserGrammar {
         for (String nt : nonTerminals) {
             follow.put(nt, new HashSet<>());
         }
-        follow.get("E").add("$"); // Start symbol's FOLLOW set contains $
+        follow.get(startSymbol).add("$"); // Start symbol's FOLLOW set contains $
         boolean changed;
         do {
             changed = false;
@@ -199,7 +417,14 @@ public class LL1ParserGrammar {
 
     // Build parsing table using FIRST and FOLLOW sets
     public void buildParsingTable() {
+        LL1PhaseEvent event = new LL1PhaseEvent();
+        event.begin();
+        long start = metrics != null ? System.nanoTime() : 0;
+        compiled = null;
+        specialized = null;
+        incremental = null;
         parsingTable = new HashMap<>();
+        conflicts = new ArrayList<>();
         for (String nt : nonTerminals) {
             parsingTable.put(nt, new HashMap<>());
         }
@@ -209,13 +434,18 @@ public class LL1ParserGrammar {
                 Set<String> firstSet = computeFirstOfProduction(prod);
                 for (String terminal : firstSet) {
                     if (!terminal.equals("")) {
-                        row.put(terminal, prod); // Insert rule in table
+                        String[] previous = row.put(terminal, prod); // Insert rule in table
+                        if (previous != null && previous != prod) {
+                            conflict(nt, terminal, previous, prod, prod);
+                        }
                     }
                 }
                 if (firstSet.contains("")) {
                     for (String terminal : follow.get(nt)) {
                         if (!row.containsKey(terminal)) {
                             row.put(terminal, prod); // Insert rule for nullable productions
+                        } else if (row.get(terminal) != prod) {
+                            conflict(nt, terminal, row.get(terminal), prod, row.get(terminal));
                         }
                     }
                 }
@@ -230,6 +460,61 @@ public class LL1ParserGrammar {
                 }
             }
         }
+        endPhase(event, ParseMetrics.PARSING_TABLE, start);
+    }
+
+    // Record that productions a and b of nt both wanted M[nt, terminal]
+    private void conflict(String nt, String terminal, String[] a, String[] b, String[] kept) {
+        conflicts.add("M[" + nt + ", " + terminal + "]: " + nt + " -> " + String.join(" ", a) + " / "
+                + nt + " -> " + String.join(" ", b) + " (kept " + String.join(" ", kept) + ")");
+    }
+
+    /*
+        Conflicts found by the last buildParsingTable(): each cell that two
+        productions wanted, and the one it kept. Empty if the grammar is
+        LL(1); otherwise the table parses only part of the language, and
+        GllParser handles the grammar as it is.
+    */
+    public List<String> conflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    // Intern all symbols and compile the parsing table to int arrays
+    public CompiledLL1Table compile() {
+        if (compiled == null) {
+            compiled = new CompiledLL1Table(terminals, nonTerminals, grammar, parsingTable, first, follow, startSymbol);
+        }
+        return compiled;
+    }
+
+    // Read-only copy of the rules and analysis, for a GrammarRegistry
+    GrammarRegistry.Analysis snapshot(String key) {
+        return new GrammarRegistry.Analysis(key, grammar, terminals, nonTerminals, startSymbol,
+                first, follow, parsingTable, conflicts, compile());
+    }
+
+    // Take the rules and analysis of a registry entry instead of computing them
+    void adopt(GrammarRegistry.Analysis analysis) {
+        grammar = new LinkedHashMap<>(analysis.grammar);
+        terminals = new TreeSet<>(analysis.terminals);
+        nonTerminals = new LinkedHashSet<>(analysis.nonTerminals);
+        startSymbol = analysis.startSymbol;
+        first = analysis.first;
+        follow = analysis.follow;
+        parsingTable = analysis.parsingTable;
+        conflicts = analysis.conflicts;
+        compiled = analysis.table();
+        specialized = null;
+        incremental = null;
+    }
+
+    // Generate a parser class for the current table; parse() uses it from then on
+    public LL1ParserGenerator specialize() {
+        if (specialized == null) {
+            specialized = LL1ParserGenerator.generate(compile());
+            specializedParser = specialized.newParser();
+        }
+        return specialized;
     }
 
     // Display FIRST and FOLLOW sets
@@ -280,102 +565,194 @@ public class LL1ParserGrammar {
         }
     }
 
-    // Check if a symbol is terminal
-    private boolean isTerminal(String symbol) {
-        return !nonTerminals.contains(symbol);
+    // LL(1) parsing with error recovery using sync entries, printing every step
+    public void parse() {
+        ParseTracer.printHeader();
+        parse(new ParseTracer(compile()));
     }
 
-    // Display parsing steps
-    private void printParsingStep(int step, String currentToken, String action) {
-        System.out.printf("%-5d %-25s %-15s %-20s\n", step, stack.toString(), currentToken, action);
+    // Parse the input on the compiled table; returns CompiledLL1Table.ACCEPT or the first error index
+    public int parse(ParseListener listener) {
+        LL1PhaseEvent event = new LL1PhaseEvent();
+        event.begin();
+        if (metrics != null) {
+            listener = metrics.forwardingTo(listener);
+        }
+        int result;
+        if (recovery > 0) {
+            CompiledLL1Table.Cursor cursor = compile().newCursor();
+            cursor.setRecovery(recovery);
+            result = cursor.parse(input, listener);
+        } else if (specialized != null) {
+            result = specializedParser.parse(input, listener);
+        } else {
+            result = compile().parse(input, listener);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = ParseMetrics.PHASE_NAMES[ParseMetrics.PARSE];
+            event.size = input.length();
+            event.result = result;
+            event.commit();
+        }
+        return result;
     }
 
-    // LL(1) parsing algorithm with error recovery using sync entries
-    public void parse() {
-        stack.push("$");
-        stack.push("E"); // Start symbol
-
-        int step = 1;
-
-        System.out.printf("%-5s %-25s %-15s %-20s\n", "Step", "Stack", "Input", "Action");
-        System.out.println("---------------------------------------------------------------");
+    /*
+        Count the steps of every parse() and time the analysis phases into
+        metrics (see ParseMetrics); null turns metrics off again. Flight
+        Recorder events for the phases are committed whenever a recording is
+        running, with or without metrics.
+    */
+    public void setMetrics(ParseMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        while (!stack.isEmpty()) {
-            String top = stack.peek();
-            String currentToken = (index < input.length()) ? String.valueOf(input.charAt(index)) : "$";
+    public ParseMetrics metrics() {
+        return metrics;
+    }
 
-            if (top.equals("$")) {
-                if (currentToken.equals("$")) {
-                    printParsingStep(step, currentToken, "Parsing successful!");
-                    return;
-                } else {
-                    printParsingStep(step, currentToken, "Error: unexpected input");
-                    return;
-                }
-            }
+    /*
+        Report every error to the listener, each repaired with at most maxEdits
+        token insertions and deletions (see CompiledLL1Table.Cursor.setRecovery);
+        0 stops at the first error again. Parses run table-driven while it is on.
+    */
+    public void setRecovery(int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("negative edit limit: " + maxEdits);
+        }
+        recovery = maxEdits;
+    }
 
-            if (isTerminal(top)) {
-                if (top.equals(currentToken)) {
-                    printParsingStep(step, currentToken, "Matched terminal: " + top);
-                    stack.pop();
-                    index++;
-                } else {
-                    printParsingStep(step, currentToken, "Error: expected " + top);
-                    return;
-                }
-            } else {
-                String[] production = parsingTable.get(top).get(currentToken);
-                if (production != null) {
-                    if (production.length == 1 && production[0].equals("sync")) {
-                        printParsingStep(step, currentToken, "Error: sync, skipping " + currentToken);
-                        index++;  // Skip input symbol on sync error
-                    } else {
-                        stack.pop();
-                        for (int i = production.length - 1; i >= 0; i--) {
-                            if (!production[i].equals("ε")) {
-                                stack.push(production[i]);
-                            }
-                        }
-                        String rhs = (production.length == 1 && production[0].equals("ε")) ? "ε" : String.join(" ", production);
-                        printParsingStep(step, currentToken, top + " -> " + rhs);
-                    }
-                } else {
-                    printParsingStep(step, currentToken, "Error: no rule");
-                    return;
-                }
-            }
-            step++;
+    /*
+        Change the input by a text edit and parse it again, reusing the parse of
+        everything the edit did not touch; returns CompiledLL1Table.ACCEPT or the
+        first error index. The first edit parses the current input in full.
+    */
+    public int edit(int offset, int removed, String inserted) {
+        if (incremental == null) {
+            incremental = new IncrementalLL1Parser(compile());
+            incremental.parse(input);
         }
+        int result = incremental.edit(offset, removed, inserted);
+        input = incremental.text();
+        return result;
     }
 
-    // Main function to execute parsing for example inputs
-    public static void main(String[] args) {
+    // The parser behind edit(), with the current tree; null before the first edit
+    public IncrementalLL1Parser incremental() {
+        return incremental;
+    }
+
+    // Main function to execute parsing for example inputs.
+    // An optional argument names a grammar file to use instead of initGrammar().
+    public static void main(String[] args) throws IOException {
         String input = "i+i*i$"; // example input
 
         LL1ParserGrammar parser = new LL1ParserGrammar(input);
-        parser.initGrammar();
+        if (args.length > 0) {
+            parser.loadGrammar(Paths.get(args[0]));
+            List<String> changes = new ArrayList<>();
+            if (!parser.leftRecursiveNonTerminals().isEmpty()) {
+                changes.addAll(parser.eliminateLeftRecursion());
+            }
+            changes.addAll(parser.leftFactor());
+            if (!changes.isEmpty()) {
+                System.out.println("=== Grammar Rewritten for LL(1) ===");
+                for (String change : changes) {
+                    System.out.println(change);
+                }
+                parser.printGrammar();
+                System.out.println();
+            }
+        } else {
+            parser.initGrammar();
+        }
         parser.computeFirstFollow();
         parser.buildParsingTable();
 
         parser.printFirstFollow();
         System.out.println();
         parser.printParsingTable();
+        if (!parser.conflicts().isEmpty()) {
+            System.out.println("\n=== Not LL(1): Conflicts ===");
+            for (String conflict : parser.conflicts()) {
+                System.out.println(conflict);
+            }
+        }
         System.out.println("\n=== Parsing ===");
         parser.parse();
 
+        System.out.println("\n=== Silent Parsing ===");
+        int result = parser.parse(ParseListener.SILENT);
+        System.out.println(result == CompiledLL1Table.ACCEPT ? "Parsing successful!" : "Error at index " + result);
+
+        LL1ParserGenerator generated = parser.specialize();
+        System.out.println("\n=== Specialized Parser (" + (generated.isGenerated() ? "generated code"
+                : "table-driven: " + generated.fallbackReason()) + ") ===");
+        result = parser.parse(ParseListener.SILENT);
+        System.out.println(result == CompiledLL1Table.ACCEPT ? "Parsing successful!" : "Error at index " + result);
+
+        System.out.println("\n=== Parse Tree ===");
+        ParseTreeBuilder builder = new ParseTreeBuilder(parser.compile(), new ParseTreeArena());
+        parser.parse(builder);
+        ParseTreeBuilder.print(parser.compile(), builder.tree(), input);
+
+        System.out.println("\n=== Incremental Reparsing ===");
+        Object[][] edits = {{3, 1, "-"}, {5, 0, "*(i+i)"}, {0, 2, ""}, {5, 3, "i*i"}};
+        for (Object[] e : edits) {
+            result = parser.edit((Integer) e[0], (Integer) e[1], (String) e[2]);
+            IncrementalLL1Parser incremental = parser.incremental();
+            System.out.printf("%-16s %-12s lexed %d token(s), reused %d subtree(s)%n", incremental.text(),
+                    result == CompiledLL1Table.ACCEPT ? "accepted" : "error at " + result,
+                    incremental.lastLexedTokens(), incremental.lastReusedSubtrees());
+        }
+        ParseTreeBuilder.print(parser.compile(), parser.incremental().tree(), parser.incremental().text());
+
         System.out.println("\n============================New String for Parsing.============================");
 
         String input1 = ")i*+i$"; // example input with errors
 
-        LL1ParserGrammar parser1 = new LL1ParserGrammar(input1);
-        parser1.initGrammar();
-        parser1.computeFirstFollow();
-        parser1.buildParsingTable();
+        // Same grammar: reuse the tables instead of rebuilding them
+        parser.setInput(input1);
+        System.out.println("=== Parsing ===");
+        parser.parse();
 
-        parser1.printFirstFollow();
-        System.out.println();
-        parser1.printParsingTable();
-        System.out.println("\n=== Parsing ===");
-        parser1.parse();
+        System.out.println("\n=== Report All Errors ===");
+        parser.setRecovery(3);
+        parser.parse();
+        String input2 = "(i+*i))i(i+i$";
+        parser.setInput(input2);
+        ParseDiagnostics diagnostics = new ParseDiagnostics(parser.compile());
+        parser.parse(diagnostics);
+        System.out.println(input2);
+        for (String message : diagnostics.messages()) {
+            System.out.println("  " + message);
+        }
+        parser.setRecovery(0);
+        parser.setInput(input1);
+
+        // Save the compiled table and parse again from the memory-mapped file
+        Path tableFile = Files.createTempFile("ll1", ".tbl");
+        ParseTableFile.write(parser.compile(), tableFile);
+        CompiledLL1Table mapped = ParseTableFile.map(tableFile);
+        System.out.println("\n=== Mapped Table Parsing (" + Files.size(tableFile) + " bytes) ===");
+        ErrorPositions errors = new ErrorPositions();
+        int result1 = mapped.parse(input1, errors);
+        System.out.println(result1 == CompiledLL1Table.ACCEPT ? "Parsing successful!" : "Errors at " + Arrays.toString(errors.toArray()));
+        Files.deleteIfExists(tableFile);
+
+        // Analysis and a few parses again, counted
+        System.out.println("\n=== Metrics ===");
+        ParseMetrics metrics = new ParseMetrics();
+        parser.setMetrics(metrics);
+        parser.computeFirstFollow();
+        parser.buildParsingTable();
+        for (String expr : new String[]{input1, "(i+i)*(i-i)/i$", "i+*i$"}) {
+            parser.setInput(expr);
+            parser.parse(ParseListener.SILENT);
+        }
+        parser.setMetrics(null);
+        System.out.print(metrics.snapshot().format(parser.compile()));
     }
 }
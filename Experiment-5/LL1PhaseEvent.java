@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+    Flight Recorder event for one phase of LL1ParserGrammar: FIRST/FOLLOW
+    computation, table building, or a parse. The duration is the event's
+    own; size is the number of productions for the analysis phases and the
+    input length for a parse.
+
+    With no recording running, begin() / shouldCommit() are constant false
+    after JIT compilation and the unused event object is scalar-replaced, so
+    the phases pay nothing. Record with e.g.
+        java -XX:StartFlightRecording:filename=ll1.jfr LL1ParserGrammar
+        jfr print --events parsers.ll1.Phase ll1.jfr
+*/
+@Name("parsers.ll1.Phase")
+@Label("LL(1) Phase")
+@Category({"Parsers", "LL(1)"})
+@Description("A grammar analysis phase or a parse of LL1ParserGrammar")
+@StackTrace(false)
+final class LL1PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Size")
+    @Description("Productions for the analysis phases, input length for a parse")
+    long size;
+
+    @Label("Result")
+    @Description("Parse result: -1 when accepted, else the offset of the first error; 0 for other phases")
+    long result;
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 public class LeftFactoringEliminator {
 
     private String[] tokens;
@@ -74,5 +76,24 @@ public class LeftFactoringEliminator {
         // Example 2: if E then S else S
         LeftFactoringEliminator parser2 = new LeftFactoringEliminator("if cond then stmt else stmt");
         parser2.parse();
+        System.out.println("--------------------");
+
+        // The unfactored grammar, factored automatically and parsed by the LL(1) table
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.loadGrammar(Arrays.asList(
+                "A -> if E then S | if E then S else S",
+                "E -> cond",
+                "S -> stmt"));
+        for (String change : grammar.leftFactor()) {
+            System.out.println(change);
+        }
+        grammar.printGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        for (String input : new String[]{"if cond then stmt$", "if cond then stmt else stmt$"}) {
+            grammar.setInput(input);
+            int result = grammar.parse(ParseListener.SILENT);
+            System.out.println(input + " : " + (result == CompiledLL1Table.ACCEPT ? "Parsing successful!" : "Parsing failed at index " + result));
+        }
     }
 }
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 // public class LeftRecursionEliminator {
 
 //     // Simulates a parser for the grammar: E -> E + T | T
@@ -91,6 +93,31 @@ public class LeftRecursionDemo {
         System.out.println("\n=== Corrected non-left-recursive parser ===");
         LeftRecursionEliminator corrected = new LeftRecursionEliminator("1+2+3");
         corrected.parse();
+
+        // The same rewrite done on the grammar, then parsed by the LL(1) table
+        System.out.println("\n=== Automatic elimination ===");
+        LL1ParserGrammar grammar = new LL1ParserGrammar("1+2+3$");
+        grammar.loadGrammar(Arrays.asList(
+                "E -> E + T | T",
+                "T -> 1 | 2 | 3"));
+        System.out.println("Left-recursive: " + grammar.leftRecursiveNonTerminals());
+        for (String change : grammar.eliminateLeftRecursion()) {
+            System.out.println(change);
+        }
+        grammar.printGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        int result = grammar.parse(ParseListener.SILENT);
+        System.out.println(result == CompiledLL1Table.ACCEPT ? "Parsing successful!" : "Parsing failed at index " + result);
+
+        // No rewrite at all: the packrat parser grows E -> E + T from a seed
+        System.out.println("\n=== PEG with left recursion ===");
+        PegParser peg = new PegParser(PegGrammar.parse(Arrays.asList(
+                "E <- E '+' T / T",
+                "T <- [1-3]")));
+        ParseTreeArena tree = new ParseTreeArena();
+        result = peg.parse("1+2+3", tree);
+        System.out.print(result == PegParser.ACCEPT ? peg.treeString(tree, "1+2+3") : "Parsing failed at index " + result + "\n");
     }
 
     // Simulates left-recursive grammar: E -> E + T | T
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Collects the errors of a parse with their offsets, for report-all mode
+    (Cursor.setRecovery): what was expected and found at each one, and how
+    many symbols recovery inserted and tokens it deleted before parsing went
+    on. Only ids and counts are stored; messages are formatted on request.
+    Sync entries and the error that stops a parse are recorded as well.
+*/
+public class ParseDiagnostics implements ParseListener {
+
+    private final CompiledLL1Table table;
+    private long[] positions = new long[8];
+    private int[] expected = new int[8];
+    private int[] found = new int[8];
+    private int[] inserted = new int[8];
+    private int[] deleted = new int[8];
+    private int count;
+    private boolean stopped;
+
+    public ParseDiagnostics(CompiledLL1Table table) {
+        this.table = table;
+    }
+
+    @Override
+    public void start() {
+        count = 0;
+        stopped = false;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long position(int i) {
+        return positions[i];
+    }
+
+    // True if the last parse ended at an error instead of recovering to the end of the input
+    public boolean stopped() {
+        return stopped;
+    }
+
+    @Override
+    public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+        add(nonTerminal, token, position);
+        if (token == table.endMarker()) {
+            inserted[count - 1]++;
+        } else {
+            deleted[count - 1]++;
+        }
+    }
+
+    @Override
+    public void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+        add(expected, token, position);
+    }
+
+    @Override
+    public void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+        inserted[count - 1]++;
+    }
+
+    @Override
+    public void delete(int step, int[] stack, int depth, int token, long position) {
+        deleted[count - 1]++;
+    }
+
+    @Override
+    public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+        stopped = true;
+        if (count == 0 || positions[count - 1] != position) {
+            add(expected, token, position);
+        }
+    }
+
+    private void add(int expectedSymbol, int token, long position) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            expected = Arrays.copyOf(expected, count * 2);
+            found = Arrays.copyOf(found, count * 2);
+            inserted = Arrays.copyOf(inserted, count * 2);
+            deleted = Arrays.copyOf(deleted, count * 2);
+        }
+        positions[count] = position;
+        expected[count] = expectedSymbol;
+        found[count] = token;
+        inserted[count] = 0;
+        deleted[count++] = 0;
+    }
+
+    // E.g. "3: expected one of ( i, found +; inserted 1 symbol(s)"
+    public String message(int i) {
+        StringBuilder sb = new StringBuilder().append(positions[i]).append(": ");
+        int symbol = expected[i];
+        if (symbol == table.endMarker()) {
+            sb.append("expected end of input");
+        } else if (table.isTerminal(symbol)) {
+            sb.append("expected ").append(table.symbolName(symbol));
+        } else {
+            // What the non-terminal can start with, and what may follow when it can be empty
+            Set<String> starts = table.firstSet(symbol);
+            if (starts.remove("")) {
+                starts.addAll(table.followSet(symbol));
+            }
+            sb.append("expected one of ").append(String.join(" ", starts));
+        }
+        sb.append(", found ").append(found[i] == CompiledLL1Table.ERROR ? "unknown input" : table.symbolName(found[i]));
+        if (inserted[i] > 0 || deleted[i] > 0) {
+            sb.append("; ");
+            if (inserted[i] > 0) {
+                sb.append("inserted ").append(inserted[i]).append(" symbol(s)").append(deleted[i] > 0 ? ", " : "");
+            }
+            if (deleted[i] > 0) {
+                sb.append("deleted ").append(deleted[i]).append(" token(s)");
+            }
+        }
+        return sb.toString();
+    }
+
+    public List<String> messages() {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(message(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+    Receives the steps of the compiled LL(1) driver.
+
+    Every callback gets the parse stack as it stands (stack[0 .. depth-1], top
+    last) and symbol / production ids that CompiledLL1Table can name, so the
+    driver itself never formats anything. SILENT ignores every event; with it
+    the calls are empty and inlined away, leaving only accept/reject and the
+    error offset returned by parse().
+*/
+public interface ParseListener {
+
+    ParseListener SILENT = new ParseListener() { };
+
+    // A new parse begins
+    default void start() {
+    }
+
+    // Non-terminal replaced by the right side of production (stack shown after the push)
+    default void expand(int step, int[] stack, int depth, int nonTerminal, int production, int token, long position) {
+    }
+
+    // Terminal on top of the stack matched the input token at [position, end) (stack shown before the pop)
+    default void match(int step, int[] stack, int depth, int terminal, long position, long end) {
+    }
+
+    // Sync entry: the token is skipped, or the non-terminal popped at end of input
+    default void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+    }
+
+    // Parsing stops: expected is the terminal or non-terminal on top of the stack
+    default void error(int step, int[] stack, int depth, int expected, int token, long position) {
+    }
+
+    // Recovery mode (Cursor.setRecovery): an error is found and repaired by the insert / delete calls that follow
+    default void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+    }
+
+    // The symbol on top of the stack is taken as present without reading input, and popped
+    default void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+    }
+
+    // The token is skipped
+    default void delete(int step, int[] stack, int depth, int token, long position) {
+    }
+
+    // Input goes on after a complete start symbol; a new one is pushed to parse it (stack shown before the push)
+    default void restart(int step, int[] stack, int depth, int token, long position) {
+    }
+
+    default void accept(int step, int[] stack, int depth, long position) {
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.Arrays;
+
+/*
+    Counts what the compiled LL(1) driver does, summed over any number of
+    parses: steps, expansions, matches, sync skips and pops, errors and the
+    edits recovery made, the deepest the parse stack got, and how often each
+    production was expanded. Time is kept per phase: each parse is timed
+    from start() to accept / error, and LL1ParserGrammar.setMetrics() adds
+    the FIRST/FOLLOW and table building phases.
+
+    Counting is plain field updates on the parsing thread, and nothing is
+    counted unless a ParseMetrics is the listener (or is forwarded to), so
+    a parse with SILENT pays nothing. snapshot() copies the counters into an
+    immutable Snapshot that may be handed to another thread. Not
+    thread-safe: use one per cursor.
+*/
+public final class ParseMetrics implements ParseListener {
+
+    // Timed phases
+    public static final int FIRST_FOLLOW = 0;
+    public static final int PARSING_TABLE = 1;
+    public static final int PARSE = 2;
+    static final String[] PHASE_NAMES = {"computeFirstFollow", "buildParsingTable", "parse"};
+
+    private long parses;
+    private long accepted;
+    private long steps;
+    private long expansions;
+    private long matches;
+    private long syncSkips;
+    private long syncPops;
+    private long errors;
+    private long insertions;
+    private long deletions;
+    private long restarts;
+    private int maxDepth;
+    private long[] productionCounts = new long[16];   // by production id, grown as ids come up
+    private final long[] phaseCounts = new long[PHASE_NAMES.length];
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private long parseStart;
+    private boolean clean;   // no sync entry or recovery used in the current parse
+
+    // Add one run of a phase that took the given time
+    public void phase(int phase, long nanos) {
+        phaseCounts[phase]++;
+        phaseNanos[phase] += nanos;
+    }
+
+    @Override
+    public void start() {
+        parses++;
+        parseStart = System.nanoTime();
+        clean = true;
+    }
+
+    @Override
+    public void expand(int step, int[] stack, int depth, int nonTerminal, int production, int token, long position) {
+        expansions++;
+        if (production >= productionCounts.length) {
+            productionCounts = Arrays.copyOf(productionCounts, Math.max(production + 1, productionCounts.length * 2));
+        }
+        productionCounts[production]++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    @Override
+    public void match(int step, int[] stack, int depth, int terminal, long position, long end) {
+        matches++;
+    }
+
+    @Override
+    public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+        clean = false;
+        // The end marker is always at the bottom of the stack
+        if (token == stack[0]) {
+            syncPops++;
+        } else {
+            syncSkips++;
+        }
+    }
+
+    @Override
+    public void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+        clean = false;
+        errors++;
+    }
+
+    @Override
+    public void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+        insertions++;
+    }
+
+    @Override
+    public void delete(int step, int[] stack, int depth, int token, long position) {
+        deletions++;
+    }
+
+    @Override
+    public void restart(int step, int[] stack, int depth, int token, long position) {
+        restarts++;
+        if (depth + 1 > maxDepth) {
+            maxDepth = depth + 1;
+        }
+    }
+
+    @Override
+    public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+        errors++;
+        end(step);
+    }
+
+    @Override
+    public void accept(int step, int[] stack, int depth, long position) {
+        if (clean) {
+            accepted++;
+        }
+        end(step);
+    }
+
+    private void end(int step) {
+        steps += step;
+        phase(PARSE, System.nanoTime() - parseStart);
+    }
+
+    // Counters as they stand, copied
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        parses = accepted = steps = expansions = matches = 0;
+        syncSkips = syncPops = errors = insertions = deletions = restarts = 0;
+        maxDepth = 0;
+        Arrays.fill(productionCounts, 0);
+        Arrays.fill(phaseCounts, 0);
+        Arrays.fill(phaseNanos, 0);
+    }
+
+    /*
+        Forward every event to listener as well as counting it, for parsing with
+        a tracer or tree builder while metrics are on.
+    */
+    public ParseListener forwardingTo(ParseListener listener) {
+        if (listener == SILENT || listener == this) {
+            return this;
+        }
+        return new ParseListener() {
+            @Override
+            public void start() {
+                ParseMetrics.this.start();
+                listener.start();
+            }
+
+            @Override
+            public void expand(int step, int[] stack, int depth, int nonTerminal, int production, int token, long position) {
+                ParseMetrics.this.expand(step, stack, depth, nonTerminal, production, token, position);
+                listener.expand(step, stack, depth, nonTerminal, production, token, position);
+            }
+
+            @Override
+            public void match(int step, int[] stack, int depth, int terminal, long position, long end) {
+                ParseMetrics.this.match(step, stack, depth, terminal, position, end);
+                listener.match(step, stack, depth, terminal, position, end);
+            }
+
+            @Override
+            public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+                ParseMetrics.this.sync(step, stack, depth, nonTerminal, token, position);
+                listener.sync(step, stack, depth, nonTerminal, token, position);
+            }
+
+            @Override
+            public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+                ParseMetrics.this.error(step, stack, depth, expected, token, position);
+                listener.error(step, stack, depth, expected, token, position);
+            }
+
+            @Override
+            public void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+                ParseMetrics.this.recover(step, stack, depth, expected, token, position);
+                listener.recover(step, stack, depth, expected, token, position);
+            }
+
+            @Override
+            public void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+                ParseMetrics.this.insert(step, stack, depth, symbol, token, position);
+                listener.insert(step, stack, depth, symbol, token, position);
+            }
+
+            @Override
+            public void delete(int step, int[] stack, int depth, int token, long position) {
+                ParseMetrics.this.delete(step, stack, depth, token, position);
+                listener.delete(step, stack, depth, token, position);
+            }
+
+            @Override
+            public void restart(int step, int[] stack, int depth, int token, long position) {
+                ParseMetrics.this.restart(step, stack, depth, token, position);
+                listener.restart(step, stack, depth, token, position);
+            }
+
+            @Override
+            public void accept(int step, int[] stack, int depth, long position) {
+                ParseMetrics.this.accept(step, stack, depth, position);
+                listener.accept(step, stack, depth, position);
+            }
+        };
+    }
+
+    // Immutable copy of the counters
+    public static final class Snapshot {
+        public final long parses;
+        public final long accepted;
+        public final long steps;
+        public final long expansions;
+        public final long matches;
+        public final long syncSkips;
+        public final long syncPops;
+        public final long errors;
+        public final long insertions;
+        public final long deletions;
+        public final long restarts;
+        public final int maxDepth;
+        private final long[] productionCounts;
+        private final long[] phaseCounts;
+        private final long[] phaseNanos;
+
+        Snapshot(ParseMetrics m) {
+            parses = m.parses;
+            accepted = m.accepted;
+            steps = m.steps;
+            expansions = m.expansions;
+            matches = m.matches;
+            syncSkips = m.syncSkips;
+            syncPops = m.syncPops;
+            errors = m.errors;
+            insertions = m.insertions;
+            deletions = m.deletions;
+            restarts = m.restarts;
+            maxDepth = m.maxDepth;
+            productionCounts = m.productionCounts.clone();
+            phaseCounts = m.phaseCounts.clone();
+            phaseNanos = m.phaseNanos.clone();
+        }
+
+        // Times production was expanded
+        public long expansions(int production) {
+            return production < productionCounts.length ? productionCounts[production] : 0;
+        }
+
+        // Runs of a phase (FIRST_FOLLOW, PARSING_TABLE, PARSE) and their total time
+        public long phaseCount(int phase) {
+            return phaseCounts[phase];
+        }
+
+        public long phaseNanos(int phase) {
+            return phaseNanos[phase];
+        }
+
+        @Override
+        public String toString() {
+            return format(null);
+        }
+
+        // Report of all counters, naming the productions of table when it is not null
+        public String format(CompiledLL1Table table) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("parses %d (accepted %d), steps %d, max depth %d%n", parses, accepted, steps, maxDepth));
+            sb.append(String.format("expansions %d, matches %d, sync skips %d, sync pops %d%n",
+                    expansions, matches, syncSkips, syncPops));
+            sb.append(String.format("errors %d, insertions %d, deletions %d, restarts %d%n",
+                    errors, insertions, deletions, restarts));
+            for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+                if (phaseCounts[phase] > 0) {
+                    sb.append(String.format("%-20s %8d runs %12.1f us%n",
+                            PHASE_NAMES[phase], phaseCounts[phase], phaseNanos[phase] / 1e3));
+                }
+            }
+            int productions = table != null ? table.productionCount() : productionCounts.length;
+            for (int p = 0; p < productions; p++) {
+                String name = table != null ? table.productionToString(p) : "production " + p;
+                sb.append(String.format("%-20s %8d%n", name, expansions(p)));
+            }
+            return sb.toString();
+        }
+    }
+}
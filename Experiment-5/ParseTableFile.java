@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Binary artifact holding a compiled LL(1) grammar: symbol names,
+    productions, FIRST/FOLLOW bitsets and the parsing table.
+
+    Layout (big-endian, sections 8-byte aligned):
+        int    magic "LL1T", version
+        int    terminalCount, nonTerminalCount, productionCount, rhsLength,
+               startSymbol, endMarker, fileLength
+        names  per symbol: unsigned short length + UTF-8 bytes
+        int    prodLhs[productionCount], prodOffset[productionCount + 1], prodRhs[rhsLength]
+        long   first[nonTerminalCount * words], follow[nonTerminalCount * words],
+               nullable[(nonTerminalCount + 63) / 64]
+        int    table: entries, slots, then defaults, fallback and base
+               [nonTerminalCount] each and check, next[slots] each
+
+    The table is stored packed, as RowDisplacementTable holds it in memory,
+    and map() reads its arrays in place from the mapping: a service starts
+    without any grammar analysis or repacking, only the table pages that
+    parsing touches are read, and processes mapping the same file share them.
+*/
+public final class ParseTableFile {
+
+    public static final int MAGIC = 0x4C4C3154; // "LL1T"
+    public static final int VERSION = 2;
+
+    private static final int HEADER_INTS = 9;
+
+    private ParseTableFile() {
+    }
+
+    // Write a compiled table to a file
+    public static void write(CompiledLL1Table compiled, Path file) throws IOException {
+        String[] names = compiled.symbolNames();
+        int terminalCount = compiled.terminalCount();
+        int nonTerminalCount = names.length - terminalCount;
+        int[] prodLhs = compiled.productionLhs();
+        int[] prodOffset = compiled.productionOffsets();
+        int[] prodRhs = compiled.productionRhs();
+        long[] first = compiled.firstBits();
+        long[] follow = compiled.followBits();
+        boolean[] nullable = compiled.nullable();
+        RowDisplacementTable table = compiled.packedTable();
+
+        byte[][] encoded = new byte[names.length][];
+        int namesLength = 0;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Symbol name too long: " + names[i].substring(0, 32) + "...");
+            }
+            namesLength += 2 + encoded[i].length;
+        }
+
+        long[] nullableBits = new long[(nonTerminalCount + 63) >>> 6];
+        for (int n = 0; n < nonTerminalCount; n++) {
+            if (nullable[n]) {
+                nullableBits[n >>> 6] |= 1L << n;
+            }
+        }
+
+        long length = align(HEADER_INTS * 4L + namesLength)
+                + align(4L * (prodLhs.length + prodOffset.length + prodRhs.length))
+                + 8L * (first.length + follow.length + nullableBits.length)
+                + 4L * table.serializedInts();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Parse table too large for a single file: " + length + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) length);
+        out.putInt(MAGIC).putInt(VERSION)
+                .putInt(terminalCount).putInt(nonTerminalCount)
+                .putInt(prodLhs.length).putInt(prodRhs.length)
+                .putInt(compiled.startSymbol()).putInt(compiled.endMarker())
+                .putInt((int) length);
+        for (byte[] name : encoded) {
+            out.putShort((short) name.length).put(name);
+        }
+        pad(out);
+        for (int v : prodLhs) {
+            out.putInt(v);
+        }
+        for (int v : prodOffset) {
+            out.putInt(v);
+        }
+        for (int v : prodRhs) {
+            out.putInt(v);
+        }
+        pad(out);
+        for (long v : first) {
+            out.putLong(v);
+        }
+        for (long v : follow) {
+            out.putLong(v);
+        }
+        for (long v : nullableBits) {
+            out.putLong(v);
+        }
+        table.write(out);
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    // Map a table file read-only; the parsing table is used in place, the rest copied out
+    public static CompiledLL1Table map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + ": not a parse table file (too large)");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.limit() < HEADER_INTS * 4 || buffer.getInt() != MAGIC) {
+            throw new IOException(file + ": not a parse table file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(file + ": unsupported parse table version " + version + " (expected " + VERSION + ")");
+        }
+        int terminalCount = buffer.getInt();
+        int nonTerminalCount = buffer.getInt();
+        int productionCount = buffer.getInt();
+        int rhsLength = buffer.getInt();
+        int startSymbol = buffer.getInt();
+        int endMarker = buffer.getInt();
+        int length = buffer.getInt();
+        if (length != buffer.limit()) {
+            throw new IOException(file + ": truncated parse table (" + buffer.limit() + " of " + length + " bytes)");
+        }
+
+        String[] names = new String[terminalCount + nonTerminalCount];
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        skipPadding(buffer);
+
+        int[] prodLhs = new int[productionCount];
+        int[] prodOffset = new int[productionCount + 1];
+        int[] prodRhs = new int[rhsLength];
+        buffer.asIntBuffer().get(prodLhs).get(prodOffset).get(prodRhs);
+        buffer.position(buffer.position() + 4 * (prodLhs.length + prodOffset.length + prodRhs.length));
+        skipPadding(buffer);
+
+        int words = (terminalCount + 63) >>> 6;
+        long[] first = new long[nonTerminalCount * words];
+        long[] follow = new long[nonTerminalCount * words];
+        long[] nullableBits = new long[(nonTerminalCount + 63) >>> 6];
+        buffer.asLongBuffer().get(first).get(follow).get(nullableBits);
+        buffer.position(buffer.position() + 8 * (first.length + follow.length + nullableBits.length));
+        boolean[] nullable = new boolean[nonTerminalCount];
+        for (int n = 0; n < nonTerminalCount; n++) {
+            nullable[n] = (nullableBits[n >>> 6] & (1L << n)) != 0;
+        }
+
+        RowDisplacementTable table;
+        try {
+            table = RowDisplacementTable.read(buffer, nonTerminalCount, terminalCount);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": corrupt parse table section: " + e.getMessage(), e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException(file + ": corrupt parse table section");
+        }
+        return new CompiledLL1Table(names, terminalCount, startSymbol, endMarker,
+                prodLhs, prodOffset, prodRhs, first, follow, nullable, table);
+    }
+
+    private static long align(long n) {
+        return (n + 7) & ~7L;
+    }
+
+    private static void pad(ByteBuffer out) {
+        while ((out.position() & 7) != 0) {
+            out.put((byte) 0);
+        }
+    }
+
+    private static void skipPadding(ByteBuffer in) {
+        in.position((int) align(in.position()));
+    }
+}
@@ -0,0 +1,93 @@
+// Prints each LL(1) parsing step as a row of the Step / Stack / Input / Action table
+public class ParseTracer implements ParseListener {
+
+    private final CompiledLL1Table table;
+    private boolean repaired;   // a sync entry or recovery was used in this parse
+
+    public ParseTracer(CompiledLL1Table table) {
+        this.table = table;
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-5s %-25s %-15s %-20s\n", "Step", "Stack", "Input", "Action");
+        System.out.println("---------------------------------------------------------------");
+    }
+
+    @Override
+    public void start() {
+        repaired = false;
+    }
+
+    @Override
+    public void expand(int step, int[] stack, int depth, int nonTerminal, int production, int token, long position) {
+        print(step, stack, depth, token, table.productionToString(production));
+    }
+
+    @Override
+    public void match(int step, int[] stack, int depth, int terminal, long position, long end) {
+        print(step, stack, depth, terminal, "Matched terminal: " + table.symbolName(terminal));
+    }
+
+    @Override
+    public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+        repaired = true;
+        if (token == table.endMarker()) {
+            print(step, stack, depth, token, "Error: sync, popping " + table.symbolName(nonTerminal));
+        } else {
+            print(step, stack, depth, token, "Error: sync, skipping " + table.symbolName(token));
+        }
+    }
+
+    @Override
+    public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+        print(step, stack, depth, token, "Error: " + describe(expected));
+    }
+
+    @Override
+    public void recover(int step, int[] stack, int depth, int expected, int token, long position) {
+        repaired = true;
+        print(step, stack, depth, token, "Error: " + describe(expected) + ", recovering");
+    }
+
+    @Override
+    public void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+        print(step, stack, depth, token, "Insert " + table.symbolName(symbol));
+    }
+
+    @Override
+    public void delete(int step, int[] stack, int depth, int token, long position) {
+        print(step, stack, depth, token, "Delete " + (token == CompiledLL1Table.ERROR ? "?" : table.symbolName(token)));
+    }
+
+    @Override
+    public void restart(int step, int[] stack, int depth, int token, long position) {
+        print(step, stack, depth, token, "Restart at " + table.symbolName(table.startSymbol()));
+    }
+
+    private String describe(int expected) {
+        if (expected == table.endMarker()) {
+            return "unexpected input";
+        } else if (table.isTerminal(expected)) {
+            return "expected " + table.symbolName(expected);
+        }
+        return "no rule";
+    }
+
+    @Override
+    public void accept(int step, int[] stack, int depth, long position) {
+        print(step, stack, depth, table.endMarker(), repaired ? "Parsed with errors" : "Parsing successful!");
+    }
+
+    private void print(int step, int[] stack, int depth, int token, String action) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < depth; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(table.symbolName(stack[i]));
+        }
+        sb.append(']');
+        String input = token == CompiledLL1Table.ERROR ? "?" : table.symbolName(token);
+        System.out.printf("%-5d %-25s %-15s %-20s\n", step, sb, input, action);
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+/*
+    Parse tree stored as parallel int arrays instead of one object per node.
+
+    Node n has a kind (the symbol id), the production that expanded it (or
+    NONE for terminals), first-child / next-sibling / parent links and the
+    source span [start, end). reset() empties the arena but keeps the arrays,
+    so a tree can be rebuilt for every input without allocating.
+
+    For IncrementalLL1Parser, positions from a split point on may be stored
+    relative to the end of the text (position - tailBase, a negative value);
+    start() and end() add tailBase back. An edit at the split then moves
+    every position after it by changing tailBase alone. Trees built by
+    ParseTreeBuilder only hold plain positions.
+*/
+public final class ParseTreeArena {
+
+    public static final int NONE = -1;
+
+    private int[] kind;
+    private int[] production;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] parent;
+    private int[] start;
+    private int[] end;
+    private int size;
+    private int split = Integer.MAX_VALUE;  // positions from here on are stored relative to the end
+    private int tailBase;                   // text length + 1
+
+    public ParseTreeArena() {
+        this(256);
+    }
+
+    public ParseTreeArena(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kind = new int[capacity];
+        production = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        parent = new int[capacity];
+        start = new int[capacity];
+        end = new int[capacity];
+    }
+
+    public void reset() {
+        size = 0;
+        split = Integer.MAX_VALUE;
+        tailBase = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The root is the first node added, or NONE for an empty arena
+    public int root() {
+        return size > 0 ? 0 : NONE;
+    }
+
+    // Add a node spanning [position, position) as the last child of parentNode (or as a root)
+    public int add(int nodeKind, int parentNode, int lastSibling, int position) {
+        if (size == kind.length) {
+            grow();
+        }
+        int n = size++;
+        kind[n] = nodeKind;
+        production[n] = NONE;
+        firstChild[n] = NONE;
+        nextSibling[n] = NONE;
+        parent[n] = parentNode;
+        start[n] = encode(position);
+        end[n] = start[n];
+        if (lastSibling != NONE) {
+            nextSibling[lastSibling] = n;
+        } else if (parentNode != NONE) {
+            firstChild[parentNode] = n;
+        }
+        return n;
+    }
+
+    private void grow() {
+        int capacity = kind.length * 2;
+        kind = Arrays.copyOf(kind, capacity);
+        production = Arrays.copyOf(production, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        start = Arrays.copyOf(start, capacity);
+        end = Arrays.copyOf(end, capacity);
+    }
+
+    public int kind(int n) {
+        return kind[n];
+    }
+
+    public int production(int n) {
+        return production[n];
+    }
+
+    public int firstChild(int n) {
+        return firstChild[n];
+    }
+
+    public int nextSibling(int n) {
+        return nextSibling[n];
+    }
+
+    public int parent(int n) {
+        return parent[n];
+    }
+
+    public int start(int n) {
+        return decode(start[n]);
+    }
+
+    public int end(int n) {
+        return decode(end[n]);
+    }
+
+    void setProduction(int n, int p) {
+        production[n] = p;
+    }
+
+    void setSpan(int n, int from, int to) {
+        start[n] = encode(from);
+        end[n] = encode(to);
+    }
+
+    // Detach the children of n; they stay in the arena, unreachable
+    void clearChildren(int n) {
+        for (int c = firstChild[n]; c != NONE; c = nextSibling[c]) {
+            parent[c] = NONE;
+        }
+        firstChild[n] = NONE;
+    }
+
+    // Put node `with` where n is among its parent's children; n is left detached with its subtree
+    void replace(int n, int with) {
+        int p = parent[n];
+        parent[with] = p;
+        nextSibling[with] = nextSibling[n];
+        if (firstChild[p] == n) {
+            firstChild[p] = with;
+        } else {
+            int c = firstChild[p];
+            while (nextSibling[c] != n) {
+                c = nextSibling[c];
+            }
+            nextSibling[c] = with;
+        }
+        parent[n] = NONE;
+        nextSibling[n] = NONE;
+    }
+
+    // Stored (possibly end-relative) positions, equal exactly when the positions are
+    int rawStart(int n) {
+        return start[n];
+    }
+
+    int rawEnd(int n) {
+        return end[n];
+    }
+
+    void setRawEnd(int n, int value) {
+        end[n] = value;
+    }
+
+    int encode(int position) {
+        return position < split ? position : position - tailBase;
+    }
+
+    int decode(int value) {
+        return value >= 0 ? value : value + tailBase;
+    }
+
+    int split() {
+        return split;
+    }
+
+    // The text now has this length: end-relative positions move with it
+    void setTextLength(int length) {
+        tailBase = length + 1;
+    }
+
+    // Store positions from `position` on relative to the end; reencode converts the stored values,
+    // which the caller may skip when it re-encodes the nodes between the old and new split itself
+    void setSplit(int position, boolean reencode) {
+        split = position;
+        if (reencode) {
+            for (int n = 0; n < size; n++) {
+                reencode(n);
+            }
+        }
+    }
+
+    // Store the span of n again for the current split
+    void reencode(int n) {
+        start[n] = encode(decode(start[n]));
+        end[n] = encode(decode(end[n]));
+    }
+
+    // Widen every node's span to cover its children; children always come after their parent
+    void closeSpans() {
+        for (int n = size - 1; n > 0; n--) {
+            int p = parent[n];
+            if (p != NONE && decode(end[n]) > decode(end[p])) {
+                end[p] = end[n];
+            }
+        }
+    }
+
+    // Depth-first walk from the root without recursion
+    public void visit(ParseTreeVisitor visitor) {
+        int root = root();
+        int n = root;
+        while (n != NONE) {
+            if (visitor.enter(this, n) && firstChild[n] != NONE) {
+                n = firstChild[n];
+                continue;
+            }
+            while (true) {
+                visitor.leave(this, n);
+                if (n == root) {
+                    return;
+                }
+                if (nextSibling[n] != NONE) {
+                    n = nextSibling[n];
+                    break;
+                }
+                n = parent[n];
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/*
+    Builds the parse tree of an LL(1) parse into a ParseTreeArena.
+
+    The builder keeps a stack of tree nodes that mirrors the grammar symbols
+    on the parse stack: an expansion replaces the non-terminal's node by
+    nodes for the right side, a match pops the terminal's node and gives it
+    the token's span. Nothing is allocated once the arena and the node stack
+    have grown to fit the input.
+*/
+public class ParseTreeBuilder implements ParseListener {
+
+    private final CompiledLL1Table table;
+    private final ParseTreeArena tree;
+    private int[] nodes = new int[64];
+    private int sp;
+    private boolean complete;
+
+    public ParseTreeBuilder(CompiledLL1Table table, ParseTreeArena tree) {
+        this.table = table;
+        this.tree = tree;
+    }
+
+    public ParseTreeArena tree() {
+        return tree;
+    }
+
+    // True if the last parse was accepted and its tree is whole
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public void start() {
+        tree.reset();
+        complete = false;
+        sp = 0;
+        nodes[sp++] = tree.add(table.startSymbol(), ParseTreeArena.NONE, ParseTreeArena.NONE, 0);
+    }
+
+    @Override
+    public void expand(int step, int[] stack, int depth, int nonTerminal, int production, int token, long position) {
+        int node = nodes[--sp];
+        int at = (int) position;
+        tree.setProduction(node, production);
+        tree.setSpan(node, at, at);
+
+        int length = table.rhsLength(production);
+        if (sp + length > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, sp + length));
+        }
+        int last = ParseTreeArena.NONE;
+        int first = sp + length - 1;
+        for (int i = 0; i < length; i++) {
+            last = tree.add(table.rhsSymbol(production, i), node, last, at);
+            nodes[first - i] = last;   // leftmost child ends up on top
+        }
+        sp += length;
+    }
+
+    @Override
+    public void match(int step, int[] stack, int depth, int terminal, long position, long end) {
+        int node = nodes[--sp];
+        tree.setSpan(node, (int) position, (int) end);
+    }
+
+    @Override
+    public void sync(int step, int[] stack, int depth, int nonTerminal, int token, long position) {
+        if (token == table.endMarker()) {
+            sp--;   // the non-terminal is popped and stays an empty node
+        }
+    }
+
+    @Override
+    public void insert(int step, int[] stack, int depth, int symbol, int token, long position) {
+        int node = nodes[--sp];   // a missing terminal or an empty non-terminal, spanning nothing
+        tree.setSpan(node, (int) position, (int) position);
+    }
+
+    @Override
+    public void restart(int step, int[] stack, int depth, int token, long position) {
+        // Parsed for its errors only: the node stays outside the tree
+        if (sp == nodes.length) {
+            nodes = Arrays.copyOf(nodes, sp * 2);
+        }
+        nodes[sp++] = tree.add(table.startSymbol(), ParseTreeArena.NONE, ParseTreeArena.NONE, (int) position);
+    }
+
+    @Override
+    public void error(int step, int[] stack, int depth, int expected, int token, long position) {
+        tree.closeSpans();
+    }
+
+    @Override
+    public void accept(int step, int[] stack, int depth, long position) {
+        tree.closeSpans();
+        complete = true;
+    }
+
+    // Print the tree as an indented outline
+    public static void print(CompiledLL1Table table, ParseTreeArena tree, CharSequence input) {
+        tree.visit(new ParseTreeVisitor() {
+            private int indent;
+
+            @Override
+            public boolean enter(ParseTreeArena t, int n) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < indent; i++) {
+                    line.append("  ");
+                }
+                line.append(table.symbolName(t.kind(n)));
+                if (table.isTerminal(t.kind(n))) {
+                    line.append("  '").append(input, t.start(n), t.end(n)).append('\'');
+                } else if (t.firstChild(n) == ParseTreeArena.NONE) {
+                    line.append("  ε");
+                }
+                line.append("  [").append(t.start(n)).append(", ").append(t.end(n)).append(')');
+                System.out.println(line);
+                indent++;
+                return true;
+            }
+
+            @Override
+            public void leave(ParseTreeArena t, int n) {
+                indent--;
+            }
+        });
+    }
+}
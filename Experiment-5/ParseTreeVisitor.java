@@ -0,0 +1,11 @@
+// Callbacks for ParseTreeArena.visit(): enter before the children, leave after them
+public interface ParseTreeVisitor {
+
+    // Return false to skip the children of n
+    default boolean enter(ParseTreeArena tree, int n) {
+        return true;
+    }
+
+    default void leave(ParseTreeArena tree, int n) {
+    }
+}
@@ -0,0 +1,768 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+    Parsing expression grammar for PegParser:
+
+        # comment
+        %start Expr
+        Expr   <- Expr '+' Term / Expr '-' Term / Term
+        Term   <- Term '*' Factor / Term '/' Factor / Factor
+        Factor <- '(' Expr ')' / [0-9]+ / 'i'
+               / ...            (a line starting with '/' continues the last rule)
+        %memo A B               (memoize these rules even if they look cheap)
+        %nomemo C               (never memoize these)
+
+    Expressions are Ford's: e1 e2 sequence, e1 / e2 ordered choice, e* e+ e?,
+    &e and !e lookahead, ( e ), 'literal' or "literal" (with \n \t \r \\ \'
+    \" escapes), [a-z_] and [^0-9] classes, . for any character, and ε or
+    epsilon for the empty string. Without %start the first rule starts.
+
+    The expressions of all rules are compiled into one flat array of nodes
+    (op, x, y), children of sequences and choices listed in kids[x..x+y).
+    Loading also decides, per rule:
+
+      - left recursion: rules that can call themselves without consuming
+        input (directly or through other rules) form cycles in the leftmost
+        call graph. In every such cycle at least one rule is a leader, which
+        PegParser grows from a seed (Warth et al.); the other rules of the
+        cycle are never memoized, since their results depend on the
+        leader's current seed (nor is a leader while another leader of its
+        cycle grows at the same position);
+      - memoization: a rule is memoized unless it only matches terminals (a
+        lexical rule, which is as cheap to match again as to look up) or is
+        a non-leader in a left-recursive cycle; %memo and %nomemo override
+        this.
+
+    A repetition of something that can match the empty string would loop
+    forever in PEG and is rejected, like an undefined rule.
+*/
+public final class PegGrammar {
+
+    // Node ops
+    static final int EMPTY = 0;
+    static final int LITERAL = 1;   // x: index into literals
+    static final int CLASS = 2;     // x: index into classes
+    static final int ANY = 3;
+    static final int RULE = 4;      // x: rule id
+    static final int SEQUENCE = 5;  // kids[x .. x + y)
+    static final int CHOICE = 6;    // kids[x .. x + y)
+    static final int STAR = 7;      // x: child node
+    static final int PLUS = 8;
+    static final int OPTION = 9;
+    static final int AND = 10;
+    static final int NOT = 11;
+
+    final String[] ruleNames;
+    final int[] ruleBody;           // by rule: node of its expression
+    final int startRule;
+    final boolean[] leader;         // grows from a seed
+    final int[] cycle;              // by rule: its left-recursive cycle, or -1
+    final boolean[] memoized;
+    final int[] memoSlot;           // by rule: index among memoized rules, or -1
+    final int memoRules;
+
+    final int[] op;
+    final int[] x;
+    final int[] y;
+    final int[] kids;
+    final char[][] literals;
+    final char[][] classes;         // ranges lo, hi, lo, hi ...
+    final boolean[] negated;        // by class
+
+    private final Map<String, Integer> ruleIds;
+
+    private PegGrammar(Builder b, String start, Set<String> memo, Set<String> noMemo) {
+        this.ruleNames = b.names.toArray(new String[0]);
+        this.ruleIds = b.ids;
+        this.ruleBody = b.bodies.stream().mapToInt(Integer::intValue).toArray();
+        this.op = Arrays.copyOf(b.op, b.nodes);
+        this.x = Arrays.copyOf(b.x, b.nodes);
+        this.y = Arrays.copyOf(b.y, b.nodes);
+        this.kids = b.kids.stream().mapToInt(Integer::intValue).toArray();
+        this.literals = b.literals.toArray(new char[0][]);
+        this.classes = b.classes.toArray(new char[0][]);
+        this.negated = new boolean[b.negated.size()];
+        for (int i = 0; i < negated.length; i++) {
+            negated[i] = b.negated.get(i);
+        }
+        Integer s = ruleIds.get(start);
+        if (s == null) {
+            throw new IllegalArgumentException("start rule " + start + " is not defined");
+        }
+        this.startRule = s;
+
+        int n = ruleNames.length;
+        boolean[] nullable = nullableRules();
+        for (int e = 0; e < op.length; e++) {
+            if ((op[e] == STAR || op[e] == PLUS) && nullable(x[e], nullable)) {
+                throw new IllegalArgumentException("repetition of an expression that can match the empty string in "
+                        + ruleNames[ruleOf(e)]);
+            }
+        }
+
+        // Leftmost call graph, its cycles and their leaders
+        List<Set<Integer>> calls = new ArrayList<>(n);
+        for (int r = 0; r < n; r++) {
+            Set<Integer> out = new LinkedHashSet<>();
+            leftCalls(ruleBody[r], nullable, out);
+            calls.add(out);
+        }
+        this.leader = new boolean[n];
+        this.cycle = new int[n];
+        Arrays.fill(cycle, -1);
+        int cycles = 0;
+        for (List<Integer> component : components(calls)) {
+            if (component.size() == 1 && !calls.get(component.get(0)).contains(component.get(0))) {
+                continue;
+            }
+            for (int r : component) {
+                cycle[r] = cycles;
+            }
+            cycles++;
+            chooseLeaders(component, calls);
+        }
+
+        this.memoized = new boolean[n];
+        this.memoSlot = new int[n];
+        int slots = 0;
+        for (int r = 0; r < n; r++) {
+            String name = ruleNames[r];
+            boolean follower = cycle[r] >= 0 && !leader[r];
+            if (follower && memo.contains(name)) {
+                throw new IllegalArgumentException("cannot memoize " + name + ": it is part of a left-recursive cycle");
+            }
+            boolean memoize = memo.contains(name) || (!noMemo.contains(name) && !follower && callsRules(ruleBody[r]));
+            // A leader has to remember its final result, or every use would grow it again
+            memoized[r] = memoize || (leader[r] && !noMemo.contains(name));
+            memoSlot[r] = memoized[r] ? slots++ : -1;
+        }
+        this.memoRules = slots;
+    }
+
+    public static PegGrammar load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static PegGrammar parse(List<String> lines) {
+        // Join continuation lines to their rule first
+        List<String> names = new ArrayList<>();
+        List<StringBuilder> texts = new ArrayList<>();
+        List<Integer> firstLines = new ArrayList<>();
+        String start = null;
+        Set<String> memo = new HashSet<>();
+        Set<String> noMemo = new HashSet<>();
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("%start")) {
+                start = line.substring("%start".length()).trim();
+            } else if (line.startsWith("%memo")) {
+                memo.addAll(Arrays.asList(line.substring("%memo".length()).trim().split("\\s+")));
+            } else if (line.startsWith("%nomemo")) {
+                noMemo.addAll(Arrays.asList(line.substring("%nomemo".length()).trim().split("\\s+")));
+            } else if (line.startsWith("/")) {
+                if (texts.isEmpty()) {
+                    throw new IllegalArgumentException("line " + lineNo + ": '/' before any rule");
+                }
+                texts.get(texts.size() - 1).append(' ').append(line);
+            } else {
+                int arrow = line.indexOf("<-");
+                if (arrow <= 0) {
+                    throw new IllegalArgumentException("line " + lineNo + ": expected 'A <- ...'");
+                }
+                String name = line.substring(0, arrow).trim();
+                if (!isIdentifier(name)) {
+                    throw new IllegalArgumentException("line " + lineNo + ": bad rule name '" + name + "'");
+                }
+                if (names.contains(name)) {
+                    throw new IllegalArgumentException("line " + lineNo + ": rule " + name + " defined twice");
+                }
+                names.add(name);
+                texts.add(new StringBuilder(line.substring(arrow + 2)));
+                firstLines.add(lineNo);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("grammar has no rules");
+        }
+
+        Builder b = new Builder(names);
+        for (int r = 0; r < names.size(); r++) {
+            try {
+                b.bodies.add(b.rule(texts.get(r).toString()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + firstLines.get(r) + ": " + e.getMessage(), e);
+            }
+        }
+        memo.remove("");
+        noMemo.remove("");
+        for (String name : union(memo, noMemo)) {
+            if (!b.ids.containsKey(name)) {
+                throw new IllegalArgumentException("%memo or %nomemo names an undefined rule " + name);
+            }
+        }
+        return new PegGrammar(b, start != null ? start : names.get(0), memo, noMemo);
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> all = new TreeSet<>(a);
+        all.addAll(b);
+        return all;
+    }
+
+    public int ruleCount() {
+        return ruleNames.length;
+    }
+
+    public String ruleName(int rule) {
+        return ruleNames[rule];
+    }
+
+    // Rule id by name, or -1
+    public int ruleId(String name) {
+        Integer id = ruleIds.get(name);
+        return id != null ? id : -1;
+    }
+
+    public int startRule() {
+        return startRule;
+    }
+
+    // True if the rule is grown from a seed as the leader of a left-recursive cycle
+    public boolean isLeftRecursionLeader(int rule) {
+        return leader[rule];
+    }
+
+    public boolean isMemoized(int rule) {
+        return memoized[rule];
+    }
+
+    // Number of memoized rules: the width of a parser's memo table
+    public int memoizedRules() {
+        return memoRules;
+    }
+
+    // The rule whose expression contains node e
+    private int ruleOf(int e) {
+        int best = 0;
+        for (int r = 0; r < ruleBody.length; r++) {
+            if (contains(ruleBody[r], e)) {
+                best = r;
+            }
+        }
+        return best;
+    }
+
+    private boolean contains(int root, int e) {
+        if (root == e) {
+            return true;
+        }
+        switch (op[root]) {
+            case SEQUENCE:
+            case CHOICE:
+                for (int k = x[root]; k < x[root] + y[root]; k++) {
+                    if (contains(kids[k], e)) {
+                        return true;
+                    }
+                }
+                return false;
+            case STAR:
+            case PLUS:
+            case OPTION:
+            case AND:
+            case NOT:
+                return contains(x[root], e);
+            default:
+                return false;
+        }
+    }
+
+    // Rules that can match the empty string, by fixpoint
+    private boolean[] nullableRules() {
+        boolean[] nullable = new boolean[ruleNames.length];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < ruleNames.length; r++) {
+                if (!nullable[r] && nullable(ruleBody[r], nullable)) {
+                    nullable[r] = true;
+                    changed = true;
+                }
+            }
+        }
+        return nullable;
+    }
+
+    private boolean nullable(int e, boolean[] rules) {
+        switch (op[e]) {
+            case EMPTY:
+            case STAR:
+            case OPTION:
+            case AND:
+            case NOT:
+                return true;
+            case LITERAL:
+                return literals[x[e]].length == 0;
+            case CLASS:
+            case ANY:
+                return false;
+            case RULE:
+                return rules[x[e]];
+            case PLUS:
+                return nullable(x[e], rules);
+            case SEQUENCE:
+                for (int k = x[e]; k < x[e] + y[e]; k++) {
+                    if (!nullable(kids[k], rules)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:   // CHOICE
+                for (int k = x[e]; k < x[e] + y[e]; k++) {
+                    if (nullable(kids[k], rules)) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    // Rules e may call before consuming any input
+    private void leftCalls(int e, boolean[] nullable, Set<Integer> out) {
+        switch (op[e]) {
+            case RULE:
+                out.add(x[e]);
+                break;
+            case SEQUENCE:
+                for (int k = x[e]; k < x[e] + y[e]; k++) {
+                    leftCalls(kids[k], nullable, out);
+                    if (!nullable(kids[k], nullable)) {
+                        break;
+                    }
+                }
+                break;
+            case CHOICE:
+                for (int k = x[e]; k < x[e] + y[e]; k++) {
+                    leftCalls(kids[k], nullable, out);
+                }
+                break;
+            case STAR:
+            case PLUS:
+            case OPTION:
+            case AND:
+            case NOT:
+                leftCalls(x[e], nullable, out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean callsRules(int e) {
+        switch (op[e]) {
+            case RULE:
+                return true;
+            case SEQUENCE:
+            case CHOICE:
+                for (int k = x[e]; k < x[e] + y[e]; k++) {
+                    if (callsRules(kids[k])) {
+                        return true;
+                    }
+                }
+                return false;
+            case STAR:
+            case PLUS:
+            case OPTION:
+            case AND:
+            case NOT:
+                return callsRules(x[e]);
+            default:
+                return false;
+        }
+    }
+
+    // Strongly connected components of the call graph (Tarjan, recursive: grammars are small)
+    private static List<List<Integer>> components(List<Set<Integer>> calls) {
+        int n = calls.size();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        Deque<Integer> stack = new ArrayDeque<>();
+        List<List<Integer>> result = new ArrayList<>();
+        int[] counter = {0};
+        for (int r = 0; r < n; r++) {
+            if (index[r] < 0) {
+                strongConnect(r, calls, index, low, onStack, stack, result, counter);
+            }
+        }
+        return result;
+    }
+
+    private static void strongConnect(int v, List<Set<Integer>> calls, int[] index, int[] low, boolean[] onStack,
+                                      Deque<Integer> stack, List<List<Integer>> result, int[] counter) {
+        index[v] = low[v] = counter[0]++;
+        stack.push(v);
+        onStack[v] = true;
+        for (int w : calls.get(v)) {
+            if (index[w] < 0) {
+                strongConnect(w, calls, index, low, onStack, stack, result, counter);
+                low[v] = Math.min(low[v], low[w]);
+            } else if (onStack[w]) {
+                low[v] = Math.min(low[v], index[w]);
+            }
+        }
+        if (low[v] == index[v]) {
+            List<Integer> component = new ArrayList<>();
+            int w;
+            do {
+                w = stack.pop();
+                onStack[w] = false;
+                component.add(w);
+            } while (w != v);
+            result.add(component);
+        }
+    }
+
+    /*
+        Mark leaders in a cyclic component until the calls among the other
+        rules have no cycle left: rules calling themselves first, then the
+        rule with the most calls in and out among those still on a cycle.
+    */
+    private void chooseLeaders(List<Integer> component, List<Set<Integer>> calls) {
+        for (int r : component) {
+            if (calls.get(r).contains(r)) {
+                leader[r] = true;
+            }
+        }
+        while (true) {
+            List<Integer> cyclic = cyclicRest(component, calls);
+            if (cyclic.isEmpty()) {
+                return;
+            }
+            int best = -1;
+            int bestDegree = -1;
+            for (int r : cyclic) {
+                int degree = 0;
+                for (int s : cyclic) {
+                    degree += (calls.get(r).contains(s) ? 1 : 0) + (calls.get(s).contains(r) ? 1 : 0);
+                }
+                if (degree > bestDegree) {
+                    best = r;
+                    bestDegree = degree;
+                }
+            }
+            leader[best] = true;
+        }
+    }
+
+    // Non-leaders of the component left after repeatedly removing those no non-leader calls (Kahn)
+    private List<Integer> cyclicRest(List<Integer> component, List<Set<Integer>> calls) {
+        List<Integer> rest = new ArrayList<>();
+        for (int r : component) {
+            if (!leader[r]) {
+                rest.add(r);
+            }
+        }
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (Iterator<Integer> it = rest.iterator(); it.hasNext(); ) {
+                int r = it.next();
+                boolean called = false;
+                for (int s : rest) {
+                    if (calls.get(s).contains(r)) {
+                        called = true;
+                        break;
+                    }
+                }
+                if (!called) {
+                    it.remove();
+                    removed = true;
+                }
+            }
+        }
+        return rest;
+    }
+
+    // Expression text, for messages
+    String describe(int e) {
+        switch (op[e]) {
+            case EMPTY:
+                return "ε";
+            case LITERAL:
+                return "'" + escape(new String(literals[x[e]])) + "'";
+            case CLASS: {
+                StringBuilder sb = new StringBuilder(negated[x[e]] ? "[^" : "[");
+                char[] ranges = classes[x[e]];
+                for (int k = 0; k < ranges.length; k += 2) {
+                    sb.append(escape(String.valueOf(ranges[k])));
+                    if (ranges[k + 1] != ranges[k]) {
+                        sb.append('-').append(escape(String.valueOf(ranges[k + 1])));
+                    }
+                }
+                return sb.append(']').toString();
+            }
+            case ANY:
+                return ".";
+            case RULE:
+                return ruleNames[x[e]];
+            default:
+                return "(...)";
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t").replace("\r", "\\r")
+                .replace("'", "\\'");
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (s.isEmpty() || !(Character.isLetter(s.charAt(0)) || s.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Recursive-descent reader of rule expressions into the flat node arrays
+    private static final class Builder {
+        final List<String> names;
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<Integer> bodies = new ArrayList<>();
+        int[] op = new int[64];
+        int[] x = new int[64];
+        int[] y = new int[64];
+        int nodes;
+        final List<Integer> kids = new ArrayList<>();
+        final List<char[]> literals = new ArrayList<>();
+        final Map<String, Integer> literalIds = new HashMap<>();
+        final List<char[]> classes = new ArrayList<>();
+        final List<Boolean> negated = new ArrayList<>();
+
+        private String text;
+        private int at;
+
+        Builder(List<String> names) {
+            this.names = names;
+            for (int r = 0; r < names.size(); r++) {
+                ids.put(names.get(r), r);
+            }
+        }
+
+        int rule(String body) {
+            text = body;
+            at = 0;
+            int e = choice();
+            skipBlanks();
+            if (at < text.length()) {
+                throw new IllegalArgumentException("unexpected '" + text.charAt(at) + "' in " + body.trim());
+            }
+            return e;
+        }
+
+        private int node(int kind, int a, int b) {
+            if (nodes == op.length) {
+                op = Arrays.copyOf(op, nodes * 2);
+                x = Arrays.copyOf(x, nodes * 2);
+                y = Arrays.copyOf(y, nodes * 2);
+            }
+            op[nodes] = kind;
+            x[nodes] = a;
+            y[nodes] = b;
+            return nodes++;
+        }
+
+        // A node over several children, or the child itself when there is one
+        private int list(int kind, List<Integer> items) {
+            if (items.size() == 1) {
+                return items.get(0);
+            }
+            int first = kids.size();
+            kids.addAll(items);
+            return node(kind, first, items.size());
+        }
+
+        private int choice() {
+            List<Integer> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (peek() == '/') {
+                at++;
+                alternatives.add(sequence());
+            }
+            return list(CHOICE, alternatives);
+        }
+
+        private int sequence() {
+            List<Integer> items = new ArrayList<>();
+            while (true) {
+                int c = peek();
+                if (c < 0 || c == '/' || c == ')') {
+                    break;
+                }
+                items.add(prefixed());
+            }
+            return items.isEmpty() ? node(EMPTY, 0, 0) : list(SEQUENCE, items);
+        }
+
+        private int prefixed() {
+            int c = peek();
+            if (c == '&' || c == '!') {
+                at++;
+                return node(c == '&' ? AND : NOT, prefixed(), 0);
+            }
+            int e = primary();
+            while (true) {
+                c = at < text.length() ? text.charAt(at) : -1;
+                if (c == '*') {
+                    e = node(STAR, e, 0);
+                } else if (c == '+') {
+                    e = node(PLUS, e, 0);
+                } else if (c == '?') {
+                    e = node(OPTION, e, 0);
+                } else {
+                    return e;
+                }
+                at++;
+            }
+        }
+
+        private int primary() {
+            int c = peek();
+            if (c == '(') {
+                at++;
+                int e = choice();
+                if (peek() != ')') {
+                    throw new IllegalArgumentException("missing ')' in " + text.trim());
+                }
+                at++;
+                return e;
+            }
+            if (c == '\'' || c == '"') {
+                return literal((char) c);
+            }
+            if (c == '[') {
+                return charClass();
+            }
+            if (c == '.') {
+                at++;
+                return node(ANY, 0, 0);
+            }
+            if (c == 'ε') {
+                at++;
+                return node(EMPTY, 0, 0);
+            }
+            int begin = at;
+            while (at < text.length() && (Character.isLetterOrDigit(text.charAt(at)) || text.charAt(at) == '_')) {
+                at++;
+            }
+            if (at == begin) {
+                throw new IllegalArgumentException("unexpected '" + (char) c + "' in " + text.trim());
+            }
+            String name = text.substring(begin, at);
+            Integer rule = ids.get(name);
+            if (rule == null) {
+                if (name.equals("epsilon")) {
+                    return node(EMPTY, 0, 0);
+                }
+                throw new IllegalArgumentException("undefined rule " + name);
+            }
+            return node(RULE, rule, 0);
+        }
+
+        private int literal(char quote) {
+            at++;
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (at >= text.length()) {
+                    throw new IllegalArgumentException("unterminated literal in " + text.trim());
+                }
+                char c = text.charAt(at++);
+                if (c == quote) {
+                    break;
+                }
+                sb.append(c == '\\' ? escaped() : c);
+            }
+            String s = sb.toString();
+            Integer id = literalIds.get(s);
+            if (id == null) {
+                id = literals.size();
+                literals.add(s.toCharArray());
+                literalIds.put(s, id);
+            }
+            return node(LITERAL, id, 0);
+        }
+
+        private int charClass() {
+            at++;
+            boolean not = at < text.length() && text.charAt(at) == '^';
+            if (not) {
+                at++;
+            }
+            StringBuilder ranges = new StringBuilder();
+            while (true) {
+                if (at >= text.length()) {
+                    throw new IllegalArgumentException("unterminated character class in " + text.trim());
+                }
+                char c = text.charAt(at++);
+                if (c == ']') {
+                    break;
+                }
+                char lo = c == '\\' ? escaped() : c;
+                char hi = lo;
+                if (at + 1 < text.length() && text.charAt(at) == '-' && text.charAt(at + 1) != ']') {
+                    at++;
+                    char h = text.charAt(at++);
+                    hi = h == '\\' ? escaped() : h;
+                    if (hi < lo) {
+                        throw new IllegalArgumentException("empty range " + lo + "-" + hi + " in " + text.trim());
+                    }
+                }
+                ranges.append(lo).append(hi);
+            }
+            classes.add(ranges.toString().toCharArray());
+            negated.add(not);
+            return node(CLASS, classes.size() - 1, 0);
+        }
+
+        private char escaped() {
+            if (at >= text.length()) {
+                throw new IllegalArgumentException("dangling '\\' in " + text.trim());
+            }
+            char c = text.charAt(at++);
+            if (c == 'n') {
+                return '\n';
+            } else if (c == 't') {
+                return '\t';
+            } else if (c == 'r') {
+                return '\r';
+            }
+            return c;
+        }
+
+        // Next non-blank character, or -1 at the end
+        private int peek() {
+            skipBlanks();
+            return at < text.length() ? text.charAt(at) : -1;
+        }
+
+        private void skipBlanks() {
+            while (at < text.length() && Character.isWhitespace(text.charAt(at))) {
+                at++;
+            }
+        }
+    }
+}
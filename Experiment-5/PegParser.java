@@ -0,0 +1,609 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Packrat parser for a PegGrammar: ordered choice with unlimited
+    backtracking, in linear time as long as backtracking stays within the
+    memo window.
+
+    Memo table. The result of a memoized rule at a position (end position
+    or failure, and its tree node) is kept in a table of
+    window x memoizedRules slots, slot ((position mod window), rule). An
+    entry is overwritten by the same rule window positions further on, so
+    the table is a sliding window over the input: its size is fixed however
+    long the input is, and a rule is only parsed twice at a position if a
+    choice backtracks more than `window` characters. Inputs shorter than the
+    window get a table just large enough for them (window 0: always that
+    size, full packrat). Only the rules PegGrammar chose are memoized.
+
+    Left recursion. A left-recursion leader (see PegGrammar) applied at a
+    position is grown from a seed: the first round fails the recursive
+    call, leaving the non-recursive alternatives as the seed; each further
+    round re-parses the body with the last result standing in for the
+    recursive call, until a round gets no further. E <- E '+' T / T thus
+    parses left-associative without rewriting. Seeds in progress live on a
+    small stack of their own, never in the window, so they cannot be
+    evicted.
+
+    Trees. parse(input, tree) builds a tree of rule nodes, one per
+    successful rule application, each spanning the text it matched (kind =
+    rule id in the ParseTreeArena). Memoized nodes are shared by every
+    parse that reuses them, so nodes are first kept in the parser's own
+    buffers, which also hold those of alternatives that later failed; the
+    final tree is copied into the arena. Without a tree only positions are
+    recorded.
+
+    On failure parse() returns the farthest position at which a terminal
+    was tried, and expected() the terminals tried there. Recursion depth
+    follows the nesting of the input, not its length: repetitions are loops,
+    and left-recursive rules grow in a loop. Not thread-safe: use one parser
+    per thread on a shared PegGrammar.
+*/
+public final class PegParser {
+
+    // Result of parse() when the input is accepted
+    public static final int ACCEPT = -1;
+
+    public static final int DEFAULT_WINDOW = 1 << 12;
+
+    private static final int FAIL = -1;
+    private static final int EMPTY_SLOT = -1;
+    private static final int END_OF_INPUT = -1;   // in expected: the input should have ended
+
+    private final PegGrammar grammar;
+    private final int[] op;
+    private final int[] x;
+    private final int[] y;
+    private final int[] kids;
+    private final char[][] literals;
+    private final char[][] classes;
+    private final boolean[] negated;
+    private final long[][] asciiClasses;    // by class: 128-bit set of the ASCII characters it matches
+    private final int[] ruleBody;
+    private final boolean[] leader;
+    private final int[] cycle;
+    private final int[] memoSlot;
+    private final int memoRules;
+    private final int maxWindow;
+
+    private CharSequence input;
+    private int length;
+
+    // Memo window: key position, end (or FAIL) and node per slot
+    private int window;
+    private int windowMask;
+    private int[] memoPos = new int[0];
+    private int[] memoEnd = new int[0];
+    private int[] memoNode = new int[0];
+
+    // Seeds being grown, innermost last; positions never decrease up the stack
+    private int[] headRule = new int[8];
+    private int[] headPos = new int[8];
+    private int[] headEnd = new int[8];
+    private int[] headNode = new int[8];
+    private int heads;
+
+    // Tree nodes (rule, span, children[childStart .. childStart + childCount)) and pending children
+    private boolean buildTree;
+    private int[] nodeRule = new int[64];
+    private int[] nodeStart = new int[64];
+    private int[] nodeEnd = new int[64];
+    private int[] nodeChildStart = new int[64];
+    private int[] nodeChildCount = new int[64];
+    private int nodes;
+    private int[] children = new int[64];
+    private int childCount;
+    private int[] pending = new int[64];
+    private int pendingTop;
+    private int resultNode;
+
+    // Farthest failure
+    private int farthest;
+    private int[] expected = new int[8];
+    private int expectedCount;
+    private int predicates;
+
+    // Counters of the last parse
+    private long ruleCalls;
+    private long memoHits;
+    private long memoEvictions;
+    private long seedRounds;
+
+    public PegParser(PegGrammar grammar) {
+        this(grammar, DEFAULT_WINDOW);
+    }
+
+    // window: memo positions kept, rounded up to a power of two; 0 keeps every position
+    public PegParser(PegGrammar grammar, int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException("negative memo window: " + window);
+        }
+        this.grammar = grammar;
+        this.op = grammar.op;
+        this.x = grammar.x;
+        this.y = grammar.y;
+        this.kids = grammar.kids;
+        this.literals = grammar.literals;
+        this.classes = grammar.classes;
+        this.negated = grammar.negated;
+        this.ruleBody = grammar.ruleBody;
+        this.leader = grammar.leader;
+        this.cycle = grammar.cycle;
+        this.memoSlot = grammar.memoSlot;
+        this.memoRules = grammar.memoRules;
+        this.maxWindow = window == 0 ? 0 : powerOfTwo(window);
+        this.asciiClasses = new long[classes.length][2];
+        for (int c = 0; c < classes.length; c++) {
+            for (int ch = 0; ch < 128; ch++) {
+                if (inRanges(classes[c], (char) ch) != negated[c]) {
+                    asciiClasses[c][ch >>> 6] |= 1L << ch;
+                }
+            }
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    public PegGrammar grammar() {
+        return grammar;
+    }
+
+    // Recognize input from the start rule; returns ACCEPT or the position of the error
+    public int parse(CharSequence input) {
+        return parse(input, null);
+    }
+
+    // As parse(input), also putting the parse tree into tree (if not null) when the input is accepted
+    public int parse(CharSequence input, ParseTreeArena tree) {
+        start(input, tree != null);
+        int end = apply(grammar.startRule, 0);
+        if (end == length) {
+            if (tree != null) {
+                copyTree(resultNode, tree);
+            }
+            return ACCEPT;
+        }
+        if (end >= 0) {
+            // The start rule matched a prefix; the rest is unexpected
+            fail(end, END_OF_INPUT);
+        }
+        // Failures inside predicates are not recorded, so there may be none
+        return Math.max(farthest, 0);
+    }
+
+    private void start(CharSequence text, boolean tree) {
+        input = text;
+        length = text.length();
+        int size = powerOfTwo(length + 1);
+        window = maxWindow == 0 ? size : Math.min(size, maxWindow);
+        windowMask = window - 1;
+        int slots = window * memoRules;
+        if (memoPos.length < slots) {
+            memoPos = new int[slots];
+            memoEnd = new int[slots];
+            memoNode = new int[slots];
+        }
+        Arrays.fill(memoPos, 0, slots, EMPTY_SLOT);
+        heads = 0;
+        buildTree = tree;
+        nodes = 0;
+        childCount = 0;
+        pendingTop = 0;
+        resultNode = -1;
+        farthest = -1;
+        expectedCount = 0;
+        predicates = 0;
+        ruleCalls = 0;
+        memoHits = 0;
+        memoEvictions = 0;
+        seedRounds = 0;
+    }
+
+    // Apply a rule at pos; returns its end or FAIL, with its node (tree mode) in resultNode and pending
+    private int apply(int rule, int pos) {
+        ruleCalls++;
+        if (leader[rule]) {
+            for (int h = heads - 1; h >= 0 && headPos[h] >= pos; h--) {
+                if (headRule[h] == rule && headPos[h] == pos) {
+                    return reuse(headEnd[h], headNode[h]);
+                }
+            }
+        }
+        int slot = memoSlot[rule];
+        if (slot >= 0) {
+            slot += (pos & windowMask) * memoRules;
+            if (memoPos[slot] == pos) {
+                memoHits++;
+                return reuse(memoEnd[slot], memoNode[slot]);
+            }
+        }
+        int end = leader[rule] ? grow(rule, pos) : body(rule, pos);
+        if (slot >= 0 && !dependsOnSeed(rule, pos)) {
+            if (memoPos[slot] != EMPTY_SLOT) {
+                memoEvictions++;
+            }
+            memoPos[slot] = pos;
+            memoEnd[slot] = end;
+            memoNode[slot] = resultNode;
+        }
+        return end;
+    }
+
+    // True if another leader of the rule's cycle is growing at pos, so the result holds its seed
+    private boolean dependsOnSeed(int rule, int pos) {
+        if (cycle[rule] < 0) {
+            return false;
+        }
+        for (int h = heads - 1; h >= 0 && headPos[h] == pos; h--) {
+            if (cycle[headRule[h]] == cycle[rule]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int reuse(int end, int node) {
+        resultNode = end >= 0 ? node : -1;
+        if (end >= 0 && buildTree) {
+            push(node);
+        }
+        return end;
+    }
+
+    // Parse the rule's expression once, adding its node on success
+    private int body(int rule, int pos) {
+        int mark = pendingTop;
+        int end = eval(ruleBody[rule], pos);
+        resultNode = -1;
+        if (end >= 0 && buildTree) {
+            resultNode = newNode(rule, pos, end, mark);
+            pendingTop = mark;
+            push(resultNode);
+        } else {
+            pendingTop = mark;
+        }
+        return end;
+    }
+
+    // Grow a left-recursion leader at pos from a failing seed until a round gets no further
+    private int grow(int rule, int pos) {
+        if (heads == headRule.length) {
+            int capacity = heads * 2;
+            headRule = Arrays.copyOf(headRule, capacity);
+            headPos = Arrays.copyOf(headPos, capacity);
+            headEnd = Arrays.copyOf(headEnd, capacity);
+            headNode = Arrays.copyOf(headNode, capacity);
+        }
+        int h = heads++;
+        headRule[h] = rule;
+        headPos[h] = pos;
+        headEnd[h] = FAIL;
+        headNode[h] = -1;
+        int mark = pendingTop;
+        while (true) {
+            seedRounds++;
+            int end = body(rule, pos);
+            pendingTop = mark;
+            if (end < 0 || end <= headEnd[h]) {
+                break;
+            }
+            headEnd[h] = end;
+            headNode[h] = resultNode;
+        }
+        heads--;
+        return reuse(headEnd[h], headNode[h]);
+    }
+
+    private int eval(int e, int pos) {
+        switch (op[e]) {
+            case PegGrammar.EMPTY:
+                return pos;
+            case PegGrammar.LITERAL: {
+                char[] literal = literals[x[e]];
+                if (pos + literal.length > length) {
+                    return fail(pos, e);
+                }
+                for (int k = 0; k < literal.length; k++) {
+                    if (input.charAt(pos + k) != literal[k]) {
+                        return fail(pos, e);
+                    }
+                }
+                return pos + literal.length;
+            }
+            case PegGrammar.CLASS: {
+                if (pos < length) {
+                    char c = input.charAt(pos);
+                    int cls = x[e];
+                    boolean in = c < 128
+                            ? (asciiClasses[cls][c >>> 6] & (1L << c)) != 0
+                            : inRanges(classes[cls], c) != negated[cls];
+                    if (in) {
+                        return pos + 1;
+                    }
+                }
+                return fail(pos, e);
+            }
+            case PegGrammar.ANY:
+                return pos < length ? pos + 1 : fail(pos, e);
+            case PegGrammar.RULE:
+                return apply(x[e], pos);
+            case PegGrammar.SEQUENCE: {
+                int mark = pendingTop;
+                int p = pos;
+                for (int k = x[e], last = x[e] + y[e]; k < last; k++) {
+                    p = eval(kids[k], p);
+                    if (p < 0) {
+                        pendingTop = mark;
+                        return FAIL;
+                    }
+                }
+                return p;
+            }
+            case PegGrammar.CHOICE: {
+                int mark = pendingTop;
+                for (int k = x[e], last = x[e] + y[e]; k < last; k++) {
+                    int end = eval(kids[k], pos);
+                    if (end >= 0) {
+                        return end;
+                    }
+                    pendingTop = mark;
+                }
+                return FAIL;
+            }
+            case PegGrammar.STAR:
+                return repeat(x[e], pos);
+            case PegGrammar.PLUS: {
+                int p = eval(x[e], pos);
+                return p < 0 ? FAIL : repeat(x[e], p);
+            }
+            case PegGrammar.OPTION: {
+                int mark = pendingTop;
+                int end = eval(x[e], pos);
+                if (end < 0) {
+                    pendingTop = mark;
+                    return pos;
+                }
+                return end;
+            }
+            default: {   // AND, NOT: look ahead, consume nothing, keep no nodes
+                int mark = pendingTop;
+                predicates++;
+                int end = eval(x[e], pos);
+                predicates--;
+                pendingTop = mark;
+                return (end >= 0) == (op[e] == PegGrammar.AND) ? pos : FAIL;
+            }
+        }
+    }
+
+    // e* from pos; PegGrammar rejects repetitions of expressions that can match empty, so this ends
+    private int repeat(int e, int pos) {
+        int p = pos;
+        while (true) {
+            int mark = pendingTop;
+            int end = eval(e, p);
+            if (end < 0) {
+                pendingTop = mark;
+                return p;
+            }
+            p = end;
+        }
+    }
+
+    private static boolean inRanges(char[] ranges, char c) {
+        for (int k = 0; k < ranges.length; k += 2) {
+            if (c >= ranges[k] && c <= ranges[k + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Record that terminal e (or END_OF_INPUT) was expected at pos; returns FAIL
+    private int fail(int pos, int e) {
+        if (predicates > 0 || pos < farthest) {
+            return FAIL;
+        }
+        if (pos > farthest) {
+            farthest = pos;
+            expectedCount = 0;
+        }
+        for (int k = 0; k < expectedCount; k++) {
+            if (expected[k] == e) {
+                return FAIL;
+            }
+        }
+        if (expectedCount == expected.length) {
+            expected = Arrays.copyOf(expected, expectedCount * 2);
+        }
+        expected[expectedCount++] = e;
+        return FAIL;
+    }
+
+    private int newNode(int rule, int start, int end, int firstPending) {
+        if (nodes == nodeRule.length) {
+            int capacity = nodes * 2;
+            nodeRule = Arrays.copyOf(nodeRule, capacity);
+            nodeStart = Arrays.copyOf(nodeStart, capacity);
+            nodeEnd = Arrays.copyOf(nodeEnd, capacity);
+            nodeChildStart = Arrays.copyOf(nodeChildStart, capacity);
+            nodeChildCount = Arrays.copyOf(nodeChildCount, capacity);
+        }
+        int count = pendingTop - firstPending;
+        if (childCount + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+        }
+        System.arraycopy(pending, firstPending, children, childCount, count);
+        int n = nodes++;
+        nodeRule[n] = rule;
+        nodeStart[n] = start;
+        nodeEnd[n] = end;
+        nodeChildStart[n] = childCount;
+        nodeChildCount[n] = count;
+        childCount += count;
+        return n;
+    }
+
+    private void push(int node) {
+        if (pendingTop == pending.length) {
+            pending = Arrays.copyOf(pending, pendingTop * 2);
+        }
+        pending[pendingTop++] = node;
+    }
+
+    // Copy the tree under root into the arena, depth first without recursion
+    private void copyTree(int root, ParseTreeArena tree) {
+        tree.reset();
+        int[] stack = new int[16];
+        int[] parents = new int[16];
+        int[] lastChild = new int[Math.max(16, nodes)];
+        int top = 0;
+        stack[top] = root;
+        parents[top++] = ParseTreeArena.NONE;
+        while (top > 0) {
+            int n = stack[--top];
+            int parent = parents[top];
+            int sibling = parent == ParseTreeArena.NONE ? ParseTreeArena.NONE : lastChild[parent];
+            int a = tree.add(nodeRule[n], parent, sibling, nodeStart[n]);
+            tree.setSpan(a, nodeStart[n], nodeEnd[n]);
+            if (a >= lastChild.length) {
+                lastChild = Arrays.copyOf(lastChild, a * 2 + 1);
+            }
+            lastChild[a] = ParseTreeArena.NONE;
+            if (parent != ParseTreeArena.NONE) {
+                lastChild[parent] = a;
+            }
+            int count = nodeChildCount[n];
+            if (top + count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + count));
+                parents = Arrays.copyOf(parents, stack.length);
+            }
+            // Pushed last child first, so the first child is added next
+            for (int k = count - 1; k >= 0; k--) {
+                stack[top] = children[nodeChildStart[n] + k];
+                parents[top++] = a;
+            }
+        }
+    }
+
+    // Terminals tried at the error position of the last failed parse
+    public List<String> expected() {
+        Set<String> names = new LinkedHashSet<>();
+        for (int k = 0; k < expectedCount; k++) {
+            names.add(expected[k] == END_OF_INPUT ? "end of input" : grammar.describe(expected[k]));
+        }
+        return new ArrayList<>(names);
+    }
+
+    // Rule applications in the last parse, memo hits among them, and memo entries overwritten
+    public long ruleCalls() {
+        return ruleCalls;
+    }
+
+    public long memoHits() {
+        return memoHits;
+    }
+
+    public long memoEvictions() {
+        return memoEvictions;
+    }
+
+    // Rounds of seed growing in the last parse
+    public long seedRounds() {
+        return seedRounds;
+    }
+
+    // Positions in the memo window of the last parse
+    public int window() {
+        return window;
+    }
+
+    // Bytes held by the memo table
+    public long memoBytes() {
+        return 12L * memoPos.length;
+    }
+
+    // Indented dump of a tree built by parse(input, tree)
+    public String treeString(ParseTreeArena tree, CharSequence text) {
+        StringBuilder sb = new StringBuilder();
+        tree.visit(new ParseTreeVisitor() {
+            private int depth;
+
+            @Override
+            public boolean enter(ParseTreeArena t, int n) {
+                sb.append("  ".repeat(depth)).append(grammar.ruleName(t.kind(n)))
+                        .append(' ').append(text, t.start(n), t.end(n)).append('\n');
+                depth++;
+                return true;
+            }
+
+            @Override
+            public void leave(ParseTreeArena t, int n) {
+                depth--;
+            }
+        });
+        return sb.toString();
+    }
+
+    // Parse the left-recursive expression grammar and show memoization on a backtracking one
+    public static void main(String[] args) throws IOException {
+        PegGrammar expr = args.length > 0 ? PegGrammar.load(Path.of(args[0])) : PegGrammar.parse(List.of(
+                "%start Expr",
+                "Expr   <- Expr '+' Term / Expr '-' Term / Term",
+                "Term   <- Term '*' Factor / Term '/' Factor / Factor",
+                "Factor <- '(' Expr ')' / Number / 'i'",
+                "Number <- [0-9]+"));   // expr.peg, with numbers
+        for (int r = 0; r < expr.ruleCount(); r++) {
+            System.out.println(expr.ruleName(r) + (expr.isLeftRecursionLeader(r) ? " (left-recursive)" : "")
+                    + (expr.isMemoized(r) ? " (memoized)" : ""));
+        }
+        PegParser parser = new PegParser(expr);
+        ParseTreeArena tree = new ParseTreeArena();
+        String input = "i+2*(i-10)/i";
+        if (parser.parse(input, tree) == ACCEPT) {
+            System.out.println("\n" + input + " accepted:");
+            System.out.print(parser.treeString(tree, input));
+        }
+        for (String bad : new String[]{"i+*i", "(i+i", "i+i)"}) {
+            int error = parser.parse(bad);
+            System.out.println(bad + ": error at " + error + ", expected " + parser.expected());
+        }
+
+        // Every alternative re-parses S after the first: exponential without the memo table
+        List<String> backtracking = List.of(
+                "S <- 'a' S 'b' / 'a' S 'c' / 'a' S 'd' / ε");
+        String deep = "a".repeat(12) + "d".repeat(12);
+        PegParser memo = new PegParser(PegGrammar.parse(backtracking));
+        List<String> unmemoized = new ArrayList<>(backtracking);
+        unmemoized.add("%nomemo S");
+        PegParser plain = new PegParser(PegGrammar.parse(unmemoized));
+        System.out.printf("%nbacktracking over %d characters: %d rule calls memoized (%d hits), %d without%n",
+                deep.length(), countCalls(memo, deep), memo.memoHits(), countCalls(plain, deep));
+
+        // A long input through a small window: memory stays fixed
+        StringBuilder sb = new StringBuilder("i");
+        for (int k = 0; k < 200_000; k++) {
+            sb.append(k % 3 == 0 ? "+(i*2)" : "-i");
+        }
+        PegParser windowed = new PegParser(expr, 256);
+        long start = System.nanoTime();
+        int result = windowed.parse(sb);
+        System.out.printf("%d characters: %s in %.1f ms, %d rule calls, %d seed rounds, %d-position window (%d bytes)%n",
+                sb.length(), result == ACCEPT ? "accepted" : "error at " + result, (System.nanoTime() - start) / 1e6,
+                windowed.ruleCalls(), windowed.seedRounds(), windowed.window(), windowed.memoBytes());
+    }
+
+    private static long countCalls(PegParser parser, String input) {
+        if (parser.parse(input) != ACCEPT) {
+            throw new IllegalStateException("not accepted: " + input);
+        }
+        return parser.ruleCalls();
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/*
+    Token source over a Reader, using one fixed-size char buffer for the whole
+    input. When a token may continue past the end of the buffer, its prefix is
+    moved to the front and the rest of the buffer is refilled, so tokens that
+    span a refill are matched exactly as if the input were in memory.
+*/
+final class ReaderTokenSource implements TokenSource {
+
+    private final CompiledLL1Table.TerminalTrie trie;
+    private final int endMarker;
+    private final char[] buffer;
+    private Reader in;
+    private int pos;
+    private int limit;
+    private long base;      // input offset of buffer[0]
+    private long start;
+    private boolean eof;
+
+    ReaderTokenSource(CompiledLL1Table.TerminalTrie trie, int endMarker, Reader in, int bufferSize) {
+        if (bufferSize < trie.maxLength) {
+            throw new IllegalArgumentException("buffer size " + bufferSize
+                    + " is shorter than the longest terminal (" + trie.maxLength + ")");
+        }
+        this.trie = trie;
+        this.endMarker = endMarker;
+        this.buffer = new char[bufferSize];
+        reset(in);
+    }
+
+    int bufferSize() {
+        return buffer.length;
+    }
+
+    void reset(Reader in) {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        this.base = 0;
+        this.start = 0;
+        this.eof = false;
+    }
+
+    @Override
+    public int next() {
+        while (true) {
+            if (pos == limit && !fill()) {
+                start = base + pos;
+                return endMarker;
+            }
+            if (!trie.skippable(buffer[pos])) {
+                break;
+            }
+            pos++;
+        }
+
+        // Longest match over the terminal spellings, refilling mid-token if needed
+        int node = CompiledLL1Table.TerminalTrie.ROOT;
+        int token = CompiledLL1Table.ERROR;
+        int tokenStart = pos;
+        int end = pos + 1;
+        int i = pos;
+        while (true) {
+            if (i == limit) {
+                int shift = compact(tokenStart);
+                tokenStart -= shift;
+                end -= shift;
+                i -= shift;
+                if (!fill()) {
+                    break;
+                }
+            }
+            node = trie.step(node, buffer[i]);
+            if (node < 0) {
+                break;
+            }
+            i++;
+            if (trie.accept(node) != CompiledLL1Table.ERROR) {
+                token = trie.accept(node);
+                end = i;
+            }
+        }
+        start = base + tokenStart;
+        pos = end;
+        return token;
+    }
+
+    @Override
+    public long position() {
+        return start;
+    }
+
+    @Override
+    public long end() {
+        return base + pos;
+    }
+
+    // Move buffer[from, limit) to the front; returns how far it moved
+    private int compact(int from) {
+        if (from > 0) {
+            System.arraycopy(buffer, from, buffer, 0, limit - from);
+            limit -= from;
+            pos -= from;
+            base += from;
+        }
+        return from;
+    }
+
+    // Read more input after limit; false at end of input
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        if (limit == buffer.length) {
+            compact(pos);
+            if (limit == buffer.length) {
+                return false;
+            }
+        }
+        try {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Sparse rows x columns int table packed by row displacement (the comb
+    layout of yacc and the dragon book's base/next/check arrays), with a
+    default row for each row.
+
+    Each row gets a default value, the one most of its cells hold (for a
+    parsing table usually ERROR), and may fall back to another row: a row
+    that mostly repeats another (LL(1) rows share their sync entries, which
+    come from FOLLOW sets) stores only where it differs from that one. The
+    stored cells of all rows are laid over one another in a single pair of
+    arrays: row r starts at base[r], so its cell c is slot base[r] + c, and
+    check[slot] names the row that owns the slot. A lookup tries the row,
+    then its default row, then takes the default value; at most two probes
+    of two array reads, whatever the size of the table:
+
+        i = base[r] + c;  if (check[i] == r) value = next[i]
+        d = fallback[r];  i = base[d] + c;  if (check[i] == d) value = next[i]
+        else value = defaults[r]
+
+    A row without a default row falls back to itself. Rows are handled
+    fullest first: each takes as default row the earlier self-contained row
+    that saves it the most cells, if any, and is then placed at the first
+    base where all its cells land on free slots, so the sparse rows fill the
+    gaps the full ones leave. check and next are padded to max(base) +
+    columns slots, so any column of any row is in bounds.
+
+    The five arrays are sections of one IntBuffer (defaults, fallback and
+    base of rows ints each, then check and next), so a table can be read in
+    place from a file (see ParseTableFile): write() puts the buffer out as
+    it is, and read() takes a view of it without copying or packing anything
+    again.
+
+    Immutable; safe to share between threads.
+*/
+public final class RowDisplacementTable {
+
+    private static final int FREE = -1;
+
+    private final int rows;
+    private final int columns;
+    private final int entries;
+    private final int slots;
+    private final IntBuffer ints;
+    private final int[] array;    // ints' array when packed in memory, read directly; null if mapped
+    private final int fallback;   // Offsets of the sections in ints; defaults start at 0
+    private final int base;
+    private final int check;
+    private final int next;
+
+    private RowDisplacementTable(int rows, int columns, int entries, int slots, IntBuffer ints) {
+        this.rows = rows;
+        this.columns = columns;
+        this.entries = entries;
+        this.slots = slots;
+        this.ints = ints;
+        this.array = ints.hasArray() && ints.arrayOffset() == 0 ? ints.array() : null;
+        this.fallback = rows;
+        this.base = 2 * rows;
+        this.check = 3 * rows;
+        this.next = 3 * rows + slots;
+    }
+
+    // Pack a dense table (cells[r * columns + c]); each row's most common value becomes its default
+    public static RowDisplacementTable pack(int[] cells, int rows, int columns) {
+        checkShape(cells.length, rows, columns);
+        int[] defaults = new int[rows];
+        int[] row = new int[columns];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(cells, r * columns, row, 0, columns);
+            defaults[r] = mostCommon(row);
+        }
+        return pack(cells, rows, columns, defaults);
+    }
+
+    // Pack a dense table with the given default value per row
+    public static RowDisplacementTable pack(int[] cells, int rows, int columns, int[] defaults) {
+        checkShape(cells.length, rows, columns);
+        if (defaults.length != rows) {
+            throw new IllegalArgumentException(defaults.length + " defaults for " + rows + " rows");
+        }
+
+        // Fullest rows first: they make the best default rows and are the hardest to place
+        int[] counts = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (cells[r * columns + c] != defaults[r]) {
+                    counts[r]++;
+                }
+            }
+        }
+        Integer[] order = new Integer[rows];
+        for (int r = 0; r < rows; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, (a, b) -> counts[b] != counts[a] ? counts[b] - counts[a] : a - b);
+
+        int[] fallback = new int[rows];
+        int[] base = new int[rows];
+        int[] check = new int[Math.max(16, 2 * columns)];
+        int[] next = new int[check.length];
+        Arrays.fill(check, FREE);
+        int[] own = new int[rows];          // self-contained rows so far, candidate default rows
+        int owners = 0;
+        int[] stored = new int[columns];
+        int entries = 0;
+        int firstFree = 0;                  // no free slot below this one
+        int limit = 0;                      // slots in use, padding included
+        for (int r : order) {
+            // The default row that leaves the fewest cells to store, if it beats none
+            int d = r;
+            int best = counts[r];
+            for (int k = 0; k < owners && best > 0; k++) {
+                int cost = differences(cells, columns, r, own[k], defaults[r], defaults[own[k]], best);
+                if (cost < best) {
+                    d = own[k];
+                    best = cost;
+                }
+            }
+            fallback[r] = d;
+            if (d == r) {
+                own[owners++] = r;
+            }
+
+            int n = 0;
+            for (int c = 0; c < columns; c++) {
+                int value = cells[r * columns + c];
+                int inherited = d != r && cells[d * columns + c] != defaults[d] ? cells[d * columns + c] : defaults[r];
+                if (value != inherited) {
+                    stored[n++] = c;
+                }
+            }
+            entries += n;
+
+            // Lowest base where every stored column lands on a free slot
+            int b = n == 0 ? 0 : Math.max(0, firstFree - stored[0]);
+            while (true) {
+                if (b + columns > check.length) {
+                    int old = check.length;
+                    int capacity = Math.max(old * 2, b + columns);
+                    check = Arrays.copyOf(check, capacity);
+                    next = Arrays.copyOf(next, capacity);
+                    Arrays.fill(check, old, capacity, FREE);
+                }
+                boolean fits = true;
+                for (int k = 0; k < n; k++) {
+                    if (check[b + stored[k]] != FREE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+                b++;
+            }
+            base[r] = b;
+            for (int k = 0; k < n; k++) {
+                check[b + stored[k]] = r;
+                next[b + stored[k]] = cells[r * columns + stored[k]];
+            }
+            while (firstFree < check.length && check[firstFree] != FREE) {
+                firstFree++;
+            }
+            limit = Math.max(limit, b + columns);
+        }
+        int[] ints = new int[3 * rows + 2 * limit];
+        System.arraycopy(defaults, 0, ints, 0, rows);
+        System.arraycopy(fallback, 0, ints, rows, rows);
+        System.arraycopy(base, 0, ints, 2 * rows, rows);
+        System.arraycopy(check, 0, ints, 3 * rows, limit);
+        System.arraycopy(next, 0, ints, 3 * rows + limit, limit);
+        return new RowDisplacementTable(rows, columns, entries, limit, IntBuffer.wrap(ints));
+    }
+
+    // Ints write() puts out: entries and slots, then the sections
+    public int serializedInts() {
+        return 2 + ints.limit();
+    }
+
+    // Put the table at the buffer's position: entries, slots, defaults, fallback, base, check, next
+    public void write(ByteBuffer out) {
+        out.putInt(entries).putInt(slots);
+        for (int i = 0; i < ints.limit(); i++) {
+            out.putInt(ints.get(i));
+        }
+    }
+
+    /*
+        A rows x columns table over what write() put at the buffer's position,
+        read in place (the buffer's byte order must be the one it was written
+        with); the position moves past it. Every base and default row is
+        checked, so a lookup cannot go out of bounds whatever the file holds.
+    */
+    public static RowDisplacementTable read(ByteBuffer in, int rows, int columns) {
+        if (rows < 0 || columns < 0 || in.remaining() < 8 + 12L * rows) {
+            throw new IllegalArgumentException("truncated table");
+        }
+        int entries = in.getInt();
+        int slots = in.getInt();
+        if (slots < 0 || in.remaining() < 12L * rows + 8L * slots) {
+            throw new IllegalArgumentException("truncated table (" + slots + " slots)");
+        }
+        int length = 3 * rows + 2 * slots;
+        IntBuffer ints = in.slice().order(in.order()).asIntBuffer().slice(0, length);
+        for (int r = 0; r < rows; r++) {
+            int b = ints.get(2 * rows + r);
+            int d = ints.get(rows + r);
+            if (b < 0 || b > slots - columns || d < 0 || d >= rows) {
+                throw new IllegalArgumentException("row " + r + " out of bounds (base " + b + ", default row " + d + ")");
+            }
+        }
+        in.position(in.position() + 4 * length);
+        return new RowDisplacementTable(rows, columns, entries, slots, ints);
+    }
+
+    // Cells row r would store with default row d (stops counting at bound)
+    private static int differences(int[] cells, int columns, int r, int d, int defaultR, int defaultD, int bound) {
+        int cost = 0;
+        for (int c = 0; c < columns && cost < bound; c++) {
+            int inherited = cells[d * columns + c] != defaultD ? cells[d * columns + c] : defaultR;
+            if (cells[r * columns + c] != inherited) {
+                cost++;
+            }
+        }
+        return cost;
+    }
+
+    private static void checkShape(int cells, int rows, int columns) {
+        if (rows < 0 || columns < 0 || (long) rows * columns != cells) {
+            throw new IllegalArgumentException(cells + " cells do not make a " + rows + " x " + columns + " table");
+        }
+    }
+
+    // The value held by most cells, the lowest on a tie
+    private static int mostCommon(int[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int best = sorted[0];
+        int bestRun = 0;
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i > bestRun) {
+                best = sorted[i];
+                bestRun = j - i;
+            }
+            i = j;
+        }
+        return best;
+    }
+
+    public int get(int row, int column) {
+        int[] array = this.array;
+        if (array != null) {
+            int i = array[base + row] + column;
+            if (array[check + i] == row) {
+                return array[next + i];
+            }
+            int d = array[fallback + row];
+            i = array[base + d] + column;
+            return array[check + i] == d ? array[next + i] : array[row];
+        }
+        IntBuffer ints = this.ints;
+        int i = ints.get(base + row) + column;
+        if (ints.get(check + i) == row) {
+            return ints.get(next + i);
+        }
+        int d = ints.get(fallback + row);
+        i = ints.get(base + d) + column;
+        return ints.get(check + i) == d ? ints.get(next + i) : ints.get(row);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int defaultValue(int row) {
+        return ints.get(row);
+    }
+
+    // The row that row falls back to, itself if none
+    public int defaultRow(int row) {
+        return ints.get(fallback + row);
+    }
+
+    // Cells stored explicitly, in the slots
+    public int entries() {
+        return entries;
+    }
+
+    // Length of check and next
+    public int slots() {
+        return slots;
+    }
+
+    // Ints held: default value, default row and base per row, check and next per slot
+    public int storedInts() {
+        return 3 * rows + 2 * slots;
+    }
+
+    public int uncompressedInts() {
+        return rows * columns;
+    }
+
+    // Stored cells in the used slots: how tightly the rows interleave
+    public double fillRate() {
+        return slots == 0 ? 1 : (double) entries / slots;
+    }
+
+    // Back to the dense form
+    public int[] toDense() {
+        int[] cells = new int[rows * columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                cells[r * columns + c] = get(r, c);
+            }
+        }
+        return cells;
+    }
+
+    @Override
+    public String toString() {
+        int sharing = 0;
+        for (int r = 0; r < rows; r++) {
+            if (ints.get(fallback + r) != r) {
+                sharing++;
+            }
+        }
+        return String.format("%d x %d table, %d cells stored (%d rows on a default row): %d ints (%d bytes)"
+                        + " instead of %d (%d bytes), %.1fx smaller, slots %.0f%% full",
+                rows, columns, entries, sharing, storedInts(), 4L * storedInts(), uncompressedInts(),
+                4L * uncompressedInts(), (double) uncompressedInts() / Math.max(1, storedInts()), 100 * fillRate());
+    }
+
+    // Pack the LL(1) table of a generated grammar with hundreds of terminals
+    public static void main(String[] args) {
+        // One statement kind per keyword, each with its own terminator, plus a shared expression
+        int kinds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<String> lines = new ArrayList<>();
+        StringBuilder statement = new StringBuilder("S -> ");
+        for (int k = 0; k < kinds; k++) {
+            statement.append(k > 0 ? " | " : "").append("kw").append(k).append(" X").append(k);
+            lines.add("X" + k + " -> E end" + k + " | : end" + k);
+        }
+        lines.add(0, "P -> S P | ε");
+        lines.add(1, statement.toString());
+        lines.add("E -> id E' | ( E )");
+        lines.add("E' -> op E | ε");
+
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.loadGrammar(lines);
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        CompiledLL1Table table = grammar.compile();
+        System.out.println((table.symbolCount() - table.terminalCount()) + " non-terminals, "
+                + table.terminalCount() + " terminals, " + grammar.conflicts().size() + " conflicts");
+        System.out.println(table.packedTable());
+
+        // Same lookups as the dense table, cell by cell
+        int[] dense = table.packedTable().toDense();
+        RowDisplacementTable again = pack(dense, table.packedTable().rows(), table.packedTable().columns());
+        int differences = 0;
+        for (int r = 0; r < again.rows(); r++) {
+            for (int c = 0; c < again.columns(); c++) {
+                if (again.get(r, c) != dense[r * again.columns() + c]) {
+                    differences++;
+                }
+            }
+        }
+        System.out.println("packed again from the dense form: " + differences + " cells differ");
+
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < kinds; k++) {
+            input.append("kw").append(k).append(k % 2 == 0 ? " id op ( id )" : " :").append(" end").append(k).append(' ');
+        }
+        System.out.println("program of " + kinds + " statements: "
+                + (table.parse(input.toString(), ParseListener.SILENT) == CompiledLL1Table.ACCEPT ? "accepted" : "rejected"));
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+    An LL(1) parser for one compiled table, with the same entry points and
+    results as CompiledLL1Table.Cursor: ACCEPT or the offset of the first
+    error, with every step reported to a ParseListener.
+
+    Subclasses supply run(). LL1ParserGenerator produces them as generated
+    code with the table folded into switch statements, or as the plain
+    table-driven driver when no compiler is available. Like a cursor, an
+    instance keeps its stack and token sources between parses and must stay
+    on one thread.
+*/
+public abstract class SpecializedLL1Parser {
+
+    protected final CompiledLL1Table table;
+    protected int[] stack = new int[CompiledLL1Table.INITIAL_DEPTH];
+    private final StringTokenSource strings;
+    private ReaderTokenSource reader;
+
+    protected SpecializedLL1Parser(CompiledLL1Table table) {
+        this.table = table;
+        this.strings = new StringTokenSource(table.trie(), table.endMarker(), "");
+    }
+
+    public CompiledLL1Table table() {
+        return table;
+    }
+
+    public int parse(CharSequence input) {
+        return parse(input, ParseListener.SILENT);
+    }
+
+    public int parse(CharSequence input, ParseListener listener) {
+        strings.reset(input);
+        try {
+            return (int) run(strings, listener);
+        } finally {
+            strings.reset("");
+        }
+    }
+
+    public long parse(Reader in, int bufferSize, ParseListener listener) throws IOException {
+        if (reader == null || reader.bufferSize() != bufferSize) {
+            reader = new ReaderTokenSource(table.trie(), table.endMarker(), in, bufferSize);
+        } else {
+            reader.reset(in);
+        }
+        try {
+            return run(reader, listener);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            reader.reset(null);
+        }
+    }
+
+    public long parse(ReadableByteChannel channel, ParseListener listener) throws IOException {
+        return parse(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), CompiledLL1Table.DEFAULT_BUFFER_SIZE),
+                CompiledLL1Table.DEFAULT_BUFFER_SIZE, listener);
+    }
+
+    // True if run() is generated code rather than the table-driven driver
+    public abstract boolean isGenerated();
+
+    // Same contract as CompiledLL1Table.Cursor.run()
+    abstract long run(TokenSource source, ParseListener listener);
+
+    // Grow the stack to at least n entries
+    protected final int[] grow(int n) {
+        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, n));
+        return stack;
+    }
+
+    // The table-driven driver, used when code cannot be generated
+    static final class TableDriven extends SpecializedLL1Parser {
+        private final CompiledLL1Table.Cursor cursor;
+
+        TableDriven(CompiledLL1Table table) {
+            super(table);
+            this.cursor = table.newCursor();
+        }
+
+        @Override
+        public boolean isGenerated() {
+            return false;
+        }
+
+        @Override
+        long run(TokenSource source, ParseListener listener) {
+            return cursor.run(source, listener);
+        }
+    }
+}
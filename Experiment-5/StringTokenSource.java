@@ -0,0 +1,66 @@
+// Token source over an in-memory string
+final class StringTokenSource implements TokenSource {
+
+    private final CompiledLL1Table.TerminalTrie trie;
+    private final int endMarker;
+    private CharSequence input;
+    private int index;
+    private int start;
+
+    StringTokenSource(CompiledLL1Table.TerminalTrie trie, int endMarker, CharSequence input) {
+        this.trie = trie;
+        this.endMarker = endMarker;
+        reset(input);
+    }
+
+    void reset(CharSequence input) {
+        this.input = input;
+        this.index = 0;
+        this.start = 0;
+    }
+
+    // Continue reading at index, as if the tokens before it had been read
+    void seek(int index) {
+        this.index = index;
+        this.start = index;
+    }
+
+    @Override
+    public long end() {
+        return index;
+    }
+
+    @Override
+    public int next() {
+        int length = input.length();
+        while (index < length && trie.skippable(input.charAt(index))) {
+            index++;
+        }
+        start = index;
+        if (index >= length) {
+            return endMarker;
+        }
+
+        // Longest match over the terminal spellings
+        int node = CompiledLL1Table.TerminalTrie.ROOT;
+        int token = CompiledLL1Table.ERROR;
+        int end = index + 1;
+        for (int i = index; i < length; i++) {
+            node = trie.step(node, input.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            if (trie.accept(node) != CompiledLL1Table.ERROR) {
+                token = trie.accept(node);
+                end = i + 1;
+            }
+        }
+        index = end;
+        return token;
+    }
+
+    @Override
+    public long position() {
+        return start;
+    }
+}
@@ -0,0 +1,16 @@
+/*
+    Supplies terminal ids to the compiled LL(1) driver, one token at a time.
+    Unknown characters come back as CompiledLL1Table.ERROR and the end of the
+    input as the end marker, repeated on every further call.
+*/
+interface TokenSource {
+
+    // Terminal id of the next token
+    int next();
+
+    // Offset of the token last returned by next()
+    long position();
+
+    // Offset just past the token last returned by next() (its offset for the end marker)
+    long end();
+}
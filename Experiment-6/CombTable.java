@@ -0,0 +1,275 @@
+import java.util.Arrays;
+
+/*
+    Sparse rows x columns int table packed by row displacement ("comb"
+    packing, as in yacc; the same layout as Experiment-5's
+    RowDisplacementTable): base/check/next arrays, a default value per row
+    and a default row each row may fall back to.
+
+    Row r's cell c is slot base[r] + c when check[slot] == r; otherwise the
+    row's default row d is tried the same way, and then the row's default
+    value. Only cells that differ from what the default row and value give
+    are stored, so rows that repeat one another (the shifts on operands
+    after every operator, the gotos into the same states) cost a few slots.
+    A lookup is at most two probes, whatever the size of the table:
+
+        i = base[r] + c;  if (check[i] == r) value = next[i]
+        d = fallback[r];  i = base[d] + c;  if (check[i] == d) value = next[i]
+        else value = defaults[r]
+
+    Rows are handled fullest first: each takes the earlier self-contained
+    row that saves it the most cells as its default row, if any, and is
+    placed at the first base where its cells land on free slots. check and
+    next are padded to max(base) + columns, so any column is in bounds.
+
+    Immutable; safe to share between threads.
+*/
+public final class CombTable {
+
+    private static final int FREE = -1;
+
+    private final int rows;
+    private final int columns;
+    private final int entries;
+    private final int[] defaults;
+    private final int[] fallback;
+    private final int[] base;
+    private final int[] check;
+    private final int[] next;
+
+    private CombTable(int rows, int columns, int entries, int[] defaults, int[] fallback,
+                                 int[] base, int[] check, int[] next) {
+        this.rows = rows;
+        this.columns = columns;
+        this.entries = entries;
+        this.defaults = defaults;
+        this.fallback = fallback;
+        this.base = base;
+        this.check = check;
+        this.next = next;
+    }
+
+    // Pack a dense table (cells[r * columns + c]); each row's most common value becomes its default
+    public static CombTable pack(int[] cells, int rows, int columns) {
+        checkShape(cells.length, rows, columns);
+        int[] defaults = new int[rows];
+        int[] row = new int[columns];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(cells, r * columns, row, 0, columns);
+            defaults[r] = mostCommon(row);
+        }
+        return pack(cells, rows, columns, defaults);
+    }
+
+    // Pack a dense table with the given default value per row
+    public static CombTable pack(int[] cells, int rows, int columns, int[] defaults) {
+        checkShape(cells.length, rows, columns);
+        if (defaults.length != rows) {
+            throw new IllegalArgumentException(defaults.length + " defaults for " + rows + " rows");
+        }
+
+        // Fullest rows first: they make the best default rows and are the hardest to place
+        int[] counts = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (cells[r * columns + c] != defaults[r]) {
+                    counts[r]++;
+                }
+            }
+        }
+        Integer[] order = new Integer[rows];
+        for (int r = 0; r < rows; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, (a, b) -> counts[b] != counts[a] ? counts[b] - counts[a] : a - b);
+
+        int[] fallback = new int[rows];
+        int[] base = new int[rows];
+        int[] check = new int[Math.max(16, 2 * columns)];
+        int[] next = new int[check.length];
+        Arrays.fill(check, FREE);
+        int[] own = new int[rows];          // self-contained rows so far, candidate default rows
+        int owners = 0;
+        int[] stored = new int[columns];
+        int entries = 0;
+        int firstFree = 0;                  // no free slot below this one
+        int limit = 0;                      // slots in use, padding included
+        for (int r : order) {
+            // The default row that leaves the fewest cells to store, if it beats none
+            int d = r;
+            int best = counts[r];
+            for (int k = 0; k < owners && best > 0; k++) {
+                int cost = differences(cells, columns, r, own[k], defaults[r], defaults[own[k]], best);
+                if (cost < best) {
+                    d = own[k];
+                    best = cost;
+                }
+            }
+            fallback[r] = d;
+            if (d == r) {
+                own[owners++] = r;
+            }
+
+            int n = 0;
+            for (int c = 0; c < columns; c++) {
+                int value = cells[r * columns + c];
+                int inherited = d != r && cells[d * columns + c] != defaults[d] ? cells[d * columns + c] : defaults[r];
+                if (value != inherited) {
+                    stored[n++] = c;
+                }
+            }
+            entries += n;
+
+            // Lowest base where every stored column lands on a free slot
+            int b = n == 0 ? 0 : Math.max(0, firstFree - stored[0]);
+            while (true) {
+                if (b + columns > check.length) {
+                    int old = check.length;
+                    int capacity = Math.max(old * 2, b + columns);
+                    check = Arrays.copyOf(check, capacity);
+                    next = Arrays.copyOf(next, capacity);
+                    Arrays.fill(check, old, capacity, FREE);
+                }
+                boolean fits = true;
+                for (int k = 0; k < n; k++) {
+                    if (check[b + stored[k]] != FREE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+                b++;
+            }
+            base[r] = b;
+            for (int k = 0; k < n; k++) {
+                check[b + stored[k]] = r;
+                next[b + stored[k]] = cells[r * columns + stored[k]];
+            }
+            while (firstFree < check.length && check[firstFree] != FREE) {
+                firstFree++;
+            }
+            limit = Math.max(limit, b + columns);
+        }
+        return new CombTable(rows, columns, entries, defaults.clone(), fallback, base,
+                Arrays.copyOf(check, limit), Arrays.copyOf(next, limit));
+    }
+
+    // Cells row r would store with default row d (stops counting at bound)
+    private static int differences(int[] cells, int columns, int r, int d, int defaultR, int defaultD, int bound) {
+        int cost = 0;
+        for (int c = 0; c < columns && cost < bound; c++) {
+            int inherited = cells[d * columns + c] != defaultD ? cells[d * columns + c] : defaultR;
+            if (cells[r * columns + c] != inherited) {
+                cost++;
+            }
+        }
+        return cost;
+    }
+
+    private static void checkShape(int cells, int rows, int columns) {
+        if (rows < 0 || columns < 0 || (long) rows * columns != cells) {
+            throw new IllegalArgumentException(cells + " cells do not make a " + rows + " x " + columns + " table");
+        }
+    }
+
+    // The value held by most cells, the lowest on a tie
+    private static int mostCommon(int[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int best = sorted[0];
+        int bestRun = 0;
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i > bestRun) {
+                best = sorted[i];
+                bestRun = j - i;
+            }
+            i = j;
+        }
+        return best;
+    }
+
+    public int get(int row, int column) {
+        int i = base[row] + column;
+        if (check[i] == row) {
+            return next[i];
+        }
+        int d = fallback[row];
+        i = base[d] + column;
+        return check[i] == d ? next[i] : defaults[row];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int defaultValue(int row) {
+        return defaults[row];
+    }
+
+    // The row that row falls back to, itself if none
+    public int defaultRow(int row) {
+        return fallback[row];
+    }
+
+    // Cells stored explicitly, in the slots
+    public int entries() {
+        return entries;
+    }
+
+    // Length of check and next
+    public int slots() {
+        return check.length;
+    }
+
+    // Ints held: default value, default row and base per row, check and next per slot
+    public int storedInts() {
+        return 3 * rows + 2 * check.length;
+    }
+
+    public int uncompressedInts() {
+        return rows * columns;
+    }
+
+    // Stored cells in the used slots: how tightly the rows interleave
+    public double fillRate() {
+        return check.length == 0 ? 1 : (double) entries / check.length;
+    }
+
+    // Back to the dense form
+    public int[] toDense() {
+        int[] cells = new int[rows * columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                cells[r * columns + c] = get(r, c);
+            }
+        }
+        return cells;
+    }
+
+    @Override
+    public String toString() {
+        int sharing = 0;
+        for (int r = 0; r < rows; r++) {
+            if (fallback[r] != r) {
+                sharing++;
+            }
+        }
+        return String.format("%d x %d table, %d cells stored (%d rows on a default row): %d ints (%d bytes)"
+                        + " instead of %d (%d bytes), %.1fx smaller, slots %.0f%% full",
+                rows, columns, entries, sharing, storedInts(), 4L * storedInts(), uncompressedInts(),
+                4L * uncompressedInts(), (double) uncompressedInts() / Math.max(1, storedInts()), 100 * fillRate());
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/*
+    Expression tree stored as parallel int arrays instead of one object per node.
+
+    Node n has a kind (IDENT, an operator or ERROR), first-child /
+    next-sibling / parent links and the source span [start, end). The tree
+    is built bottom-up, so the root is the last node added. reset() empties
+    the arena but keeps the arrays for the next parse.
+*/
+public final class ExprTreeArena {
+
+    public static final int NONE = -1;
+
+    // Node kinds
+    public static final int IDENT = 0;
+    public static final int ADD = 1;
+    public static final int SUB = 2;
+    public static final int MUL = 3;
+    public static final int DIV = 4;
+    public static final int ERROR = 5;
+
+    private static final String[] KIND_NAMES = {"i", "+", "-", "*", "/", "error"};
+
+    private int[] kind;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] parent;
+    private int[] start;
+    private int[] end;
+    private int size;
+    private int root = NONE;
+
+    public ExprTreeArena() {
+        this(256);
+    }
+
+    public ExprTreeArena(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kind = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        parent = new int[capacity];
+        start = new int[capacity];
+        end = new int[capacity];
+    }
+
+    public void reset() {
+        size = 0;
+        root = NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    void setRoot(int n) {
+        root = n;
+    }
+
+    // Add a childless node spanning [from, to)
+    public int add(int nodeKind, int from, int to) {
+        if (size == kind.length) {
+            grow();
+        }
+        int n = size++;
+        kind[n] = nodeKind;
+        firstChild[n] = NONE;
+        nextSibling[n] = NONE;
+        parent[n] = NONE;
+        start[n] = from;
+        end[n] = to;
+        return n;
+    }
+
+    // Append an existing root as the last child of n; lastChild is n's current last child or NONE
+    public void adopt(int n, int lastChild, int child) {
+        parent[child] = n;
+        nextSibling[child] = NONE;
+        if (lastChild == NONE) {
+            firstChild[n] = child;
+        } else {
+            nextSibling[lastChild] = child;
+        }
+    }
+
+    private void grow() {
+        int capacity = kind.length * 2;
+        kind = Arrays.copyOf(kind, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        start = Arrays.copyOf(start, capacity);
+        end = Arrays.copyOf(end, capacity);
+    }
+
+    public int kind(int n) {
+        return kind[n];
+    }
+
+    public int firstChild(int n) {
+        return firstChild[n];
+    }
+
+    public int nextSibling(int n) {
+        return nextSibling[n];
+    }
+
+    public int parent(int n) {
+        return parent[n];
+    }
+
+    public int start(int n) {
+        return start[n];
+    }
+
+    public int end(int n) {
+        return end[n];
+    }
+
+    void setSpan(int n, int from, int to) {
+        start[n] = from;
+        end[n] = to;
+    }
+
+    public static String kindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    // Kind of the binary operator node for an operator character, or ERROR
+    public static int operatorKind(char c) {
+        switch (c) {
+            case '+': return ADD;
+            case '-': return SUB;
+            case '*': return MUL;
+            case '/': return DIV;
+            default: return ERROR;
+        }
+    }
+
+    // Depth-first walk from the root without recursion
+    public void visit(ExprTreeVisitor visitor) {
+        int n = root;
+        while (n != NONE) {
+            if (visitor.enter(this, n) && firstChild[n] != NONE) {
+                n = firstChild[n];
+                continue;
+            }
+            while (true) {
+                visitor.leave(this, n);
+                if (n == root) {
+                    return;
+                }
+                if (nextSibling[n] != NONE) {
+                    n = nextSibling[n];
+                    break;
+                }
+                n = parent[n];
+            }
+        }
+    }
+}
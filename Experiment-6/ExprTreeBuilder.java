@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/*
+    Builds the expression tree of an operator precedence parse into an
+    ExprTreeArena.
+
+    The builder mirrors the parser's stack with the tree node of every entry
+    (NONE for operator and parenthesis tokens) and the input offsets it
+    spans. A reduction of
+        i         keeps the leaf made when 'i' was shifted,
+        E op E    makes an operator node over the two operands,
+        ( E )     keeps the inner node and widens its span to the parentheses,
+    and any other handle becomes an ERROR node over the operands it holds.
+    Tokens that recovery inserts are marked MISSING: an operand becomes an
+    empty ERROR leaf, and a handle with an inserted operator or parenthesis
+    an ERROR node.
+*/
+public class ExprTreeBuilder implements ShiftReduceListener {
+
+    private static final int MISSING = -2;   // an inserted operator or parenthesis
+
+    private final ExprTreeArena tree;
+    private int[] nodes = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int sp;
+    private boolean complete;
+
+    public ExprTreeBuilder(ExprTreeArena tree) {
+        this.tree = tree;
+    }
+
+    public ExprTreeArena tree() {
+        return tree;
+    }
+
+    // True if the last parse was accepted
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public void start(OperatorPrecedenceParser parser) {
+        tree.reset();
+        complete = false;
+        sp = 1;   // '$'
+    }
+
+    @Override
+    public void shift(OperatorPrecedenceParser parser, int step, int position) {
+        grow();
+        int start = parser.tokenStart(position);
+        int end = parser.tokenEnd(position);
+        nodes[sp] = parser.operandAt(position) ? tree.add(ExprTreeArena.IDENT, start, end) : ExprTreeArena.NONE;
+        starts[sp] = start;
+        ends[sp++] = end;
+    }
+
+    @Override
+    public void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+        grow();
+        int start = parser.tokenStart(position);
+        nodes[sp] = token.equals("i") ? tree.add(ExprTreeArena.ERROR, start, start) : MISSING;
+        starts[sp] = start;
+        ends[sp++] = start;
+    }
+
+    private void grow() {
+        if (sp == nodes.length) {
+            nodes = Arrays.copyOf(nodes, sp * 2);
+            starts = Arrays.copyOf(starts, sp * 2);
+            ends = Arrays.copyOf(ends, sp * 2);
+        }
+    }
+
+    @Override
+    public void reduce(OperatorPrecedenceParser parser, int step, int handleStart, int position) {
+        int length = sp - handleStart;
+        int node;
+        if (length == 1 && nodes[handleStart] >= 0) {
+            node = nodes[handleStart];
+        } else if (length == 3 && nodes[handleStart] >= 0
+                && nodes[handleStart + 1] == ExprTreeArena.NONE
+                && nodes[handleStart + 2] >= 0) {
+            int left = nodes[handleStart];
+            int right = nodes[handleStart + 2];
+            int kind = ExprTreeArena.operatorKind(parser.stackSymbol(handleStart + 1).charAt(0));
+            node = tree.add(kind, tree.start(left), tree.end(right));
+            tree.adopt(node, ExprTreeArena.NONE, left);
+            tree.adopt(node, left, right);
+        } else if (length == 3 && nodes[handleStart + 1] >= 0 && nodes[handleStart + 2] == ExprTreeArena.NONE
+                && parser.stackSymbol(handleStart).equals("(")
+                && parser.stackSymbol(handleStart + 2).equals(")")) {
+            node = nodes[handleStart + 1];
+            tree.setSpan(node, starts[handleStart], ends[handleStart + 2]);
+        } else {
+            node = tree.add(ExprTreeArena.ERROR, starts[handleStart], Math.max(ends[sp - 1], starts[handleStart]));
+            int last = ExprTreeArena.NONE;
+            for (int i = handleStart; i < sp; i++) {
+                if (nodes[i] >= 0) {
+                    tree.adopt(node, last, nodes[i]);
+                    last = nodes[i];
+                    tree.setSpan(node, tree.start(node), Math.max(tree.end(node), tree.end(last)));
+                }
+            }
+        }
+        sp = handleStart;
+        nodes[sp] = node;
+        starts[sp] = tree.start(node);
+        ends[sp++] = tree.end(node);
+    }
+
+    @Override
+    public void accept(OperatorPrecedenceParser parser, int step, int position) {
+        tree.setRoot(nodes[1]);
+        complete = true;
+    }
+
+    // Print the tree in prefix form, e.g. (+ i (* i i))
+    public static String toPrefix(ExprTreeArena tree) {
+        StringBuilder sb = new StringBuilder();
+        tree.visit(new ExprTreeVisitor() {
+            @Override
+            public boolean enter(ExprTreeArena t, int n) {
+                if (t.firstChild(n) == ExprTreeArena.NONE) {
+                    sb.append(' ').append(ExprTreeArena.kindName(t.kind(n)));
+                } else {
+                    sb.append(" (").append(ExprTreeArena.kindName(t.kind(n)));
+                }
+                return true;
+            }
+
+            @Override
+            public void leave(ExprTreeArena t, int n) {
+                if (t.firstChild(n) != ExprTreeArena.NONE) {
+                    sb.append(')');
+                }
+            }
+        });
+        return sb.length() > 0 ? sb.substring(1) : "";
+    }
+}
@@ -0,0 +1,11 @@
+// Callbacks for ExprTreeArena.visit(): enter before the children, leave after them
+public interface ExprTreeVisitor {
+
+    // Return false to skip the children of n
+    default boolean enter(ExprTreeArena tree, int n) {
+        return true;
+    }
+
+    default void leave(ExprTreeArena tree, int n) {
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+    Context-free grammar for LalrTable, read from the same rule format as
+    Experiment-5's grammar files:
+
+        # comment
+        %start E
+        E -> E + T | T
+        T -> T * F | F
+            | ...            (a line starting with '|' continues the last rule)
+
+    Symbols are separated by blanks; "ε" or "epsilon" is the empty string.
+    Left recursion is fine here: that is what an LR parser wants.
+
+    Symbols are interned to ids: "$" is terminal 0, the other terminals
+    follow in order of appearance, then the non-terminals. Production 0 is
+    the augmented rule S' -> S.
+*/
+public final class LalrGrammar {
+
+    public static final int END_MARKER = 0;
+
+    final String[] symbolNames;
+    final int terminalCount;
+    final int startSymbol;       // the augmented start symbol S'
+    final int[] prodLhs;
+    final int[] prodOffset;
+    final int[] prodRhs;
+
+    // Per non-terminal (id - terminalCount): nullable flag and FIRST bitset over terminals
+    final int words;
+    final boolean[] nullable;
+    final long[] first;
+
+    private LalrGrammar(String[] symbolNames, int terminalCount, int[] prodLhs, int[] prodOffset, int[] prodRhs) {
+        this.symbolNames = symbolNames;
+        this.terminalCount = terminalCount;
+        this.startSymbol = prodLhs[0];
+        this.prodLhs = prodLhs;
+        this.prodOffset = prodOffset;
+        this.prodRhs = prodRhs;
+        this.words = (terminalCount + 63) >>> 6;
+        int nonTerminals = symbolNames.length - terminalCount;
+        this.nullable = new boolean[nonTerminals];
+        this.first = new long[nonTerminals * words];
+        computeFirst();
+    }
+
+    public static LalrGrammar load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static LalrGrammar parse(List<String> lines) {
+        Map<String, List<String[]>> rules = new LinkedHashMap<>();
+        String start = null;
+        String lhs = null;
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("%start")) {
+                start = line.substring("%start".length()).trim();
+                continue;
+            }
+            String alternatives;
+            if (line.startsWith("|")) {
+                if (lhs == null) {
+                    throw new IllegalArgumentException("line " + lineNo + ": '|' before any rule");
+                }
+                alternatives = line.substring(1);
+            } else {
+                int arrow = line.indexOf("->");
+                if (arrow <= 0) {
+                    throw new IllegalArgumentException("line " + lineNo + ": expected 'A -> ...'");
+                }
+                lhs = line.substring(0, arrow).trim();
+                if (lhs.isEmpty() || lhs.contains(" ")) {
+                    throw new IllegalArgumentException("line " + lineNo + ": bad left-hand side '" + lhs + "'");
+                }
+                rules.computeIfAbsent(lhs, k -> new ArrayList<>());
+                alternatives = line.substring(arrow + 2);
+            }
+            for (String alt : alternatives.split("\\|", -1)) {
+                String text = alt.trim();
+                String[] symbols = text.isEmpty() || text.equals("ε") || text.equals("epsilon")
+                        ? new String[0] : text.split("\\s+");
+                rules.get(lhs).add(symbols);
+            }
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("grammar has no rules");
+        }
+        if (start == null) {
+            start = rules.keySet().iterator().next();
+        } else if (!rules.containsKey(start)) {
+            throw new IllegalArgumentException("start symbol " + start + " has no rules");
+        }
+
+        // Intern: $ and the terminals, then the non-terminals, then S'
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        ids.put("$", END_MARKER);
+        for (List<String[]> alts : rules.values()) {
+            for (String[] alt : alts) {
+                for (String symbol : alt) {
+                    if (!rules.containsKey(symbol)) {
+                        ids.putIfAbsent(symbol, ids.size());
+                    }
+                }
+            }
+        }
+        int terminalCount = ids.size();
+        for (String nt : rules.keySet()) {
+            ids.put(nt, ids.size());
+        }
+        String augmented = start + "'";
+        while (ids.containsKey(augmented)) {
+            augmented += "'";
+        }
+        ids.put(augmented, ids.size());
+        String[] names = ids.keySet().toArray(new String[0]);
+
+        int productions = 1;
+        int rhsLength = 1;
+        for (List<String[]> alts : rules.values()) {
+            productions += alts.size();
+            for (String[] alt : alts) {
+                rhsLength += alt.length;
+            }
+        }
+        int[] prodLhs = new int[productions];
+        int[] prodOffset = new int[productions + 1];
+        int[] prodRhs = new int[rhsLength];
+        prodLhs[0] = ids.get(augmented);
+        prodRhs[0] = ids.get(start);
+        prodOffset[1] = 1;
+        int p = 1;
+        for (Map.Entry<String, List<String[]>> rule : rules.entrySet()) {
+            for (String[] alt : rule.getValue()) {
+                prodLhs[p] = ids.get(rule.getKey());
+                int at = prodOffset[p];
+                for (String symbol : alt) {
+                    prodRhs[at++] = ids.get(symbol);
+                }
+                prodOffset[++p] = at;
+            }
+        }
+        return new LalrGrammar(names, terminalCount, prodLhs, prodOffset, prodRhs);
+    }
+
+    // Nullable and FIRST by fixpoint over the productions
+    private void computeFirst() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < prodLhs.length; p++) {
+                int a = prodLhs[p] - terminalCount;
+                boolean allNullable = true;
+                for (int i = prodOffset[p]; i < prodOffset[p + 1] && allNullable; i++) {
+                    int x = prodRhs[i];
+                    if (x < terminalCount) {
+                        changed |= setBit(first, a * words, x);
+                        allNullable = false;
+                    } else {
+                        int b = x - terminalCount;
+                        for (int w = 0; w < words; w++) {
+                            long merged = first[a * words + w] | first[b * words + w];
+                            if (merged != first[a * words + w]) {
+                                first[a * words + w] = merged;
+                                changed = true;
+                            }
+                        }
+                        allNullable = nullable[b];
+                    }
+                }
+                if (allNullable && !nullable[a]) {
+                    nullable[a] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean setBit(long[] bits, int base, int bit) {
+        long mask = 1L << bit;
+        if ((bits[base + (bit >>> 6)] & mask) != 0) {
+            return false;
+        }
+        bits[base + (bit >>> 6)] |= mask;
+        return true;
+    }
+
+    public int terminalCount() {
+        return terminalCount;
+    }
+
+    public int symbolCount() {
+        return symbolNames.length;
+    }
+
+    public int productionCount() {
+        return prodLhs.length;
+    }
+
+    public String symbolName(int symbol) {
+        return symbolNames[symbol];
+    }
+
+    // Terminal id for a spelling, or -1
+    public int terminalId(String spelling) {
+        for (int t = 0; t < terminalCount; t++) {
+            if (symbolNames[t].equals(spelling)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    public int productionLhs(int production) {
+        return prodLhs[production];
+    }
+
+    public int rhsLength(int production) {
+        return prodOffset[production + 1] - prodOffset[production];
+    }
+
+    public int rhsSymbol(int production, int i) {
+        return prodRhs[prodOffset[production] + i];
+    }
+
+    // Production printed as "A -> X Y" (or "A -> ε")
+    public String productionToString(int production) {
+        StringBuilder sb = new StringBuilder(symbolNames[prodLhs[production]]).append(" ->");
+        if (rhsLength(production) == 0) {
+            return sb.append(" ε").toString();
+        }
+        for (int i = prodOffset[production]; i < prodOffset[production + 1]; i++) {
+            sb.append(' ').append(symbolNames[prodRhs[i]]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+    Table-driven LALR(1) parser, the grammar-general companion of
+    OperatorPrecedenceParser. Any grammar LalrTable builds without
+    conflicts parses here, left-recursive ones included: E -> E + T reduces
+    after every operand, so a left-associative chain of any length runs in
+    a constant stack depth (the opposite of an LL parser's right-recursive
+    rewrite, whose stack grows with the chain).
+
+    Input is split into the grammar's terminals by longest match, skipping
+    blanks. A trailing '$' is optional. Characters that start no terminal
+    become an unknown token, which no state accepts.
+
+    The stack holds states only; the symbol of each is the table's
+    accessingSymbol, which is all a listener needs to show it.
+*/
+public class LalrParser {
+
+    private static final int UNKNOWN = -1;
+
+    private final LalrTable table;
+    private final LalrGrammar grammar;
+    private final Map<Character, int[]> terminalsByFirstChar = new HashMap<>(); // longest spelling first
+
+    private String input = "";
+    private int[] tokens = new int[64];
+    private int[] tokenStart = new int[64];  // input offsets of each token's first and past-last characters
+    private int[] tokenEnd = new int[64];
+    private int tokenCount;
+
+    private int[] states = new int[64];
+    private int top;
+    private int maxDepth;
+    private int errorPosition;
+
+    public LalrParser(LalrTable table) {
+        this.table = table;
+        this.grammar = table.grammar();
+        Map<Character, List<Integer>> buckets = new HashMap<>();
+        for (int t = 0; t < grammar.terminalCount(); t++) {
+            if (t != LalrGrammar.END_MARKER) {
+                buckets.computeIfAbsent(grammar.symbolName(t).charAt(0), k -> new ArrayList<>()).add(t);
+            }
+        }
+        for (Map.Entry<Character, List<Integer>> b : buckets.entrySet()) {
+            terminalsByFirstChar.put(b.getKey(), b.getValue().stream()
+                    .sorted((x, y) -> grammar.symbolName(y).length() - grammar.symbolName(x).length())
+                    .mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    // Split input into terminal ids; a trailing '$' is the end marker, which is appended if missing
+    public void setInput(String input) {
+        this.input = input;
+        tokenCount = 0;
+        int at = 0;
+        int n = input.length();
+        while (true) {
+            while (at < n && Character.isWhitespace(input.charAt(at))) {
+                at++;
+            }
+            if (at == n || (input.charAt(at) == '$' && input.substring(at + 1).isBlank())) {
+                addToken(LalrGrammar.END_MARKER, at, n);
+                return;
+            }
+            int match = UNKNOWN;
+            int length = 1;
+            int[] candidates = terminalsByFirstChar.get(input.charAt(at));
+            if (candidates != null) {
+                for (int t : candidates) {
+                    String spelling = grammar.symbolName(t);
+                    if (input.startsWith(spelling, at)) {
+                        match = t;
+                        length = spelling.length();
+                        break;
+                    }
+                }
+            }
+            addToken(match, at, at + length);
+            at += length;
+        }
+    }
+
+    // Use already classified terminal ids (the last must be END_MARKER); views then show terminal names
+    public void setTokens(int[] ids, int count) {
+        if (count == 0 || ids[count - 1] != LalrGrammar.END_MARKER) {
+            throw new IllegalArgumentException("token sequence must end with the end marker");
+        }
+        input = null;
+        tokenCount = 0;
+        for (int i = 0; i < count; i++) {
+            addToken(ids[i], i, i + 1);
+        }
+    }
+
+    private void addToken(int id, int from, int to) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenCount * 2);
+            tokenStart = Arrays.copyOf(tokenStart, tokenCount * 2);
+            tokenEnd = Arrays.copyOf(tokenEnd, tokenCount * 2);
+        }
+        tokens[tokenCount] = id;
+        tokenStart[tokenCount] = from;
+        tokenEnd[tokenCount++] = to;
+    }
+
+    // Perform the parsing process, printing every step
+    public void parse() {
+        LrTracer.printHeader();
+        parse(new LrTracer());
+    }
+
+    // Perform the parsing process, reporting steps to the listener; true if the input is accepted
+    public boolean parse(LrListener listener) {
+        states[0] = 0;
+        top = 0;
+        maxDepth = 1;
+        errorPosition = -1;
+        listener.start(this);
+        int step = 1;
+
+        int ptr = 0;
+        while (true) {
+            int action = table.action(states[top], tokens[ptr]);
+            if (action >= 0) {
+                listener.shift(this, step, ptr, action);
+                push(action);
+                ptr++;
+            } else if (action == LalrTable.ACCEPT) {
+                listener.accept(this, step, ptr);
+                return true;
+            } else if (action == LalrTable.ERROR) {
+                listener.error(this, step, ptr, tokens[ptr] == UNKNOWN ? "unknown token" : "unexpected token");
+                errorPosition = ptr;
+                return false;
+            } else {
+                int production = LalrTable.reducedProduction(action);
+                listener.reduce(this, step, production, ptr);
+                top -= grammar.rhsLength(production);
+                push(table.gotoState(states[top], grammar.productionLhs(production)));
+            }
+            step++;
+        }
+    }
+
+    private void push(int state) {
+        if (++top == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[top] = state;
+        if (top >= maxDepth) {
+            maxDepth = top + 1;
+        }
+    }
+
+    // Token index of the error found by the last parse, or -1
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
+    // Input offset of a token, e.g. of getErrorPosition()
+    public int inputOffset(int position) {
+        return tokenStart[position];
+    }
+
+    // Deepest the state stack got during the last parse
+    public int getMaxStackDepth() {
+        return maxDepth;
+    }
+
+    public LalrTable table() {
+        return table;
+    }
+
+    // Views used by listeners
+    int stackState(int i) {
+        return states[i];
+    }
+
+    int stackSize() {
+        return top + 1;
+    }
+
+    String tokenAt(int position) {
+        if (input == null || tokens[position] == LalrGrammar.END_MARKER) {
+            return tokens[position] == UNKNOWN ? "?" : grammar.symbolName(tokens[position]);
+        }
+        return input.substring(tokenStart[position], tokenEnd[position]);
+    }
+
+    String remainingInput(int position) {
+        if (input != null) {
+            String rest = input.substring(tokenStart[position]).strip();
+            return rest.endsWith("$") ? rest : rest + "$";
+        }
+        StringJoiner sj = new StringJoiner(" ");
+        for (int i = position; i < tokenCount; i++) {
+            sj.add(tokenAt(i));
+        }
+        return sj.toString();
+    }
+
+    // Symbols of stack entries from..top, after the bottom '$'
+    String stackString(int from) {
+        StringBuilder sb = new StringBuilder("$");
+        for (int i = Math.max(from, 1); i <= top; i++) {
+            sb.append(' ').append(grammar.symbolName(table.accessingSymbol(states[i])));
+        }
+        return sb.toString();
+    }
+
+    // Main method to run the parser
+    public static void main(String[] args) throws IOException {
+        LalrGrammar grammar = args.length > 0 ? LalrGrammar.load(Path.of(args[0])) : LalrGrammar.parse(List.of(
+                "E -> E + T | E - T | T",
+                "T -> T * F | T / F | F",
+                "F -> ( E ) | i"));
+        LalrTable table = new LalrTable(grammar);
+        String input = args.length > 1 ? args[1] : "i+i*i";
+
+        System.out.println("Input Expression: " + input);
+        System.out.println("=== LALR(1) Table ===");
+        table.printTable();
+        System.out.println(table.stateCount() + " states, " + table.storedInts() + " ints stored ("
+                + table.uncompressedInts() + " uncompressed)");
+        for (String conflict : table.conflicts()) {
+            System.out.println(conflict);
+        }
+
+        System.out.println("\n=== Parsing Process ===");
+        LalrParser parser = new LalrParser(table);
+        parser.setInput(input);
+        parser.parse();
+
+        System.out.println("\n=== Stack Depth of Left-Associative Chains ===");
+        for (int n : new int[]{10, 1000, 100000}) {
+            parser.setInput("i" + "+i".repeat(n - 1));
+            boolean accepted = parser.parse(LrListener.SILENT);
+            System.out.println(n + " operands: " + (accepted ? "accepted" : "rejected")
+                    + ", max stack depth " + parser.getMaxStackDepth());
+        }
+
+        System.out.println("\n=== Conflicts (dangling else) ===");
+        LalrTable ambiguous = new LalrTable(LalrGrammar.parse(List.of(
+                "S -> if c then S | if c then S else S | x")));
+        for (String conflict : ambiguous.conflicts()) {
+            System.out.println(conflict);
+        }
+        parser = new LalrParser(ambiguous);
+        parser.setInput("if c then if c then x else x");
+        parser.parse();
+    }
+}
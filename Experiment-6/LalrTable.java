@@ -0,0 +1,503 @@
+import java.util.*;
+
+/*
+    LALR(1) parsing tables for an LalrGrammar.
+
+    Construction:
+      1. The LR(0) automaton: states are sets of kernel items, an item being
+         a production with a dot position (one int per item).
+      2. Lookaheads by spontaneous generation and propagation: for every
+         kernel item K, the LR(1) closure of [K, #] (# a dummy lookahead)
+         shows which lookaheads each goto kernel item gets outright and
+         which it inherits from K. Propagating along those edges to a
+         fixpoint gives the LALR(1) lookaheads without building LR(1) states.
+      3. Actions: shift on every terminal transition, reduce on the
+         lookaheads of every completed item. A shift/reduce conflict is
+         resolved as a shift and a reduce/reduce conflict for the earlier
+         production; both are listed by conflicts().
+
+    Storage is compressed in the yacc manner. Each state's most common
+    reduction becomes its default action, taken on every terminal the state
+    has no other action for, and the goto table is stored by column, each
+    non-terminal with its most common target as default. Both are then
+    packed by row displacement (CombTable), so a lookup is a constant number
+    of array reads rather than a search.
+
+    Action encoding: a value >= 0 shifts to that state, ACCEPT accepts,
+    ERROR rejects, and any other negative value v reduces production -2 - v.
+*/
+public final class LalrTable {
+
+    public static final int ERROR = -1;
+    public static final int ACCEPT = Integer.MIN_VALUE;
+
+    private final LalrGrammar grammar;
+    private final int stateCount;
+    private final int[] accessingSymbol;   // symbol shifted to enter each state
+
+    // Actions by state row and terminal column, the default reduction where there is no other action
+    private final CombTable actions;
+
+    // Gotos by non-terminal row (nonTerminal - terminalCount) and state column
+    private final CombTable gotos;
+
+    private final List<String> conflicts;
+
+    public static int reduce(int production) {
+        return -2 - production;
+    }
+
+    public static int reducedProduction(int action) {
+        return -2 - action;
+    }
+
+    public LalrTable(LalrGrammar grammar) {
+        this.grammar = grammar;
+        Builder b = new Builder(grammar);
+        this.stateCount = b.kernels.size();
+        this.accessingSymbol = b.accessing.stream().mapToInt(Integer::intValue).toArray();
+        this.conflicts = b.conflicts;
+
+        // Default reductions: a state's error cells take its most common reduction
+        int[][] rows = b.actions;
+        int terminals = grammar.terminalCount;
+        int[] defaultAction = new int[stateCount];
+        int[] cells = new int[stateCount * terminals];
+        for (int s = 0; s < stateCount; s++) {
+            defaultAction[s] = mostCommonReduce(rows[s]);
+            for (int t = 0; t < terminals; t++) {
+                int v = rows[s][t];
+                cells[s * terminals + t] = v != ERROR ? v : defaultAction[s];
+            }
+        }
+        actions = CombTable.pack(cells, stateCount, terminals, defaultAction);
+
+        // Gotos: the most common target of each column becomes its default
+        int nonTerminals = grammar.symbolCount() - grammar.terminalCount;
+        int[] gotoDefault = new int[nonTerminals];
+        cells = new int[nonTerminals * stateCount];
+        for (int n = 0; n < nonTerminals; n++) {
+            int[] column = b.gotoColumn(n + grammar.terminalCount);
+            gotoDefault[n] = mostCommon(column);
+            for (int s = 0; s < stateCount; s++) {
+                cells[n * stateCount + s] = column[s] != ERROR ? column[s] : gotoDefault[n];
+            }
+        }
+        gotos = CombTable.pack(cells, nonTerminals, stateCount, gotoDefault);
+    }
+
+    private static int mostCommonReduce(int[] row) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = ERROR;
+        int bestCount = 0;
+        for (int v : row) {
+            if (v < ERROR && v != ACCEPT) {
+                int c = counts.merge(v, 1, Integer::sum);
+                if (c > bestCount) {
+                    best = v;
+                    bestCount = c;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int mostCommon(int[] column) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = ERROR;
+        int bestCount = 0;
+        for (int v : column) {
+            if (v != ERROR) {
+                int c = counts.merge(v, 1, Integer::sum);
+                if (c > bestCount) {
+                    best = v;
+                    bestCount = c;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Action for a state and lookahead terminal (-1, an unknown token, finds the default only)
+    public int action(int state, int terminal) {
+        return terminal < 0 ? actions.defaultValue(state) : actions.get(state, terminal);
+    }
+
+    // State entered after reducing to nonTerminal in state
+    public int gotoState(int state, int nonTerminal) {
+        return gotos.get(nonTerminal - grammar.terminalCount, state);
+    }
+
+    public LalrGrammar grammar() {
+        return grammar;
+    }
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    public int accessingSymbol(int state) {
+        return accessingSymbol[state];
+    }
+
+    // Shift/reduce and reduce/reduce conflicts found while building, with how each was resolved
+    public List<String> conflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    // Stored ints against a full states x symbols table
+    public int storedInts() {
+        return actions.storedInts() + gotos.storedInts();
+    }
+
+    public int uncompressedInts() {
+        return stateCount * grammar.symbolCount();
+    }
+
+    // Display the action table, one row per state, then each goto column as stored
+    public void printTable() {
+        System.out.printf("%-6s", "State");
+        for (int t = 0; t < grammar.terminalCount; t++) {
+            System.out.printf("%-6s", grammar.symbolName(t));
+        }
+        System.out.printf("%s%n", "default");
+        for (int s = 0; s < stateCount; s++) {
+            System.out.printf("%-6d", s);
+            for (int t = 0; t < grammar.terminalCount; t++) {
+                int v = action(s, t);
+                System.out.printf("%-6s", v == actions.defaultValue(s) ? "" : actionString(v));
+            }
+            System.out.printf("%s%n", actionString(actions.defaultValue(s)));
+        }
+        for (int n = grammar.terminalCount; n < grammar.symbolCount(); n++) {
+            if (n == grammar.startSymbol) {
+                continue;
+            }
+            int target = gotos.defaultValue(n - grammar.terminalCount);
+            StringBuilder sb = new StringBuilder("goto ").append(grammar.symbolName(n)).append(": ");
+            sb.append(target == ERROR ? "none" : Integer.toString(target));
+            for (int s = 0; s < stateCount; s++) {
+                if (gotoState(s, n) != target) {
+                    sb.append(", from ").append(s).append(" to ").append(gotoState(s, n));
+                }
+            }
+            System.out.println(sb);
+        }
+    }
+
+    private static String actionString(int action) {
+        return action == ERROR ? "" : action == ACCEPT ? "acc" : action >= 0 ? "s" + action : "r" + reducedProduction(action);
+    }
+
+    // LR(0) automaton, LALR(1) lookaheads and the uncompressed action rows
+    private static final class Builder {
+        private final LalrGrammar g;
+        private final int terminals;
+        private final int laWords;       // lookahead bitset words, with one extra bit for '#'
+        private final int dummy;         // the '#' lookahead bit
+        private final int[] itemStart;   // first item of each production
+        private final int[] itemProd;
+        private final int[] itemDot;
+        private final int[][] prodsOf;   // productions of each non-terminal
+
+        final List<int[]> kernels = new ArrayList<>();
+        final List<Integer> accessing = new ArrayList<>();
+        private final Map<List<Integer>, Integer> stateOf = new HashMap<>();
+        private int[] kernelBase;        // first global kernel-item index of each state
+        private final List<Map<Integer, Integer>> transitions = new ArrayList<>();
+        final List<String> conflicts = new ArrayList<>();
+        int[][] actions;
+
+        Builder(LalrGrammar g) {
+            this.g = g;
+            this.terminals = g.terminalCount;
+            this.dummy = terminals;
+            this.laWords = (terminals + 1 + 63) >>> 6;
+
+            int productions = g.prodLhs.length;
+            itemStart = new int[productions];
+            int items = 0;
+            for (int p = 0; p < productions; p++) {
+                itemStart[p] = items;
+                items += g.prodOffset[p + 1] - g.prodOffset[p] + 1;
+            }
+            itemProd = new int[items];
+            itemDot = new int[items];
+            for (int p = 0; p < productions; p++) {
+                for (int d = 0; d <= g.prodOffset[p + 1] - g.prodOffset[p]; d++) {
+                    itemProd[itemStart[p] + d] = p;
+                    itemDot[itemStart[p] + d] = d;
+                }
+            }
+            int nonTerminals = g.symbolCount() - terminals;
+            List<List<Integer>> byLhs = new ArrayList<>();
+            for (int n = 0; n < nonTerminals; n++) {
+                byLhs.add(new ArrayList<>());
+            }
+            for (int p = 0; p < productions; p++) {
+                byLhs.get(g.prodLhs[p] - terminals).add(p);
+            }
+            prodsOf = new int[nonTerminals][];
+            for (int n = 0; n < nonTerminals; n++) {
+                prodsOf[n] = byLhs.get(n).stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            buildStates();
+            long[][] lookaheads = computeLookaheads();
+            buildActions(lookaheads);
+        }
+
+        private int next(int item) {
+            int p = itemProd[item];
+            int at = g.prodOffset[p] + itemDot[item];
+            return at < g.prodOffset[p + 1] ? g.prodRhs[at] : -1;
+        }
+
+        // LR(0) closure of a kernel
+        private int[] closure(int[] kernel) {
+            List<Integer> items = new ArrayList<>();
+            boolean[] added = new boolean[g.symbolCount() - terminals];
+            for (int item : kernel) {
+                items.add(item);
+            }
+            for (int i = 0; i < items.size(); i++) {
+                int x = next(items.get(i));
+                if (x >= terminals && !added[x - terminals]) {
+                    added[x - terminals] = true;
+                    for (int p : prodsOf[x - terminals]) {
+                        items.add(itemStart[p]);
+                    }
+                }
+            }
+            return items.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private int stateFor(int[] kernel, int symbol) {
+            List<Integer> key = new ArrayList<>(kernel.length);
+            for (int item : kernel) {
+                key.add(item);
+            }
+            Integer state = stateOf.get(key);
+            if (state == null) {
+                state = kernels.size();
+                stateOf.put(key, state);
+                kernels.add(kernel);
+                accessing.add(symbol);
+                transitions.add(new HashMap<>());
+            }
+            return state;
+        }
+
+        private void buildStates() {
+            stateFor(new int[]{itemStart[0]}, LalrGrammar.END_MARKER);
+            for (int s = 0; s < kernels.size(); s++) {
+                Map<Integer, List<Integer>> moved = new TreeMap<>();
+                for (int item : closure(kernels.get(s))) {
+                    int x = next(item);
+                    if (x >= 0) {
+                        moved.computeIfAbsent(x, k -> new ArrayList<>()).add(item + 1);
+                    }
+                }
+                for (Map.Entry<Integer, List<Integer>> m : moved.entrySet()) {
+                    int[] kernel = m.getValue().stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+                    transitions.get(s).put(m.getKey(), stateFor(kernel, m.getKey()));
+                }
+            }
+        }
+
+        // Goto target of every state for one non-terminal, ERROR where there is none
+        int[] gotoColumn(int nonTerminal) {
+            int[] column = new int[kernels.size()];
+            for (int s = 0; s < column.length; s++) {
+                column[s] = transitions.get(s).getOrDefault(nonTerminal, ERROR);
+            }
+            return column;
+        }
+
+        /*
+            LR(1) closure of seed items with lookahead sets; returns the lookahead
+            set of every item reached (null where not reached). FIRST(β) of an item
+            A -> α . B β goes to B's items, plus the item's own set if β is nullable.
+        */
+        private long[][] closureWithLookaheads(int[] seeds, long[][] seedSets) {
+            long[][] la = new long[itemProd.length][];
+            ArrayDeque<Integer> work = new ArrayDeque<>();
+            for (int i = 0; i < seeds.length; i++) {
+                la[seeds[i]] = seedSets[i].clone();
+                work.add(seeds[i]);
+            }
+            long[] spread = new long[laWords];
+            while (!work.isEmpty()) {
+                int item = work.poll();
+                int x = next(item);
+                if (x < terminals) {
+                    continue;
+                }
+                // spread = FIRST(β) ∪ (β nullable ? la[item] : ∅)
+                Arrays.fill(spread, 0);
+                int p = itemProd[item];
+                boolean nullableRest = true;
+                for (int at = g.prodOffset[p] + itemDot[item] + 1; at < g.prodOffset[p + 1] && nullableRest; at++) {
+                    int y = g.prodRhs[at];
+                    if (y < terminals) {
+                        spread[y >>> 6] |= 1L << y;
+                        nullableRest = false;
+                    } else {
+                        int n = y - terminals;
+                        for (int w = 0; w < g.words; w++) {
+                            spread[w] |= g.first[n * g.words + w];
+                        }
+                        nullableRest = g.nullable[n];
+                    }
+                }
+                if (nullableRest) {
+                    for (int w = 0; w < laWords; w++) {
+                        spread[w] |= la[item][w];
+                    }
+                }
+                for (int q : prodsOf[x - terminals]) {
+                    int target = itemStart[q];
+                    boolean changed = false;
+                    if (la[target] == null) {
+                        la[target] = new long[laWords];
+                        changed = true;
+                    }
+                    for (int w = 0; w < laWords; w++) {
+                        long merged = la[target][w] | spread[w];
+                        if (merged != la[target][w]) {
+                            la[target][w] = merged;
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        work.add(target);
+                    }
+                }
+            }
+            return la;
+        }
+
+        // Lookahead set of every kernel item, indexed kernelBase[state] + kernel position
+        private long[][] computeLookaheads() {
+            int states = kernels.size();
+            int[] base = new int[states + 1];
+            for (int s = 0; s < states; s++) {
+                base[s + 1] = base[s] + kernels.get(s).length;
+            }
+            long[][] sets = new long[base[states]][];
+            for (int k = 0; k < sets.length; k++) {
+                sets[k] = new long[laWords];
+            }
+            sets[0][LalrGrammar.END_MARKER >>> 6] |= 1L << LalrGrammar.END_MARKER;
+
+            // Propagation edges between kernel items (global indexes)
+            List<List<Integer>> propagate = new ArrayList<>();
+            for (int k = 0; k < sets.length; k++) {
+                propagate.add(new ArrayList<>());
+            }
+            long[] dummySet = new long[laWords];
+            dummySet[dummy >>> 6] |= 1L << dummy;
+            for (int s = 0; s < states; s++) {
+                int[] kernel = kernels.get(s);
+                for (int k = 0; k < kernel.length; k++) {
+                    long[][] la = closureWithLookaheads(new int[]{kernel[k]}, new long[][]{dummySet});
+                    for (int item = 0; item < la.length; item++) {
+                        if (la[item] == null) {
+                            continue;
+                        }
+                        int x = next(item);
+                        if (x < 0) {
+                            continue;
+                        }
+                        int t = transitions.get(s).get(x);
+                        int target = base[t] + Arrays.binarySearch(kernels.get(t), item + 1);
+                        for (int w = 0; w < laWords; w++) {
+                            long bits = la[item][w];
+                            if (w == dummy >>> 6) {
+                                if ((bits & (1L << dummy)) != 0) {
+                                    propagate.get(base[s] + k).add(target);
+                                }
+                                bits &= ~(1L << dummy);
+                            }
+                            sets[target][w] |= bits;
+                        }
+                    }
+                }
+            }
+
+            // Propagate to a fixpoint
+            ArrayDeque<Integer> work = new ArrayDeque<>();
+            for (int k = 0; k < sets.length; k++) {
+                work.add(k);
+            }
+            while (!work.isEmpty()) {
+                int from = work.poll();
+                for (int to : propagate.get(from)) {
+                    boolean changed = false;
+                    for (int w = 0; w < laWords; w++) {
+                        long merged = sets[to][w] | sets[from][w];
+                        if (merged != sets[to][w]) {
+                            sets[to][w] = merged;
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        work.add(to);
+                    }
+                }
+            }
+
+            kernelBase = base;
+            return sets;
+        }
+
+        // Shifts from the terminal transitions, reductions from each state's LR(1) closure
+        private void buildActions(long[][] kernelSets) {
+            int states = kernels.size();
+            actions = new int[states][terminals];
+            for (int s = 0; s < states; s++) {
+                Arrays.fill(actions[s], ERROR);
+                for (Map.Entry<Integer, Integer> t : transitions.get(s).entrySet()) {
+                    if (t.getKey() < terminals) {
+                        actions[s][t.getKey()] = t.getValue();
+                    }
+                }
+                int[] kernel = kernels.get(s);
+                long[][] seedSets = new long[kernel.length][];
+                for (int k = 0; k < kernel.length; k++) {
+                    seedSets[k] = kernelSets[kernelBase[s] + k];
+                }
+                long[][] la = closureWithLookaheads(kernel, seedSets);
+                for (int item = 0; item < la.length; item++) {
+                    if (la[item] == null || next(item) >= 0) {
+                        continue;
+                    }
+                    int p = itemProd[item];
+                    for (int t = 0; t < terminals; t++) {
+                        if ((la[item][t >>> 6] & (1L << t)) != 0) {
+                            setReduce(s, t, p);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void setReduce(int state, int terminal, int production) {
+            int action = production == 0 ? ACCEPT : reduce(production);
+            int current = actions[state][terminal];
+            if (current == ERROR || current == action) {
+                actions[state][terminal] = action;
+            } else if (current >= 0) {
+                conflicts.add("state " + state + ": shift/reduce conflict on " + g.symbolNames[terminal]
+                        + " between shift and reduce " + g.productionToString(production) + " (shift chosen)");
+            } else {
+                int other = current == ACCEPT ? 0 : reducedProduction(current);
+                int keep = Math.min(other, production);
+                conflicts.add("state " + state + ": reduce/reduce conflict on " + g.symbolNames[terminal]
+                        + " between " + g.productionToString(other) + " and " + g.productionToString(production)
+                        + " (" + g.productionToString(keep) + " chosen)");
+                actions[state][terminal] = keep == 0 ? ACCEPT : reduce(keep);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+    Receives the steps of LalrParser.parse(), the LR counterpart of
+    ShiftReduceListener. Positions are token indexes; the parser's views
+    (tokenAt, stackString, remainingInput) turn them into text.
+*/
+public interface LrListener {
+
+    LrListener SILENT = new LrListener() { };
+
+    // A new parse begins with only state 0 on the stack
+    default void start(LalrParser parser) {
+    }
+
+    // The token at position is about to be pushed, entering state
+    default void shift(LalrParser parser, int step, int position, int state) {
+    }
+
+    // The top rhsLength(production) states are about to be replaced by the production's left side
+    default void reduce(LalrParser parser, int step, int production, int position) {
+    }
+
+    // Parsing stops at position; reason is a constant description
+    default void error(LalrParser parser, int step, int position, String reason) {
+    }
+
+    default void accept(LalrParser parser, int step, int position) {
+    }
+}
@@ -0,0 +1,32 @@
+// Prints each LR step as a row of the Step / Stack / Input / Action table
+public class LrTracer implements LrListener {
+
+    public static void printHeader() {
+        System.out.printf("%-5s %-30s %-20s %-20s\n", "Step", "Stack", "Input", "Action");
+        System.out.println("------------------------------------------------------------------------------");
+    }
+
+    @Override
+    public void shift(LalrParser parser, int step, int position, int state) {
+        print(parser, step, position, "Shift " + parser.tokenAt(position) + ", goto " + state);
+    }
+
+    @Override
+    public void reduce(LalrParser parser, int step, int production, int position) {
+        print(parser, step, position, "Reduce " + parser.table().grammar().productionToString(production));
+    }
+
+    @Override
+    public void error(LalrParser parser, int step, int position, String reason) {
+        print(parser, step, position, "Error: " + reason);
+    }
+
+    @Override
+    public void accept(LalrParser parser, int step, int position) {
+        print(parser, step, position, "Accept");
+    }
+
+    private void print(LalrParser parser, int step, int position, String action) {
+        System.out.printf("%-5d %-30s %-20s %s\n", step, parser.stackString(0), parser.remainingInput(position), action);
+    }
+}
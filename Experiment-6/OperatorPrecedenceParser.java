@@ -3,15 +3,139 @@ import java.util.*;
 
 public class OperatorPrecedenceParser {
 
-    private String input;        // Input string
+    private String input;        // Input string, or null for input given as tokens
+    private int[] tokens = new int[64]; // Terminal id of each input token, -1 if unknown, '$' last
+    private int tokenCount;      // Tokens including the end marker
+    private int[] tokenStarts;   // Offsets of the tokens given to setTokens (with the end), else null
+    private int[] tokenEnds;     // (both the caller's arrays, not copies)
     private Stack<String> stack; // Parsing stack
-    private Map<String, Map<String, String>> precedenceTable; // Precedence relations
+    private Map<String, Map<String, String>> precedenceTable; // Precedence relations; blank pairs absent
+    private String[] terminals;  // Terminals by id
+    private int[] terminalIds;   // Terminal id for each ASCII character, or -1
+    private PrecedenceFunctions functions; // f/g for the table, or null if none exist
+    private long[] blank;        // Bit a * n + b set where a and b have no relation (with functions)
+    private CombTable relations; // Packed relation matrix, kept only when there are no functions
+    private int errorPosition;   // Where the last parse failed (its first error), or -1
+
+    // Report-all mode: repairs allowed in a row without shifting an input token or reducing a
+    // production, those left, and whether the current error was reported
+    private int maxEdits;
+    private int edits;
+    private boolean recovering;
+    private int[] entryPositions = new int[64]; // Input position of each stack entry; -1 - position if inserted
+
+    // Right sides of E's productions, E standing for the non-terminal
+    private static final String[] PRODUCTIONS = {"E+E", "E-E", "E*E", "E/E", "(E)", "i"};
+    private long[] productionKeys; // Sorted handle keys of PRODUCTIONS
+    private long[] keyOfProduction; // The same keys by production index
+
+    // Compact engine: int symbol stack, with the nearest terminal below each entry
+    private boolean compact;
+    private int[] symbols = new int[64];  // Terminal ids, or nonTerminal for E
+    private int[] lowerTerminal = new int[64];
+    private int top;                      // Index of the top entry
+    private int topTerminal;              // Index of the topmost terminal
+    private int nonTerminal;              // Symbol id of E
+
+    // Time the constructor took to build the tables, and the metrics parses count into (or null)
+    private final long tableNanos;
+    private ShiftReduceMetrics metrics;
 
     // Constructor initializes input and stack
     public OperatorPrecedenceParser(String input) {
-        this.input = input + "$"; // Add end marker
+        PrecedencePhaseEvent event = new PrecedencePhaseEvent();
+        event.begin();
+        long start = System.nanoTime();
         this.stack = new Stack<>();
         buildPrecedenceTable();
+        compileRelations();
+        compileProductions();
+        tableNanos = System.nanoTime() - start;
+        setInput(input);
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = ShiftReduceMetrics.PHASE_NAMES[ShiftReduceMetrics.PRECEDENCE_TABLE];
+            event.size = terminals.length;
+            event.commit();
+        }
+    }
+
+    // Replace the input, keeping the tables and stacks for the next parse
+    public void setInput(String input) {
+        this.input = input.endsWith("$") ? input : input + "$"; // Add end marker
+        int n = this.input.length();
+        ensureTokens(n);
+        for (int i = 0; i < n; i++) {
+            char c = this.input.charAt(i);
+            tokens[i] = c < 128 ? terminalIds[c] : -1;
+        }
+        tokenCount = n;
+        tokenStarts = null;
+        tokenEnds = null;
+    }
+
+    /*
+        Replace the input with tokens lexed beforehand (e.g. by DfaLexer): the
+        terminal ids of terminalIndex() for ids[0..count), ids outside them
+        counting as unknown input, and the offsets each token spans, with
+        starts[count] the end of the input. The end marker is appended. Parse
+        positions are then token indexes; offset() maps them back. The offset
+        arrays are read in place, so they must not change until the next
+        setInput / setTokens.
+    */
+    public void setTokens(int[] ids, int[] starts, int[] ends, int count) {
+        if (count < 0 || count > ids.length || count > ends.length || count >= starts.length) {
+            throw new IllegalArgumentException("bad token count " + count);
+        }
+        ensureTokens(count + 1);
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            tokens[i] = id >= 0 && id < terminals.length ? id : -1;
+        }
+        tokens[count] = terminalIds['$'];
+        tokenCount = count + 1;
+        tokenStarts = starts;
+        tokenEnds = ends;
+        input = null;
+    }
+
+    private void ensureTokens(int n) {
+        if (tokens.length < n) {
+            tokens = new int[Math.max(n, tokens.length * 2)];
+        }
+    }
+
+    // Terminal id of a terminal's spelling, or -1 (e.g. to map a lexer's token names)
+    public int terminalIndex(String name) {
+        for (int id = 0; id < terminals.length; id++) {
+            if (terminals[id].equals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Input offset of the token at a parse position
+    public int offset(int position) {
+        return tokenStart(position);
+    }
+
+    // Parse on the int stack (true) or on the original Stack<String> (false, the default)
+    public void setCompactStack(boolean compact) {
+        this.compact = compact;
+    }
+
+    /*
+        Report every error instead of stopping at the first one, repairing each
+        with token insertions, deletions or forced reductions; the parse stops
+        when maxEdits repairs in a row make no progress (no input token shifted,
+        no production reduced). 0 (the default) stops at the first error.
+    */
+    public void setRecovery(int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("negative edit limit: " + maxEdits);
+        }
+        this.maxEdits = maxEdits;
     }
 
     // Build the operator precedence table
@@ -21,12 +145,16 @@ public class OperatorPrecedenceParser {
         // List of terminals/operators
         String[] symbols = {"i", "+", "-", "*", "/", "(", ")", "$"};
 
-        // Initialize precedence relations as empty
+        terminals = symbols;
+        terminalIds = new int[128];
+        Arrays.fill(terminalIds, -1);
+        for (int id = 0; id < symbols.length; id++) {
+            terminalIds[symbols[id].charAt(0)] = id;
+        }
+
+        // Initialize precedence relations as empty: a pair without an entry has no relation
         for (String sym : symbols) {
             precedenceTable.put(sym, new HashMap<>());
-            for (String other : symbols) {
-                precedenceTable.get(sym).put(other, " ");
-            }
         }
 
         // Fill the table based on standard arithmetic precedence
@@ -103,7 +231,95 @@ public class OperatorPrecedenceParser {
         precedenceTable.get("$").put("-", "<");
         precedenceTable.get("$").put("*", "<");
         precedenceTable.get("$").put("/", "<");
-        precedenceTable.get("$").put("$", " ");
+    }
+
+    // Turn the table into int relations and derive precedence functions from them
+    private void compileRelations() {
+        int n = terminals.length;
+        int[] matrix = new int[n * n];
+        for (int a = 0; a < n; a++) {
+            Map<String, String> row = precedenceTable.get(terminals[a]);
+            for (int b = 0; b < n; b++) {
+                switch (row.getOrDefault(terminals[b], " ")) {
+                    case "<": matrix[a * n + b] = PrecedenceFunctions.LESS; break;
+                    case "=": matrix[a * n + b] = PrecedenceFunctions.EQUAL; break;
+                    case ">": matrix[a * n + b] = PrecedenceFunctions.GREATER; break;
+                    default: matrix[a * n + b] = PrecedenceFunctions.NONE;
+                }
+            }
+        }
+        functions = PrecedenceFunctions.derive(n, matrix);
+        if (functions == null) {
+            relations = CombTable.pack(matrix, n, n);
+            blank = null;
+            return;
+        }
+        relations = null;
+        blank = new long[(n * n + 63) >>> 6];
+        for (int i = 0; i < matrix.length; i++) {
+            if (matrix[i] == PrecedenceFunctions.NONE) {
+                blank[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    // Relation between terminal ids a (left) and b (right): one comparison of f(a) and g(b)
+    private int relation(int a, int b) {
+        int n = terminals.length;
+        if (functions == null) {
+            return relations.get(a, b);
+        }
+        int bit = a * n + b;
+        if ((blank[bit >>> 6] & (1L << bit)) != 0) {
+            return PrecedenceFunctions.NONE;
+        }
+        return functions.compare(a, b);
+    }
+
+    // Handle keys of the productions, to check reductions against
+    private void compileProductions() {
+        nonTerminal = terminals.length;
+        productionKeys = new long[PRODUCTIONS.length];
+        for (int p = 0; p < PRODUCTIONS.length; p++) {
+            long key = 0;
+            for (char c : PRODUCTIONS[p].toCharArray()) {
+                key = handleKey(key, c == 'E' ? nonTerminal : terminalIds[c]);
+            }
+            productionKeys[p] = key;
+        }
+        keyOfProduction = productionKeys.clone();
+        Arrays.sort(productionKeys);
+    }
+
+    // Append a symbol to a handle key; every symbol is a non-zero digit, so the key also fixes the length
+    private long handleKey(long key, int symbol) {
+        return key * (nonTerminal + 2) + symbol + 1;
+    }
+
+    private boolean isProduction(long key) {
+        return Arrays.binarySearch(productionKeys, key) >= 0;
+    }
+
+    private int terminalId(String symbol) {
+        char c = symbol.charAt(0);
+        return c < 128 ? terminalIds[c] : -1;
+    }
+
+    // Precedence functions of the table, or null if the table has none
+    public PrecedenceFunctions getPrecedenceFunctions() {
+        return functions;
+    }
+
+    // Ints held for relation lookups (f, g and the blank bits, or the packed matrix) against a full matrix
+    public int storedInts() {
+        if (functions == null) {
+            return relations.storedInts();
+        }
+        return 2 * terminals.length + 2 * blank.length;
+    }
+
+    public int uncompressedInts() {
+        return terminals.length * terminals.length;
     }
 
     // Find the topmost terminal in the stack
@@ -117,6 +333,233 @@ public class OperatorPrecedenceParser {
         return "$"; // Default to end marker if none found
     }
 
+    // Start of the handle on top of the stack: walk down the terminals until a '<' relation, or -1
+    private int findHandle() {
+        int i = stack.size() - 1;
+        while (i > 0 && stack.get(i).equals("E")) {
+            i--;
+        }
+        int right = terminalId(stack.get(i));
+        while (i > 0) {
+            int j = i - 1;
+            while (j > 0 && stack.get(j).equals("E")) {
+                j--;
+            }
+            int left = terminalId(stack.get(j));
+            int relation = relation(left, right);
+            if (relation == PrecedenceFunctions.LESS) {
+                return j + 1;
+            }
+            if (relation != PrecedenceFunctions.EQUAL) {
+                return -1;
+            }
+            right = left;
+            i = j;
+        }
+        return -1;
+    }
+
+    // Result of repair(): skip the input terminal instead of inserting one
+    private static final int DELETE = -1;
+
+    /*
+        Phrase-level repair for a blank entry between the top terminal a and the
+        input terminal b, one routine per kind of blank (the e1-e4 of the
+        classic operator precedence recovery): the terminal to insert before b,
+        or DELETE to skip b.
+    */
+    private int repair(int a, int b) {
+        char left = terminals[a].charAt(0);
+        char right = terminals[b].charAt(0);
+        if ((left == 'i' || left == ')') && (right == 'i' || right == '(')) {
+            return terminalIds['+'];       // two operands in a row: missing operator
+        }
+        if (left == '(' && right == '$') {
+            return terminalIds[')'];       // input ends inside parentheses
+        }
+        if (left == '$' && right == '$') {
+            return terminalIds['i'];       // no expression at all
+        }
+        return DELETE;                     // ')' without '(' and anything else
+    }
+
+    private String repairReason(int a, int b) {
+        int fix = repair(a, b);
+        if (fix == DELETE) {
+            return terminals[b].equals(")") ? "unbalanced right parenthesis" : "unexpected token";
+        }
+        switch (terminals[fix].charAt(0)) {
+            case '+': return "missing operator";
+            case ')': return "missing right parenthesis";
+            default: return "missing operand";
+        }
+    }
+
+    /*
+        Handles that are no production are still reduced in recovery, each
+        reported as an error of its own at the token that is wrong with it:
+        an operator without its left or right operand, parentheses with
+        nothing (or only an inserted ')') inside, or two operands without an
+        operator between them. false if the parse has to stop here instead.
+    */
+    private boolean forceReduction(ShiftReduceListener listener, int step, int position, int handleStart) {
+        if (maxEdits == 0) {
+            listener.error(this, step, position, "no production for handle");
+            errorPosition = position;
+            return false;
+        }
+        int end = stackSize() - 1;
+        String reason = "missing operand";
+        int at = entryPosition(handleStart);
+        for (int i = handleStart; i <= end; i++) {
+            int symbol = stackSymbolId(i);
+            int right = i < end ? stackSymbolId(i + 1) : -1;
+            boolean operand = isOperand(symbol);
+            boolean rightOperand = isOperand(right);
+            if (symbol == terminalIds['('] && right == terminalIds[')']) {
+                reason = entryPositions[i + 1] < 0 ? "missing operand" : "empty parentheses";
+                at = entryPosition(i);
+                break;
+            }
+            if ((operand || symbol == terminalIds[')']) && (rightOperand || right == terminalIds['('])) {
+                reason = "missing operator";
+                at = entryPosition(i + 1);
+                break;
+            }
+            if (!operand && symbol != terminalIds['('] && symbol != terminalIds[')']
+                    && (i == handleStart || !isOperand(stackSymbolId(i - 1)) || !rightOperand)) {
+                at = entryPosition(i);
+                break;
+            }
+        }
+        listener.recover(this, step, position, at, reason);
+        if (errorPosition < 0) {
+            errorPosition = at;
+        }
+        recovering = false;   // repairs after this one are another error
+        return true;
+    }
+
+    /*
+        Start or continue recovering from an error with an insertion or a
+        deletion; false if the parse has to stop here instead.
+    */
+    private boolean recover(ShiftReduceListener listener, int step, int position,
+                            String stopReason, String reason) {
+        if (maxEdits == 0) {
+            listener.error(this, step, position, stopReason);
+            errorPosition = position;
+            return false;
+        }
+        if (!recovering) {
+            listener.recover(this, step, position, position, reason);
+            if (errorPosition < 0) {
+                errorPosition = position;
+            }
+            recovering = true;
+        }
+        if (edits == 0) {
+            listener.error(this, step, position, "too many repairs");
+            return false;
+        }
+        edits--;
+        return true;
+    }
+
+    // Token string at an input position, or null for input that is not a terminal
+    private String tokenOf(int position) {
+        int token = tokens[position];
+        return token < 0 ? null : terminals[token];
+    }
+
+    // Views used by listeners
+    boolean operandAt(int position) {
+        return tokens[position] == terminalIds['i'];
+    }
+
+    // Offsets the token at a position spans (one character each for string input)
+    int tokenStart(int position) {
+        return tokenStarts == null ? position : tokenStarts[position];
+    }
+
+    int tokenEnd(int position) {
+        if (tokenEnds == null) {
+            return position + 1;
+        }
+        return position == tokenCount - 1 ? tokenStarts[position] : tokenEnds[position];
+    }
+
+    String stackSymbol(int i) {
+        if (compact) {
+            return symbols[i] == nonTerminal ? "E" : terminals[symbols[i]];
+        }
+        return stack.get(i);
+    }
+
+    int stackSize() {
+        return compact ? top + 1 : stack.size();
+    }
+
+    String tokenAt(int position) {
+        if (input != null) {
+            return String.valueOf(input.charAt(position));
+        }
+        return tokens[position] < 0 ? "?" : terminals[tokens[position]];
+    }
+
+    String remainingInput(int position) {
+        if (input != null) {
+            return input.substring(position);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = position; i < tokenCount; i++) {
+            sb.append(tokenAt(i));
+        }
+        return sb.toString();
+    }
+
+    // Terminal id of a stack entry, or nonTerminal for E
+    private int stackSymbolId(int i) {
+        if (compact) {
+            return symbols[i];
+        }
+        String sym = stack.get(i);
+        return sym.equals("E") ? nonTerminal : terminalId(sym);
+    }
+
+    // Index of the production the stack from handleStart to the top is the right side of, or -1
+    int productionAt(int handleStart) {
+        long key = 0;
+        for (int i = handleStart; i < stackSize(); i++) {
+            key = handleKey(key, stackSymbolId(i));
+        }
+        for (int p = 0; p < keyOfProduction.length; p++) {
+            if (keyOfProduction[p] == key) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    static int productionCount() {
+        return PRODUCTIONS.length;
+    }
+
+    static String production(int p) {
+        return "E -> " + PRODUCTIONS[p];
+    }
+
+    String stackString(int from) {
+        if (!compact) {
+            return stack.subList(from, stack.size()).toString();
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = from; i <= top; i++) {
+            sb.append(i > from ? ", " : "").append(stackSymbol(i));
+        }
+        return sb.append(']').toString();
+    }
+
     // Display precedence table neatly
     public void printPrecedenceTable() {
         List<String> terminals = Arrays.asList("i", "+", "-", "*", "/", "(", ")", "$");
@@ -128,65 +571,301 @@ public class OperatorPrecedenceParser {
         for (String row : terminals) {
             System.out.printf("%-5s", row);
             for (String col : terminals) {
-                System.out.printf("%-5s", precedenceTable.get(row).get(col));
+                System.out.printf("%-5s", precedenceTable.get(row).getOrDefault(col, " "));
             }
             System.out.println();
         }
     }
 
-    // Perform the parsing process
+    // Display f and g, or say that the table has no precedence functions
+    public void printPrecedenceFunctions() {
+        if (functions == null) {
+            System.out.println("No precedence functions exist; using the packed relation table");
+            return;
+        }
+        System.out.printf("%-5s", " ");
+        for (String term : terminals) {
+            System.out.printf("%-5s", term);
+        }
+        System.out.printf("%n%-5s", "f");
+        for (int a = 0; a < terminals.length; a++) {
+            System.out.printf("%-5d", functions.f(a));
+        }
+        System.out.printf("%n%-5s", "g");
+        for (int b = 0; b < terminals.length; b++) {
+            System.out.printf("%-5d", functions.g(b));
+        }
+        System.out.println();
+    }
+
+    // Perform the parsing process, printing every step
     public void parse() {
+        ShiftReduceTracer.printHeader();
+        parse(new ShiftReduceTracer());
+    }
+
+    // Perform the parsing process, reporting steps to the listener; true if the input is accepted
+    public boolean parse(ShiftReduceListener listener) {
+        PrecedencePhaseEvent event = new PrecedencePhaseEvent();
+        event.begin();
+        if (metrics != null) {
+            listener = metrics.forwardingTo(listener);
+        }
+        boolean accepted = compact ? parseCompact(listener) : parseClassic(listener);
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = ShiftReduceMetrics.PHASE_NAMES[ShiftReduceMetrics.PARSE];
+            event.size = tokenCount;
+            event.result = accepted ? -1 : errorPosition;
+            event.commit();
+        }
+        return accepted;
+    }
+
+    /*
+        Count the steps of every parse into metrics (see ShiftReduceMetrics),
+        starting with the time this parser's table took to build; null turns
+        metrics off again. Flight Recorder events for table building and
+        parsing are committed whenever a recording is running.
+    */
+    public void setMetrics(ShiftReduceMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.phase(ShiftReduceMetrics.PRECEDENCE_TABLE, tableNanos);
+        }
+    }
+
+    public ShiftReduceMetrics metrics() {
+        return metrics;
+    }
+
+    private boolean parseClassic(ShiftReduceListener listener) {
+        stack.clear();
         stack.push("$");
+        errorPosition = -1;
+        recovering = false;
+        edits = maxEdits;
+        listener.start(this);
         int step = 1;
 
-        System.out.printf("%-5s %-20s %-20s %-20s\n", "Step", "Stack", "Input", "Action");
-        System.out.println("--------------------------------------------------------------------");
-
         int ptr = 0;
+        int inserted = -1;   // Terminal id a repair put before the input at ptr, or -1
         while (true) {
-            String currentToken = String.valueOf(input.charAt(ptr));
-            String topTerminal = getTopTerminal();
-            String precedence = precedenceTable.get(topTerminal).get(currentToken);
-
-            System.out.printf("%-5d %-20s %-20s ", step, stack.toString(), input.substring(ptr));
+            String currentToken = inserted >= 0 ? terminals[inserted] : tokenOf(ptr);
+            int topTerminal = terminalId(getTopTerminal());
+            int precedence = currentToken == null ? PrecedenceFunctions.NONE
+                    : relation(topTerminal, terminalId(currentToken));
 
-            if (precedence.equals("<") || precedence.equals("=")) {
+            if (precedence == PrecedenceFunctions.LESS || precedence == PrecedenceFunctions.EQUAL) {
+                if (inserted >= 0) {
+                    listener.insert(this, step, ptr, currentToken);
+                    mark(stack.size(), -1 - ptr);
+                    inserted = -1;
+                } else {
+                    listener.shift(this, step, ptr);
+                    mark(stack.size(), ptr);
+                    ptr++;
+                    recovering = false;
+                    edits = maxEdits;
+                }
                 stack.push(currentToken);
-                System.out.println("Shift " + currentToken);
-                ptr++;
-            } else if (precedence.equals(">")) {
-                // Reduce by popping until the first terminal with lower precedence
-                List<String> handle = new ArrayList<>();
-                while (true) {
-                    String sym = stack.pop();
-                    handle.add(sym);
-                    String nextTop = getTopTerminal();
-                    String nextPrec = precedenceTable.get(nextTop).get(sym);
-                    if (nextPrec == null) {
-                        System.out.println("Error: invalid precedence relation for " + nextTop + " and " + sym);
-                        return;
-                    }
-                    if (nextPrec.equals("<")) {
-                        break;
-                    }
-
+            } else if (precedence == PrecedenceFunctions.GREATER) {
+                // Reduce the handle bounded below by a '<' relation
+                int handleStart = findHandle();
+                if (handleStart < 0) {
+                    listener.error(this, step, ptr, "invalid precedence relation");
+                    errorPosition = ptr;
+                    return false;
+                }
+                long key = 0;
+                for (int i = handleStart; i < stack.size(); i++) {
+                    String sym = stack.get(i);
+                    key = handleKey(key, sym.equals("E") ? nonTerminal : terminalId(sym));
+                }
+                if (isProduction(key)) {
+                    recovering = false;
+                    edits = maxEdits;
+                } else if (!forceReduction(listener, step, ptr, handleStart)) {
+                    return false;
+                }
+                listener.reduce(this, step, handleStart, ptr);
+                while (stack.size() > handleStart) {
+                    stack.pop();
                 }
                 // Replace handle with 'E'
                 stack.push("E");
-                System.out.println("Reduce " + handle);
+            } else if (stack.size() == 2 && stack.peek().equals("E") && "$".equals(currentToken)) {
+                // Reached after deleting the rest of the input
+                listener.accept(this, step, ptr);
+                return errorPosition < 0;
             } else {
-                System.out.println("Error: invalid relation or input");
-                return;
+                if (currentToken == null) {
+                    if (!recover(listener, step, ptr, "invalid relation or input", "unknown character")) {
+                        return false;
+                    }
+                    listener.delete(this, step, ptr++);
+                } else {
+                    int token = terminalId(currentToken);
+                    if (!recover(listener, step, ptr, "invalid relation or input", repairReason(topTerminal, token))) {
+                        return false;
+                    }
+                    int fix = repair(topTerminal, token);
+                    if (fix == DELETE) {
+                        listener.delete(this, step, ptr++);
+                    } else {
+                        inserted = fix;
+                    }
+                }
+                step++;
+                continue;
             }
 
             if (stack.size() == 2 && stack.peek().equals("E") && currentToken.equals("$")) {
-                System.out.printf("%-5d %-20s %-20s %-20s\n", ++step, stack.toString(), input.substring(ptr), "Accept");
-                break;
+                listener.accept(this, ++step, ptr);
+                return errorPosition < 0;
             }
             step++;
         }
     }
 
+    // The same algorithm on int arrays: O(1) work per shift, no allocation once the stack has grown
+    private boolean parseCompact(ShiftReduceListener listener) {
+        int end = terminalIds['$'];
+        symbols[0] = end;
+        lowerTerminal[0] = -1;
+        top = 0;
+        topTerminal = 0;
+        errorPosition = -1;
+        recovering = false;
+        edits = maxEdits;
+        listener.start(this);
+        int step = 1;
+
+        int ptr = 0;
+        int inserted = -1;
+        while (true) {
+            int token;
+            if (inserted >= 0) {
+                token = inserted;
+            } else {
+                token = tokens[ptr];
+            }
+            int precedence = token < 0 ? PrecedenceFunctions.NONE : relation(symbols[topTerminal], token);
+
+            if (precedence == PrecedenceFunctions.LESS || precedence == PrecedenceFunctions.EQUAL) {
+                if (inserted >= 0) {
+                    listener.insert(this, step, ptr, terminals[inserted]);
+                    mark(top + 1, -1 - ptr);
+                    inserted = -1;
+                } else {
+                    listener.shift(this, step, ptr);
+                    mark(top + 1, ptr);
+                    ptr++;
+                    recovering = false;
+                    edits = maxEdits;
+                }
+                push(token);
+                topTerminal = top;
+            } else if (precedence == PrecedenceFunctions.GREATER) {
+                int handleStart = findHandleCompact();
+                if (handleStart < 0) {
+                    listener.error(this, step, ptr, "invalid precedence relation");
+                    errorPosition = ptr;
+                    return false;
+                }
+                long key = 0;
+                for (int i = handleStart; i <= top; i++) {
+                    key = handleKey(key, symbols[i]);
+                }
+                if (isProduction(key)) {
+                    recovering = false;
+                    edits = maxEdits;
+                } else if (!forceReduction(listener, step, ptr, handleStart)) {
+                    return false;
+                }
+                listener.reduce(this, step, handleStart, ptr);
+                // The entry below a handle is the terminal with the '<' relation
+                top = handleStart - 1;
+                topTerminal = top;
+                push(nonTerminal);
+            } else if (top == 1 && symbols[1] == nonTerminal && token == end) {
+                listener.accept(this, step, ptr);
+                return errorPosition < 0;
+            } else {
+                if (!recover(listener, step, ptr, "invalid relation or input",
+                        token < 0 ? "unknown character" : repairReason(symbols[topTerminal], token))) {
+                    return false;
+                }
+                int fix = token < 0 ? DELETE : repair(symbols[topTerminal], token);
+                if (fix == DELETE) {
+                    listener.delete(this, step, ptr++);
+                } else {
+                    inserted = fix;
+                }
+                step++;
+                continue;
+            }
+
+            if (top == 1 && symbols[1] == nonTerminal && token == end) {
+                listener.accept(this, ++step, ptr);
+                return errorPosition < 0;
+            }
+            step++;
+        }
+    }
+
+    private boolean isOperand(int symbol) {
+        return symbol == nonTerminal || symbol == terminalIds['i'];
+    }
+
+    // Record the input position of the stack entry about to be pushed at index
+    private void mark(int index, int position) {
+        if (index == entryPositions.length) {
+            entryPositions = Arrays.copyOf(entryPositions, index * 2);
+        }
+        entryPositions[index] = position;
+    }
+
+    // Input position of a stack entry, or of the token an inserted entry was put in front of
+    private int entryPosition(int index) {
+        int position = entryPositions[index];
+        return position < 0 ? -1 - position : position;
+    }
+
+    private void push(int symbol) {
+        if (++top == symbols.length) {
+            symbols = Arrays.copyOf(symbols, top * 2);
+            lowerTerminal = Arrays.copyOf(lowerTerminal, top * 2);
+        }
+        symbols[top] = symbol;
+        lowerTerminal[top] = topTerminal;
+    }
+
+    // Start of the handle: follow the '=' chain down the terminal links to a '<' relation, or -1
+    private int findHandleCompact() {
+        int i = topTerminal;
+        int right = symbols[i];
+        while (i > 0) {
+            int j = lowerTerminal[i];
+            int left = symbols[j];
+            int relation = relation(left, right);
+            if (relation == PrecedenceFunctions.LESS) {
+                return j + 1;
+            }
+            if (relation != PrecedenceFunctions.EQUAL) {
+                return -1;
+            }
+            right = left;
+            i = j;
+        }
+        return -1;
+    }
+
+    // Input position of the error found by the last parse, or -1
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
     // Main method to run the parser
     public static void main(String[] args) {
         String input = "i+i*i$"; // Example input
@@ -196,7 +875,51 @@ public class OperatorPrecedenceParser {
         OperatorPrecedenceParser parser = new OperatorPrecedenceParser(input);
         System.out.println("=== Operator Precedence Table ===");
         parser.printPrecedenceTable();
+        System.out.println("\n=== Precedence Functions ===");
+        parser.printPrecedenceFunctions();
+        System.out.println(parser.storedInts() + " ints stored for the relations (" + parser.uncompressedInts()
+                + " uncompressed)");
         System.out.println("\n=== Parsing Process ===");
         parser.parse();
+
+        System.out.println("\n=== Expression Tree ===");
+        ExprTreeBuilder builder = new ExprTreeBuilder(new ExprTreeArena());
+        parser.setCompactStack(true);
+        for (String expr : new String[]{input, "(i+i)*i-i/i", "i*(i", "()"}) {
+            parser.setInput(expr);
+            if (parser.parse(builder)) {
+                System.out.println(expr + "  =>  " + ExprTreeBuilder.toPrefix(builder.tree()));
+            } else {
+                System.out.println(expr + "  =>  error at position " + parser.getErrorPosition());
+            }
+        }
+
+        System.out.println("\n=== Report All Errors ===");
+        parser.setRecovery(3);
+        parser.setCompactStack(false);
+        parser.setInput("i+*i)(i");
+        parser.parse();
+        ShiftReduceDiagnostics diagnostics = new ShiftReduceDiagnostics();
+        parser.setCompactStack(true);
+        for (String expr : new String[]{"i+*i)(i", "(ii)*(", "i+@i-()"}) {
+            parser.setInput(expr);
+            parser.parse(diagnostics);
+            System.out.println(expr + (diagnostics.stopped() ? "  (stopped)" : ""));
+            for (String message : diagnostics.messages()) {
+                System.out.println("  " + message);
+            }
+            parser.parse(builder);
+            System.out.println("  =>  " + ExprTreeBuilder.toPrefix(builder.tree()));
+        }
+
+        System.out.println("\n=== Metrics ===");
+        ShiftReduceMetrics metrics = new ShiftReduceMetrics();
+        parser.setMetrics(metrics);
+        for (String expr : new String[]{input, "(i+i)*i-i/i", "i+*i)(i"}) {
+            parser.setInput(expr);
+            parser.parse(ShiftReduceListener.SILENT);
+        }
+        parser.setMetrics(null);
+        System.out.print(metrics.snapshot());
     }
 }
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/*
+    Precedence functions f and g for an operator precedence matrix over
+    terminals 0..n-1, such that
+        a < b  =>  f(a) < g(b)
+        a = b  =>  f(a) = g(b)
+        a > b  =>  f(a) > g(b)
+
+    Construction: one node per f_a and per g_b, nodes related by '=' merged
+    with union-find, an edge f_a -> g_b for a > b and g_b -> f_a for a < b.
+    The matrix has functions exactly when this graph is acyclic, and f/g are
+    then the lengths of the longest paths leaving each node.
+
+    Blank matrix entries (errors) have no counterpart in f and g; callers
+    keep those separately.
+*/
+public final class PrecedenceFunctions {
+
+    // Relation codes of the matrix passed to derive()
+    public static final int NONE = 0;
+    public static final int LESS = 1;
+    public static final int EQUAL = 2;
+    public static final int GREATER = 3;
+
+    private final int[] f;
+    private final int[] g;
+
+    private PrecedenceFunctions(int[] f, int[] g) {
+        this.f = f;
+        this.g = g;
+    }
+
+    public int f(int a) {
+        return f[a];
+    }
+
+    public int g(int b) {
+        return g[b];
+    }
+
+    // LESS, EQUAL or GREATER as f(a) compares to g(b)
+    public int compare(int a, int b) {
+        int fa = f[a];
+        int gb = g[b];
+        return fa < gb ? LESS : fa == gb ? EQUAL : GREATER;
+    }
+
+    // Functions for the n x n matrix relations[a * n + b], or null if they do not exist
+    public static PrecedenceFunctions derive(int n, int[] relations) {
+        if (relations.length != n * n) {
+            throw new IllegalArgumentException("Relation matrix must be " + n + " x " + n);
+        }
+
+        // Nodes 0..n-1 are f_a, n..2n-1 are g_b; merge the '=' pairs
+        int[] leader = new int[2 * n];
+        for (int i = 0; i < leader.length; i++) {
+            leader[i] = i;
+        }
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (relations[a * n + b] == EQUAL) {
+                    leader[find(leader, a)] = find(leader, n + b);
+                }
+            }
+        }
+        int[] group = new int[2 * n];
+        Arrays.fill(group, -1);
+        int groups = 0;
+        for (int i = 0; i < leader.length; i++) {
+            int root = find(leader, i);
+            if (group[root] < 0) {
+                group[root] = groups++;
+            }
+            group[i] = group[root];
+        }
+
+        // Edges between groups, from the larger side to the smaller, in CSR form
+        int[] offset = new int[groups + 1];
+        int edges = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                int r = relations[a * n + b];
+                if (r == GREATER || r == LESS) {
+                    int from = r == GREATER ? group[a] : group[n + b];
+                    int to = r == GREATER ? group[n + b] : group[a];
+                    if (from == to) {
+                        return null;   // x > x through an '=' chain
+                    }
+                    offset[from + 1]++;
+                    edges++;
+                }
+            }
+        }
+        for (int i = 0; i < groups; i++) {
+            offset[i + 1] += offset[i];
+        }
+        int[] target = new int[edges];
+        int[] fill = Arrays.copyOf(offset, groups);
+        int[] inDegree = new int[groups];
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                int r = relations[a * n + b];
+                if (r == GREATER || r == LESS) {
+                    int from = r == GREATER ? group[a] : group[n + b];
+                    int to = r == GREATER ? group[n + b] : group[a];
+                    target[fill[from]++] = to;
+                    inDegree[to]++;
+                }
+            }
+        }
+
+        // Topological order (Kahn); leftover groups lie on a cycle
+        int[] order = new int[groups];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < groups; i++) {
+            if (inDegree[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int x = order[head++];
+            for (int e = offset[x]; e < offset[x + 1]; e++) {
+                if (--inDegree[target[e]] == 0) {
+                    order[tail++] = target[e];
+                }
+            }
+        }
+        if (tail < groups) {
+            return null;
+        }
+
+        // Longest path from each group, successors first
+        int[] length = new int[groups];
+        for (int k = groups - 1; k >= 0; k--) {
+            int x = order[k];
+            for (int e = offset[x]; e < offset[x + 1]; e++) {
+                length[x] = Math.max(length[x], length[target[e]] + 1);
+            }
+        }
+
+        int[] f = new int[n];
+        int[] g = new int[n];
+        for (int a = 0; a < n; a++) {
+            f[a] = length[group[a]];
+            g[a] = length[group[n + a]];
+        }
+        return new PrecedenceFunctions(f, g);
+    }
+
+    private static int find(int[] leader, int i) {
+        while (leader[i] != i) {
+            leader[i] = leader[leader[i]];
+            i = leader[i];
+        }
+        return i;
+    }
+}
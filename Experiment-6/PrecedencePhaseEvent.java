@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+    Flight Recorder event for one phase of OperatorPrecedenceParser: building
+    the precedence table (with its precedence functions and production keys)
+    in the constructor, or a parse. With no recording running the event is
+    never committed and costs nothing once compiled. Record with e.g.
+        java -XX:StartFlightRecording:filename=opg.jfr OperatorPrecedenceParser
+        jfr print --events parsers.opg.Phase opg.jfr
+*/
+@Name("parsers.opg.Phase")
+@Label("Operator Precedence Phase")
+@Category({"Parsers", "Operator Precedence"})
+@Description("Table building or a parse of OperatorPrecedenceParser")
+@StackTrace(false)
+final class PrecedencePhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Size")
+    @Description("Terminals for table building, input length for a parse")
+    long size;
+
+    @Label("Result")
+    @Description("Parse result: -1 when accepted, else the position of the first error; 0 for table building")
+    long result;
+}
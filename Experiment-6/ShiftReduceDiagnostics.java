@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Collects the errors of an operator precedence parse for report-all mode
+    (setRecovery): the position and reason of each one, and how many tokens
+    recovery inserted and deleted before parsing went on. Reasons are the
+    parser's constant strings, so nothing is formatted until a message is
+    asked for. The error that stops a parse is recorded as well. Errors are
+    kept in input order: a handle reduced in recovery is reported when it is
+    reduced, which can be after errors found further on.
+*/
+public class ShiftReduceDiagnostics implements ShiftReduceListener {
+
+    private int[] positions = new int[8];
+    private String[] reasons = new String[8];
+    private int[] inserted = new int[8];
+    private int[] deleted = new int[8];
+    private int count;
+    private int current;       // Index of the error the insertions and deletions belong to
+    private boolean stopped;
+
+    @Override
+    public void start(OperatorPrecedenceParser parser) {
+        count = 0;
+        stopped = false;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int position(int i) {
+        return positions[i];
+    }
+
+    public String reason(int i) {
+        return reasons[i];
+    }
+
+    // True if the last parse ended at an error instead of recovering to the end of the input
+    public boolean stopped() {
+        return stopped;
+    }
+
+    @Override
+    public void recover(OperatorPrecedenceParser parser, int step, int position, int at, String reason) {
+        add(at, reason);
+    }
+
+    @Override
+    public void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+        inserted[current]++;
+    }
+
+    @Override
+    public void delete(OperatorPrecedenceParser parser, int step, int position) {
+        deleted[current]++;
+    }
+
+    @Override
+    public void error(OperatorPrecedenceParser parser, int step, int position, String reason) {
+        stopped = true;
+        if (count == 0 || positions[current] != position) {
+            add(position, reason);
+        }
+    }
+
+    private void add(int position, String reason) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            reasons = Arrays.copyOf(reasons, count * 2);
+            inserted = Arrays.copyOf(inserted, count * 2);
+            deleted = Arrays.copyOf(deleted, count * 2);
+        }
+        int i = count;
+        while (i > 0 && positions[i - 1] > position) {
+            i--;
+        }
+        int moved = count - i;
+        System.arraycopy(positions, i, positions, i + 1, moved);
+        System.arraycopy(reasons, i, reasons, i + 1, moved);
+        System.arraycopy(inserted, i, inserted, i + 1, moved);
+        System.arraycopy(deleted, i, deleted, i + 1, moved);
+        positions[i] = position;
+        reasons[i] = reason;
+        inserted[i] = 0;
+        deleted[i] = 0;
+        current = i;
+        count++;
+    }
+
+    // E.g. "3: missing operator; inserted 1 token(s)"
+    public String message(int i) {
+        StringBuilder sb = new StringBuilder().append(positions[i]).append(": ").append(reasons[i]);
+        if (inserted[i] > 0 || deleted[i] > 0) {
+            sb.append("; ");
+            if (inserted[i] > 0) {
+                sb.append("inserted ").append(inserted[i]).append(" token(s)").append(deleted[i] > 0 ? ", " : "");
+            }
+            if (deleted[i] > 0) {
+                sb.append("deleted ").append(deleted[i]).append(" token(s)");
+            }
+        }
+        return sb.toString();
+    }
+
+    public List<String> messages() {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(message(i));
+        }
+        return result;
+    }
+}
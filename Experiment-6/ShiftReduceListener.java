@@ -0,0 +1,44 @@
+/*
+    Receives the steps of OperatorPrecedenceParser.parse().
+
+    Callbacks pass the parser itself so a listener can render its stack or
+    input when it wants to; the parser never formats anything on its own.
+    SILENT ignores every event, leaving only accept/reject and the error
+    position.
+*/
+public interface ShiftReduceListener {
+
+    ShiftReduceListener SILENT = new ShiftReduceListener() { };
+
+    // A new parse begins with only '$' on the stack
+    default void start(OperatorPrecedenceParser parser) {
+    }
+
+    // The token at position is about to be pushed
+    default void shift(OperatorPrecedenceParser parser, int step, int position) {
+    }
+
+    // Stack entries from handleStart to the top are about to be replaced by their left side
+    default void reduce(OperatorPrecedenceParser parser, int step, int handleStart, int position) {
+    }
+
+    // Parsing stops at position; reason is a constant description
+    default void error(OperatorPrecedenceParser parser, int step, int position, String reason) {
+    }
+
+    // Recovery mode (setRecovery): an error is found with the input at position, blamed on the token at `at`
+    // (before position for a handle reduced without a production), and repaired by the calls that follow
+    default void recover(OperatorPrecedenceParser parser, int step, int position, int at, String reason) {
+    }
+
+    // A token that is not in the input is about to be pushed in front of position
+    default void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+    }
+
+    // The character at position is skipped
+    default void delete(OperatorPrecedenceParser parser, int step, int position) {
+    }
+
+    default void accept(OperatorPrecedenceParser parser, int step, int position) {
+    }
+}
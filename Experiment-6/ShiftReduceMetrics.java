@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/*
+    Counts what OperatorPrecedenceParser does, summed over any number of
+    parses: steps, shifts, reductions (per production, and forced ones that
+    match no production), errors and the tokens recovery inserted and
+    deleted, and the deepest the stack got. Time is kept per phase: each
+    parse is timed from start() to accept / error, and
+    OperatorPrecedenceParser.setMetrics() adds the time its table took to
+    build.
+
+    Only a parse that is given a ShiftReduceMetrics (directly or through
+    setMetrics) counts anything; with SILENT the parser pays nothing.
+    snapshot() copies the counters into an immutable Snapshot. Not
+    thread-safe: use one per parser.
+*/
+public final class ShiftReduceMetrics implements ShiftReduceListener {
+
+    // Timed phases
+    public static final int PRECEDENCE_TABLE = 0;
+    public static final int PARSE = 1;
+    static final String[] PHASE_NAMES = {"buildPrecedenceTable", "parse"};
+
+    private long parses;
+    private long accepted;
+    private long steps;
+    private long shifts;
+    private long reductions;
+    private long forcedReductions;
+    private long errors;
+    private long insertions;
+    private long deletions;
+    private int maxDepth;
+    private final long[] productionCounts = new long[OperatorPrecedenceParser.productionCount()];
+    private final long[] phaseCounts = new long[PHASE_NAMES.length];
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private long parseStart;
+
+    // Add one run of a phase that took the given time
+    public void phase(int phase, long nanos) {
+        phaseCounts[phase]++;
+        phaseNanos[phase] += nanos;
+    }
+
+    @Override
+    public void start(OperatorPrecedenceParser parser) {
+        parses++;
+        parseStart = System.nanoTime();
+    }
+
+    @Override
+    public void shift(OperatorPrecedenceParser parser, int step, int position) {
+        shifts++;
+        pushed(parser);
+    }
+
+    @Override
+    public void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+        insertions++;
+        pushed(parser);
+    }
+
+    // Called before the push: the stack is about to grow by one
+    private void pushed(OperatorPrecedenceParser parser) {
+        int depth = parser.stackSize() + 1;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    @Override
+    public void reduce(OperatorPrecedenceParser parser, int step, int handleStart, int position) {
+        reductions++;
+        int production = parser.productionAt(handleStart);
+        if (production >= 0) {
+            productionCounts[production]++;
+        } else {
+            forcedReductions++;
+        }
+    }
+
+    @Override
+    public void delete(OperatorPrecedenceParser parser, int step, int position) {
+        deletions++;
+    }
+
+    @Override
+    public void recover(OperatorPrecedenceParser parser, int step, int position, int at, String reason) {
+        errors++;
+    }
+
+    @Override
+    public void error(OperatorPrecedenceParser parser, int step, int position, String reason) {
+        errors++;
+        end(step);
+    }
+
+    @Override
+    public void accept(OperatorPrecedenceParser parser, int step, int position) {
+        if (parser.getErrorPosition() < 0) {
+            accepted++;
+        }
+        end(step);
+    }
+
+    private void end(int step) {
+        steps += step;
+        phase(PARSE, System.nanoTime() - parseStart);
+    }
+
+    // Counters as they stand, copied
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        parses = accepted = steps = shifts = reductions = forcedReductions = 0;
+        errors = insertions = deletions = 0;
+        maxDepth = 0;
+        Arrays.fill(productionCounts, 0);
+        Arrays.fill(phaseCounts, 0);
+        Arrays.fill(phaseNanos, 0);
+    }
+
+    /*
+        Forward every event to listener as well as counting it, for parsing with
+        a tracer or tree builder while metrics are on.
+    */
+    public ShiftReduceListener forwardingTo(ShiftReduceListener listener) {
+        if (listener == SILENT || listener == this) {
+            return this;
+        }
+        return new ShiftReduceListener() {
+            @Override
+            public void start(OperatorPrecedenceParser parser) {
+                ShiftReduceMetrics.this.start(parser);
+                listener.start(parser);
+            }
+
+            @Override
+            public void shift(OperatorPrecedenceParser parser, int step, int position) {
+                ShiftReduceMetrics.this.shift(parser, step, position);
+                listener.shift(parser, step, position);
+            }
+
+            @Override
+            public void reduce(OperatorPrecedenceParser parser, int step, int handleStart, int position) {
+                ShiftReduceMetrics.this.reduce(parser, step, handleStart, position);
+                listener.reduce(parser, step, handleStart, position);
+            }
+
+            @Override
+            public void error(OperatorPrecedenceParser parser, int step, int position, String reason) {
+                ShiftReduceMetrics.this.error(parser, step, position, reason);
+                listener.error(parser, step, position, reason);
+            }
+
+            @Override
+            public void recover(OperatorPrecedenceParser parser, int step, int position, int at, String reason) {
+                ShiftReduceMetrics.this.recover(parser, step, position, at, reason);
+                listener.recover(parser, step, position, at, reason);
+            }
+
+            @Override
+            public void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+                ShiftReduceMetrics.this.insert(parser, step, position, token);
+                listener.insert(parser, step, position, token);
+            }
+
+            @Override
+            public void delete(OperatorPrecedenceParser parser, int step, int position) {
+                ShiftReduceMetrics.this.delete(parser, step, position);
+                listener.delete(parser, step, position);
+            }
+
+            @Override
+            public void accept(OperatorPrecedenceParser parser, int step, int position) {
+                ShiftReduceMetrics.this.accept(parser, step, position);
+                listener.accept(parser, step, position);
+            }
+        };
+    }
+
+    // Immutable copy of the counters
+    public static final class Snapshot {
+        public final long parses;
+        public final long accepted;
+        public final long steps;
+        public final long shifts;
+        public final long reductions;
+        public final long forcedReductions;
+        public final long errors;
+        public final long insertions;
+        public final long deletions;
+        public final int maxDepth;
+        private final long[] productionCounts;
+        private final long[] phaseCounts;
+        private final long[] phaseNanos;
+
+        Snapshot(ShiftReduceMetrics m) {
+            parses = m.parses;
+            accepted = m.accepted;
+            steps = m.steps;
+            shifts = m.shifts;
+            reductions = m.reductions;
+            forcedReductions = m.forcedReductions;
+            errors = m.errors;
+            insertions = m.insertions;
+            deletions = m.deletions;
+            maxDepth = m.maxDepth;
+            productionCounts = m.productionCounts.clone();
+            phaseCounts = m.phaseCounts.clone();
+            phaseNanos = m.phaseNanos.clone();
+        }
+
+        // Reductions by production (see OperatorPrecedenceParser.production)
+        public long reductions(int production) {
+            return productionCounts[production];
+        }
+
+        // Runs of a phase (PRECEDENCE_TABLE, PARSE) and their total time
+        public long phaseCount(int phase) {
+            return phaseCounts[phase];
+        }
+
+        public long phaseNanos(int phase) {
+            return phaseNanos[phase];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("parses %d (accepted %d), steps %d, max depth %d%n", parses, accepted, steps, maxDepth));
+            sb.append(String.format("shifts %d, reductions %d (forced %d)%n", shifts, reductions, forcedReductions));
+            sb.append(String.format("errors %d, insertions %d, deletions %d%n", errors, insertions, deletions));
+            for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+                if (phaseCounts[phase] > 0) {
+                    sb.append(String.format("%-20s %8d runs %12.1f us%n",
+                            PHASE_NAMES[phase], phaseCounts[phase], phaseNanos[phase] / 1e3));
+                }
+            }
+            for (int p = 0; p < productionCounts.length; p++) {
+                sb.append(String.format("%-20s %8d%n", OperatorPrecedenceParser.production(p), productionCounts[p]));
+            }
+            return sb.toString();
+        }
+    }
+}
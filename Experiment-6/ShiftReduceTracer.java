@@ -0,0 +1,47 @@
+// Prints each shift-reduce step as a row of the Step / Stack / Input / Action table
+public class ShiftReduceTracer implements ShiftReduceListener {
+
+    public static void printHeader() {
+        System.out.printf("%-5s %-20s %-20s %-20s\n", "Step", "Stack", "Input", "Action");
+        System.out.println("--------------------------------------------------------------------");
+    }
+
+    @Override
+    public void shift(OperatorPrecedenceParser parser, int step, int position) {
+        print(parser, step, position, "Shift " + parser.tokenAt(position));
+    }
+
+    @Override
+    public void reduce(OperatorPrecedenceParser parser, int step, int handleStart, int position) {
+        print(parser, step, position, "Reduce " + parser.stackString(handleStart));
+    }
+
+    @Override
+    public void error(OperatorPrecedenceParser parser, int step, int position, String reason) {
+        print(parser, step, position, "Error: " + reason);
+    }
+
+    @Override
+    public void recover(OperatorPrecedenceParser parser, int step, int position, int at, String reason) {
+        print(parser, step, position, "Error: " + reason + (at != position ? " at " + at : "") + ", recovering");
+    }
+
+    @Override
+    public void insert(OperatorPrecedenceParser parser, int step, int position, String token) {
+        print(parser, step, position, "Insert " + token);
+    }
+
+    @Override
+    public void delete(OperatorPrecedenceParser parser, int step, int position) {
+        print(parser, step, position, "Delete " + parser.tokenAt(position));
+    }
+
+    @Override
+    public void accept(OperatorPrecedenceParser parser, int step, int position) {
+        print(parser, step, position, parser.getErrorPosition() < 0 ? "Accept" : "Accept with errors");
+    }
+
+    private void print(OperatorPrecedenceParser parser, int step, int position, String action) {
+        System.out.printf("%-5d %-20s %-20s %s\n", step, parser.stackString(0), parser.remainingInput(position), action);
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+
+/*
+    Lexes each expression once with a DfaLexer (Experiment-2) and hands the
+    same token stream to the three expression parsers:
+        BufferedParser            (Experiment-4) as terminal characters
+        CompiledLL1Table          (Experiment-5) as LL(1) terminal ids
+        OperatorPrecedenceParser  (Experiment-6) as its terminal ids
+    The lexer's token ids are mapped to each parser's terminals by name once,
+    when the pipeline is made; after that lexing and parsing copy no text,
+    only int arrays that are reused from one expression to the next.
+
+    With expr.lex the operand i can be any identifier or number, so the
+    parsers accept e.g. "(rate + 1.5) * count" and report errors by input
+    offset.
+
+    Build and run from the repository root:
+        javac -encoding UTF-8 -d out -sourcepath "Experiment-2:Experiment-4:Experiment-5:Experiment-6" Pipeline/*.java
+        java -cp out TokenPipeline [lexer-spec] [expression...]
+*/
+public class TokenPipeline {
+
+    private final DfaLexer lexer;
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    // Lexer token id -> terminal of each parser (-1 or '?' where it has none)
+    private final int[] rdTerminals;
+    private final int[] ll1Terminals;
+    private final int[] opgTerminals;
+    private int[] mapped = new int[64];
+
+    private final BufferedParser rd = new BufferedParser(new StringReader(""), true);
+    private final CompiledLL1Table.Cursor ll1;
+    private final OperatorPrecedenceParser opg = new OperatorPrecedenceParser("i");
+
+    public TokenPipeline(DfaLexer lexer, CompiledLL1Table table) {
+        this.lexer = lexer;
+        this.ll1 = table.newCursor();
+        opg.setCompactStack(true);
+        rdTerminals = new int[lexer.tokenCount()];
+        ll1Terminals = new int[lexer.tokenCount()];
+        opgTerminals = new int[lexer.tokenCount()];
+        for (int id = 0; id < lexer.tokenCount(); id++) {
+            String name = lexer.tokenName(id);
+            rdTerminals[id] = name.length() == 1 && "i+-*/()$".indexOf(name.charAt(0)) >= 0 ? name.charAt(0) : '?';
+            ll1Terminals[id] = table.terminalId(name);
+            opgTerminals[id] = opg.terminalIndex(name);
+        }
+    }
+
+    // Lex input into the pipeline's token buffer; the parse methods read that buffer
+    public TokenBuffer lex(CharSequence input) {
+        return lexer.tokenize(input, tokens);
+    }
+
+    // BufferedParser.VALID or INVALID; errorColumn() - 1 is the offset of the first error
+    public int parseRecursiveDescent() {
+        return rd.parseTokens(map(rdTerminals, '?'), tokens.starts(), tokens.count());
+    }
+
+    // CompiledLL1Table.ACCEPT or the offset of the first error
+    public int parseLL1() {
+        return ll1.parse(map(ll1Terminals, CompiledLL1Table.ERROR), tokens.starts(), tokens.ends(), tokens.count(),
+                ParseListener.SILENT);
+    }
+
+    // -1 when accepted, else the offset of the first error
+    public int parseOperatorPrecedence() {
+        opg.setTokens(map(opgTerminals, -1), tokens.starts(), tokens.ends(), tokens.count());
+        return opg.parse(ShiftReduceListener.SILENT) ? -1 : opg.offset(opg.getErrorPosition());
+    }
+
+    public BufferedParser recursiveDescent() {
+        return rd;
+    }
+
+    // Token ids of the buffer translated through terminals, into the reused array
+    private int[] map(int[] terminals, int unknown) {
+        int count = tokens.count();
+        if (mapped.length < count) {
+            mapped = new int[Math.max(count, mapped.length * 2)];
+        }
+        int[] ids = tokens.ids();
+        for (int i = 0; i < count; i++) {
+            mapped[i] = ids[i] >= 0 ? terminals[ids[i]] : unknown;
+        }
+        return mapped;
+    }
+
+    public static void main(String[] args) throws IOException {
+        DfaLexer lexer = LexerGenerator.load(Path.of(args.length > 0 ? args[0] : "Experiment-2/expr.lex"));
+        LL1ParserGrammar grammar = new LL1ParserGrammar("");
+        grammar.initGrammar();
+        grammar.computeFirstFollow();
+        grammar.buildParsingTable();
+        TokenPipeline pipeline = new TokenPipeline(lexer, grammar.compile());
+
+        String[] inputs = args.length > 1
+                ? java.util.Arrays.copyOfRange(args, 1, args.length)
+                : new String[]{"(rate + 1.5) * count", "a - b / (c + 42) // comment", "x + * y", "(total + 3", "n % 2"};
+        for (String input : inputs) {
+            TokenBuffer tokens = pipeline.lex(input);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < tokens.count(); i++) {
+                sb.append(' ').append(lexer.tokenName(tokens.id(i))).append('[').append(tokens.text(input, i)).append(']');
+            }
+            System.out.println(input);
+            System.out.println("  tokens:" + sb);
+            int rd = pipeline.parseRecursiveDescent();
+            System.out.println("  recursive descent:   " + (rd == BufferedParser.VALID
+                    ? "valid" : "error at " + (pipeline.recursiveDescent().errorColumn() - 1)));
+            int ll1 = pipeline.parseLL1();
+            System.out.println("  LL(1):               " + (ll1 == CompiledLL1Table.ACCEPT ? "valid" : "error at " + ll1));
+            int opg = pipeline.parseOperatorPrecedence();
+            System.out.println("  operator precedence: " + (opg < 0 ? "valid" : "error at " + opg));
+        }
+    }
+}